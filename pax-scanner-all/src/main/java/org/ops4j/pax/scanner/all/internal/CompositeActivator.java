@@ -18,12 +18,23 @@
 package org.ops4j.pax.scanner.all.internal;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 
 /**
- * Composite activator for all embedded scanners and scanner service.
+ * Composite activator for all embedded scanners and scanner service.<br/>
+ * The scanner service activator is started first. Scanner activators depend only on it so they are started in
+ * parallel. If any activator fails to start the started ones are stopped. Activators are stopped in reverse order.
  *
  * @author Alin Dreghiciu (adreghiciu@gmail.com)
  * @since 1.1.0, September 30, 2009
@@ -33,9 +44,18 @@ public class CompositeActivator
 {
 
     /**
-     * List of activators that makes up this composite.
+     * Logger.
      */
-    private Collection<BundleActivator> m_activators;
+    private static final Log LOGGER = LogFactory.getLog( CompositeActivator.class );
+
+    /**
+     * List of activators that makes up this composite. First one is the scanner service activator.
+     */
+    private List<BundleActivator> m_activators;
+    /**
+     * Activators that were started, in the order of activators list.
+     */
+    private List<BundleActivator> m_started;
 
     /**
      * Constructor. Create all activators that makes up this composite.
@@ -49,36 +69,176 @@ public class CompositeActivator
         m_activators.add( new org.ops4j.pax.scanner.dir.internal.Activator() );
         m_activators.add( new org.ops4j.pax.scanner.features.internal.Activator() );
         m_activators.add( new org.ops4j.pax.scanner.file.internal.Activator() );
+        m_activators.add( new org.ops4j.pax.scanner.lock.internal.Activator() );
         m_activators.add( new org.ops4j.pax.scanner.obr.internal.Activator() );
         m_activators.add( new org.ops4j.pax.scanner.pom.internal.Activator() );
     }
 
     /**
-     * Start all composed activators.
+     * Constructor. Uses the provided activators, first one being the one the others depend on.
+     *
+     * @param activators activators that makes up this composite
+     */
+    CompositeActivator( final List<BundleActivator> activators )
+    {
+        m_activators = new ArrayList<BundleActivator>( activators );
+    }
+
+    /**
+     * Start all composed activators. First activator is started, then the rest are started in parallel. If an
+     * activator fails to start, the activators already started are stopped and the start failure is rethrown, even if
+     * stopping fails.
      *
      * {@inheritDoc}
      */
     public void start( final BundleContext bundleContext )
         throws Exception
     {
-        for( BundleActivator activator : m_activators )
+        m_started = new ArrayList<BundleActivator>();
+        if( m_activators.isEmpty() )
+        {
+            return;
+        }
+        final BundleActivator first = m_activators.get( 0 );
+        first.start( bundleContext );
+        m_started.add( first );
+
+        final List<BundleActivator> rest = m_activators.subList( 1, m_activators.size() );
+        final ExecutorService executor = Executors.newFixedThreadPool(
+            Math.max( 1, Math.min( rest.size(), Runtime.getRuntime().availableProcessors() ) ),
+            new ThreadFactory()
+            {
+                private final AtomicInteger m_threads = new AtomicInteger();
+
+                public Thread newThread( final Runnable runnable )
+                {
+                    final Thread thread = new Thread(
+                        runnable, "Pax Scanner activator " + m_threads.incrementAndGet()
+                    );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            }
+        );
+        Throwable failure = null;
+        boolean interrupted = false;
+        try
+        {
+            final List<Future<Object>> starts = new ArrayList<Future<Object>>();
+            for( final BundleActivator activator : rest )
+            {
+                starts.add(
+                    executor.submit(
+                        new Callable<Object>()
+                        {
+                            public Object call()
+                                throws Exception
+                            {
+                                activator.start( bundleContext );
+                                return null;
+                            }
+                        }
+                    )
+                );
+            }
+            for( int i = 0; i < starts.size(); i++ )
+            {
+                try
+                {
+                    starts.get( i ).get();
+                    m_started.add( rest.get( i ) );
+                }
+                catch( ExecutionException e )
+                {
+                    if( failure == null )
+                    {
+                        failure = e.getCause();
+                    }
+                }
+                catch( InterruptedException e )
+                {
+                    // wait for the start anyhow, so it can be rolled back if needed
+                    interrupted = true;
+                    i--;
+                }
+            }
+        }
+        finally
         {
-            activator.start( bundleContext );
+            executor.shutdown();
+            if( interrupted )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if( failure != null )
+        {
+            try
+            {
+                stop( bundleContext );
+            }
+            catch( Exception e )
+            {
+                // report the rollback failure but rethrow the start failure, that is the one to be fixed
+                LOGGER.error( "Pax Scanner activators could not be stopped after a start failure", e );
+            }
+            throw toException( failure );
         }
     }
 
     /**
-     * Stop all composed activators.
+     * Stop all started activators, in reverse order. All activators are stopped even if one fails; first failure is
+     * rethrown.
      *
      * {@inheritDoc}
      */
     public void stop( final BundleContext bundleContext )
         throws Exception
     {
-        for( BundleActivator activator : m_activators )
+        if( m_started == null )
+        {
+            return;
+        }
+        Exception failure = null;
+        for( int i = m_started.size() - 1; i >= 0; i-- )
+        {
+            try
+            {
+                m_started.get( i ).stop( bundleContext );
+            }
+            catch( Exception e )
+            {
+                if( failure == null )
+                {
+                    failure = e;
+                }
+            }
+        }
+        m_started = null;
+        if( failure != null )
+        {
+            throw failure;
+        }
+    }
+
+    /**
+     * Converts a start failure to an exception that can be rethrown. Errors are thrown as they are.
+     *
+     * @param cause failure
+     *
+     * @return exception
+     */
+    private static Exception toException( final Throwable cause )
+    {
+        if( cause instanceof Exception )
+        {
+            return (Exception) cause;
+        }
+        if( cause instanceof Error )
         {
-            activator.stop( bundleContext );
+            throw (Error) cause;
         }
+        return new Exception( cause );
     }
 
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.all.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.osgi.framework.BundleActivator;
+import org.osgi.framework.BundleContext;
+
+public class CompositeActivatorTest
+{
+
+    @Test
+    public void startAndStopInReverseOrder()
+        throws Exception
+    {
+        final List<String> events = Collections.synchronizedList( new ArrayList<String>() );
+        final CompositeActivator activator = new CompositeActivator(
+            Arrays.<BundleActivator>asList(
+                new RecordingActivator( "service", events, false ),
+                new RecordingActivator( "scanner1", events, false ),
+                new RecordingActivator( "scanner2", events, false )
+            )
+        );
+        activator.start( null );
+        assertEquals( "Events", 3, events.size() );
+        assertEquals( "Service started first", "start service", events.get( 0 ) );
+        assertTrue( "Scanners started", events.containsAll( Arrays.asList( "start scanner1", "start scanner2" ) ) );
+
+        events.clear();
+        activator.stop( null );
+        assertEquals(
+            "Stopped in reverse order",
+            Arrays.asList( "stop scanner2", "stop scanner1", "stop service" ),
+            events
+        );
+    }
+
+    @Test
+    public void rollbackOnStartFailure()
+        throws Exception
+    {
+        final List<String> events = Collections.synchronizedList( new ArrayList<String>() );
+        final CompositeActivator activator = new CompositeActivator(
+            Arrays.<BundleActivator>asList(
+                new RecordingActivator( "service", events, false ),
+                new RecordingActivator( "scanner1", events, true ),
+                new RecordingActivator( "scanner2", events, false )
+            )
+        );
+        try
+        {
+            activator.start( null );
+            fail( "Expected start failure" );
+        }
+        catch( IllegalStateException e )
+        {
+            assertEquals( "Failure", "scanner1", e.getMessage() );
+        }
+        assertEquals( "Started ones stopped", "stop scanner2", events.get( events.size() - 2 ) );
+        assertEquals( "Started ones stopped", "stop service", events.get( events.size() - 1 ) );
+        assertFalse( "Failed one not stopped", events.contains( "stop scanner1" ) );
+
+        events.clear();
+        activator.stop( null );
+        assertTrue( "Nothing to stop after rollback", events.isEmpty() );
+    }
+
+    @Test
+    public void startFailureKeptWhenRollbackFails()
+        throws Exception
+    {
+        final List<String> events = Collections.synchronizedList( new ArrayList<String>() );
+        final CompositeActivator activator = new CompositeActivator(
+            Arrays.<BundleActivator>asList(
+                new RecordingActivator( "service", events, false )
+                {
+                    @Override
+                    public void stop( final BundleContext bundleContext )
+                    {
+                        super.stop( bundleContext );
+                        throw new IllegalStateException( "stop service" );
+                    }
+                },
+                new RecordingActivator( "scanner1", events, true )
+            )
+        );
+        try
+        {
+            activator.start( null );
+            fail( "Expected start failure" );
+        }
+        catch( IllegalStateException e )
+        {
+            assertEquals( "Start failure", "scanner1", e.getMessage() );
+        }
+        assertTrue( "Rolled back", events.contains( "stop service" ) );
+    }
+
+    private static class RecordingActivator
+        implements BundleActivator
+    {
+
+        private final String m_name;
+        private final List<String> m_events;
+        private final boolean m_fail;
+
+        RecordingActivator( final String name, final List<String> events, final boolean fail )
+        {
+            m_name = name;
+            m_events = events;
+            m_fail = fail;
+        }
+
+        public void start( final BundleContext bundleContext )
+        {
+            if( m_fail )
+            {
+                throw new IllegalStateException( m_name );
+            }
+            m_events.add( "start " + m_name );
+        }
+
+        public void stop( final BundleContext bundleContext )
+        {
+            m_events.add( "stop " + m_name );
+        }
+
+    }
+
+}
@@ -21,9 +21,11 @@ import java.util.Dictionary;
 import java.util.Hashtable;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceFactory;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.cm.ConfigurationException;
 import org.osgi.service.cm.ManagedService;
@@ -34,7 +36,9 @@ import org.ops4j.util.property.DictionaryPropertyResolver;
 import org.ops4j.util.property.PropertyResolver;
 
 /**
- * Abstract bundle activator for scanners.
+ * Abstract bundle activator for scanners.<br/>
+ * If framework property {@link #PROPERTY_LAZY} is set to true the scanner is registered via a {@link ServiceFactory}
+ * and created only when the service is first requested, so scanners of schemes that are never used cost nothing.
  *
  * @author Alin Dreghiciu
  * @since September 04, 2007
@@ -43,6 +47,11 @@ public abstract class AbstractScannerActivator<T extends Scanner>
     implements BundleActivator
 {
 
+    /**
+     * Framework property that, if set to true, delays the creation of scanners till first use.
+     */
+    public static final String PROPERTY_LAZY = "org.ops4j.pax.scanner.lazy";
+
     /**
      * Logger.
      */
@@ -55,6 +64,10 @@ public abstract class AbstractScannerActivator<T extends Scanner>
      * Registred scanner.
      */
     private T m_scanner;
+    /**
+     * Property resolver received before the scanner was created (lazy mode). Null if none.
+     */
+    private PropertyResolver m_pendingResolver;
     /**
      * Scanner service registration. Usef for cleanup.
      */
@@ -102,13 +115,87 @@ public abstract class AbstractScannerActivator<T extends Scanner>
 
     /**
      * Registers the scanner. Will be used by provisioning service via white box pattern.
+     * In lazy mode a service factory that creates the scanner on first request is registered instead.
      */
     private void registerScanner()
     {
-        m_scanner = createScanner( m_bundleContext );
         final Dictionary<String, Object> props = new Hashtable<String, Object>();
         props.put( Scanner.SCHEMA_PROPERTY, getSchema() );
-        m_scannerReg = m_bundleContext.registerService( Scanner.class.getName(), m_scanner, props );
+        if( Boolean.valueOf( m_bundleContext.getProperty( PROPERTY_LAZY ) ) )
+        {
+            m_scannerReg = m_bundleContext.registerService(
+                Scanner.class.getName(),
+                new ServiceFactory()
+                {
+                    /**
+                     * Creates the scanner, if not already created.
+                     *
+                     * @see ServiceFactory#getService(Bundle, ServiceRegistration)
+                     */
+                    public Object getService( final Bundle bundle, final ServiceRegistration registration )
+                    {
+                        return getOrCreateScanner();
+                    }
+
+                    /**
+                     * Scanner is kept, as it is shared by all bundles.
+                     *
+                     * @see ServiceFactory#ungetService(Bundle, ServiceRegistration, Object)
+                     */
+                    public void ungetService( final Bundle bundle,
+                                              final ServiceRegistration registration,
+                                              final Object service )
+                    {
+                        // keep the scanner
+                    }
+                },
+                props
+            );
+            LOG.debug( "Scanner for schema [" + getSchema() + "] will be created on first use" );
+        }
+        else
+        {
+            m_scannerReg = m_bundleContext.registerService(
+                Scanner.class.getName(), getOrCreateScanner(), props
+            );
+        }
+    }
+
+    /**
+     * Returns the scanner, creating it if not already created. A property resolver received before creation is set
+     * on the created scanner.
+     *
+     * @return the scanner
+     */
+    private synchronized T getOrCreateScanner()
+    {
+        if( m_scanner == null )
+        {
+            m_scanner = createScanner( m_bundleContext );
+            if( m_pendingResolver != null )
+            {
+                setResolver( m_pendingResolver );
+                m_pendingResolver = null;
+            }
+        }
+        return m_scanner;
+    }
+
+    /**
+     * Sets the property resolver on scanner or, if the scanner is not yet created, keeps it till creation.
+     *
+     * @param propertyResolver property resolver
+     */
+    private synchronized void updateResolver( final PropertyResolver propertyResolver )
+    {
+        if( m_scanner == null )
+        {
+            m_pendingResolver = propertyResolver;
+        }
+        else
+        {
+            setResolver( propertyResolver );
+        }
     }
 
     /**
@@ -132,11 +219,11 @@ public abstract class AbstractScannerActivator<T extends Scanner>
                 {
                     if( config == null )
                     {
-                        setResolver( new BundleContextPropertyResolver( m_bundleContext ) );
+                        updateResolver( new BundleContextPropertyResolver( m_bundleContext ) );
                     }
                     else
                     {
-                        setResolver(
+                        updateResolver(
                             new DictionaryPropertyResolver(
                                 config,
                                 new BundleContextPropertyResolver( m_bundleContext )
@@ -152,9 +239,9 @@ public abstract class AbstractScannerActivator<T extends Scanner>
     /**
      * Returns the scanner.
      *
-     * @return a scanner
+     * @return a scanner or null if not yet created (lazy mode)
      */
-    protected T getScanner()
+    protected synchronized T getScanner()
     {
         return m_scanner;
     }
@@ -0,0 +1,613 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.common;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import org.ops4j.lang.NullArgumentException;
+import org.ops4j.pax.scanner.ScannedBundle;
+
+/**
+ * A binary provisioning plan, as written by {@link ProvisionPlanCompiler}. Loading a plan only locates the string
+ * table and checks the bundle entries; strings are decoded the first time they are used and bundles are decoded while
+ * iterating, straight out of the (usually memory mapped) plan.
+ *
+ * @since 1.2.0
+ */
+public class ProvisionPlan
+    implements Iterable<ScannedBundle>
+{
+
+    /**
+     * Magic bytes starting a plan.
+     */
+    static final byte[] MAGIC = { 'P', 'X', 'P', 'L' };
+    /**
+     * Plan format version.
+     */
+    static final int VERSION = 2;
+    /**
+     * Flag set if start is specified.
+     */
+    private static final int START_SET = 0x01;
+    /**
+     * Flag set if bundle should be started.
+     */
+    private static final int START = 0x02;
+    /**
+     * Flag set if update is specified.
+     */
+    private static final int UPDATE_SET = 0x04;
+    /**
+     * Flag set if bundle should be updated.
+     */
+    private static final int UPDATE = 0x08;
+
+    /**
+     * Plan content.
+     */
+    private final ByteBuffer m_buffer;
+    /**
+     * Provision spec the plan was compiled from. Null if unknown.
+     */
+    private final String m_spec;
+    /**
+     * Source url to digest.
+     */
+    private final Map<String, byte[]> m_sources;
+    /**
+     * System properties set while scanning the spec, in the order they were set.
+     */
+    private final Map<String, String> m_properties;
+    /**
+     * Offsets of strings in the plan.
+     */
+    private final int[] m_stringOffsets;
+    /**
+     * Lengths of strings in the plan (bytes).
+     */
+    private final int[] m_stringLengths;
+    /**
+     * Decoded strings. Strings are decoded on first use.
+     */
+    private final String[] m_strings;
+    /**
+     * Offset of first bundle entry.
+     */
+    private final int m_bundlesOffset;
+    /**
+     * Number of bundles.
+     */
+    private final int m_size;
+
+    /**
+     * Loads a plan from a buffer positioned at the plan start.
+     *
+     * @param buffer plan content
+     *
+     * @throws IOException - If content is not a valid plan
+     */
+    private ProvisionPlan( final ByteBuffer buffer )
+        throws IOException
+    {
+        m_buffer = buffer;
+        try
+        {
+            final byte[] magic = new byte[MAGIC.length];
+            buffer.get( magic );
+            if( !Arrays.equals( MAGIC, magic ) )
+            {
+                throw new IOException( "Not a provision plan" );
+            }
+            final int version = buffer.get();
+            if( version != VERSION )
+            {
+                throw new IOException( "Unsupported provision plan version " + version );
+            }
+            final String spec = readString( buffer );
+            m_spec = spec.length() == 0 ? null : spec;
+            final int sourceCount = readVarint( buffer );
+            final Map<String, byte[]> sources = new LinkedHashMap<String, byte[]>();
+            for( int i = 0; i < sourceCount; i++ )
+            {
+                final String url = readString( buffer );
+                final byte[] digest = new byte[readVarint( buffer )];
+                buffer.get( digest );
+                sources.put( url, digest );
+            }
+            m_sources = Collections.unmodifiableMap( sources );
+            final int propertyCount = readVarint( buffer );
+            final Map<String, String> properties = new LinkedHashMap<String, String>();
+            for( int i = 0; i < propertyCount; i++ )
+            {
+                properties.put( readString( buffer ), readString( buffer ) );
+            }
+            m_properties = Collections.unmodifiableMap( properties );
+            final int stringCount = readVarint( buffer );
+            m_stringOffsets = new int[stringCount];
+            m_stringLengths = new int[stringCount];
+            m_strings = new String[stringCount];
+            for( int i = 0; i < stringCount; i++ )
+            {
+                m_stringLengths[ i ] = readVarint( buffer );
+                m_stringOffsets[ i ] = buffer.position();
+                buffer.position( buffer.position() + m_stringLengths[ i ] );
+            }
+            m_size = readVarint( buffer );
+            m_bundlesOffset = buffer.position();
+            checkEntries( buffer );
+        }
+        catch( BufferUnderflowException e )
+        {
+            throw new IOException( "Truncated provision plan" );
+        }
+        catch( IllegalArgumentException e )
+        {
+            throw new IOException( "Truncated provision plan" );
+        }
+        catch( NegativeArraySizeException e )
+        {
+            throw new IOException( "Malformed provision plan" );
+        }
+    }
+
+    /**
+     * Checks that all bundle entries are complete and refer existing strings, so iterating cannot fail.
+     *
+     * @param buffer plan content, positioned at the first bundle entry
+     *
+     * @throws IOException - If an entry refers a string that does not exist
+     */
+    private void checkEntries( final ByteBuffer buffer )
+        throws IOException
+    {
+        if( m_size < 0 )
+        {
+            throw new IOException( "Malformed provision plan: negative number of bundles" );
+        }
+        for( int i = 0; i < m_size; i++ )
+        {
+            final int location = readVarint( buffer );
+            final int digest = readVarint( buffer );
+            readVarint( buffer );
+            buffer.get();
+            if( location < 0 || location >= m_strings.length || digest < 0 || digest > m_strings.length )
+            {
+                throw new IOException( "Malformed provision plan: bundle entry " + i + " refers an unknown string" );
+            }
+        }
+    }
+
+    /**
+     * Loads a plan by memory mapping a file.
+     *
+     * @param file plan file; mandatory
+     *
+     * @return loaded plan
+     *
+     * @throws IOException - If file cannot be read or is not a valid plan
+     */
+    public static ProvisionPlan load( final File file )
+        throws IOException
+    {
+        NullArgumentException.validateNotNull( file, "File" );
+        final FileInputStream inputStream = new FileInputStream( file );
+        try
+        {
+            final FileChannel channel = inputStream.getChannel();
+            // the mapping stays valid after the channel is closed
+            return load( channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() ) );
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Loads a plan from a buffer. The buffer content must not change while the plan is used.
+     *
+     * @param buffer plan content, positioned at plan start; mandatory
+     *
+     * @return loaded plan
+     *
+     * @throws IOException - If content is not a valid plan
+     */
+    public static ProvisionPlan load( final ByteBuffer buffer )
+        throws IOException
+    {
+        NullArgumentException.validateNotNull( buffer, "Buffer" );
+        return new ProvisionPlan( buffer.slice() );
+    }
+
+    /**
+     * Checks if a file is a provision plan, by looking at the magic bytes.
+     *
+     * @param file file to check; mandatory
+     *
+     * @return true if file starts as a provision plan
+     */
+    public static boolean isPlan( final File file )
+    {
+        NullArgumentException.validateNotNull( file, "File" );
+        try
+        {
+            final InputStream inputStream = new FileInputStream( file );
+            try
+            {
+                final byte[] magic = new byte[MAGIC.length];
+                int read = 0;
+                int count;
+                while( read < magic.length && ( count = inputStream.read( magic, read, magic.length - read ) ) > 0 )
+                {
+                    read += count;
+                }
+                return Arrays.equals( MAGIC, magic );
+            }
+            finally
+            {
+                inputStream.close();
+            }
+        }
+        catch( IOException e )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Getter.
+     *
+     * @return provision spec the plan was compiled from or null if unknown
+     */
+    public String getSpec()
+    {
+        return m_spec;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return source url to SHA-256 digest of content at compile time
+     */
+    public Map<String, byte[]> getSources()
+    {
+        return m_sources;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return name to value of the system properties set while scanning the spec, in the order they were set
+     */
+    public Map<String, String> getProperties()
+    {
+        return m_properties;
+    }
+
+    /**
+     * Checks if the content of all sources is the same as when the plan was compiled.
+     *
+     * @return true if no source changed, false if a source changed or cannot be read
+     */
+    public boolean isUpToDate()
+    {
+        for( Map.Entry<String, byte[]> source : m_sources.entrySet() )
+        {
+            try
+            {
+                final InputStream inputStream = new URL( source.getKey() ).openStream();
+                try
+                {
+                    if( !Arrays.equals( source.getValue(), ProvisionPlanCompiler.digest( inputStream ) ) )
+                    {
+                        return false;
+                    }
+                }
+                finally
+                {
+                    inputStream.close();
+                }
+            }
+            catch( IOException e )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return number of bundles in the plan
+     */
+    public int size()
+    {
+        return m_size;
+    }
+
+    /**
+     * Iterates the bundles of the plan, in provisioning order. Each returned bundle is a {@link Bundle}.
+     *
+     * {@inheritDoc}
+     */
+    public Iterator<ScannedBundle> iterator()
+    {
+        final ByteBuffer buffer = m_buffer.duplicate();
+        buffer.position( m_bundlesOffset );
+        return new Iterator<ScannedBundle>()
+        {
+            private int m_next;
+
+            public boolean hasNext()
+            {
+                return m_next < m_size;
+            }
+
+            public ScannedBundle next()
+            {
+                if( m_next >= m_size )
+                {
+                    throw new NoSuchElementException();
+                }
+                m_next++;
+                final int location = readVarint( buffer );
+                final int digest = readVarint( buffer );
+                final int startLevel = readVarint( buffer );
+                final int flags = buffer.get();
+                return new Bundle(
+                    getString( location ),
+                    startLevel == 0 ? null : startLevel - 1,
+                    ( flags & START_SET ) == 0 ? null : ( flags & START ) != 0,
+                    ( flags & UPDATE_SET ) == 0 ? null : ( flags & UPDATE ) != 0,
+                    digest == 0 ? null : getString( digest - 1 )
+                );
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Returns a string from the string table, decoding it on first use.
+     *
+     * @param index string index
+     *
+     * @return string
+     */
+    private String getString( final int index )
+    {
+        String string = m_strings[ index ];
+        if( string == null )
+        {
+            final byte[] bytes = new byte[m_stringLengths[ index ]];
+            final ByteBuffer buffer = m_buffer.duplicate();
+            buffer.position( m_stringOffsets[ index ] );
+            buffer.get( bytes );
+            string = utf8( bytes );
+            m_strings[ index ] = string;
+        }
+        return string;
+    }
+
+    /**
+     * Encodes start and update options as flags.
+     *
+     * @param start  if bundle should be started; can be null
+     * @param update if bundle should be updated; can be null
+     *
+     * @return flags
+     */
+    static int flags( final Boolean start, final Boolean update )
+    {
+        int flags = 0;
+        if( start != null )
+        {
+            flags |= start ? START_SET | START : START_SET;
+        }
+        if( update != null )
+        {
+            flags |= update ? UPDATE_SET | UPDATE : UPDATE_SET;
+        }
+        return flags;
+    }
+
+    /**
+     * Reads a string prefixed by its length in bytes.
+     *
+     * @param buffer where to read from
+     *
+     * @return read string
+     */
+    private static String readString( final ByteBuffer buffer )
+    {
+        final byte[] bytes = new byte[readVarint( buffer )];
+        buffer.get( bytes );
+        return utf8( bytes );
+    }
+
+    /**
+     * Reads a variable length integer as written by {@link ProvisionPlanCompiler}.
+     *
+     * @param buffer where to read from
+     *
+     * @return read value
+     */
+    private static int readVarint( final ByteBuffer buffer )
+    {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do
+        {
+            b = buffer.get();
+            value |= ( b & 0x7F ) << shift;
+            shift += 7;
+        }
+        while( ( b & 0x80 ) != 0 );
+        return value;
+    }
+
+    /**
+     * Decodes UTF-8 bytes.
+     *
+     * @param bytes bytes to decode
+     *
+     * @return decoded string
+     */
+    private static String utf8( final byte[] bytes )
+    {
+        try
+        {
+            return new String( bytes, "UTF-8" );
+        }
+        catch( UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( "UTF-8 is not supported" );
+        }
+    }
+
+    /**
+     * A bundle of a provision plan.
+     */
+    public static class Bundle
+        implements ScannedBundle
+    {
+
+        /**
+         * Bundle location.
+         */
+        private final String m_location;
+        /**
+         * Start level. Can be null.
+         */
+        private final Integer m_startLevel;
+        /**
+         * If bundle should be started. Can be null.
+         */
+        private final Boolean m_shouldStart;
+        /**
+         * If bundle should be updated. Can be null.
+         */
+        private final Boolean m_shouldUpdate;
+        /**
+         * Hex encoded digest of bundle artifact. Can be null.
+         */
+        private final String m_digest;
+
+        /**
+         * Creates a new bundle.
+         *
+         * @param location     bundle location
+         * @param startLevel   start level; can be null
+         * @param shouldStart  if bundle should be started; can be null
+         * @param shouldUpdate if bundle should be updated; can be null
+         * @param digest       hex encoded digest of bundle artifact; can be null
+         */
+        Bundle( final String location,
+                final Integer startLevel,
+                final Boolean shouldStart,
+                final Boolean shouldUpdate,
+                final String digest )
+        {
+            m_location = location;
+            m_startLevel = startLevel;
+            m_shouldStart = shouldStart;
+            m_shouldUpdate = shouldUpdate;
+            m_digest = digest;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public String getLocation()
+        {
+            return m_location;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public Integer getStartLevel()
+        {
+            return m_startLevel;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public Boolean shouldStart()
+        {
+            return m_shouldStart;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public Boolean shouldUpdate()
+        {
+            return m_shouldUpdate;
+        }
+
+        /**
+         * Getter.
+         *
+         * @return hex encoded digest of bundle artifact or null if unknown
+         */
+        public String getDigest()
+        {
+            return m_digest;
+        }
+
+        @Override
+        public String toString()
+        {
+            return new StringBuilder()
+                .append( "{" )
+                .append( "location=" )
+                .append( getLocation() )
+                .append( ",startlevel=" )
+                .append( getStartLevel() )
+                .append( ",shouldStart=" )
+                .append( shouldStart() )
+                .append( ",shouldUpdate=" )
+                .append( shouldUpdate() )
+                .append( "}" )
+                .toString();
+        }
+
+    }
+
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.common;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.ops4j.lang.NullArgumentException;
+import org.ops4j.pax.scanner.ScannedBundle;
+
+/**
+ * Compiles scanned bundles into a binary {@link ProvisionPlan}. The plan layout is:
+ * <pre>
+ * magic "PXPL", version (1 byte)
+ * spec                                  string
+ * source count                          varint
+ *   source url, source digest           string, varint length + bytes
+ * property count                        varint
+ *   property name, property value       string, string
+ * string count                          varint
+ *   string                              varint length + UTF-8 bytes
+ * bundle count                          varint
+ *   location                            varint (string index)
+ *   digest                              varint (string index + 1, 0 if none)
+ *   start level                         varint (start level + 1, 0 if none)
+ *   flags                               byte
+ * </pre>
+ * Locations and digests are stored only once in the string table, so a plan is usually a fraction of the text
+ * formats it was compiled from.
+ *
+ * @since 1.2.0
+ */
+public class ProvisionPlanCompiler
+{
+
+    /**
+     * Digest algorithm used for sources.
+     */
+    static final String DIGEST_ALGORITHM = "SHA-256";
+
+    /**
+     * Provision spec the plan was compiled from. Can be null.
+     */
+    private String m_spec;
+    /**
+     * Source url to digest.
+     */
+    private final Map<String, byte[]> m_sources;
+    /**
+     * System property name to value.
+     */
+    private final Map<String, String> m_properties;
+    /**
+     * Bundles to compile.
+     */
+    private final List<ScannedBundle> m_bundles;
+    /**
+     * Digests of bundles. Can contain nulls.
+     */
+    private final List<String> m_digests;
+
+    /**
+     * Creates an empty compiler.
+     */
+    public ProvisionPlanCompiler()
+    {
+        m_sources = new LinkedHashMap<String, byte[]>();
+        m_properties = new LinkedHashMap<String, String>();
+        m_bundles = new ArrayList<ScannedBundle>();
+        m_digests = new ArrayList<String>();
+    }
+
+    /**
+     * Sets the provision spec the plan is compiled from.
+     *
+     * @param spec provision spec; can be null
+     *
+     * @return itself, for fluent api usage
+     */
+    public ProvisionPlanCompiler setSpec( final String spec )
+    {
+        m_spec = spec;
+        return this;
+    }
+
+    /**
+     * Adds a source the plan depends on. The plan is out of date when the content of a source changes.
+     *
+     * @param url    source url; mandatory
+     * @param digest SHA-256 digest of the source content; mandatory
+     *
+     * @return itself, for fluent api usage
+     */
+    public ProvisionPlanCompiler addSource( final String url, final byte[] digest )
+    {
+        NullArgumentException.validateNotNull( url, "Source url" );
+        NullArgumentException.validateNotNull( digest, "Source digest" );
+        m_sources.put( url, digest );
+        return this;
+    }
+
+    /**
+     * Adds a system property set while scanning the spec, to be set again when the plan is used.
+     *
+     * @param name  property name; mandatory
+     * @param value property value; mandatory
+     *
+     * @return itself, for fluent api usage
+     */
+    public ProvisionPlanCompiler addProperty( final String name, final String value )
+    {
+        NullArgumentException.validateNotNull( name, "Property name" );
+        NullArgumentException.validateNotNull( value, "Property value" );
+        m_properties.put( name, value );
+        return this;
+    }
+
+    /**
+     * Adds a bundle to the plan.
+     *
+     * @param bundle bundle; mandatory
+     * @param digest hex encoded digest of the bundle artifact; can be null
+     *
+     * @return itself, for fluent api usage
+     */
+    public ProvisionPlanCompiler addBundle( final ScannedBundle bundle, final String digest )
+    {
+        NullArgumentException.validateNotNull( bundle, "Bundle" );
+        NullArgumentException.validateNotNull( bundle.getLocation(), "Bundle location" );
+        m_bundles.add( bundle );
+        m_digests.add( digest );
+        return this;
+    }
+
+    /**
+     * Adds bundles to the plan.
+     *
+     * @param bundles bundles; mandatory
+     *
+     * @return itself, for fluent api usage
+     */
+    public ProvisionPlanCompiler addBundles( final List<ScannedBundle> bundles )
+    {
+        NullArgumentException.validateNotNull( bundles, "Bundles" );
+        for( ScannedBundle bundle : bundles )
+        {
+            addBundle( bundle, null );
+        }
+        return this;
+    }
+
+    /**
+     * Writes the compiled plan. The stream is not closed.
+     *
+     * @param outputStream where to write; mandatory
+     *
+     * @throws IOException - If writing fails
+     */
+    public void compile( final OutputStream outputStream )
+        throws IOException
+    {
+        NullArgumentException.validateNotNull( outputStream, "Output stream" );
+        final List<String> strings = new ArrayList<String>();
+        final Map<String, Integer> indexes = new HashMap<String, Integer>();
+        final int[] locations = new int[m_bundles.size()];
+        final int[] digests = new int[m_bundles.size()];
+        for( int i = 0; i < m_bundles.size(); i++ )
+        {
+            locations[ i ] = index( m_bundles.get( i ).getLocation(), strings, indexes );
+            digests[ i ] = m_digests.get( i ) == null ? 0 : index( m_digests.get( i ), strings, indexes ) + 1;
+        }
+
+        outputStream.write( ProvisionPlan.MAGIC );
+        outputStream.write( ProvisionPlan.VERSION );
+        writeString( outputStream, m_spec == null ? "" : m_spec );
+        writeVarint( outputStream, m_sources.size() );
+        for( Map.Entry<String, byte[]> source : m_sources.entrySet() )
+        {
+            writeString( outputStream, source.getKey() );
+            writeVarint( outputStream, source.getValue().length );
+            outputStream.write( source.getValue() );
+        }
+        writeVarint( outputStream, m_properties.size() );
+        for( Map.Entry<String, String> property : m_properties.entrySet() )
+        {
+            writeString( outputStream, property.getKey() );
+            writeString( outputStream, property.getValue() );
+        }
+        writeVarint( outputStream, strings.size() );
+        for( String string : strings )
+        {
+            writeString( outputStream, string );
+        }
+        writeVarint( outputStream, m_bundles.size() );
+        for( int i = 0; i < m_bundles.size(); i++ )
+        {
+            final ScannedBundle bundle = m_bundles.get( i );
+            writeVarint( outputStream, locations[ i ] );
+            writeVarint( outputStream, digests[ i ] );
+            writeVarint( outputStream, bundle.getStartLevel() == null ? 0 : bundle.getStartLevel() + 1 );
+            outputStream.write( ProvisionPlan.flags( bundle.shouldStart(), bundle.shouldUpdate() ) );
+        }
+        outputStream.flush();
+    }
+
+    /**
+     * Writes the compiled plan to a file. Content is first written to a temporary file that replaces the target file,
+     * so a reader never sees a partially written plan.
+     *
+     * @param file file to write to; mandatory
+     *
+     * @throws IOException - If the file cannot be written
+     */
+    public void compile( final File file )
+        throws IOException
+    {
+        NullArgumentException.validateNotNull( file, "File" );
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if( parent != null && !parent.exists() && !parent.mkdirs() )
+        {
+            throw new IOException( "Cannot create directory " + parent );
+        }
+        final File temp = new File( parent, file.getName() + ".tmp" );
+        final OutputStream outputStream = new BufferedOutputStream( new FileOutputStream( temp ) );
+        try
+        {
+            compile( outputStream );
+        }
+        finally
+        {
+            outputStream.close();
+        }
+        if( !temp.renameTo( file ) )
+        {
+            // renaming over an existing file fails on some platforms
+            file.delete();
+            if( !temp.renameTo( file ) )
+            {
+                temp.delete();
+                throw new IOException( "Cannot write provision plan " + file );
+            }
+        }
+    }
+
+    /**
+     * Computes the SHA-256 digest of a source content. The stream is not closed.
+     *
+     * @param inputStream source content; mandatory
+     *
+     * @return digest
+     *
+     * @throws IOException - If content cannot be read
+     */
+    public static byte[] digest( final InputStream inputStream )
+        throws IOException
+    {
+        NullArgumentException.validateNotNull( inputStream, "Input stream" );
+        final MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance( DIGEST_ALGORITHM );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( DIGEST_ALGORITHM + " is not available" );
+        }
+        final byte[] buffer = new byte[8192];
+        int read;
+        while( ( read = inputStream.read( buffer ) ) != -1 )
+        {
+            digest.update( buffer, 0, read );
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Returns the index of a string in the string table, adding it if not already there.
+     *
+     * @param string  string
+     * @param strings string table
+     * @param indexes string to index
+     *
+     * @return index of string
+     */
+    private static int index( final String string, final List<String> strings, final Map<String, Integer> indexes )
+    {
+        Integer index = indexes.get( string );
+        if( index == null )
+        {
+            index = strings.size();
+            strings.add( string );
+            indexes.put( string, index );
+        }
+        return index;
+    }
+
+    /**
+     * Writes an UTF-8 string prefixed by its length in bytes.
+     *
+     * @param outputStream where to write
+     * @param string       string to write
+     *
+     * @throws IOException - If writing fails
+     */
+    private static void writeString( final OutputStream outputStream, final String string )
+        throws IOException
+    {
+        final byte[] bytes = string.getBytes( "UTF-8" );
+        writeVarint( outputStream, bytes.length );
+        outputStream.write( bytes );
+    }
+
+    /**
+     * Writes a non negative integer as a variable length integer (7 bits per byte, least significant first).
+     *
+     * @param outputStream where to write
+     * @param value        value to write
+     *
+     * @throws IOException - If writing fails
+     */
+    static void writeVarint( final OutputStream outputStream, final int value )
+        throws IOException
+    {
+        int remaining = value;
+        while( ( remaining & ~0x7F ) != 0 )
+        {
+            outputStream.write( ( remaining & 0x7F ) | 0x80 );
+            remaining >>>= 7;
+        }
+        outputStream.write( remaining );
+    }
+
+}
@@ -19,8 +19,10 @@ package org.ops4j.pax.scanner.common;
 
 import java.util.Dictionary;
 import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
 import org.junit.Test;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceFactory;
 import org.osgi.service.cm.ManagedService;
 import org.ops4j.pax.scanner.Scanner;
 import org.ops4j.util.property.PropertyResolver;
@@ -40,6 +42,7 @@ public class AbstractScannerActivatorTest
         throws Exception
     {
         BundleContext context = createMock( BundleContext.class );
+        expect( context.getProperty( AbstractScannerActivator.PROPERTY_LAZY ) ).andReturn( null );
         expect( context.registerService(
             eq( Scanner.class.getName() ),
             isA( Scanner.class ),
@@ -57,6 +60,31 @@ public class AbstractScannerActivatorTest
         verify( context );
     }
 
+    @Test
+    public void startLazy()
+        throws Exception
+    {
+        BundleContext context = createMock( BundleContext.class );
+        expect( context.getProperty( AbstractScannerActivator.PROPERTY_LAZY ) ).andReturn( "true" );
+        expect( context.registerService(
+            eq( Scanner.class.getName() ),
+            isA( ServiceFactory.class ),
+            (Dictionary) notNull()
+        )
+        ).andReturn( null );
+        expect( context.registerService(
+            eq( ManagedService.class.getName() ),
+            notNull(),
+            (Dictionary) notNull()
+        )
+        ).andReturn( null );
+        replay( context );
+        final TestActivator activator = new TestActivator();
+        activator.start( context );
+        verify( context );
+        assertNull( "Scanner created before first use", activator.getScanner() );
+    }
+
     @Test( expected = IllegalArgumentException.class )
     public void stopWithNullBundleContext()
         throws Exception
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.ops4j.pax.scanner.ScannedBundle;
+import org.ops4j.pax.scanner.ScannedBundleBean;
+
+public class ProvisionPlanTest
+{
+
+    @Test
+    public void compileAndLoad()
+        throws IOException
+    {
+        final List<ScannedBundle> bundles = new ArrayList<ScannedBundle>();
+        bundles.add( new ScannedBundleBean( "file:bundle1.jar", 5, true, false ) );
+        bundles.add( new ScannedBundleBean( "file:bundle2.jar", null, null, null ) );
+        bundles.add( new ScannedBundleBean( "file:bundle1.jar", 300, false, true ) );
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new ProvisionPlanCompiler()
+            .setSpec( "scan-file:file:bundles.txt" )
+            .addProperty( "prop.2", "value.2" )
+            .addProperty( "prop.1", "value.1" )
+            .addBundles( bundles )
+            .compile( outputStream );
+
+        final ProvisionPlan plan = ProvisionPlan.load( ByteBuffer.wrap( outputStream.toByteArray() ) );
+        assertEquals( "Spec", "scan-file:file:bundles.txt", plan.getSpec() );
+        assertEquals( "Sources", 0, plan.getSources().size() );
+        assertEquals(
+            "Properties", Arrays.asList( "prop.2", "prop.1" ), new ArrayList<String>( plan.getProperties().keySet() )
+        );
+        assertEquals( "Property value", "value.1", plan.getProperties().get( "prop.1" ) );
+        assertEquals( "Size", 3, plan.size() );
+        final Iterator<ScannedBundle> iterator = plan.iterator();
+        for( ScannedBundle expected : bundles )
+        {
+            final ScannedBundle actual = iterator.next();
+            assertEquals( "Location", expected.getLocation(), actual.getLocation() );
+            assertEquals( "Start level", expected.getStartLevel(), actual.getStartLevel() );
+            assertEquals( "Start", expected.shouldStart(), actual.shouldStart() );
+            assertEquals( "Update", expected.shouldUpdate(), actual.shouldUpdate() );
+            assertNull( "Digest", ( (ProvisionPlan.Bundle) actual ).getDigest() );
+        }
+        assertFalse( "More bundles", iterator.hasNext() );
+    }
+
+    @Test
+    public void compileAndMap()
+        throws IOException
+    {
+        final File file = File.createTempFile( "provision", ".plan" );
+        try
+        {
+            new ProvisionPlanCompiler()
+                .addBundle( new ScannedBundleBean( "mvn:org.ops4j/bundle/1.0", 1, true, null ), "00ff" )
+                .compile( file );
+
+            assertTrue( "Is plan", ProvisionPlan.isPlan( file ) );
+            final ProvisionPlan plan = ProvisionPlan.load( file );
+            assertNull( "Spec", plan.getSpec() );
+            final ProvisionPlan.Bundle bundle = (ProvisionPlan.Bundle) plan.iterator().next();
+            assertEquals( "Location", "mvn:org.ops4j/bundle/1.0", bundle.getLocation() );
+            assertEquals( "Digest", "00ff", bundle.getDigest() );
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void upToDate()
+        throws IOException
+    {
+        final File source = File.createTempFile( "bundles", ".txt" );
+        try
+        {
+            write( source, "file:bundle1.jar" );
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            new ProvisionPlanCompiler()
+                .addSource(
+                    source.toURL().toExternalForm(),
+                    ProvisionPlanCompiler.digest( new ByteArrayInputStream( "file:bundle1.jar".getBytes( "UTF-8" ) ) )
+                )
+                .compile( outputStream );
+            final ProvisionPlan plan = ProvisionPlan.load( ByteBuffer.wrap( outputStream.toByteArray() ) );
+
+            assertTrue( "Up to date", plan.isUpToDate() );
+            write( source, "file:bundle2.jar" );
+            assertFalse( "Up to date after source changed", plan.isUpToDate() );
+        }
+        finally
+        {
+            source.delete();
+        }
+    }
+
+    @Test( expected = IOException.class )
+    public void loadNotAPlan()
+        throws IOException
+    {
+        ProvisionPlan.load( ByteBuffer.wrap( "file:bundle1.jar".getBytes( "UTF-8" ) ) );
+    }
+
+    @Test( expected = IOException.class )
+    public void loadTruncated()
+        throws IOException
+    {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new ProvisionPlanCompiler().setSpec( "scan-file:file:bundles.txt" ).compile( outputStream );
+        ProvisionPlan.load( ByteBuffer.wrap( outputStream.toByteArray(), 0, 10 ) );
+    }
+
+    @Test( expected = IOException.class )
+    public void loadTruncatedEntries()
+        throws IOException
+    {
+        final byte[] plan = compile( new ScannedBundleBean( "file:bundle1.jar", null, null, null ) );
+        ProvisionPlan.load( ByteBuffer.wrap( plan, 0, plan.length - 1 ) );
+    }
+
+    @Test( expected = IOException.class )
+    public void loadUnknownString()
+        throws IOException
+    {
+        final byte[] plan = compile( new ScannedBundleBean( "file:bundle1.jar", null, null, null ) );
+        // location index of the last entry (location, digest, start level, flags)
+        plan[ plan.length - 4 ] = 0x7F;
+        ProvisionPlan.load( ByteBuffer.wrap( plan ) );
+    }
+
+    private static byte[] compile( final ScannedBundle bundle )
+        throws IOException
+    {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new ProvisionPlanCompiler().addBundles( Arrays.asList( bundle ) ).compile( outputStream );
+        return outputStream.toByteArray();
+    }
+
+    private static void write( final File file, final String content )
+        throws IOException
+    {
+        final FileOutputStream outputStream = new FileOutputStream( file );
+        try
+        {
+            outputStream.write( content.getBytes( "UTF-8" ) );
+        }
+        finally
+        {
+            outputStream.close();
+        }
+    }
+
+}
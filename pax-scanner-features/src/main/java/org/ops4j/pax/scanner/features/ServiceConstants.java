@@ -34,6 +34,10 @@ public interface ServiceConstants {
      * Scanner scheme.
      */
     static final String SCHEMA = "scan-features";
+    /**
+     * Features repositories separator.
+     */
+    static final String REPOSITORY_SEPARATOR = ",";
     /**
      * Features separator.
      */
@@ -42,4 +46,9 @@ public interface ServiceConstants {
      * Feature name / version separator.
      */
     static final String VERSION_SEPARATOR = "/";
+    /**
+     * Refresh property. If true, all features repositories are removed from features service before every scan, so
+     * their descriptors are fetched and parsed again even if not changed.
+     */
+    static final String PROPERTY_REFRESH = PID + ".refresh";
 }
@@ -0,0 +1,532 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ * Copyright 2011 Andreas Pieber
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.features.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.karaf.features.FeaturesService;
+import org.ops4j.lang.NullArgumentException;
+import org.ops4j.net.URLUtils;
+import org.ops4j.pax.scanner.ScannerException;
+import org.ops4j.pax.scanner.ScannerMetrics;
+import org.ops4j.pax.scanner.features.ServiceConstants;
+
+/**
+ * Keeps track of the features repositories added to a features service, keyed by repository uri, together with a
+ * validator of the repository descriptor (file modification time and length, ETag or Last-Modified). A repository is
+ * (re)added, and so its descriptor parsed, only when it was not added before or its descriptor changed.
+ * Repositories are evicted (removed from features service) when their descriptor changed, all at once when
+ * {@link ServiceConstants#PROPERTY_REFRESH} is set or, when there are too many, least recently used first.
+ * Repositories are loaded in waves: all repositories of a wave are fetched concurrently (remote descriptors are
+ * mirrored to local files, so features service does not download them again) and the repositories they reference,
+ * found by a streaming pass over the descriptor, make up the next wave. Repositories are then added to features service one at a time, as features service is not
+ * thread safe.
+ *
+ * @since 1.2.0
+ */
+class FeaturesRepositoryCache {
+
+    /**
+     * Logger.
+     */
+    private static final Log LOGGER = LogFactory.getLog(FeaturesRepositoryCache.class);
+    /**
+     * Size of copy buffer.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Features service repositories are added to.
+     */
+    private final FeaturesService m_featuresService;
+    /**
+     * Maximum number of repositories kept in features service.
+     */
+    private final int m_maxEntries;
+    /**
+     * Added repositories, in access order (eldest first), keyed by uri.
+     */
+    private final Map<URI, Entry> m_entries;
+    /**
+     * Pool of fetching threads.
+     */
+    private final ThreadPoolExecutor m_executor;
+    /**
+     * Directory where remote descriptors are mirrored. Lazily created, by whichever fetch needs it first.
+     */
+    private final AtomicReference<File> m_mirrorDirectory;
+    /**
+     * Lock serializing loads. Loads wait on fetches while holding it, so it is not the cache monitor, that fetches
+     * and other callers only hold briefly.
+     */
+    private final Object m_loadLock;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param featuresService features service repositories are added to; mandatory
+     * @param maxEntries maximum number of repositories kept in features service
+     * @param threads number of fetching threads
+     */
+    FeaturesRepositoryCache(final FeaturesService featuresService, final int maxEntries, final int threads) {
+        NullArgumentException.validateNotNull(featuresService, "Features service");
+        m_featuresService = featuresService;
+        m_maxEntries = maxEntries;
+        m_entries = new LinkedHashMap<URI, Entry>(16, 0.75f, true);
+        m_mirrorDirectory = new AtomicReference<File>();
+        m_loadLock = new Object();
+        m_executor = new ThreadPoolExecutor(
+            threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "Pax Scanner features repository fetcher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }
+            );
+        m_executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Makes sure that the repositories, and the repositories they reference, are added to features service and up to
+     * date. A repository is (re)added only if it was not added before, its descriptor changed or it cannot be
+     * revalidated. Loads are serialized, but the cache is not locked while repositories are fetched.
+     *
+     * @param uris repository uris; mandatory
+     * @param certificateCheck true if certificates should be checked on https connections
+     *
+     * @throws ScannerException - If a repository cannot be fetched or added
+     */
+    void load(final List<URI> uris, final boolean certificateCheck)
+        throws ScannerException {
+        NullArgumentException.validateNotNull(uris, "Repository URIs");
+        synchronized (m_loadLock) {
+            final Set<URI> visited = new LinkedHashSet<URI>();
+            final List<Fetched> fetched = new ArrayList<Fetched>();
+            List<URI> wave = new ArrayList<URI>(uris);
+            while (!wave.isEmpty()) {
+                final List<Future<Fetched>> futures = new ArrayList<Future<Fetched>>();
+                for (URI uri : wave) {
+                    if (visited.add(uri)) {
+                        futures.add(m_executor.submit(new Fetch(uri, getEntry(uri), certificateCheck)));
+                    }
+                }
+                wave = new ArrayList<URI>();
+                for (Future<Fetched> future : futures) {
+                    final Fetched repository = get(future);
+                    fetched.add(repository);
+                    wave.addAll(repository.m_entry.m_references);
+                }
+            }
+            add(fetched, visited);
+        }
+    }
+
+    /**
+     * Adds the fetched repositories that changed to features service and evicts the eldest repositories if there are
+     * too many.
+     *
+     * @param fetched fetched repositories
+     * @param visited uris of the fetched repositories, that are not evicted
+     *
+     * @throws ScannerException - If a repository cannot be added
+     */
+    private synchronized void add(final List<Fetched> fetched, final Set<URI> visited)
+        throws ScannerException {
+        for (Fetched repository : fetched) {
+            if (repository.m_changed) {
+                if (m_entries.containsKey(repository.m_uri)) {
+                    LOGGER.debug("Features repository [" + repository.m_uri + "] changed");
+                    evict(repository.m_uri);
+                }
+                try {
+                    m_featuresService.addRepository(repository.m_entry.m_location);
+                } catch (Exception e) {
+                    repository.m_entry.deleteMirror();
+                    throw new ScannerException("Repository URL cannot be used [" + repository.m_uri + "]", e);
+                }
+            }
+            m_entries.put(repository.m_uri, repository.m_entry);
+        }
+        final List<URI> eldest = new ArrayList<URI>(m_entries.keySet());
+        for (int i = 0; i < eldest.size() && m_entries.size() > m_maxEntries; i++) {
+            if (!visited.contains(eldest.get(i))) {
+                evict(eldest.get(i));
+            }
+        }
+    }
+
+    /**
+     * Returns a cached repository, marking it as recently used.
+     *
+     * @param uri repository uri
+     *
+     * @return cached repository or null if not cached
+     */
+    private synchronized Entry getEntry(final URI uri) {
+        return m_entries.get(uri);
+    }
+
+    /**
+     * Removes a repository from features service.
+     *
+     * @param uri repository uri
+     */
+    synchronized void evict(final URI uri) {
+        final Entry entry = m_entries.remove(uri);
+        if (entry != null) {
+            try {
+                m_featuresService.removeRepository(entry.m_location);
+            } catch (Exception e) {
+                LOGGER.warn("Cannot remove features repository [" + uri + "]: " + e.getMessage());
+            }
+            entry.deleteMirror();
+        }
+    }
+
+    /**
+     * Removes all repositories from features service.
+     */
+    synchronized void clear() {
+        for (URI uri : new ArrayList<URI>(m_entries.keySet())) {
+            evict(uri);
+        }
+    }
+
+    /**
+     * Returns the uris of the cached repositories, eldest first.
+     *
+     * @return repository uris
+     */
+    synchronized List<URI> getURIs() {
+        return new ArrayList<URI>(m_entries.keySet());
+    }
+
+    /**
+     * Waits for a fetch to finish.
+     *
+     * @param future fetch result
+     *
+     * @return fetched repository
+     *
+     * @throws ScannerException - If fetch failed or was interrupted
+     */
+    private static Fetched get(final Future<Fetched> future)
+        throws ScannerException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ScannerException("Interrupted while fetching features repositories", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ScannerException) {
+                throw (ScannerException) e.getCause();
+            }
+            throw new ScannerException("Cannot fetch features repository", e.getCause());
+        }
+    }
+
+    /**
+     * Returns the directory where remote descriptors are mirrored, creating it if necessary. Called by fetches, so it
+     * does not take the cache monitor.
+     *
+     * @return mirror directory
+     *
+     * @throws IOException - If directory cannot be created
+     */
+    private File getMirrorDirectory()
+        throws IOException {
+        final File existing = m_mirrorDirectory.get();
+        if (existing != null) {
+            return existing;
+        }
+        final File directory = File.createTempFile("pax-scanner-features", "");
+        if (!directory.delete() || !directory.mkdirs()) {
+            throw new IOException("Cannot create directory [" + directory + "]");
+        }
+        if (!m_mirrorDirectory.compareAndSet(null, directory)) {
+            // created meanwhile by another fetch
+            directory.delete();
+            return m_mirrorDirectory.get();
+        }
+        directory.deleteOnExit();
+        return directory;
+    }
+
+    /**
+     * Fetches one repository: revalidates the cached descriptor and, if changed, mirrors the descriptor and finds
+     * the referenced repositories.
+     */
+    private class Fetch implements Callable<Fetched> {
+
+        /**
+         * Repository uri.
+         */
+        private final URI m_uri;
+        /**
+         * Cached repository. Null if not cached.
+         */
+        private final Entry m_cached;
+        /**
+         * True if certificates should be checked on https connections.
+         */
+        private final boolean m_certificateCheck;
+
+        /**
+         * Creates a new fetch.
+         *
+         * @param uri repository uri
+         * @param cached cached repository; can be null
+         * @param certificateCheck true if certificates should be checked on https connections
+         */
+        Fetch(final URI uri, final Entry cached, final boolean certificateCheck) {
+            m_uri = uri;
+            m_cached = cached;
+            m_certificateCheck = certificateCheck;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public Fetched call()
+            throws Exception {
+            final String cachedValidator = m_cached == null ? null : m_cached.m_validator;
+            if ("file".equals(m_uri.getScheme())) {
+                final File file = new File(m_uri);
+                final String validator = file.lastModified() + "/" + file.length();
+                if (validator.equals(cachedValidator)) {
+                    LOGGER.trace("Features repository [" + m_uri + "] not changed");
+                    ScannerMetrics.recordCacheHit(ServiceConstants.SCHEMA);
+                    return new Fetched(m_uri, m_cached, false);
+                }
+                ScannerMetrics.recordCacheMiss(ServiceConstants.SCHEMA);
+                return new Fetched(m_uri, new Entry(validator, m_uri, null, references(m_uri)), true);
+            }
+            final URLConnection connection = new URL(m_uri.toString()).openConnection();
+            if (!m_certificateCheck) {
+                URLUtils.prepareForSSL(connection);
+            }
+            URLUtils.prepareForAuthentication(connection);
+            if (cachedValidator != null) {
+                if (cachedValidator.startsWith("\"") || cachedValidator.startsWith("W/")) {
+                    connection.setRequestProperty("If-None-Match", cachedValidator);
+                } else {
+                    connection.setIfModifiedSince(Long.parseLong(cachedValidator));
+                }
+            }
+            if (m_cached != null
+                && connection instanceof HttpURLConnection
+                && ((HttpURLConnection) connection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                LOGGER.trace("Features repository [" + m_uri + "] not modified");
+                ScannerMetrics.recordCacheHit(ServiceConstants.SCHEMA);
+                return new Fetched(m_uri, m_cached, false);
+            }
+            String validator = null;
+            if (connection instanceof HttpURLConnection) {
+                validator = connection.getHeaderField("ETag");
+                if (validator == null && connection.getLastModified() > 0) {
+                    validator = String.valueOf(connection.getLastModified());
+                }
+            }
+            final File mirror = File.createTempFile("repository", ".xml", getMirrorDirectory());
+            mirror.deleteOnExit();
+            ScannerMetrics.recordCacheMiss(ServiceConstants.SCHEMA);
+            copy(connection.getInputStream(), mirror);
+            ScannerMetrics.recordBytesFetched(ServiceConstants.SCHEMA, mirror.length());
+            LOGGER.debug("Fetched features repository [" + m_uri + "]");
+            return new Fetched(m_uri, new Entry(validator, mirror.toURI(), mirror, references(mirror.toURI())), true);
+        }
+
+        /**
+         * Finds the referenced repositories (the top level repository elements) in a descriptor. Only a streaming pass
+         * is made over the descriptor, as it is fully parsed only once, by features service.
+         *
+         * @param location descriptor location
+         *
+         * @return referenced repositories uris, resolved against repository uri
+         *
+         * @throws Exception - If descriptor cannot be parsed
+         */
+        private List<URI> references(final URI location)
+            throws Exception {
+            final List<URI> resolved = new ArrayList<URI>();
+            final InputStream inputStream = location.toURL().openStream();
+            try {
+                final XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(inputStream);
+                try {
+                    int depth = 0;
+                    while (reader.hasNext()) {
+                        final int event = reader.next();
+                        if (event == XMLStreamConstants.START_ELEMENT) {
+                            depth++;
+                            if (depth == 2 && "repository".equals(reader.getLocalName())) {
+                                resolved.add(m_uri.resolve(reader.getElementText().trim()));
+                                depth--;
+                            }
+                        } else if (event == XMLStreamConstants.END_ELEMENT) {
+                            depth--;
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            } finally {
+                inputStream.close();
+            }
+            return resolved;
+        }
+
+    }
+
+    /**
+     * Copies and closes an input stream to a file.
+     *
+     * @param inputStream stream to copy
+     * @param file target file
+     *
+     * @throws IOException - If copy fails
+     */
+    private static void copy(final InputStream inputStream, final File file)
+        throws IOException {
+        try {
+            final OutputStream outputStream = new FileOutputStream(file);
+            try {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, read);
+                }
+            } finally {
+                outputStream.close();
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Result of fetching a repository.
+     */
+    private static class Fetched {
+
+        /**
+         * Repository uri.
+         */
+        private final URI m_uri;
+        /**
+         * Repository entry.
+         */
+        private final Entry m_entry;
+        /**
+         * True if repository was not cached or its descriptor changed.
+         */
+        private final boolean m_changed;
+
+        /**
+         * Creates a new fetch result.
+         *
+         * @param uri repository uri
+         * @param entry repository entry
+         * @param changed true if repository was not cached or its descriptor changed
+         */
+        Fetched(final URI uri, final Entry entry, final boolean changed) {
+            m_uri = uri;
+            m_entry = entry;
+            m_changed = changed;
+        }
+
+    }
+
+    /**
+     * A repository added to features service.
+     */
+    private static class Entry {
+
+        /**
+         * Validator. Null if repository cannot be revalidated.
+         */
+        private final String m_validator;
+        /**
+         * Uri the repository was added to features service with (repository uri or mirror uri).
+         */
+        private final URI m_location;
+        /**
+         * Local mirror of descriptor. Null if descriptor is a local file.
+         */
+        private final File m_mirror;
+        /**
+         * Uris of referenced repositories.
+         */
+        private final List<URI> m_references;
+
+        /**
+         * Creates a new entry.
+         *
+         * @param validator validator; can be null
+         * @param location uri the repository is added to features service with
+         * @param mirror local mirror of descriptor; can be null
+         * @param references uris of referenced repositories
+         */
+        Entry(final String validator, final URI location, final File mirror, final List<URI> references) {
+            m_validator = validator;
+            m_location = location;
+            m_mirror = mirror;
+            m_references = references;
+        }
+
+        /**
+         * Deletes the local mirror of descriptor, if any.
+         */
+        void deleteMirror() {
+            if (m_mirror != null && !m_mirror.delete()) {
+                LOGGER.debug("Cannot delete [" + m_mirror + "]");
+            }
+        }
+
+    }
+
+}
@@ -18,8 +18,14 @@
  */
 package org.ops4j.pax.scanner.features.internal;
 
+import java.net.URI;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -49,6 +55,14 @@ public class FeaturesScanner implements Scanner {
      * Logger.
      */
     private static final Log LOGGER = LogFactory.getLog(FeaturesScanner.class);
+    /**
+     * Maximum number of features repositories kept in features service.
+     */
+    private static final int MAX_REPOSITORIES = 32;
+    /**
+     * Number of threads used to fetch features repositories.
+     */
+    private static final int FETCH_THREADS = 4;
     /**
      * PropertyResolver used to resolve properties.
      */
@@ -57,6 +71,10 @@ public class FeaturesScanner implements Scanner {
      * Since all feature files in a system are scanned a singleton feature service should be used.
      */
     private final FeaturesService m_featuresService;
+    /**
+     * Repositories added to features service, so they are parsed again only when changed.
+     */
+    private final FeaturesRepositoryCache m_repositoryCache;
 
     /**
      * Creates a new file scanner.
@@ -67,6 +85,7 @@ public class FeaturesScanner implements Scanner {
         NullArgumentException.validateNotNull(propertyResolver, "PropertyResolver");
         m_propertyResolver = propertyResolver;
         m_featuresService = new FeatureServiceWrapper();
+        m_repositoryCache = new FeaturesRepositoryCache(m_featuresService, MAX_REPOSITORIES, FETCH_THREADS);
     }
 
     /**
@@ -84,70 +103,115 @@ public class FeaturesScanner implements Scanner {
         final Boolean defaultStart = getDefaultStart(provisionSpec, config);
         final Boolean defaultUpdate = getDefaultUpdate(provisionSpec, config);
 
-        try {
-            m_featuresService.addRepository(provisionSpec.getPathAsUrl().toURI());
-        } catch (Exception e) {
-            throw new ScannerException("Repository URL cannot be used", e);
+        if (Boolean.valueOf(m_propertyResolver.get(ServiceConstants.PROPERTY_REFRESH))) {
+            LOGGER.debug("Refreshing features repositories");
+            m_repositoryCache.clear();
         }
-        final List<ScannedBundle> scannedBundles = new ArrayList<ScannedBundle>();
+        m_repositoryCache.load(getRepositoryURIs(provisionSpec), config.getCertificateCheck());
+        // bundle locations of all requested features, in installation order and without duplicates
+        final Set<String> locations = new LinkedHashSet<String>();
+        final Map<String, Set<String>> expanded = new HashMap<String, Set<String>>();
         for (FeaturesFilter featuresFilter : FeaturesFilter.fromProvisionSpec(provisionSpec)) {
-            scannedBundles.addAll(
+            locations.addAll(
                 features(
                     m_featuresService,
                     featuresFilter.getName(), featuresFilter.getVersion(),
-                    defaultStartLevel, defaultStart, defaultUpdate
+                    expanded, new LinkedHashSet<String>()
                 )
                 );
         }
+        final List<ScannedBundle> scannedBundles = new ArrayList<ScannedBundle>();
+        for (String location : locations) {
+            final ScannedBundleBean scannedBundle = new ScannedBundleBean(
+                location, defaultStartLevel, defaultStart, defaultUpdate
+                );
+            scannedBundles.add(scannedBundle);
+            LOGGER.debug("Installing bundle [" + scannedBundle + "]");
+        }
         return scannedBundles;
     }
 
     /**
-     * Determine the scanned bundle sbased on feature name and version
+     * Determine the bundle locations of a feature and its dependencies, dependencies first. Each feature is expanded
+     * only once per scan, so features shared by more than one dependency path are not expanded again.
      *
      * @param featuresService feature service (wrapper)
      * @param featureName feature name
      * @param featureVersion feature version
-     * @param startLevel start level to be used
-     * @param shouldStart if the scanned bundle shold be started
-     * @param shouldUpdate if the scanned bundle should be updated
+     * @param expanded bundle locations of features already expanded in this scan, by feature id
+     * @param path ids of the features being expanded, used to detect cycles
+     *
+     * @return bundle locations, without duplicates
+     *
+     * @throws ScannerException - If feature cannot be loaded or there is a cycle between features
      */
-    private List<ScannedBundle> features(final FeaturesService featuresService,
-                                          final String featureName,
-                                          final String featureVersion,
-                                          final Integer startLevel,
-                                          final Boolean shouldStart,
-                                          final Boolean shouldUpdate)
+    private Set<String> features(final FeaturesService featuresService,
+                                 final String featureName,
+                                 final String featureVersion,
+                                 final Map<String, Set<String>> expanded,
+                                 final Set<String> path)
         throws ScannerException {
-        final List<ScannedBundle> scannedBundles = new ArrayList<ScannedBundle>();
+        final String requested = featureName + "/" + featureVersion;
+        Set<String> locations = expanded.get(requested);
+        if (locations != null) {
+            return locations;
+        }
         final Feature feature;
         try {
             feature = featuresService.getFeature(featureName, featureVersion);
-            if (feature == null) {
-                throw new ScannerException(
-                    "No feature named '" + featureName + "' with version '" + featureVersion + "' available");
+        } catch (Exception e) {
+            throw new ScannerException(
+                "Cannot load the feature named '" + featureName + "' with version '" + featureVersion + "'", e);
+        }
+        if (feature == null) {
+            throw new ScannerException(
+                "No feature named '" + featureName + "' with version '" + featureVersion + "' available");
+        }
+        final String id = feature.getId();
+        locations = expanded.get(id);
+        if (locations == null) {
+            if (!path.add(id)) {
+                throw new ScannerException("Features dependency cycle " + path + " -> " + id);
             }
+            locations = new LinkedHashSet<String>();
             for (Feature dependency : feature.getDependencies()) {
-                scannedBundles.addAll(
-                    features(
-                        featuresService,
-                        dependency.getName(), dependency.getVersion(),
-                        startLevel, shouldStart, shouldUpdate
-                    )
+                locations.addAll(
+                    features(featuresService, dependency.getName(), dependency.getVersion(), expanded, path)
                     );
             }
             for (BundleInfo bundleInfo : feature.getBundles()) {
-                final ScannedBundleBean scannedBundle = new ScannedBundleBean(
-                    bundleInfo.getLocation(), startLevel, shouldStart, shouldUpdate
-                    );
-                scannedBundles.add(scannedBundle);
-                LOGGER.debug("Installing bundle [" + scannedBundles + "]");
+                locations.add(bundleInfo.getLocation());
+            }
+            path.remove(id);
+            expanded.put(id, locations);
+        }
+        expanded.put(requested, locations);
+        return locations;
+    }
+
+    /**
+     * Returns the uris of the features repositories listed in provision spec path, separated by
+     * {@link ServiceConstants#REPOSITORY_SEPARATOR}.
+     *
+     * @param provisionSpec provision spec
+     *
+     * @return repository uris
+     *
+     * @throws ScannerException - If a repository url is not valid
+     */
+    private List<URI> getRepositoryURIs(final ProvisionSpec provisionSpec)
+        throws ScannerException {
+        final List<URI> uris = new ArrayList<URI>();
+        for (String path : provisionSpec.getPath().split(ServiceConstants.REPOSITORY_SEPARATOR)) {
+            if (path.trim().length() > 0) {
+                try {
+                    uris.add(new URL(path.trim()).toURI());
+                } catch (Exception e) {
+                    throw new ScannerException("Repository URL cannot be used [" + path + "]", e);
+                }
             }
-            return scannedBundles;
-        } catch (Exception e) {
-            throw new ScannerException(
-                "Cannot load the feature named '" + featureName + "' with version '" + featureVersion + "'", e);
         }
+        return uris;
     }
 
     /**
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ * Copyright 2011 Andreas Pieber
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.features.internal;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.apache.karaf.features.FeaturesService;
+
+public class FeaturesRepositoryCacheTest {
+
+    private File m_directory;
+    private RecordingFeaturesService m_featuresService;
+
+    @Before
+    public void setUp()
+        throws IOException {
+        m_directory = File.createTempFile("features", "");
+        m_directory.delete();
+        m_directory.mkdirs();
+        m_featuresService = new RecordingFeaturesService();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : m_directory.listFiles()) {
+            file.delete();
+        }
+        m_directory.delete();
+    }
+
+    @Test
+    public void loadUnchanged()
+        throws Exception {
+        final URI uri = write("a.xml");
+        final FeaturesRepositoryCache cache = new FeaturesRepositoryCache(m_featuresService.m_proxy, 10, 2);
+        cache.load(Collections.singletonList(uri), false);
+        cache.load(Collections.singletonList(uri), false);
+        assertEquals("Added", Arrays.asList("add " + uri), m_featuresService.m_events);
+        assertEquals("Cached", Arrays.asList(uri), cache.getURIs());
+    }
+
+    @Test
+    public void loadChanged()
+        throws Exception {
+        final URI uri = write("a.xml");
+        final FeaturesRepositoryCache cache = new FeaturesRepositoryCache(m_featuresService.m_proxy, 10, 2);
+        cache.load(Collections.singletonList(uri), false);
+        new File(uri).setLastModified(new File(uri).lastModified() - 10000);
+        cache.load(Collections.singletonList(uri), false);
+        assertEquals(
+            "Added again",
+            Arrays.asList("add " + uri, "remove " + uri, "add " + uri),
+            m_featuresService.m_events
+            );
+    }
+
+    @Test
+    public void evictEldest()
+        throws Exception {
+        final URI first = write("a.xml");
+        final URI second = write("b.xml");
+        final FeaturesRepositoryCache cache = new FeaturesRepositoryCache(m_featuresService.m_proxy, 1, 2);
+        cache.load(Collections.singletonList(first), false);
+        cache.load(Collections.singletonList(second), false);
+        assertEquals(
+            "Eldest removed",
+            Arrays.asList("add " + first, "add " + second, "remove " + first),
+            m_featuresService.m_events
+            );
+        assertEquals("Cached", Arrays.asList(second), cache.getURIs());
+    }
+
+    @Test
+    public void clear()
+        throws Exception {
+        final URI first = write("a.xml");
+        final URI second = write("b.xml");
+        final FeaturesRepositoryCache cache = new FeaturesRepositoryCache(m_featuresService.m_proxy, 10, 2);
+        cache.load(Arrays.asList(first, second), false);
+        m_featuresService.m_events.clear();
+        cache.clear();
+        assertEquals("Removed", Arrays.asList("remove " + first, "remove " + second), m_featuresService.m_events);
+        assertTrue("Nothing cached", cache.getURIs().isEmpty());
+
+        m_featuresService.m_events.clear();
+        cache.load(Collections.singletonList(first), false);
+        assertEquals("Added again", Arrays.asList("add " + first), m_featuresService.m_events);
+    }
+
+    @Test
+    public void loadReferences()
+        throws Exception {
+        final URI third = write("c.xml");
+        final URI second = write("b.xml", "c.xml");
+        final URI first = write("a.xml", "b.xml", third.toString());
+        final FeaturesRepositoryCache cache = new FeaturesRepositoryCache(m_featuresService.m_proxy, 10, 2);
+        cache.load(Collections.singletonList(first), false);
+        assertEquals(
+            "Referenced repositories added",
+            Arrays.asList("add " + first, "add " + second, "add " + third),
+            m_featuresService.m_events
+            );
+
+        m_featuresService.m_events.clear();
+        cache.load(Collections.singletonList(first), false);
+        assertTrue("Nothing added again", m_featuresService.m_events.isEmpty());
+    }
+
+    @Test(timeout = 10000)
+    public void loadHttp()
+        throws Exception {
+        final byte[] content = "<features><feature name=\"a\" version=\"1.0\"/></features>".getBytes("UTF-8");
+        final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+        final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(final HttpExchange exchange)
+                throws IOException {
+                final String etag = "\"1\"";
+                requests.add(exchange.getRequestHeaders().getFirst("If-None-Match"));
+                exchange.getResponseHeaders().add("ETag", etag);
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                } else {
+                    exchange.sendResponseHeaders(200, content.length);
+                    exchange.getResponseBody().write(content);
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        try {
+            final URI uri = new URI("http://127.0.0.1:" + server.getAddress().getPort() + "/features.xml");
+            final FeaturesRepositoryCache cache = new FeaturesRepositoryCache(m_featuresService.m_proxy, 10, 2);
+            cache.load(Collections.singletonList(uri), false);
+            assertEquals("Added", 1, m_featuresService.m_events.size());
+            assertTrue("Mirror added", m_featuresService.m_events.get(0).startsWith("add file:"));
+            assertEquals("Cached", Arrays.asList(uri), cache.getURIs());
+
+            m_featuresService.m_events.clear();
+            cache.load(Collections.singletonList(uri), false);
+            assertTrue("Not modified", m_featuresService.m_events.isEmpty());
+            assertEquals("Revalidated", Arrays.asList(null, "\"1\""), requests);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private URI write(final String name, final String... repositories)
+        throws IOException {
+        final File file = new File(m_directory, name);
+        final Writer writer = new FileWriter(file);
+        try {
+            writer.write("<features>");
+            for (String repository : repositories) {
+                writer.write("<repository>" + repository + "</repository>");
+            }
+            writer.write("<feature name=\"" + name + "\" version=\"1.0\"/>");
+            writer.write("</features>");
+        } finally {
+            writer.close();
+        }
+        return file.toURI();
+    }
+
+    private static class RecordingFeaturesService implements InvocationHandler {
+
+        private final List<String> m_events = new ArrayList<String>();
+        private final FeaturesService m_proxy = (FeaturesService) Proxy.newProxyInstance(
+            FeaturesService.class.getClassLoader(), new Class[]{ FeaturesService.class }, this
+            );
+
+        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+            if ("addRepository".equals(method.getName())) {
+                m_events.add("add " + args[0]);
+                return null;
+            }
+            if ("removeRepository".equals(method.getName())) {
+                m_events.add("remove " + args[0]);
+                return null;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        }
+
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.lock;
+
+/**
+ * An enumeration of constants related to lock scanner.
+ *
+ * @since 1.2.0
+ */
+public interface ServiceConstants
+{
+
+    /**
+     * Service PID used for configuration.
+     */
+    static final String PID = "org.ops4j.pax.scanner.lock";
+    /**
+     * Scanner scheme.
+     */
+    static final String SCHEMA = "scan-lock";
+
+    /**
+     * Provision spec resolved when lock file does not exist or is stale property name.
+     */
+    static final String PROPERTY_SOURCE = ".source";
+
+    /**
+     * Force resolving the source spec and rewriting the lock file property name.
+     */
+    static final String PROPERTY_REFRESH = ".refresh";
+
+    /**
+     * Record digest of locked artifacts and verify them when installed property name.
+     */
+    static final String PROPERTY_VERIFY = ".verify";
+
+}
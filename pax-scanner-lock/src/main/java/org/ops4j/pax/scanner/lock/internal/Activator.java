@@ -0,0 +1,126 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.lock.internal;
+
+import java.util.List;
+import org.osgi.framework.BundleContext;
+import org.ops4j.pax.scanner.InstallableBundles;
+import org.ops4j.pax.scanner.MalformedSpecificationException;
+import org.ops4j.pax.scanner.ProvisionService;
+import org.ops4j.pax.scanner.ScannedBundle;
+import org.ops4j.pax.scanner.ScannerException;
+import org.ops4j.pax.scanner.common.AbstractScannerActivator;
+import org.ops4j.pax.scanner.lock.ServiceConstants;
+import org.ops4j.pax.swissbox.property.BundleContextPropertyResolver;
+import org.ops4j.util.property.PropertyResolver;
+import org.osgi.util.tracker.ServiceTracker;
+
+/**
+ * Bundle activator for lock scanner.
+ *
+ * @since 1.2.0
+ */
+public final class Activator
+    extends AbstractScannerActivator<LockScanner>
+{
+
+    /**
+     * Provision service tracker.
+     */
+    private ServiceTracker m_provisionServiceTracker;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected LockScanner createScanner( final BundleContext bundleContext )
+    {
+        m_provisionServiceTracker = new ServiceTracker( bundleContext, ProvisionService.class.getName(), null );
+        m_provisionServiceTracker.open();
+        return new LockScanner(
+            new BundleContextPropertyResolver( bundleContext ),
+            new ProvisionService()
+            {
+                public List<ScannedBundle> scan( String spec )
+                    throws MalformedSpecificationException, ScannerException
+                {
+                    return getProvisionService().scan( spec );
+                }
+
+                public InstallableBundles wrap( List<ScannedBundle> scannedBundles )
+                {
+                    return getProvisionService().wrap( scannedBundles );
+                }
+
+                private ProvisionService getProvisionService()
+                {
+                    final Object service = m_provisionServiceTracker.getService();
+                    if( service == null )
+                    {
+                        throw new RuntimeException( "Provision service not available" );
+                    }
+                    return (ProvisionService) service;
+                }
+
+            }
+        );
+    }
+
+    /**
+     * Closes provision service tracker.
+     * {@inheritDoc}
+     */
+    @Override
+    public void stop( final BundleContext bundleContext )
+    {
+        if( m_provisionServiceTracker != null )
+        {
+            m_provisionServiceTracker.close();
+            m_provisionServiceTracker = null;
+        }
+        super.stop( bundleContext );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected String getPID()
+    {
+        return ServiceConstants.PID;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected String getSchema()
+    {
+        return ServiceConstants.SCHEMA;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setResolver( final PropertyResolver propertyResolver )
+    {
+        getScanner().setResolver( propertyResolver );
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,457 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.lock.internal;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.ops4j.lang.NullArgumentException;
+import org.ops4j.net.URLUtils;
+import org.ops4j.pax.scanner.ScannedBundle;
+import org.ops4j.pax.scanner.common.ProvisionPlan;
+import org.ops4j.pax.scanner.common.ProvisionPlanCompiler;
+
+/**
+ * A lock file, holding the fully resolved result of scanning a provision spec. The file is plain text, UTF-8 encoded:
+ * <pre>
+ * # pax-scanner lock file, version 1
+ * source=&lt;provision spec&gt;
+ * -D&lt;property name&gt;=&lt;property value&gt;
+ * ...
+ * &lt;digest&gt;&lt;TAB&gt;&lt;start level&gt;&lt;TAB&gt;&lt;start&gt;&lt;TAB&gt;&lt;update&gt;&lt;TAB&gt;&lt;location&gt;
+ * ...
+ * </pre>
+ * Unknown values are written as "-". Lines starting with # are comments. Property lines hold the system properties set
+ * while scanning the source spec (as by -D lines of file and composite specs), with backslashes, new lines and
+ * carriage returns escaped as \\, \n and \r.<br/>
+ * The same content can be written as a compiled binary {@link ProvisionPlan}.
+ *
+ * @since 1.2.0
+ */
+class LockFile
+{
+
+    /**
+     * Header written as first line.
+     */
+    static final String HEADER = "# pax-scanner lock file, version 1";
+    /**
+     * Prefix of the line holding the source provision spec.
+     */
+    private static final String SOURCE_PREFIX = "source=";
+    /**
+     * Prefix of the lines holding system properties.
+     */
+    private static final String PROPERTY_PREFIX = "-D";
+    /**
+     * Marker of an unknown value.
+     */
+    private static final String NONE = "-";
+    /**
+     * Separator between values of a bundle line.
+     */
+    private static final char SEPARATOR = '\t';
+    /**
+     * Digest algorithm.
+     */
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    /**
+     * Hex digits used to encode digests.
+     */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Provision spec this lock file was resolved from. Can be null.
+     */
+    private final String m_source;
+    /**
+     * System property name to value, in the order they were set.
+     */
+    private final Map<String, String> m_properties;
+    /**
+     * Locked bundles, in provisioning order.
+     */
+    private final List<LockedBundle> m_bundles;
+
+    /**
+     * Creates a new lock file.
+     *
+     * @param source     provision spec the bundles were resolved from; can be null
+     * @param properties system properties set while resolving the bundles, name to value; mandatory
+     * @param bundles    locked bundles; mandatory
+     */
+    LockFile( final String source, final Map<String, String> properties, final List<LockedBundle> bundles )
+    {
+        NullArgumentException.validateNotNull( properties, "Properties" );
+        NullArgumentException.validateNotNull( bundles, "Bundles" );
+        m_source = source;
+        m_properties = Collections.unmodifiableMap( new LinkedHashMap<String, String>( properties ) );
+        m_bundles = Collections.unmodifiableList( new ArrayList<LockedBundle>( bundles ) );
+    }
+
+    /**
+     * Getter.
+     *
+     * @return provision spec the bundles were resolved from or null if unknown
+     */
+    String getSource()
+    {
+        return m_source;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return name to value of system properties set while resolving the bundles, in the order they were set
+     */
+    Map<String, String> getProperties()
+    {
+        return m_properties;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return locked bundles, in provisioning order
+     */
+    List<LockedBundle> getBundles()
+    {
+        return m_bundles;
+    }
+
+    /**
+     * Reads a lock file. The stream is not closed.
+     *
+     * @param inputStream lock file content; mandatory
+     *
+     * @return read lock file
+     *
+     * @throws IOException - If the stream cannot be read or content is malformed
+     */
+    static LockFile read( final InputStream inputStream )
+        throws IOException
+    {
+        NullArgumentException.validateNotNull( inputStream, "Input stream" );
+        final BufferedReader reader = new BufferedReader( new InputStreamReader( inputStream, "UTF-8" ) );
+        String source = null;
+        final Map<String, String> properties = new LinkedHashMap<String, String>();
+        final List<LockedBundle> bundles = new ArrayList<LockedBundle>();
+        String line;
+        while( ( line = reader.readLine() ) != null )
+        {
+            if( line.trim().length() == 0 || line.startsWith( "#" ) )
+            {
+                continue;
+            }
+            if( line.startsWith( SOURCE_PREFIX ) )
+            {
+                source = line.substring( SOURCE_PREFIX.length() );
+                continue;
+            }
+            if( line.startsWith( PROPERTY_PREFIX ) )
+            {
+                final int separator = line.indexOf( '=' );
+                if( separator <= PROPERTY_PREFIX.length() )
+                {
+                    throw new IOException( "Malformed lock file property line: " + line );
+                }
+                properties.put(
+                    unescape( line.substring( PROPERTY_PREFIX.length(), separator ) ),
+                    unescape( line.substring( separator + 1 ) )
+                );
+                continue;
+            }
+            final String[] segments = line.split( String.valueOf( SEPARATOR ), 5 );
+            if( segments.length != 5 || segments[ 4 ].length() == 0 )
+            {
+                throw new IOException( "Malformed lock file line: " + line );
+            }
+            try
+            {
+                bundles.add(
+                    new LockedBundle(
+                        segments[ 4 ],
+                        NONE.equals( segments[ 1 ] ) ? null : Integer.valueOf( segments[ 1 ] ),
+                        NONE.equals( segments[ 2 ] ) ? null : Boolean.valueOf( segments[ 2 ] ),
+                        NONE.equals( segments[ 3 ] ) ? null : Boolean.valueOf( segments[ 3 ] ),
+                        NONE.equals( segments[ 0 ] ) ? null : segments[ 0 ]
+                    )
+                );
+            }
+            catch( NumberFormatException e )
+            {
+                throw new IOException( "Malformed start level in lock file line: " + line );
+            }
+        }
+        return new LockFile( source, properties, bundles );
+    }
+
+    /**
+     * Converts a compiled provision plan to a lock file.
+     *
+     * @param plan provision plan; mandatory
+     *
+     * @return lock file
+     */
+    static LockFile read( final ProvisionPlan plan )
+    {
+        NullArgumentException.validateNotNull( plan, "Provision plan" );
+        final List<LockedBundle> bundles = new ArrayList<LockedBundle>( plan.size() );
+        for( ScannedBundle scannedBundle : plan )
+        {
+            bundles.add(
+                new LockedBundle(
+                    scannedBundle.getLocation(),
+                    scannedBundle.getStartLevel(),
+                    scannedBundle.shouldStart(),
+                    scannedBundle.shouldUpdate(),
+                    ( (ProvisionPlan.Bundle) scannedBundle ).getDigest()
+                )
+            );
+        }
+        return new LockFile( plan.getSpec(), plan.getProperties(), bundles );
+    }
+
+    /**
+     * Writes the lock file as a compiled binary provision plan.
+     *
+     * @param file    file to write to; mandatory
+     * @param sources source url to digest of content the plan depends on; mandatory
+     *
+     * @throws IOException - If the file cannot be written
+     */
+    void writePlan( final File file, final Map<String, byte[]> sources )
+        throws IOException
+    {
+        NullArgumentException.validateNotNull( sources, "Sources" );
+        final ProvisionPlanCompiler compiler = new ProvisionPlanCompiler().setSpec( m_source );
+        for( Map.Entry<String, byte[]> source : sources.entrySet() )
+        {
+            compiler.addSource( source.getKey(), source.getValue() );
+        }
+        for( Map.Entry<String, String> property : m_properties.entrySet() )
+        {
+            compiler.addProperty( property.getKey(), property.getValue() );
+        }
+        for( LockedBundle bundle : m_bundles )
+        {
+            compiler.addBundle( bundle, bundle.getDigest() );
+        }
+        compiler.compile( file );
+    }
+
+    /**
+     * Writes the lock file. Content is first written to a temporary file that replaces the target file, so a reader
+     * never sees a partially written lock file.
+     *
+     * @param file file to write to; mandatory
+     *
+     * @throws IOException - If the file cannot be written
+     */
+    void write( final File file )
+        throws IOException
+    {
+        NullArgumentException.validateNotNull( file, "File" );
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if( parent != null && !parent.exists() && !parent.mkdirs() )
+        {
+            throw new IOException( "Cannot create directory " + parent );
+        }
+        final File temp = new File( parent, file.getName() + ".tmp" );
+        final Writer writer = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( temp ), "UTF-8" ) );
+        try
+        {
+            writer.write( HEADER );
+            writer.write( '\n' );
+            if( m_source != null )
+            {
+                writer.write( SOURCE_PREFIX );
+                writer.write( m_source );
+                writer.write( '\n' );
+            }
+            for( Map.Entry<String, String> property : m_properties.entrySet() )
+            {
+                writer.write( PROPERTY_PREFIX );
+                writer.write( escape( property.getKey() ) );
+                writer.write( '=' );
+                writer.write( escape( property.getValue() ) );
+                writer.write( '\n' );
+            }
+            for( LockedBundle bundle : m_bundles )
+            {
+                writer.write( valueOf( bundle.getDigest() ) );
+                writer.write( SEPARATOR );
+                writer.write( valueOf( bundle.getStartLevel() ) );
+                writer.write( SEPARATOR );
+                writer.write( valueOf( bundle.shouldStart() ) );
+                writer.write( SEPARATOR );
+                writer.write( valueOf( bundle.shouldUpdate() ) );
+                writer.write( SEPARATOR );
+                writer.write( bundle.getLocation() );
+                writer.write( '\n' );
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+        if( !temp.renameTo( file ) )
+        {
+            // renaming over an existing file fails on some platforms
+            file.delete();
+            if( !temp.renameTo( file ) )
+            {
+                temp.delete();
+                throw new IOException( "Cannot write lock file " + file );
+            }
+        }
+    }
+
+    /**
+     * Computes the digest of an artifact.
+     *
+     * @param url              artifact url; mandatory
+     * @param certificateCheck if certificates should be checked on SSL connections
+     *
+     * @return hex encoded SHA-256 digest
+     *
+     * @throws IOException - If the artifact cannot be read
+     */
+    static String digest( final URL url, final boolean certificateCheck )
+        throws IOException
+    {
+        NullArgumentException.validateNotNull( url, "URL" );
+        final MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance( DIGEST_ALGORITHM );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( DIGEST_ALGORITHM + " is not available" );
+        }
+        final InputStream inputStream = URLUtils.prepareInputStream( url, !certificateCheck );
+        try
+        {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while( ( read = inputStream.read( buffer ) ) != -1 )
+            {
+                digest.update( buffer, 0, read );
+            }
+        }
+        finally
+        {
+            inputStream.close();
+        }
+        final byte[] bytes = digest.digest();
+        final char[] hex = new char[bytes.length * 2];
+        for( int i = 0; i < bytes.length; i++ )
+        {
+            hex[ i * 2 ] = HEX[ ( bytes[ i ] >> 4 ) & 0xF ];
+            hex[ i * 2 + 1 ] = HEX[ bytes[ i ] & 0xF ];
+        }
+        return new String( hex );
+    }
+
+    /**
+     * Escapes backslashes, new lines and carriage returns of a property name / value, so it fits on one line.
+     *
+     * @param value value to escape
+     *
+     * @return escaped value
+     */
+    private static String escape( final String value )
+    {
+        final StringBuilder escaped = new StringBuilder( value.length() );
+        for( int i = 0; i < value.length(); i++ )
+        {
+            final char c = value.charAt( i );
+            if( c == '\\' )
+            {
+                escaped.append( "\\\\" );
+            }
+            else if( c == '\n' )
+            {
+                escaped.append( "\\n" );
+            }
+            else if( c == '\r' )
+            {
+                escaped.append( "\\r" );
+            }
+            else
+            {
+                escaped.append( c );
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Reverts {@link #escape(String)}.
+     *
+     * @param value escaped value
+     *
+     * @return unescaped value
+     */
+    private static String unescape( final String value )
+    {
+        final StringBuilder unescaped = new StringBuilder( value.length() );
+        for( int i = 0; i < value.length(); i++ )
+        {
+            final char c = value.charAt( i );
+            if( c == '\\' && i + 1 < value.length() )
+            {
+                final char next = value.charAt( ++i );
+                unescaped.append( next == 'n' ? '\n' : next == 'r' ? '\r' : next );
+            }
+            else
+            {
+                unescaped.append( c );
+            }
+        }
+        return unescaped.toString();
+    }
+
+    /**
+     * Returns the lock file representation of a value.
+     *
+     * @param value value; can be null
+     *
+     * @return value as string or "-" if null
+     */
+    private static String valueOf( final Object value )
+    {
+        return value == null ? NONE : value.toString();
+    }
+
+}
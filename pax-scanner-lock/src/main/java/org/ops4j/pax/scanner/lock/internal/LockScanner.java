@@ -0,0 +1,451 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.lock.internal;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ops4j.lang.NullArgumentException;
+import org.ops4j.net.URLUtils;
+import org.ops4j.pax.scanner.MalformedSpecificationException;
+import org.ops4j.pax.scanner.ProvisionService;
+import org.ops4j.pax.scanner.ProvisionSpec;
+import org.ops4j.pax.scanner.ScannedBundle;
+import org.ops4j.pax.scanner.ScannedBundleBean;
+import org.ops4j.pax.scanner.Scanner;
+import org.ops4j.pax.scanner.ScannerException;
+import org.ops4j.pax.scanner.common.ProvisionPlan;
+import org.ops4j.pax.scanner.common.ProvisionPlanCompiler;
+import org.ops4j.util.property.PropertyResolver;
+
+/**
+ * A scanner that provisions the bundles recorded in a lock file. A lock file holds the fully resolved result of
+ * scanning a source provision spec (composite, pom, maven, features, obr, ...), so using it avoids any remote metadata
+ * lookup, descriptor parsing or resolution.<br/>
+ * If the lock file does not exist, was resolved from another source spec than the configured one or a refresh is
+ * requested, the configured source spec is scanned and the lock file is (re)written.<br/>
+ * Lock files named *.plan are written as compiled binary {@link ProvisionPlan}s, that are memory mapped on load and
+ * get stale as soon as the file referred by the source spec changes.<br/>
+ * System properties set while scanning the source spec (as by -D lines of file and composite specs) are recorded in
+ * the lock file and set again each time the lock file is used.<br/>
+ * If verification is enabled the locked digests are handed over with the scanned bundles, so the content is verified
+ * once it is installed, instead of reading every bundle each time the lock file is used.
+ *
+ * @since 1.2.0
+ */
+public class LockScanner
+    implements Scanner
+{
+
+    /**
+     * Logger.
+     */
+    private static final Log LOGGER = LogFactory.getLog( LockScanner.class );
+    /**
+     * Extension of lock files written as compiled binary provision plans.
+     */
+    static final String PLAN_EXTENSION = ".plan";
+
+    /**
+     * PropertyResolver used to resolve properties.
+     */
+    private PropertyResolver m_propertyResolver;
+    /**
+     * Provision service used to scan the source spec.
+     */
+    private final ProvisionService m_provisionService;
+
+    /**
+     * Creates a new lock scanner.
+     *
+     * @param propertyResolver a propertyResolver; mandatory
+     * @param provisionService provision service to be used to scan the source spec; mandatory
+     */
+    public LockScanner( final PropertyResolver propertyResolver,
+                        final ProvisionService provisionService )
+    {
+        NullArgumentException.validateNotNull( propertyResolver, "PropertyResolver" );
+        NullArgumentException.validateNotNull( provisionService, "Provision Service" );
+        m_propertyResolver = propertyResolver;
+        m_provisionService = provisionService;
+    }
+
+    /**
+     * Reads the bundles from the lock file specified by the provision spec, resolving and writing it first if
+     * necessary.
+     * {@inheritDoc}
+     */
+    public List<ScannedBundle> scan( final ProvisionSpec provisionSpec )
+        throws MalformedSpecificationException, ScannerException
+    {
+        NullArgumentException.validateNotNull( provisionSpec, "Provision spec" );
+
+        LOGGER.debug( "Scanning [" + provisionSpec.getPath() + "]" );
+        final LockScannerConfiguration config = createConfiguration();
+        final String source = config.getSource();
+        final URL url;
+        try
+        {
+            url = provisionSpec.getPathAsUrl();
+        }
+        catch( MalformedURLException e )
+        {
+            throw new MalformedSpecificationException( e );
+        }
+
+        LockFile lockFile = null;
+        if( !config.isRefresh() )
+        {
+            lockFile = readLockFile( url, config );
+            if( lockFile != null && source != null && !source.equals( lockFile.getSource() ) )
+            {
+                LOGGER.info( "Lock file [" + provisionSpec.getPath() + "] is stale as source changed to " + source );
+                lockFile = null;
+            }
+        }
+        if( lockFile == null )
+        {
+            if( source == null )
+            {
+                throw new ScannerException(
+                    "Lock file [" + provisionSpec.getPath() + "] cannot be used and there is no source spec configured"
+                );
+            }
+            lockFile = resolve( source, config );
+            writeLockFile( lockFile, url );
+        }
+        else
+        {
+            for( Map.Entry<String, String> property : lockFile.getProperties().entrySet() )
+            {
+                System.setProperty( property.getKey(), property.getValue() );
+            }
+        }
+
+        final Integer defaultStartLevel = provisionSpec.getStartLevel();
+        final Boolean defaultStart = provisionSpec.shouldStart();
+        final Boolean defaultUpdate = provisionSpec.shouldUpdate();
+        final boolean verify = config.isVerify();
+        final List<ScannedBundle> scannedBundles = new ArrayList<ScannedBundle>();
+        for( LockedBundle bundle : lockFile.getBundles() )
+        {
+            final Integer startLevel = defaultStartLevel == null ? bundle.getStartLevel() : defaultStartLevel;
+            final Boolean shouldStart = defaultStart == null ? bundle.shouldStart() : defaultStart;
+            final Boolean shouldUpdate = defaultUpdate == null ? bundle.shouldUpdate() : defaultUpdate;
+            if( verify && bundle.getDigest() != null )
+            {
+                scannedBundles.add(
+                    new LockedBundle( bundle.getLocation(), startLevel, shouldStart, shouldUpdate, bundle.getDigest() )
+                );
+            }
+            else
+            {
+                scannedBundles.add(
+                    new ScannedBundleBean( bundle.getLocation(), startLevel, shouldStart, shouldUpdate )
+                );
+            }
+        }
+        return scannedBundles;
+    }
+
+    /**
+     * Reads the lock file.
+     *
+     * @param url    lock file url
+     * @param config configuration
+     *
+     * @return read lock file or null if lock file does not exist or is malformed
+     */
+    private LockFile readLockFile( final URL url, final LockScannerConfiguration config )
+    {
+        try
+        {
+            final File file = toFile( url );
+            if( file != null && ProvisionPlan.isPlan( file ) )
+            {
+                final ProvisionPlan plan = ProvisionPlan.load( file );
+                if( !plan.isUpToDate() )
+                {
+                    LOGGER.info( "Lock file [" + url + "] is stale as its source content changed" );
+                    return null;
+                }
+                return LockFile.read( plan );
+            }
+            final InputStream inputStream = URLUtils.prepareInputStream( url, !config.getCertificateCheck() );
+            try
+            {
+                return LockFile.read( inputStream );
+            }
+            finally
+            {
+                inputStream.close();
+            }
+        }
+        catch( FileNotFoundException e )
+        {
+            LOGGER.debug( "Lock file [" + url + "] does not exist" );
+        }
+        catch( IOException e )
+        {
+            LOGGER.warn( "Lock file [" + url + "] cannot be read: " + e.getMessage() );
+        }
+        return null;
+    }
+
+    /**
+     * Scans the source spec, recording the system properties set meanwhile, and computes the digest of the resulting
+     * bundles if verification is enabled.
+     *
+     * @param source source provision spec
+     * @param config configuration
+     *
+     * @return resolved lock file
+     *
+     * @throws MalformedSpecificationException - If source spec is malformed
+     * @throws ScannerException                - If source spec cannot be scanned
+     */
+    private LockFile resolve( final String source, final LockScannerConfiguration config )
+        throws MalformedSpecificationException, ScannerException
+    {
+        LOGGER.debug( "Resolving lock source [" + source + "]" );
+        final List<LockedBundle> bundles = new ArrayList<LockedBundle>();
+        final List<ScannedBundle> scanned;
+        final Properties systemProperties = System.getProperties();
+        final RecordingProperties recordingProperties = new RecordingProperties( systemProperties );
+        System.setProperties( recordingProperties );
+        try
+        {
+            scanned = m_provisionService.scan( source );
+        }
+        finally
+        {
+            System.setProperties( systemProperties );
+            for( Map.Entry<String, String> property : recordingProperties.getRecorded().entrySet() )
+            {
+                System.setProperty( property.getKey(), property.getValue() );
+            }
+        }
+        final boolean verify = config.isVerify();
+        if( scanned != null )
+        {
+            for( ScannedBundle scannedBundle : scanned )
+            {
+                String digest = null;
+                if( verify )
+                {
+                    try
+                    {
+                        digest = LockFile.digest(
+                            new URL( scannedBundle.getLocation() ), config.getCertificateCheck()
+                        );
+                    }
+                    catch( IOException e )
+                    {
+                        LOGGER.warn(
+                            "Cannot compute digest of [" + scannedBundle.getLocation() + "]: " + e.getMessage()
+                        );
+                    }
+                }
+                bundles.add(
+                    new LockedBundle(
+                        scannedBundle.getLocation(),
+                        scannedBundle.getStartLevel(),
+                        scannedBundle.shouldStart(),
+                        scannedBundle.shouldUpdate(),
+                        digest
+                    )
+                );
+            }
+        }
+        return new LockFile( source, recordingProperties.getRecorded(), bundles );
+    }
+
+    /**
+     * Writes the lock file. Only file urls can be written; for other urls the lock file is just not written.
+     *
+     * @param lockFile lock file to write
+     * @param url      lock file url
+     */
+    private void writeLockFile( final LockFile lockFile, final URL url )
+    {
+        final File file = toFile( url );
+        if( file == null )
+        {
+            LOGGER.warn( "Lock file [" + url + "] is not a file and will not be written" );
+            return;
+        }
+        try
+        {
+            if( file.getName().endsWith( PLAN_EXTENSION ) )
+            {
+                lockFile.writePlan( file, getSourceDigests( lockFile.getSource() ) );
+            }
+            else
+            {
+                lockFile.write( file );
+            }
+            LOGGER.info( "Lock file [" + file + "] written with " + lockFile.getBundles().size() + " bundles" );
+        }
+        catch( IOException e )
+        {
+            LOGGER.warn( "Lock file [" + file + "] cannot be written: " + e.getMessage() );
+        }
+    }
+
+    /**
+     * Computes the digest of the file referred by the source spec, so a compiled plan gets stale when the file
+     * changes.
+     *
+     * @param source source provision spec
+     *
+     * @return source url to digest; empty if the source spec does not refer a readable file
+     */
+    private Map<String, byte[]> getSourceDigests( final String source )
+    {
+        final Map<String, byte[]> digests = new HashMap<String, byte[]>();
+        try
+        {
+            final URL url = new ProvisionSpec( source ).getPathAsUrl();
+            final InputStream inputStream = url.openStream();
+            try
+            {
+                digests.put( url.toExternalForm(), ProvisionPlanCompiler.digest( inputStream ) );
+            }
+            finally
+            {
+                inputStream.close();
+            }
+        }
+        catch( MalformedSpecificationException e )
+        {
+            LOGGER.debug( "Source [" + source + "] does not refer a file: " + e.getMessage() );
+        }
+        catch( IOException e )
+        {
+            LOGGER.debug( "Source [" + source + "] does not refer a readable file: " + e.getMessage() );
+        }
+        return digests;
+    }
+
+    /**
+     * Converts a file url to a file.
+     *
+     * @param url url to convert
+     *
+     * @return file or null if url is not a file url
+     */
+    private static File toFile( final URL url )
+    {
+        if( !"file".equals( url.getProtocol() ) )
+        {
+            return null;
+        }
+        try
+        {
+            return new File( url.toURI() );
+        }
+        catch( URISyntaxException e )
+        {
+            return new File( url.getPath() );
+        }
+        catch( IllegalArgumentException e )
+        {
+            return new File( url.getPath() );
+        }
+    }
+
+    /**
+     * System properties that record the properties set, in the order they were set.
+     */
+    private static class RecordingProperties
+        extends Properties
+    {
+
+        /**
+         * Recorded property name to value.
+         */
+        private final Map<String, String> m_recorded = new LinkedHashMap<String, String>();
+
+        /**
+         * Creates new recording properties, holding a copy of the given properties.
+         *
+         * @param properties properties to copy
+         */
+        RecordingProperties( final Properties properties )
+        {
+            putAll( properties );
+        }
+
+        /**
+         * Records the property and sets it.
+         *
+         * @see Properties#setProperty(String, String)
+         */
+        @Override
+        public synchronized Object setProperty( final String key, final String value )
+        {
+            m_recorded.put( key, value );
+            return super.setProperty( key, value );
+        }
+
+        /**
+         * Getter.
+         *
+         * @return recorded property name to value
+         */
+        synchronized Map<String, String> getRecorded()
+        {
+            return new LinkedHashMap<String, String>( m_recorded );
+        }
+
+    }
+
+    /**
+     * Sets the propertyResolver to use.
+     *
+     * @param propertyResolver a propertyResolver
+     */
+    public void setResolver( final PropertyResolver propertyResolver )
+    {
+        NullArgumentException.validateNotNull( propertyResolver, "PropertyResolver" );
+        m_propertyResolver = propertyResolver;
+    }
+
+    /**
+     * Creates a new configuration.
+     *
+     * @return a configuration
+     */
+    LockScannerConfiguration createConfiguration()
+    {
+        return new LockScannerConfigurationImpl( m_propertyResolver );
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.lock.internal;
+
+import org.ops4j.pax.scanner.common.ScannerConfiguration;
+
+/**
+ * Lock scanner specific configuration.
+ *
+ * @since 1.2.0
+ */
+public interface LockScannerConfiguration
+    extends ScannerConfiguration
+{
+
+    /**
+     * Returns the provision spec to be resolved when the lock file does not exist, is stale or has to be refreshed.
+     *
+     * @return source provision spec or null if not configured
+     */
+    String getSource();
+
+    /**
+     * Returns true if the source spec should be resolved and the lock file rewritten even if a lock file exists.
+     *
+     * @return true if lock file should be refreshed
+     */
+    Boolean isRefresh();
+
+    /**
+     * Returns true if the digest of locked artifacts should be verified before using the lock file.
+     *
+     * @return true if digests should be verified
+     */
+    Boolean isVerify();
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.lock.internal;
+
+import org.ops4j.pax.scanner.common.ScannerConfigurationImpl;
+import org.ops4j.pax.scanner.lock.ServiceConstants;
+import org.ops4j.util.property.PropertyResolver;
+
+/**
+ * Default implementation of {@link LockScannerConfiguration}.
+ *
+ * @since 1.2.0
+ */
+public class LockScannerConfigurationImpl
+    extends ScannerConfigurationImpl
+    implements LockScannerConfiguration
+{
+
+    /**
+     * Creates a new service configuration.
+     *
+     * @param propertyResolver propertyResolver used to resolve properties; mandatory
+     */
+    public LockScannerConfigurationImpl( final PropertyResolver propertyResolver )
+    {
+        super( propertyResolver, ServiceConstants.PID );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getSource()
+    {
+        final String propertyName = getPid() + ServiceConstants.PROPERTY_SOURCE;
+        if( !contains( propertyName ) )
+        {
+            final String propertyValue = getPropertyResolver().get( propertyName );
+            if( propertyValue == null || propertyValue.trim().length() == 0 )
+            {
+                return set( propertyName, null );
+            }
+            return set( propertyName, propertyValue.trim() );
+        }
+        return get( propertyName );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Boolean isRefresh()
+    {
+        final String propertyName = getPid() + ServiceConstants.PROPERTY_REFRESH;
+        if( !contains( propertyName ) )
+        {
+            return set( propertyName, Boolean.valueOf( getPropertyResolver().get( propertyName ) ) );
+        }
+        return get( propertyName );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Boolean isVerify()
+    {
+        final String propertyName = getPid() + ServiceConstants.PROPERTY_VERIFY;
+        if( !contains( propertyName ) )
+        {
+            return set( propertyName, Boolean.valueOf( getPropertyResolver().get( propertyName ) ) );
+        }
+        return get( propertyName );
+    }
+
+}
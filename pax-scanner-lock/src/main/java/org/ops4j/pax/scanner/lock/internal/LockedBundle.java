@@ -0,0 +1,67 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.lock.internal;
+
+import org.ops4j.pax.scanner.ScannedBundleBean;
+import org.ops4j.pax.scanner.VerifiableBundle;
+
+/**
+ * A bundle recorded in a lock file: the resolved location, start options and the digest of the artifact.
+ *
+ * @since 1.2.0
+ */
+class LockedBundle
+    extends ScannedBundleBean
+    implements VerifiableBundle
+{
+
+    /**
+     * Hex encoded SHA-256 digest of the artifact. Null if the artifact could not be read at lock time.
+     */
+    private final String m_digest;
+
+    /**
+     * Creates a new locked bundle.
+     *
+     * @param location     bundle location
+     * @param startLevel   start level; can be null
+     * @param shouldStart  if bundle should be started; can be null
+     * @param shouldUpdate if bundle should be updated; can be null
+     * @param digest       hex encoded SHA-256 digest; can be null
+     */
+    LockedBundle( final String location,
+                  final Integer startLevel,
+                  final Boolean shouldStart,
+                  final Boolean shouldUpdate,
+                  final String digest )
+    {
+        super( location, startLevel, shouldStart, shouldUpdate );
+        m_digest = digest;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return hex encoded SHA-256 digest or null if unknown
+     */
+    public String getDigest()
+    {
+        return m_digest;
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.lock.internal;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * {@link Activator} unit tests.
+ *
+ * @since 1.2.0
+ */
+public class ActivatorTest
+{
+
+    @Test
+    public void getPID()
+    {
+        assertEquals( "PID", "org.ops4j.pax.scanner.lock", new Activator().getPID() );
+    }
+
+    @Test
+    public void getProviderVersion()
+    {
+        assertEquals( "Schema", "scan-lock", new Activator().getSchema() );
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.lock.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.ops4j.io.FileUtils;
+import org.ops4j.pax.scanner.common.ProvisionPlan;
+
+/**
+ * {@link LockFile} unit tests.
+ *
+ * @since 1.2.0
+ */
+public class LockFileTest
+{
+
+    @Test
+    public void read()
+        throws IOException
+    {
+        final InputStream inputStream = new FileInputStream( FileUtils.getFileFromClasspath( "lock/boot.lock" ) );
+        final LockFile lockFile;
+        try
+        {
+            lockFile = LockFile.read( inputStream );
+        }
+        finally
+        {
+            inputStream.close();
+        }
+        assertEquals( "Source", "scan-composite:file:boot.composite", lockFile.getSource() );
+        assertEquals( "Number of bundles", 2, lockFile.getBundles().size() );
+        final LockedBundle bundle1 = lockFile.getBundles().get( 0 );
+        assertEquals( "Location", "file:bundle1.jar", bundle1.getLocation() );
+        assertEquals( "Start level", Integer.valueOf( 5 ), bundle1.getStartLevel() );
+        assertEquals( "Start", Boolean.TRUE, bundle1.shouldStart() );
+        assertEquals( "Update", Boolean.FALSE, bundle1.shouldUpdate() );
+        assertNull( "Digest", bundle1.getDigest() );
+        final LockedBundle bundle2 = lockFile.getBundles().get( 1 );
+        assertEquals( "Location", "mvn:org.ops4j/bundle2/1.0", bundle2.getLocation() );
+        assertNull( "Start level", bundle2.getStartLevel() );
+        assertNull( "Start", bundle2.shouldStart() );
+        assertNull( "Update", bundle2.shouldUpdate() );
+    }
+
+    @Test( expected = IOException.class )
+    public void readMalformed()
+        throws IOException
+    {
+        LockFile.read( new ByteArrayInputStream( "file:bundle1.jar\n".getBytes( "UTF-8" ) ) );
+    }
+
+    @Test
+    public void writeAndRead()
+        throws IOException
+    {
+        final List<LockedBundle> bundles = new ArrayList<LockedBundle>();
+        bundles.add( new LockedBundle( "file:bundle1.jar", 5, true, null, "00ff" ) );
+        bundles.add( new LockedBundle( "file:bundle2.jar", null, null, true, null ) );
+        final File file = File.createTempFile( "boot", ".lock" );
+        try
+        {
+            new LockFile( "scan-file:file:bundles.txt", properties(), bundles ).write( file );
+            final InputStream inputStream = new FileInputStream( file );
+            final LockFile lockFile;
+            try
+            {
+                lockFile = LockFile.read( inputStream );
+            }
+            finally
+            {
+                inputStream.close();
+            }
+            assertEquals( "Source", "scan-file:file:bundles.txt", lockFile.getSource() );
+            assertEquals( "Properties", properties(), lockFile.getProperties() );
+            assertEquals(
+                "Properties order",
+                new ArrayList<String>( properties().keySet() ),
+                new ArrayList<String>( lockFile.getProperties().keySet() )
+            );
+            assertEquals( "Bundles", bundles, lockFile.getBundles() );
+            assertEquals( "Digest", "00ff", lockFile.getBundles().get( 0 ).getDigest() );
+            assertNull( "Digest", lockFile.getBundles().get( 1 ).getDigest() );
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void writePlanAndRead()
+        throws IOException
+    {
+        final List<LockedBundle> bundles = new ArrayList<LockedBundle>();
+        bundles.add( new LockedBundle( "file:bundle1.jar", 5, true, null, "00ff" ) );
+        bundles.add( new LockedBundle( "file:bundle2.jar", null, false, true, null ) );
+        final File file = File.createTempFile( "boot", ".plan" );
+        try
+        {
+            new LockFile( "scan-file:file:bundles.txt", properties(), bundles ).writePlan(
+                file, new HashMap<String, byte[]>()
+            );
+            final LockFile lockFile = LockFile.read( ProvisionPlan.load( file ) );
+            assertEquals( "Source", "scan-file:file:bundles.txt", lockFile.getSource() );
+            assertEquals( "Properties", properties(), lockFile.getProperties() );
+            assertEquals( "Bundles", bundles, lockFile.getBundles() );
+            assertEquals( "Digest", "00ff", lockFile.getBundles().get( 0 ).getDigest() );
+            assertEquals( "Start", Boolean.FALSE, lockFile.getBundles().get( 1 ).shouldStart() );
+            assertEquals( "Update", Boolean.TRUE, lockFile.getBundles().get( 1 ).shouldUpdate() );
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void digest()
+        throws IOException
+    {
+        final File file = File.createTempFile( "bundle", ".jar" );
+        try
+        {
+            final FileOutputStream outputStream = new FileOutputStream( file );
+            try
+            {
+                outputStream.write( "abc".getBytes( "UTF-8" ) );
+            }
+            finally
+            {
+                outputStream.close();
+            }
+            assertEquals(
+                "Digest",
+                "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                LockFile.digest( file.toURL(), false )
+            );
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    private static Map<String, String> properties()
+    {
+        final Map<String, String> properties = new LinkedHashMap<String, String>();
+        properties.put( "org.ops4j.pax.scanner.test", "value" );
+        properties.put( "org.ops4j.pax.scanner.test.escaped", "a\\b\nc\rd=e" );
+        return properties;
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.lock.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.ops4j.io.FileUtils;
+import org.ops4j.lang.NullArgumentException;
+import org.ops4j.pax.scanner.MalformedSpecificationException;
+import org.ops4j.pax.scanner.ProvisionService;
+import org.ops4j.pax.scanner.ProvisionSpec;
+import org.ops4j.pax.scanner.ScannedBundle;
+import org.ops4j.pax.scanner.ScannedBundleBean;
+import org.ops4j.pax.scanner.ScannerException;
+import org.ops4j.pax.scanner.VerifiableBundle;
+import org.ops4j.util.property.PropertyResolver;
+
+/**
+ * {@link LockScanner} unit tests.
+ *
+ * @since 1.2.0
+ */
+public class LockScannerTest
+{
+
+    @Test( expected = NullArgumentException.class )
+    public void scanWithNullURLSpec()
+        throws ScannerException, MalformedSpecificationException
+    {
+        new LockScanner(
+            createMock( PropertyResolver.class ),
+            createMock( ProvisionService.class )
+        ).scan( null );
+    }
+
+    @Test
+    public void scanLockFile()
+        throws Exception
+    {
+        LockScannerConfiguration config = createMock( LockScannerConfiguration.class );
+        ProvisionService provisionService = createMock( ProvisionService.class );
+        File file = FileUtils.getFileFromClasspath( "lock/boot.lock" );
+
+        expect( config.getSource() ).andReturn( null );
+        expect( config.isRefresh() ).andReturn( false );
+        expect( config.isVerify() ).andReturn( false );
+        expect( config.getCertificateCheck() ).andReturn( false );
+
+        replay( config, provisionService );
+        List<ScannedBundle> scannedBundles = createScanner( config, provisionService ).scan(
+            new ProvisionSpec( "scan-lock:" + file.toURL().toExternalForm() + "@update" )
+        );
+        assertNotNull( "Returned list is null", scannedBundles );
+        assertEquals( "Number of bundles", 2, scannedBundles.size() );
+        assertEquals( "Location", "file:bundle1.jar", scannedBundles.get( 0 ).getLocation() );
+        assertEquals( "Start level", Integer.valueOf( 5 ), scannedBundles.get( 0 ).getStartLevel() );
+        assertEquals( "Start", Boolean.TRUE, scannedBundles.get( 0 ).shouldStart() );
+        assertEquals( "Update", Boolean.TRUE, scannedBundles.get( 0 ).shouldUpdate() );
+        assertEquals( "Location", "mvn:org.ops4j/bundle2/1.0", scannedBundles.get( 1 ).getLocation() );
+        assertNull( "Start level", scannedBundles.get( 1 ).getStartLevel() );
+        assertEquals( "Update", Boolean.TRUE, scannedBundles.get( 1 ).shouldUpdate() );
+        verify( config, provisionService );
+    }
+
+    @Test
+    public void scanResolvesAndWritesLockFile()
+        throws Exception
+    {
+        LockScannerConfiguration config = createMock( LockScannerConfiguration.class );
+        ProvisionService provisionService = createMock( ProvisionService.class );
+        File lock = new File( File.createTempFile( "pax-scanner-lock", "" ).getAbsolutePath() + ".dir", "boot.lock" );
+        File bundle = FileUtils.getFileFromClasspath( "lock/boot.lock" );
+        List<ScannedBundle> scanned = new ArrayList<ScannedBundle>();
+        scanned.add( new ScannedBundleBean( bundle.toURL().toExternalForm(), 10, true, false ) );
+
+        expect( config.getSource() ).andReturn( "scan-file:file:bundles.txt" );
+        expect( config.isRefresh() ).andReturn( false );
+        expect( config.getCertificateCheck() ).andReturn( false ).anyTimes();
+        expect( config.isVerify() ).andReturn( true ).anyTimes();
+        expect( provisionService.scan( "scan-file:file:bundles.txt" ) ).andReturn( scanned );
+
+        replay( config, provisionService );
+        List<ScannedBundle> scannedBundles = createScanner( config, provisionService ).scan(
+            new ProvisionSpec( "scan-lock:" + lock.toURL().toExternalForm() )
+        );
+        assertEquals( "Number of scanned bundles", 1, scannedBundles.size() );
+        assertEquals( "Location", bundle.toURL().toExternalForm(), scannedBundles.get( 0 ).getLocation() );
+        assertEquals(
+            "Digest to verify",
+            LockFile.digest( bundle.toURL(), false ),
+            ( (VerifiableBundle) scannedBundles.get( 0 ) ).getDigest()
+        );
+        verify( config, provisionService );
+
+        assertTrue( "Lock file written", lock.exists() );
+        final InputStream inputStream = new FileInputStream( lock );
+        try
+        {
+            final LockFile lockFile = LockFile.read( inputStream );
+            assertEquals( "Source", "scan-file:file:bundles.txt", lockFile.getSource() );
+            assertEquals( "Number of locked bundles", 1, lockFile.getBundles().size() );
+            assertEquals( "Location", bundle.toURL().toExternalForm(), lockFile.getBundles().get( 0 ).getLocation() );
+            assertEquals( "Start level", Integer.valueOf( 10 ), lockFile.getBundles().get( 0 ).getStartLevel() );
+            assertEquals(
+                "Digest", LockFile.digest( bundle.toURL(), false ), lockFile.getBundles().get( 0 ).getDigest()
+            );
+        }
+        finally
+        {
+            inputStream.close();
+            lock.delete();
+            lock.getParentFile().delete();
+        }
+    }
+
+    @Test( expected = ScannerException.class )
+    public void scanWithoutLockFileAndSource()
+        throws Exception
+    {
+        LockScannerConfiguration config = createMock( LockScannerConfiguration.class );
+        ProvisionService provisionService = createMock( ProvisionService.class );
+
+        expect( config.getSource() ).andReturn( null );
+        expect( config.isRefresh() ).andReturn( false );
+        expect( config.getCertificateCheck() ).andReturn( false );
+
+        replay( config, provisionService );
+        createScanner( config, provisionService ).scan(
+            new ProvisionSpec( "scan-lock:file:inexistent.lock" )
+        );
+        verify( config, provisionService );
+    }
+
+    private LockScanner createScanner( final LockScannerConfiguration config,
+                                       final ProvisionService provisionService )
+    {
+        return new LockScanner(
+            createMock( PropertyResolver.class ),
+            provisionService
+        )
+        {
+            @Override
+            LockScannerConfiguration createConfiguration()
+            {
+                return config;
+            }
+
+        };
+    }
+
+}
@@ -35,4 +35,41 @@ public interface ServiceConstants
      */
     static final String SCHEMA = "scan-maven";
 
+    /**
+     * Maximum number of (newest) versions to be provisioned property name.
+     */
+    static final String PROPERTY_MAX_VERSIONS = ".maxVersions";
+
+    /**
+     * Number of threads used to download artifacts property name.
+     */
+    static final String PROPERTY_THREADS = ".threads";
+
+    /**
+     * Time to live (seconds) of cached release versions property name. Can be suffixed with ".<repository id>" to
+     * configure a specific repository.
+     */
+    static final String PROPERTY_METADATA_TTL = ".metadataTTL";
+
+    /**
+     * Time to live (seconds) of cached snapshot versions property name. Can be suffixed with ".<repository id>" to
+     * configure a specific repository.
+     */
+    static final String PROPERTY_SNAPSHOT_METADATA_TTL = ".snapshotMetadataTTL";
+
+    /**
+     * File used to persist cached versions property name.
+     */
+    static final String PROPERTY_METADATA_CACHE = ".metadataCache";
+
+    /**
+     * Offline mode property name.
+     */
+    static final String PROPERTY_OFFLINE = ".offline";
+
+    /**
+     * Local repositories indexing property name.
+     */
+    static final String PROPERTY_LOCAL_INDEX = ".localIndex";
+
 }
\ No newline at end of file
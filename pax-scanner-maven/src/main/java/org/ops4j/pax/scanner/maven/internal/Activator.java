@@ -33,13 +33,34 @@ public final class Activator
     extends AbstractScannerActivator<MavenScanner>
 {
 
+    /**
+     * Created scanner. Null if not created.
+     */
+    private MavenScanner m_scanner;
+
     /**
      * {@inheritDoc}
      */
     @Override
     protected MavenScanner createScanner( final BundleContext bundleContext )
     {
-        return new MavenScanner( new BundleContextPropertyResolver( bundleContext ) );
+        m_scanner = new MavenScanner( new BundleContextPropertyResolver( bundleContext ) );
+        return m_scanner;
+    }
+
+    /**
+     * Stops the scanner threads.
+     * {@inheritDoc}
+     */
+    @Override
+    public void stop( final BundleContext bundleContext )
+    {
+        super.stop( bundleContext );
+        if( m_scanner != null )
+        {
+            m_scanner.stop();
+            m_scanner = null;
+        }
     }
 
     /**
@@ -0,0 +1,617 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.maven.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.maven.mercury.artifact.ArtifactBasicMetadata;
+import org.apache.maven.mercury.artifact.ArtifactMetadata;
+import org.apache.maven.mercury.artifact.version.DefaultArtifactVersion;
+import org.ops4j.lang.NullArgumentException;
+import org.ops4j.pax.scanner.ScannerException;
+import org.ops4j.pax.url.maven.commons.MavenRepositoryURL;
+
+/**
+ * Index of a local (file based) maven repository, mapping groupId:artifactId to the versions available in the
+ * repository. The index is built incrementally (an artifact is indexed the first time it is queried) and an indexed
+ * artifact is re-listed only if the last modification time of its directory changed (a version was added / removed).
+ * The index can be persisted into a properties file so it survives restarts.
+ *
+ * @since 1.2.0
+ */
+class LocalRepositoryIndex
+{
+
+    /**
+     * Logger.
+     */
+    private static final Log LOGGER = LogFactory.getLog( LocalRepositoryIndex.class );
+    /**
+     * Separator between last modification time and versions in the persisted form.
+     */
+    private static final String SEPARATOR = " ";
+
+    /**
+     * Indexed repository.
+     */
+    private final MavenRepositoryURL m_repositoryURL;
+    /**
+     * File where the index is persisted. Can be null, case when the index is only kept in memory.
+     */
+    private final File m_file;
+    /**
+     * Indexed artifacts, keyed by groupId:artifactId.
+     */
+    private final Map<String, Entry> m_entries;
+    /**
+     * True if the index changed since last persisted.
+     */
+    private boolean m_dirty;
+
+    /**
+     * Creates an index and loads the entries persisted into file (if any).
+     *
+     * @param repositoryURL indexed (file) repository; mandatory
+     * @param file          file where the index is persisted; can be null
+     */
+    LocalRepositoryIndex( final MavenRepositoryURL repositoryURL, final File file )
+    {
+        NullArgumentException.validateNotNull( repositoryURL, "Repository URL" );
+        m_repositoryURL = repositoryURL;
+        m_file = file;
+        m_entries = new HashMap<String, Entry>();
+        load();
+    }
+
+    /**
+     * Getter.
+     *
+     * @return indexed repository
+     */
+    MavenRepositoryURL getRepositoryURL()
+    {
+        return m_repositoryURL;
+    }
+
+    /**
+     * Reads the versions matching an artifact query (groupId:artifactId[:version or range[:classifier[:type]]]),
+     * considering the release / snapshot policy of the repository.
+     * Only versions for which the artifact file exists are returned.
+     *
+     * @param path artifact query
+     *
+     * @return found artifacts, in ascending version order
+     *
+     * @throws ScannerException - If the query is not valid
+     */
+    synchronized List<ArtifactBasicMetadata> readVersions( final String path )
+        throws ScannerException
+    {
+        final String[] segments = path.split( ":" );
+        if( segments.length < 2 || segments[ 0 ].trim().length() == 0 || segments[ 1 ].trim().length() == 0 )
+        {
+            throw new ScannerException( "Invalid artifact [" + path + "]. Expected groupId:artifactId[:version]" );
+        }
+        final String groupId = segments[ 0 ].trim();
+        final String artifactId = segments[ 1 ].trim();
+        final Range range = Range.parse( segments.length > 2 ? segments[ 2 ].trim() : null );
+        final String classifier = segments.length > 3 && segments[ 3 ].trim().length() > 0
+                                  ? segments[ 3 ].trim()
+                                  : null;
+        final String type = segments.length > 4 && segments[ 4 ].trim().length() > 0 ? segments[ 4 ].trim() : "jar";
+
+        final List<String> matching = new ArrayList<String>();
+        for( String version : getVersions( groupId, artifactId ) )
+        {
+            final boolean snapshot = version.endsWith( "SNAPSHOT" );
+            if( ( snapshot && !m_repositoryURL.isSnapshotsEnabled() )
+                || ( !snapshot && !m_repositoryURL.isReleasesEnabled() ) )
+            {
+                continue;
+            }
+            if( range.contains( version ) && getFile( groupId, artifactId, version, classifier, type ).isFile() )
+            {
+                matching.add( version );
+            }
+        }
+        final List<ArtifactBasicMetadata> found = new ArrayList<ArtifactBasicMetadata>();
+        for( String version : range.select( matching ) )
+        {
+            found.add(
+                new ArtifactMetadata(
+                    groupId + ":" + artifactId + ":" + version + ":" + ( classifier == null ? "" : classifier )
+                    + ":" + type
+                )
+            );
+        }
+        store();
+        return found;
+    }
+
+    /**
+     * Returns the file corresponding to an artifact.
+     *
+     * @param artifact artifact
+     *
+     * @return artifact file (that may not exist)
+     */
+    File getFile( final ArtifactBasicMetadata artifact )
+    {
+        return getFile(
+            artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion(), artifact.getClassifier(),
+            artifact.getType() == null ? "jar" : artifact.getType()
+        );
+    }
+
+    /**
+     * Returns the file corresponding to an artifact.
+     *
+     * @param groupId    group id
+     * @param artifactId artifact id
+     * @param version    version
+     * @param classifier classifier; can be null
+     * @param type       type
+     *
+     * @return artifact file (that may not exist)
+     */
+    private File getFile( final String groupId,
+                          final String artifactId,
+                          final String version,
+                          final String classifier,
+                          final String type )
+    {
+        return new File(
+            new File( getArtifactDirectory( groupId, artifactId ), version ),
+            artifactId + "-" + version + ( classifier == null ? "" : "-" + classifier ) + "." + type
+        );
+    }
+
+    /**
+     * Returns the directory containing all versions of an artifact.
+     *
+     * @param groupId    group id
+     * @param artifactId artifact id
+     *
+     * @return artifact directory
+     */
+    private File getArtifactDirectory( final String groupId, final String artifactId )
+    {
+        return new File( new File( m_repositoryURL.getFile(), groupId.replace( '.', File.separatorChar ) ), artifactId );
+    }
+
+    /**
+     * Returns the versions of an artifact from index. The artifact directory is re-listed only if the artifact is not
+     * yet indexed or the last modification time of the artifact directory changed.
+     *
+     * @param groupId    group id
+     * @param artifactId artifact id
+     *
+     * @return available versions
+     */
+    private List<String> getVersions( final String groupId, final String artifactId )
+    {
+        final String key = groupId + ":" + artifactId;
+        final File directory = getArtifactDirectory( groupId, artifactId );
+        final long lastModified = directory.lastModified();
+        Entry entry = m_entries.get( key );
+        if( entry == null || entry.getLastModified() != lastModified )
+        {
+            LOGGER.debug( "Indexing [" + key + "] from " + directory );
+            final List<String> versions = new ArrayList<String>();
+            final File[] children = directory.listFiles();
+            if( children != null )
+            {
+                for( File child : children )
+                {
+                    if( child.isDirectory() )
+                    {
+                        versions.add( child.getName() );
+                    }
+                }
+            }
+            entry = new Entry( lastModified, versions );
+            m_entries.put( key, entry );
+            m_dirty = true;
+        }
+        return entry.getVersions();
+    }
+
+    /**
+     * Loads the index from file (if any). Unreadable files / entries are ignored.
+     */
+    private void load()
+    {
+        if( m_file == null || !m_file.isFile() )
+        {
+            return;
+        }
+        final Properties properties = new Properties();
+        try
+        {
+            final InputStream inputStream = new FileInputStream( m_file );
+            try
+            {
+                properties.load( inputStream );
+            }
+            finally
+            {
+                inputStream.close();
+            }
+        }
+        catch( IOException e )
+        {
+            LOGGER.warn( "Could not read local repository index from [" + m_file + "]", e );
+            return;
+        }
+        for( Object name : properties.keySet() )
+        {
+            final String key = (String) name;
+            final String[] segments = properties.getProperty( key ).trim().split( SEPARATOR );
+            try
+            {
+                final List<String> versions = new ArrayList<String>();
+                for( int i = 1; i < segments.length; i++ )
+                {
+                    if( segments[ i ].length() > 0 )
+                    {
+                        versions.add( segments[ i ] );
+                    }
+                }
+                m_entries.put( key, new Entry( Long.parseLong( segments[ 0 ] ), versions ) );
+            }
+            catch( NumberFormatException e )
+            {
+                LOGGER.debug( "Ignoring invalid index entry [" + key + "]" );
+            }
+        }
+    }
+
+    /**
+     * Stores the index to file (if any and if index changed). The file is first written to a temporary file that is
+     * then renamed, so concurrent readers never see a partially written index.
+     */
+    private void store()
+    {
+        if( m_file == null || !m_dirty )
+        {
+            return;
+        }
+        final Properties properties = new Properties();
+        for( Map.Entry<String, Entry> entry : m_entries.entrySet() )
+        {
+            final StringBuilder value = new StringBuilder().append( entry.getValue().getLastModified() );
+            for( String version : entry.getValue().getVersions() )
+            {
+                value.append( SEPARATOR ).append( version );
+            }
+            properties.setProperty( entry.getKey(), value.toString() );
+        }
+        try
+        {
+            final File parent = m_file.getAbsoluteFile().getParentFile();
+            if( parent != null )
+            {
+                parent.mkdirs();
+            }
+            final File temp = new File( m_file.getPath() + ".tmp" );
+            final OutputStream outputStream = new FileOutputStream( temp );
+            try
+            {
+                properties.store( outputStream, "Pax Scanner local repository index of " + m_repositoryURL.getFile() );
+            }
+            finally
+            {
+                outputStream.close();
+            }
+            if( !temp.renameTo( m_file ) )
+            {
+                m_file.delete();
+                if( !temp.renameTo( m_file ) )
+                {
+                    LOGGER.warn( "Could not write local repository index to [" + m_file + "]" );
+                }
+            }
+            m_dirty = false;
+        }
+        catch( IOException e )
+        {
+            LOGGER.warn( "Could not write local repository index to [" + m_file + "]", e );
+        }
+    }
+
+    /**
+     * An indexed artifact.
+     */
+    private static class Entry
+    {
+
+        /**
+         * Last modification time of artifact directory when indexed.
+         */
+        private final long m_lastModified;
+        /**
+         * Available versions.
+         */
+        private final List<String> m_versions;
+
+        /**
+         * Creates a new entry.
+         *
+         * @param lastModified last modification time of artifact directory
+         * @param versions     available versions
+         */
+        Entry( final long lastModified, final List<String> versions )
+        {
+            m_lastModified = lastModified;
+            m_versions = Collections.unmodifiableList( new ArrayList<String>( versions ) );
+        }
+
+        /**
+         * Getter.
+         *
+         * @return last modification time of artifact directory when indexed
+         */
+        long getLastModified()
+        {
+            return m_lastModified;
+        }
+
+        /**
+         * Getter.
+         *
+         * @return available versions
+         */
+        List<String> getVersions()
+        {
+            return m_versions;
+        }
+
+    }
+
+    /**
+     * A maven version specification: a version, a set of ranges ("[1.0,2.0)", "(,1.0],[1.2,)"), "LATEST", "RELEASE" or
+     * nothing (all versions).
+     */
+    static class Range
+    {
+
+        /**
+         * Comparator of versions, ascending.
+         */
+        private static final Comparator<String> ASCENDING = new Comparator<String>()
+        {
+            public int compare( final String version1, final String version2 )
+            {
+                return new DefaultArtifactVersion( version1 ).compareTo( new DefaultArtifactVersion( version2 ) );
+            }
+        };
+
+        /**
+         * Lower bounds; null elements for unbounded.
+         */
+        private final List<DefaultArtifactVersion> m_lowerBounds;
+        /**
+         * Upper bounds; null elements for unbounded.
+         */
+        private final List<DefaultArtifactVersion> m_upperBounds;
+        /**
+         * True if lower bound is inclusive.
+         */
+        private final List<Boolean> m_lowerInclusive;
+        /**
+         * True if upper bound is inclusive.
+         */
+        private final List<Boolean> m_upperInclusive;
+        /**
+         * Exact version, LATEST or RELEASE. Null if a range.
+         */
+        private final String m_version;
+
+        /**
+         * Creates a range.
+         *
+         * @param version exact version, LATEST or RELEASE; null for a range
+         */
+        private Range( final String version )
+        {
+            m_version = version;
+            m_lowerBounds = new ArrayList<DefaultArtifactVersion>();
+            m_upperBounds = new ArrayList<DefaultArtifactVersion>();
+            m_lowerInclusive = new ArrayList<Boolean>();
+            m_upperInclusive = new ArrayList<Boolean>();
+        }
+
+        /**
+         * Parses a version specification.
+         *
+         * @param specification version specification; can be null or empty (all versions)
+         *
+         * @return parsed range
+         *
+         * @throws ScannerException - If specification is not a valid range
+         */
+        static Range parse( final String specification )
+            throws ScannerException
+        {
+            if( specification == null || specification.length() == 0 )
+            {
+                final Range range = new Range( null );
+                range.add( null, false, null, false );
+                return range;
+            }
+            if( !specification.startsWith( "[" ) && !specification.startsWith( "(" ) )
+            {
+                return new Range( specification );
+            }
+            final Range range = new Range( null );
+            String remaining = specification;
+            while( remaining.length() > 0 )
+            {
+                final int end = indexOfEnd( remaining );
+                if( end < 0 || ( !remaining.startsWith( "[" ) && !remaining.startsWith( "(" ) ) )
+                {
+                    throw new ScannerException( "Invalid version range [" + specification + "]" );
+                }
+                final String bounds = remaining.substring( 1, end );
+                final int comma = bounds.indexOf( ',' );
+                if( comma < 0 )
+                {
+                    final DefaultArtifactVersion version = new DefaultArtifactVersion( bounds.trim() );
+                    range.add( version, true, version, true );
+                }
+                else
+                {
+                    final String lower = bounds.substring( 0, comma ).trim();
+                    final String upper = bounds.substring( comma + 1 ).trim();
+                    range.add(
+                        lower.length() == 0 ? null : new DefaultArtifactVersion( lower ),
+                        remaining.charAt( 0 ) == '[',
+                        upper.length() == 0 ? null : new DefaultArtifactVersion( upper ),
+                        remaining.charAt( end ) == ']'
+                    );
+                }
+                remaining = remaining.substring( end + 1 ).trim();
+                if( remaining.startsWith( "," ) )
+                {
+                    remaining = remaining.substring( 1 ).trim();
+                }
+            }
+            return range;
+        }
+
+        /**
+         * Finds the end of the first range.
+         *
+         * @param specification version specification
+         *
+         * @return index of closing "]" / ")" or -1 if not found
+         */
+        private static int indexOfEnd( final String specification )
+        {
+            for( int i = 0; i < specification.length(); i++ )
+            {
+                if( specification.charAt( i ) == ']' || specification.charAt( i ) == ')' )
+                {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Adds a range.
+         *
+         * @param lower          lower bound; null for unbounded
+         * @param lowerInclusive if lower bound is inclusive
+         * @param upper          upper bound; null for unbounded
+         * @param upperInclusive if upper bound is inclusive
+         */
+        private void add( final DefaultArtifactVersion lower,
+                          final boolean lowerInclusive,
+                          final DefaultArtifactVersion upper,
+                          final boolean upperInclusive )
+        {
+            m_lowerBounds.add( lower );
+            m_lowerInclusive.add( lowerInclusive );
+            m_upperBounds.add( upper );
+            m_upperInclusive.add( upperInclusive );
+        }
+
+        /**
+         * Checks if a version matches the specification. LATEST and RELEASE match any (respectively any release)
+         * version; the selection of the newest one is done by {@link #select(List)}.
+         *
+         * @param version version to check
+         *
+         * @return true if version matches
+         */
+        boolean contains( final String version )
+        {
+            if( "LATEST".equals( m_version ) )
+            {
+                return true;
+            }
+            if( "RELEASE".equals( m_version ) )
+            {
+                return !version.endsWith( "SNAPSHOT" );
+            }
+            if( m_version != null )
+            {
+                return m_version.equals( version );
+            }
+            final DefaultArtifactVersion artifactVersion = new DefaultArtifactVersion( version );
+            for( int i = 0; i < m_lowerBounds.size(); i++ )
+            {
+                final DefaultArtifactVersion lower = m_lowerBounds.get( i );
+                final DefaultArtifactVersion upper = m_upperBounds.get( i );
+                if( lower != null )
+                {
+                    final int comparison = artifactVersion.compareTo( lower );
+                    if( comparison < 0 || ( comparison == 0 && !m_lowerInclusive.get( i ) ) )
+                    {
+                        continue;
+                    }
+                }
+                if( upper != null )
+                {
+                    final int comparison = artifactVersion.compareTo( upper );
+                    if( comparison > 0 || ( comparison == 0 && !m_upperInclusive.get( i ) ) )
+                    {
+                        continue;
+                    }
+                }
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Sorts matching versions ascending and, for LATEST / RELEASE, selects the newest one. Versions are returned
+         * as given (not normalized), as they are the names of version directories.
+         *
+         * @param versions matching versions
+         *
+         * @return selected versions
+         */
+        List<String> select( final List<String> versions )
+        {
+            final List<String> selected = new ArrayList<String>( versions );
+            Collections.sort( selected, ASCENDING );
+            if( ( "LATEST".equals( m_version ) || "RELEASE".equals( m_version ) ) && selected.size() > 1 )
+            {
+                return selected.subList( selected.size() - 1, selected.size() );
+            }
+            return selected;
+        }
+
+    }
+
+}
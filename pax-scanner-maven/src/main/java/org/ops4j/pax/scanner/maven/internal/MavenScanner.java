@@ -17,13 +17,33 @@
  */
 package org.ops4j.pax.scanner.maven.internal;
 
+import java.io.File;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.maven.mercury.artifact.*;
+import org.apache.maven.mercury.artifact.version.DefaultArtifactVersion;
 import org.apache.maven.mercury.builder.api.DependencyProcessor;
 import org.apache.maven.mercury.repository.api.ArtifactBasicResults;
 import org.apache.maven.mercury.repository.api.ArtifactResults;
@@ -39,12 +59,12 @@ import org.ops4j.pax.scanner.ProvisionSpec;
 import org.ops4j.pax.scanner.ScannedBundle;
 import org.ops4j.pax.scanner.Scanner;
 import org.ops4j.pax.scanner.ScannerException;
+import org.ops4j.pax.scanner.ScannerMetrics;
 import org.ops4j.pax.scanner.common.ScannedFileBundle;
 import org.ops4j.pax.scanner.common.ScannerConfiguration;
-import org.ops4j.pax.scanner.common.ScannerConfigurationImpl;
-import org.ops4j.pax.url.maven.commons.MavenConfiguration;
 import org.ops4j.pax.url.maven.commons.MavenConfigurationImpl;
 import org.ops4j.pax.url.maven.commons.MavenRepositoryURL;
+import org.ops4j.pax.url.maven.commons.MavenSettings;
 import org.ops4j.pax.url.maven.commons.MavenSettingsImpl;
 import org.ops4j.util.property.PropertyResolver;
 
@@ -64,21 +84,42 @@ public class MavenScanner
      */
     private static final Log LOGGER = LogFactory.getLog( MavenScanner.class );
     /**
-     * PropertyResolver used to resolve properties.
+     * Comparator of artifacts by version, ascending.
      */
-    private PropertyResolver m_propertyResolver;
+    private static final Comparator<ArtifactBasicMetadata> ASCENDING_VERSIONS = new Comparator<ArtifactBasicMetadata>()
+    {
+        public int compare( final ArtifactBasicMetadata artifact1, final ArtifactBasicMetadata artifact2 )
+        {
+            return new DefaultArtifactVersion( artifact1.getVersion() ).compareTo(
+                new DefaultArtifactVersion( artifact2.getVersion() )
+            );
+        }
+    };
     /**
-     * Scanner configuration.
+     * PropertyResolver used to resolve properties.
      */
-    private ScannerConfiguration m_scannerConfiguration;
+    private volatile PropertyResolver m_propertyResolver;
     /**
-     * Mercury virtual repository reader.
+     * Initialized state. Replaced as a whole on (re)initialization, so a scan never sees a partially applied
+     * configuration. Null before first successful initialization.
      */
-    private VirtualRepositoryReader m_vrr;
+    private volatile State m_state;
     /**
      * Exception in case that thrown during initialization.
      */
-    private Exception m_exception;
+    private volatile Exception m_exception;
+    /**
+     * Executor used to (re)initialize the scanner outside configuration admin callback thread.
+     */
+    private final ExecutorService m_initializer;
+    /**
+     * Pending initialization (if any).
+     */
+    private volatile Future<?> m_pendingInitialization;
+    /**
+     * Executor used to read batches of artifacts concurrently. Sized after the configured number of threads.
+     */
+    private final ThreadPoolExecutor m_reader;
 
     /**
      * Creates a new file scanner.
@@ -89,15 +130,43 @@ public class MavenScanner
     {
         NullArgumentException.validateNotNull( propertyResolver, "PropertyResolver" );
         m_propertyResolver = propertyResolver;
-        try
-        {
-            initialize();
-            m_exception = null;
-        }
-        catch( Exception e )
-        {
-            m_exception = e;
-        }
+        m_initializer = createExecutor( "Pax Scanner maven initializer" );
+        m_reader = createExecutor( "Pax Scanner maven reader" );
+        initialize( propertyResolver );
+    }
+
+    /**
+     * Creates an executor of one daemon thread, that times out when idle.
+     *
+     * @param name name of executor threads
+     *
+     * @return created executor
+     */
+    private static ThreadPoolExecutor createExecutor( final String name )
+    {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory()
+            {
+                public Thread newThread( final Runnable runnable )
+                {
+                    final Thread thread = new Thread( runnable, name );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            }
+        );
+        executor.allowCoreThreadTimeOut( true );
+        return executor;
+    }
+
+    /**
+     * Stops the scanner, stopping initialization and reader threads.
+     */
+    public void stop()
+    {
+        m_initializer.shutdownNow();
+        m_reader.shutdownNow();
     }
 
     /**
@@ -111,6 +180,7 @@ public class MavenScanner
 
         LOGGER.debug( "Scanning [" + provisionSpec.getPath() + "]" );
 
+        awaitInitialization();
         if( m_exception != null )
         {
             throw new ScannerException( "Exception while configuration", m_exception );
@@ -118,46 +188,27 @@ public class MavenScanner
 
         List<ScannedBundle> scannedBundles = new ArrayList<ScannedBundle>();
 
-        final Integer defaultStartLevel = getDefaultStartLevel( provisionSpec, m_scannerConfiguration );
-        final Boolean defaultStart = getDefaultStart( provisionSpec, m_scannerConfiguration );
-        final Boolean defaultUpdate = getDefaultUpdate( provisionSpec, m_scannerConfiguration );
+        final State state = m_state;
+        final Integer defaultStartLevel = getDefaultStartLevel( provisionSpec, state.getScannerConfiguration() );
+        final Boolean defaultStart = getDefaultStart( provisionSpec, state.getScannerConfiguration() );
+        final Boolean defaultUpdate = getDefaultUpdate( provisionSpec, state.getScannerConfiguration() );
 
         try
         {
-            List<ArtifactBasicMetadata> query = new ArrayList<ArtifactBasicMetadata>();
-            final ArtifactMetadata queryMeta = new ArtifactMetadata( provisionSpec.getPath() );
-            query.add( queryMeta );
-
-            final ArtifactBasicResults results = m_vrr.readVersions( query );
-            if( results.hasExceptions() )
+            final List<ArtifactBasicMetadata> versions = readVersions( state, provisionSpec.getPath() );
+            if( !versions.isEmpty() )
             {
-                //noinspection ThrowableResultOfMethodCallIgnored
-                throw new ScannerException( results.getError( queryMeta ).getMessage() );
-            }
-            if( results.hasResults( queryMeta ) )
-            {
-                final List<ArtifactBasicMetadata> foundArtifacts = results.getResult( queryMeta );
-                for( ArtifactBasicMetadata foundArtifact : foundArtifacts )
+                final List<ArtifactBasicMetadata> foundArtifacts = newest(
+                    versions, state.getScannerConfiguration().getMaxVersions()
+                );
+                for( File file : readFiles( state, foundArtifacts ) )
                 {
-                    final ArtifactResults artifactResults = m_vrr.readArtifacts( toList( foundArtifact ) );
-                    if( artifactResults.hasExceptions() )
-                    {
-                        //noinspection ThrowableResultOfMethodCallIgnored
-                        throw new ScannerException( artifactResults.getError( foundArtifact ).getMessage() );
-                    }
-                    if( artifactResults.hasResults( foundArtifact ) )
-                    {
-                        final List<Artifact> artifacts = artifactResults.getResults( foundArtifact );
-                        for( Artifact artifact : artifacts )
-                        {
-                            scannedBundles.add(
-                                new ScannedFileBundle(
-                                    artifact.getFile().toURL().toExternalForm(),
-                                    defaultStartLevel, defaultStart, defaultUpdate
-                                )
-                            );
-                        }
-                    }
+                    scannedBundles.add(
+                        new ScannedFileBundle(
+                            file.toURL().toExternalForm(),
+                            defaultStartLevel, defaultStart, defaultUpdate
+                        )
+                    );
                 }
             }
         }
@@ -169,34 +220,731 @@ public class MavenScanner
         {
             throw new ScannerException( e.getMessage() );
         }
+        finally
+        {
+            state.getMetadataCache().flush( Math.max( getTimeToLive( state, false ), getTimeToLive( state, true ) ) );
+        }
 
         return scannedBundles;
     }
 
     /**
-     * Initialize configurations and virtual repository reader.
+     * Reads the versions matching an artifact query. Versions are read from metadata cache as long as the cached
+     * entry did not expire (or regardless of expiration when offline) and from repositories otherwise.
+     *
+     * @param state initialized state
+     * @param path  artifact query
+     *
+     * @return found artifact versions
+     *
+     * @throws RepositoryException - If reading fails
+     * @throws ScannerException    - If versions could not be read
+     */
+    private static List<ArtifactBasicMetadata> readVersions( final State state, final String path )
+        throws RepositoryException, ScannerException
+    {
+        if( state.getLocalIndexes() != null && state.getRemoteRepositories().isEmpty() )
+        {
+            return readIndexedVersions( state.getLocalIndexes(), path );
+        }
+        final String key = state.getCacheKeyPrefix() + path;
+        final MetadataCache.Entry entry = state.getMetadataCache().get( key );
+        final boolean offline = state.getScannerConfiguration().isOffline();
+        if( entry != null && ( offline || !entry.isExpired( getTimeToLive( state, entry.containsSnapshots() ) ) ) )
+        {
+            LOGGER.debug( "Using cached versions of [" + path + "]" );
+            ScannerMetrics.recordCacheHit( org.ops4j.pax.scanner.maven.ServiceConstants.SCHEMA );
+            return fromCoordinates( entry.getCoordinates() );
+        }
+
+        ScannerMetrics.recordCacheMiss( org.ops4j.pax.scanner.maven.ServiceConstants.SCHEMA );
+        final List<ArtifactBasicMetadata> query = new ArrayList<ArtifactBasicMetadata>();
+        final ArtifactMetadata queryMeta = new ArtifactMetadata( path );
+        query.add( queryMeta );
+
+        final VirtualRepositoryReader vrr = state.getReaders().acquire();
+        final ArtifactBasicResults results;
+        try
+        {
+            results = vrr.readVersions( query );
+        }
+        finally
+        {
+            state.getReaders().release( vrr );
+        }
+        if( results.hasExceptions() )
+        {
+            if( entry != null )
+            {
+                LOGGER.warn( "Could not read versions of [" + path + "]. Using expired cached versions." );
+                return fromCoordinates( entry.getCoordinates() );
+            }
+            //noinspection ThrowableResultOfMethodCallIgnored
+            throw new ScannerException( results.getError( queryMeta ).getMessage() );
+        }
+        final List<ArtifactBasicMetadata> versions = new ArrayList<ArtifactBasicMetadata>();
+        if( results.hasResults( queryMeta ) )
+        {
+            versions.addAll( results.getResult( queryMeta ) );
+        }
+        if( !offline && !state.getRemoteRepositories().isEmpty() )
+        {
+            state.getMetadataCache().put( key, toCoordinates( versions ) );
+        }
+        return versions;
+    }
+
+    /**
+     * Reads the versions matching an artifact query from local repositories indexes. If the same version is available
+     * in more repositories the first one wins.
+     *
+     * @param localIndexes indexes of used repositories
+     * @param path         artifact query
+     *
+     * @return found artifact versions, in ascending version order
+     *
+     * @throws ScannerException - If the query is not valid
+     */
+    private static List<ArtifactBasicMetadata> readIndexedVersions( final List<LocalRepositoryIndex> localIndexes,
+                                                                    final String path )
+        throws ScannerException
+    {
+        if( localIndexes.size() == 1 )
+        {
+            return localIndexes.get( 0 ).readVersions( path );
+        }
+        final Map<String, ArtifactBasicMetadata> versions = new HashMap<String, ArtifactBasicMetadata>();
+        for( LocalRepositoryIndex localIndex : localIndexes )
+        {
+            for( ArtifactBasicMetadata version : localIndex.readVersions( path ) )
+            {
+                if( !versions.containsKey( version.getVersion() ) )
+                {
+                    versions.put( version.getVersion(), version );
+                }
+            }
+        }
+        final List<ArtifactBasicMetadata> found = new ArrayList<ArtifactBasicMetadata>( versions.values() );
+        Collections.sort( found, ASCENDING_VERSIONS );
+        return found;
+    }
+
+    /**
+     * Determines the time to live of cached versions as the minimum time to live of the remote repositories that
+     * could contribute to the cached versions, considering their release / snapshot policy.
+     *
+     * @param state     initialized state
+     * @param snapshots if cached versions contain snapshots
+     *
+     * @return time to live in millis
+     */
+    private static long getTimeToLive( final State state, final boolean snapshots )
+    {
+        long timeToLive = Long.MAX_VALUE;
+        boolean found = false;
+        for( MavenRepositoryURL repositoryURL : state.getRemoteRepositories() )
+        {
+            if( snapshots && repositoryURL.isSnapshotsEnabled() )
+            {
+                timeToLive = Math.min(
+                    timeToLive, state.getScannerConfiguration().getSnapshotMetadataTTL( repositoryURL.getId() )
+                );
+                found = true;
+            }
+            if( repositoryURL.isReleasesEnabled() )
+            {
+                timeToLive = Math.min(
+                    timeToLive, state.getScannerConfiguration().getMetadataTTL( repositoryURL.getId() )
+                );
+                found = true;
+            }
+        }
+        return found ? timeToLive : 0;
+    }
+
+    /**
+     * Converts artifacts to coordinates (groupId:artifactId:version:classifier:type) suitable for caching.
+     *
+     * @param artifacts to convert
+     *
+     * @return coordinates
+     */
+    private static List<String> toCoordinates( final List<ArtifactBasicMetadata> artifacts )
+    {
+        final List<String> coordinates = new ArrayList<String>();
+        for( ArtifactBasicMetadata artifact : artifacts )
+        {
+            coordinates.add(
+                artifact.getGroupId()
+                + ":" + artifact.getArtifactId()
+                + ":" + artifact.getVersion()
+                + ":" + ( artifact.getClassifier() == null ? "" : artifact.getClassifier() )
+                + ":" + ( artifact.getType() == null ? "" : artifact.getType() )
+            );
+        }
+        return coordinates;
+    }
+
+    /**
+     * Converts cached coordinates back to artifacts.
+     *
+     * @param coordinates to convert
+     *
+     * @return artifacts
+     */
+    private static List<ArtifactBasicMetadata> fromCoordinates( final List<String> coordinates )
+    {
+        final List<ArtifactBasicMetadata> artifacts = new ArrayList<ArtifactBasicMetadata>();
+        for( String coordinate : coordinates )
+        {
+            artifacts.add( new ArtifactMetadata( coordinate ) );
+        }
+        return artifacts;
+    }
+
+    /**
+     * Returns the files corresponding to found artifact versions. Artifacts present in indexed local repositories are
+     * taken directly from there, the rest are read via virtual repository readers.
+     *
+     * @param state          initialized state
+     * @param foundArtifacts artifacts to read
+     *
+     * @return artifact files, in the order of found artifacts
+     *
+     * @throws RepositoryException - If reading fails
+     * @throws ScannerException    - If one of the artifacts could not be read
+     */
+    private List<File> readFiles( final State state, final List<ArtifactBasicMetadata> foundArtifacts )
+        throws RepositoryException, ScannerException
+    {
+        final Map<ArtifactBasicMetadata, File> localFiles = new IdentityHashMap<ArtifactBasicMetadata, File>();
+        final List<ArtifactBasicMetadata> notLocal = new ArrayList<ArtifactBasicMetadata>();
+        for( ArtifactBasicMetadata foundArtifact : foundArtifacts )
+        {
+            final File file = findLocalFile(
+                state.getLocalIndexes(), !state.getRemoteRepositories().isEmpty(), foundArtifact
+            );
+            if( file == null )
+            {
+                notLocal.add( foundArtifact );
+            }
+            else
+            {
+                localFiles.put( foundArtifact, file );
+            }
+        }
+        final Map<ArtifactBasicMetadata, List<Artifact>> artifacts = readArtifacts( state, notLocal );
+        final List<File> files = new ArrayList<File>();
+        for( ArtifactBasicMetadata foundArtifact : foundArtifacts )
+        {
+            final File file = localFiles.get( foundArtifact );
+            if( file != null )
+            {
+                files.add( file );
+            }
+            else if( artifacts.containsKey( foundArtifact ) )
+            {
+                for( Artifact artifact : artifacts.get( foundArtifact ) )
+                {
+                    files.add( artifact.getFile() );
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Looks up an artifact in indexed local repositories. If there are remote repositories snapshots are not looked
+     * up, as the local copy may be outdated.
+     *
+     * @param localIndexes indexes of local repositories; can be null
+     * @param remote       true if there are remote repositories in use
+     * @param artifact     artifact to look up
+     *
+     * @return artifact file or null if artifact is not present in local repositories
+     */
+    static File findLocalFile( final List<LocalRepositoryIndex> localIndexes,
+                               final boolean remote,
+                               final ArtifactBasicMetadata artifact )
+    {
+        if( localIndexes == null || ( remote && isSnapshot( artifact.getVersion() ) ) )
+        {
+            return null;
+        }
+        for( LocalRepositoryIndex localIndex : localIndexes )
+        {
+            final File file = localIndex.getFile( artifact );
+            if( file.isFile() )
+            {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks if a version is a snapshot version (X-SNAPSHOT or timestamped X-yyyyMMdd.HHmmss-n).
+     *
+     * @param version version; can be null
+     *
+     * @return true if version is a snapshot version
+     */
+    private static boolean isSnapshot( final String version )
+    {
+        return version != null && ( version.endsWith( "SNAPSHOT" ) || version.matches( ".*-\\d{8}\\.\\d{6}-\\d+" ) );
+    }
+
+    /**
+     * Reads the artifacts (downloads if necessary) corresponding to found artifact versions. The artifacts are split
+     * into (at most) as many batches as configured threads, and every batch is read via one call to a virtual
+     * repository reader of its own. Batches are read concurrently by the reader executor while the order of the
+     * results follows the order of the found artifacts.
+     *
+     * @param state          initialized state
+     * @param foundArtifacts artifacts to read
+     *
+     * @return read artifacts, keyed by found artifact
+     *
+     * @throws RepositoryException - If reading fails
+     * @throws ScannerException    - If one of the artifacts could not be read
+     */
+    private Map<ArtifactBasicMetadata, List<Artifact>> readArtifacts( final State state,
+                                                                      final List<ArtifactBasicMetadata> foundArtifacts )
+        throws RepositoryException, ScannerException
+    {
+        final Map<ArtifactBasicMetadata, List<Artifact>> artifacts =
+            new IdentityHashMap<ArtifactBasicMetadata, List<Artifact>>();
+        final List<List<ArtifactBasicMetadata>> batches = batch(
+            foundArtifacts, state.getScannerConfiguration().getThreads()
+        );
+        if( batches.size() <= 1 )
+        {
+            for( List<ArtifactBasicMetadata> batch : batches )
+            {
+                artifacts.putAll( readArtifactsBatch( state.getReaders(), batch ) );
+            }
+            return artifacts;
+        }
+        LOGGER.debug( "Reading " + foundArtifacts.size() + " artifacts in " + batches.size() + " batches" );
+        final List<Future<Map<ArtifactBasicMetadata, List<Artifact>>>> futures =
+            new ArrayList<Future<Map<ArtifactBasicMetadata, List<Artifact>>>>();
+        try
+        {
+            for( final List<ArtifactBasicMetadata> batch : batches )
+            {
+                futures.add(
+                    m_reader.submit(
+                        new Callable<Map<ArtifactBasicMetadata, List<Artifact>>>()
+                        {
+                            public Map<ArtifactBasicMetadata, List<Artifact>> call()
+                                throws Exception
+                            {
+                                return readArtifactsBatch( state.getReaders(), batch );
+                            }
+                        }
+                    )
+                );
+            }
+            for( Future<Map<ArtifactBasicMetadata, List<Artifact>>> future : futures )
+            {
+                artifacts.putAll( future.get() );
+            }
+        }
+        catch( RejectedExecutionException e )
+        {
+            throw new ScannerException( "Scanner stopped" );
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new ScannerException( "Interrupted while reading artifacts" );
+        }
+        catch( ExecutionException e )
+        {
+            final Throwable cause = e.getCause();
+            if( cause instanceof ScannerException )
+            {
+                throw (ScannerException) cause;
+            }
+            if( cause instanceof RepositoryException )
+            {
+                throw (RepositoryException) cause;
+            }
+            throw new ScannerException( "Cannot read artifacts", cause );
+        }
+        finally
+        {
+            for( Future<Map<ArtifactBasicMetadata, List<Artifact>>> future : futures )
+            {
+                future.cancel( true );
+            }
+        }
+        return artifacts;
+    }
+
+    /**
+     * Splits found artifacts into (at most) as many batches of consecutive artifacts as threads. Batches differ in
+     * size by at most one artifact, except the last one that can be smaller.
+     *
+     * @param foundArtifacts artifacts to split
+     * @param threads        number of threads; null or less then 1 means 1
+     *
+     * @return batches, in the order of found artifacts (empty if there are no found artifacts)
+     */
+    static List<List<ArtifactBasicMetadata>> batch( final List<ArtifactBasicMetadata> foundArtifacts,
+                                                    final Integer threads )
+    {
+        final List<List<ArtifactBasicMetadata>> batches = new ArrayList<List<ArtifactBasicMetadata>>();
+        if( foundArtifacts.isEmpty() )
+        {
+            return batches;
+        }
+        final int count = Math.max( 1, Math.min( threads == null ? 1 : threads, foundArtifacts.size() ) );
+        final int batchSize = ( foundArtifacts.size() + count - 1 ) / count;
+        for( int i = 0; i < foundArtifacts.size(); i += batchSize )
+        {
+            batches.add(
+                new ArrayList<ArtifactBasicMetadata>(
+                    foundArtifacts.subList( i, Math.min( i + batchSize, foundArtifacts.size() ) )
+                )
+            );
+        }
+        return batches;
+    }
+
+    /**
+     * Reads a batch of artifacts via one call to a virtual repository reader, that is not used by any other thread
+     * meanwhile.
+     *
+     * @param readers virtual repository readers
+     * @param batch   artifacts to read
+     *
+     * @return read artifacts, keyed by found artifact
+     *
+     * @throws RepositoryException - If reading fails
+     * @throws ScannerException    - If one of the artifacts could not be read
+     */
+    private static Map<ArtifactBasicMetadata, List<Artifact>> readArtifactsBatch(
+        final ReaderPool readers,
+        final List<ArtifactBasicMetadata> batch )
+        throws RepositoryException, ScannerException
+    {
+        final VirtualRepositoryReader vrr = readers.acquire();
+        final ArtifactResults artifactResults;
+        try
+        {
+            artifactResults = vrr.readArtifacts( batch );
+        }
+        finally
+        {
+            readers.release( vrr );
+        }
+        final Map<ArtifactBasicMetadata, List<Artifact>> artifacts =
+            new IdentityHashMap<ArtifactBasicMetadata, List<Artifact>>();
+        for( ArtifactBasicMetadata foundArtifact : batch )
+        {
+            if( artifactResults.hasExceptions() && artifactResults.getError( foundArtifact ) != null )
+            {
+                //noinspection ThrowableResultOfMethodCallIgnored
+                throw new ScannerException( artifactResults.getError( foundArtifact ).getMessage() );
+            }
+            if( artifactResults.hasResults( foundArtifact ) )
+            {
+                artifacts.put( foundArtifact, artifactResults.getResults( foundArtifact ) );
+            }
+        }
+        return artifacts;
+    }
+
+    /**
+     * Limits found artifacts to the newest versions. The relative order of the kept artifacts is not changed.
+     *
+     * @param foundArtifacts found artifacts
+     * @param maxVersions    maximum number of versions to keep; null if all should be kept
+     *
+     * @return newest artifacts
+     */
+    static List<ArtifactBasicMetadata> newest( final List<ArtifactBasicMetadata> foundArtifacts,
+                                               final Integer maxVersions )
+    {
+        if( maxVersions == null || foundArtifacts.size() <= maxVersions )
+        {
+            return foundArtifacts;
+        }
+        final List<ArtifactBasicMetadata> sorted = new ArrayList<ArtifactBasicMetadata>( foundArtifacts );
+        Collections.sort( sorted, Collections.reverseOrder( ASCENDING_VERSIONS ) );
+        final Set<ArtifactBasicMetadata> kept = new HashSet<ArtifactBasicMetadata>( sorted.subList( 0, maxVersions ) );
+        final List<ArtifactBasicMetadata> newest = new ArrayList<ArtifactBasicMetadata>();
+        for( ArtifactBasicMetadata foundArtifact : foundArtifacts )
+        {
+            if( kept.contains( foundArtifact ) )
+            {
+                newest.add( foundArtifact );
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * Waits for a pending (re)initialization to finish.
+     *
+     * @throws ScannerException - If interrupted while waiting
+     */
+    void awaitInitialization()
+        throws ScannerException
+    {
+        final Future<?> pendingInitialization = m_pendingInitialization;
+        if( pendingInitialization != null )
+        {
+            try
+            {
+                pendingInitialization.get();
+            }
+            catch( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new ScannerException( "Interrupted while waiting for configuration" );
+            }
+            catch( ExecutionException e )
+            {
+                // initialization exceptions are captured in m_exception
+            }
+        }
+    }
+
+    /**
+     * Initialize configurations and virtual repository reader, remembering the exception (if any).
+     * Initialization is skipped if the property resolver was meanwhile replaced, as a newer initialization will
+     * follow.
+     *
+     * @param propertyResolver property resolver to initialize with
+     */
+    private synchronized void initialize( final PropertyResolver propertyResolver )
+    {
+        if( propertyResolver != m_propertyResolver )
+        {
+            LOGGER.debug( "Skipping initialization for an outdated configuration" );
+            return;
+        }
+        try
+        {
+            initialize();
+            m_exception = null;
+        }
+        catch( Exception e )
+        {
+            m_exception = e;
+        }
+    }
+
+    /**
+     * Initialize configurations and virtual repository reader. The maven settings are parsed again only if the
+     * settings file changed. The virtual repository reader, local indexes and metadata cache are reused if none of the
+     * inputs they are built from changed. The new state is published at once.
      *
      * @throws Exception - Re-thrown
      */
     private void initialize()
         throws Exception
     {
-        m_scannerConfiguration = createScannerConfiguration();
-        final MavenConfiguration mavenConfiguration = createMavenConfiguration();
+        final State current = m_state;
+        final MavenScannerConfiguration scannerConfiguration = createScannerConfiguration();
+        final MavenConfigurationImpl mavenConfiguration = createMavenConfiguration();
+        final URL settingsURL = mavenConfiguration.getSettingsFileUrl();
+        final String settingsFingerprint = fingerprint( settingsURL );
+        final MavenSettings settings;
+        if( current != null && settingsFingerprint.equals( current.getSettingsFingerprint() ) )
+        {
+            LOGGER.debug( "Maven settings did not change. Reusing parsed settings" );
+            settings = current.getSettings();
+        }
+        else
+        {
+            settings = createSettings( settingsURL );
+        }
+        mavenConfiguration.setSettings( settings );
 
-        final List<Repository> repositories = new ArrayList<Repository>();
+        resize( m_reader, scannerConfiguration.getThreads() );
+        final boolean offline = scannerConfiguration.isOffline();
+        final List<MavenRepositoryURL> usedRepositories = new ArrayList<MavenRepositoryURL>();
+        final List<MavenRepositoryURL> remoteRepositories = new ArrayList<MavenRepositoryURL>();
+        final List<MavenRepositoryURL> localRepositories = new ArrayList<MavenRepositoryURL>();
+        final StringBuilder cacheKeyPrefix = new StringBuilder();
+        final List<MavenRepositoryURL> repositoryURLs = new ArrayList<MavenRepositoryURL>();
         final MavenRepositoryURL localRepository = mavenConfiguration.getLocalRepository();
         if( localRepository != null )
         {
             LOGGER.debug( "Using local repository " + localRepository );
-            repositories.add( toRepository( localRepository ) );
+            repositoryURLs.add( localRepository );
+        }
+        repositoryURLs.addAll( mavenConfiguration.getRepositories() );
+        final boolean localIndex = scannerConfiguration.isLocalIndex();
+        final File metadataCacheFile = scannerConfiguration.getMetadataCacheFile();
+        final StringBuilder fingerprint = new StringBuilder()
+            .append( offline )
+            .append( ';' ).append( localIndex )
+            .append( ';' ).append( metadataCacheFile == null ? "" : metadataCacheFile.getAbsolutePath() );
+        for( MavenRepositoryURL repositoryURL : repositoryURLs )
+        {
+            fingerprint.append( ',' ).append( repositoryURL.getId() )
+                .append( '=' ).append( repositoryURL.getURL() )
+                .append( ';' ).append( repositoryURL.isReleasesEnabled() )
+                .append( ';' ).append( repositoryURL.isSnapshotsEnabled() )
+                .append( ';' ).append( scannerConfiguration.getMetadataTTL( repositoryURL.getId() ) )
+                .append( ';' ).append( scannerConfiguration.getSnapshotMetadataTTL( repositoryURL.getId() ) );
+        }
+        if( current != null && fingerprint.toString().equals( current.getFingerprint() ) )
+        {
+            LOGGER.debug( "Repositories configuration did not change. Reusing virtual repository reader" );
+            m_state = new State(
+                current.getFingerprint(),
+                settingsFingerprint,
+                settings,
+                scannerConfiguration,
+                current.getReaders(),
+                current.getMetadataCache(),
+                current.getRemoteRepositories(),
+                current.getLocalIndexes(),
+                current.getCacheKeyPrefix()
+            );
+            return;
+        }
+        for( MavenRepositoryURL repositoryURL : repositoryURLs )
+        {
+            // all configured repositories are part of the key so entries cached while online are used when offline
+            cacheKeyPrefix.append( repositoryURL.getId() ).append( '=' ).append( repositoryURL.getURL() ).append( ',' );
+            if( !repositoryURL.isFileRepository() )
+            {
+                if( offline )
+                {
+                    LOGGER.debug( "Offline. Skipping remote repository " + repositoryURL );
+                    continue;
+                }
+                LOGGER.debug( "Using remote repository " + repositoryURL );
+                remoteRepositories.add( repositoryURL );
+            }
+            else
+            {
+                localRepositories.add( repositoryURL );
+            }
+            usedRepositories.add( repositoryURL );
+        }
+        m_state = new State(
+            fingerprint.toString(),
+            settingsFingerprint,
+            settings,
+            scannerConfiguration,
+            new ReaderPool( usedRepositories ),
+            createMetadataCache( current, metadataCacheFile ),
+            remoteRepositories,
+            localIndex && !localRepositories.isEmpty()
+            ? createLocalIndexes( localRepositories, metadataCacheFile )
+            : null,
+            cacheKeyPrefix.append( '|' ).toString()
+        );
+    }
+
+    /**
+     * Returns a fingerprint of the maven settings file, that changes when the file changes. Files are fingerprinted by
+     * modification time and length, other urls by url only.
+     *
+     * @param settingsURL settings file url; can be null
+     *
+     * @return fingerprint
+     */
+    static String fingerprint( final URL settingsURL )
+    {
+        if( settingsURL == null )
+        {
+            return "";
+        }
+        if( "file".equals( settingsURL.getProtocol() ) )
+        {
+            try
+            {
+                final File file = new File( settingsURL.toURI() );
+                return settingsURL.toExternalForm() + "@" + file.lastModified() + "/" + file.length();
+            }
+            catch( URISyntaxException ignore )
+            {
+                // fall through to url only
+            }
+            catch( IllegalArgumentException ignore )
+            {
+                // fall through to url only
+            }
+        }
+        return settingsURL.toExternalForm();
+    }
+
+    /**
+     * Resizes an executor to a number of threads.
+     *
+     * @param executor executor to resize
+     * @param threads  number of threads; null or less then 1 means 1
+     */
+    private static void resize( final ThreadPoolExecutor executor, final Integer threads )
+    {
+        final int size = Math.max( 1, threads == null ? 1 : threads );
+        // maximum pool size cannot be set below core pool size
+        if( size > executor.getMaximumPoolSize() )
+        {
+            executor.setMaximumPoolSize( size );
+            executor.setCorePoolSize( size );
+        }
+        else
+        {
+            executor.setCorePoolSize( size );
+            executor.setMaximumPoolSize( size );
         }
-        for( MavenRepositoryURL repositoryURL : mavenConfiguration.getRepositories() )
+    }
+
+    /**
+     * Creates indexes of local repositories. Indexes are persisted next to the metadata cache file (if any).
+     *
+     * @param localRepositories local repositories
+     * @param metadataCacheFile metadata cache file; can be null
+     *
+     * @return indexes
+     */
+    private static List<LocalRepositoryIndex> createLocalIndexes( final List<MavenRepositoryURL> localRepositories,
+                                                                  final File metadataCacheFile )
+    {
+        final List<LocalRepositoryIndex> localIndexes = new ArrayList<LocalRepositoryIndex>();
+        for( MavenRepositoryURL repositoryURL : localRepositories )
         {
-            LOGGER.debug( "Using remote repository " + repositoryURL );
-            repositories.add( toRepository( repositoryURL ) );
+            LOGGER.debug( "Indexing local repository " + repositoryURL );
+            File indexFile = null;
+            if( metadataCacheFile != null )
+            {
+                indexFile = new File(
+                    metadataCacheFile.getAbsoluteFile().getParentFile(),
+                    "index-" + Integer.toHexString( repositoryURL.getFile().getAbsolutePath().hashCode() )
+                    + ".properties"
+                );
+            }
+            localIndexes.add( new LocalRepositoryIndex( repositoryURL, indexFile ) );
         }
-        m_vrr = new VirtualRepositoryReader( repositories );
+        return localIndexes;
+    }
+
+    /**
+     * Creates the metadata cache if there is none or the cache file changed, otherwise returns the current one.
+     *
+     * @param current           current state; can be null
+     * @param metadataCacheFile cache file; can be null
+     *
+     * @return metadata cache
+     */
+    private static MetadataCache createMetadataCache( final State current, final File metadataCacheFile )
+    {
+        if( current == null
+            || ( metadataCacheFile == null ? current.getMetadataCache().getFile() != null
+                 : !metadataCacheFile.equals( current.getMetadataCache().getFile() ) ) )
+        {
+            return new MetadataCache( metadataCacheFile );
+        }
+        return current.getMetadataCache();
     }
 
     /**
@@ -206,7 +954,7 @@ public class MavenScanner
      *
      * @return adapted
      */
-    private Repository toRepository( final MavenRepositoryURL repositoryURL )
+    private static Repository toRepository( final MavenRepositoryURL repositoryURL )
     {
         final Repository repository;
         if( repositoryURL.isFileRepository() )
@@ -245,21 +993,6 @@ public class MavenScanner
         throw new IllegalArgumentException( "Unsuported combination for releases/snapshots" );
     }
 
-    /**
-     * Utility to add var args elements into a list.
-     *
-     * @param elements to add
-     * @param <T>      any type
-     *
-     * @return list
-     */
-    private <T> List<T> toList( final T... elements )
-    {
-        final ArrayList<T> list = new ArrayList<T>();
-        list.addAll( Arrays.asList( elements ) );
-        return list;
-    }
-
     /**
      * Returns the default start level by first looking at the parser and if not set fallback to configuration.
      *
@@ -315,7 +1048,8 @@ public class MavenScanner
     }
 
     /**
-     * Sets the propertyResolver to use.
+     * Sets the propertyResolver to use. The scanner is re-initialized asynchronously so the caller (usually
+     * configuration admin) is not blocked; scans will wait for the re-initialization to finish.
      *
      * @param propertyResolver a propertyResolver
      */
@@ -323,15 +1057,15 @@ public class MavenScanner
     {
         NullArgumentException.validateNotNull( propertyResolver, "PropertyResolver" );
         m_propertyResolver = propertyResolver;
-        try
-        {
-            initialize();
-            m_exception = null;
-        }
-        catch( Exception e )
-        {
-            m_exception = e;
-        }
+        m_pendingInitialization = m_initializer.submit(
+            new Runnable()
+            {
+                public void run()
+                {
+                    initialize( propertyResolver );
+                }
+            }
+        );
     }
 
     /**
@@ -339,22 +1073,282 @@ public class MavenScanner
      *
      * @return a configuration
      */
-    ScannerConfiguration createScannerConfiguration()
+    MavenScannerConfiguration createScannerConfiguration()
     {
-        return new ScannerConfigurationImpl( m_propertyResolver, org.ops4j.pax.scanner.maven.ServiceConstants.PID );
+        return new MavenScannerConfigurationImpl( m_propertyResolver );
     }
 
     /**
-     * Creates a new scanner configuration.
+     * Creates a new maven configuration, without settings.
      *
      * @return a configuration
      */
-    MavenConfiguration createMavenConfiguration()
+    MavenConfigurationImpl createMavenConfiguration()
     {
-        final MavenConfigurationImpl configuration =
-            new MavenConfigurationImpl( m_propertyResolver, org.ops4j.pax.scanner.maven.ServiceConstants.PID );
-        configuration.setSettings( new MavenSettingsImpl( configuration.getSettingsFileUrl() ) );
-        return configuration;
+        return new MavenConfigurationImpl( m_propertyResolver, org.ops4j.pax.scanner.maven.ServiceConstants.PID );
+    }
+
+    /**
+     * Parses maven settings.
+     *
+     * @param settingsURL settings file url; can be null
+     *
+     * @return settings
+     */
+    MavenSettings createSettings( final URL settingsURL )
+    {
+        return new MavenSettingsImpl( settingsURL );
+    }
+
+    /**
+     * Everything an initialization produces. Immutable, so it can be published to concurrent scans at once.
+     */
+    private static final class State
+    {
+
+        /**
+         * Fingerprint of the inputs the reusable parts of the state were built from.
+         */
+        private final String m_fingerprint;
+        /**
+         * Fingerprint of maven settings file.
+         */
+        private final String m_settingsFingerprint;
+        /**
+         * Parsed maven settings.
+         */
+        private final MavenSettings m_settings;
+        /**
+         * Scanner configuration.
+         */
+        private final MavenScannerConfiguration m_scannerConfiguration;
+        /**
+         * Mercury virtual repository readers.
+         */
+        private final ReaderPool m_readers;
+        /**
+         * Cache of found versions.
+         */
+        private final MetadataCache m_metadataCache;
+        /**
+         * Remote repositories in use. Used to determine the time to live of cached versions.
+         */
+        private final List<MavenRepositoryURL> m_remoteRepositories;
+        /**
+         * Indexes of local repositories. Used to take artifacts present in local repositories without asking the
+         * virtual repository reader, and to read versions when all used repositories are local (file) repositories.
+         * Null if there are no local repositories or indexing is disabled.
+         */
+        private final List<LocalRepositoryIndex> m_localIndexes;
+        /**
+         * Prefix of metadata cache keys, identifying the repositories in use.
+         */
+        private final String m_cacheKeyPrefix;
+
+        /**
+         * Creates a new state.
+         *
+         * @param fingerprint          fingerprint of inputs
+         * @param settingsFingerprint  fingerprint of maven settings file
+         * @param settings             parsed maven settings
+         * @param scannerConfiguration scanner configuration
+         * @param readers              virtual repository readers
+         * @param metadataCache        cache of found versions
+         * @param remoteRepositories   remote repositories in use
+         * @param localIndexes         indexes of local repositories; can be null
+         * @param cacheKeyPrefix       prefix of metadata cache keys
+         */
+        State( final String fingerprint,
+               final String settingsFingerprint,
+               final MavenSettings settings,
+               final MavenScannerConfiguration scannerConfiguration,
+               final ReaderPool readers,
+               final MetadataCache metadataCache,
+               final List<MavenRepositoryURL> remoteRepositories,
+               final List<LocalRepositoryIndex> localIndexes,
+               final String cacheKeyPrefix )
+        {
+            m_fingerprint = fingerprint;
+            m_settingsFingerprint = settingsFingerprint;
+            m_settings = settings;
+            m_scannerConfiguration = scannerConfiguration;
+            m_readers = readers;
+            m_metadataCache = metadataCache;
+            m_remoteRepositories = Collections.unmodifiableList(
+                new ArrayList<MavenRepositoryURL>( remoteRepositories )
+            );
+            m_localIndexes = localIndexes == null
+                             ? null
+                             : Collections.unmodifiableList( new ArrayList<LocalRepositoryIndex>( localIndexes ) );
+            m_cacheKeyPrefix = cacheKeyPrefix;
+        }
+
+        /**
+         * Getter.
+         *
+         * @return fingerprint of inputs
+         */
+        String getFingerprint()
+        {
+            return m_fingerprint;
+        }
+
+        /**
+         * Getter.
+         *
+         * @return fingerprint of maven settings file
+         */
+        String getSettingsFingerprint()
+        {
+            return m_settingsFingerprint;
+        }
+
+        /**
+         * Getter.
+         *
+         * @return parsed maven settings
+         */
+        MavenSettings getSettings()
+        {
+            return m_settings;
+        }
+
+        /**
+         * Getter.
+         *
+         * @return scanner configuration
+         */
+        MavenScannerConfiguration getScannerConfiguration()
+        {
+            return m_scannerConfiguration;
+        }
+
+        /**
+         * Getter.
+         *
+         * @return virtual repository readers
+         */
+        ReaderPool getReaders()
+        {
+            return m_readers;
+        }
+
+        /**
+         * Getter.
+         *
+         * @return cache of found versions
+         */
+        MetadataCache getMetadataCache()
+        {
+            return m_metadataCache;
+        }
+
+        /**
+         * Getter.
+         *
+         * @return remote repositories in use
+         */
+        List<MavenRepositoryURL> getRemoteRepositories()
+        {
+            return m_remoteRepositories;
+        }
+
+        /**
+         * Getter.
+         *
+         * @return indexes of local repositories or null if not used
+         */
+        List<LocalRepositoryIndex> getLocalIndexes()
+        {
+            return m_localIndexes;
+        }
+
+        /**
+         * Getter.
+         *
+         * @return prefix of metadata cache keys
+         */
+        String getCacheKeyPrefix()
+        {
+            return m_cacheKeyPrefix;
+        }
+
+    }
+
+    /**
+     * Pool of virtual repository readers over the same repositories. As there is no evidence that a virtual
+     * repository reader (and its repositories) can be used concurrently, a reader is used by one thread at a time and
+     * a new one is created if all are in use.
+     */
+    private static final class ReaderPool
+    {
+
+        /**
+         * Repositories readers read from.
+         */
+        private final List<MavenRepositoryURL> m_repositoryURLs;
+        /**
+         * Readers not in use.
+         */
+        private final ConcurrentLinkedQueue<VirtualRepositoryReader> m_idle;
+
+        /**
+         * Creates a new pool, with one reader.
+         *
+         * @param repositoryURLs repositories readers read from
+         *
+         * @throws RepositoryException - If reader cannot be created
+         */
+        ReaderPool( final List<MavenRepositoryURL> repositoryURLs )
+            throws RepositoryException
+        {
+            m_repositoryURLs = Collections.unmodifiableList( new ArrayList<MavenRepositoryURL>( repositoryURLs ) );
+            m_idle = new ConcurrentLinkedQueue<VirtualRepositoryReader>();
+            m_idle.add( create() );
+        }
+
+        /**
+         * Takes a reader out of the pool, creating one if there is no reader not in use.
+         *
+         * @return reader, to be released after use
+         *
+         * @throws RepositoryException - If reader cannot be created
+         */
+        VirtualRepositoryReader acquire()
+            throws RepositoryException
+        {
+            final VirtualRepositoryReader vrr = m_idle.poll();
+            return vrr == null ? create() : vrr;
+        }
+
+        /**
+         * Returns a reader to the pool.
+         *
+         * @param vrr reader to return
+         */
+        void release( final VirtualRepositoryReader vrr )
+        {
+            m_idle.add( vrr );
+        }
+
+        /**
+         * Creates a reader over its own repositories.
+         *
+         * @return created reader
+         *
+         * @throws RepositoryException - If reader cannot be created
+         */
+        private VirtualRepositoryReader create()
+            throws RepositoryException
+        {
+            final List<Repository> repositories = new ArrayList<Repository>();
+            for( MavenRepositoryURL repositoryURL : m_repositoryURLs )
+            {
+                repositories.add( toRepository( repositoryURL ) );
+            }
+            return new VirtualRepositoryReader( repositories );
+        }
+
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.maven.internal;
+
+import java.io.File;
+import org.ops4j.pax.scanner.common.ScannerConfiguration;
+
+/**
+ * Maven scanner specific configuration.
+ *
+ * @since 1.2.0
+ */
+public interface MavenScannerConfiguration
+    extends ScannerConfiguration
+{
+
+    /**
+     * Returns the maximum number of versions, starting with the newest one, that will be provisioned out of the
+     * versions matching the scanned range.
+     *
+     * @return maximum number of versions or null if all matching versions should be provisioned
+     */
+    Integer getMaxVersions();
+
+    /**
+     * Returns the number of threads used to download the matching artifacts.
+     *
+     * @return number of threads (at least 1)
+     */
+    Integer getThreads();
+
+    /**
+     * Returns the time to live of cached release versions found in a repository.
+     *
+     * @param repositoryId repository id
+     *
+     * @return time to live in millis
+     */
+    Long getMetadataTTL( String repositoryId );
+
+    /**
+     * Returns the time to live of cached snapshot versions found in a repository.
+     *
+     * @param repositoryId repository id
+     *
+     * @return time to live in millis
+     */
+    Long getSnapshotMetadataTTL( String repositoryId );
+
+    /**
+     * Returns the file used to persist cached versions.
+     *
+     * @return cache file or null if cached versions should not be persisted
+     */
+    File getMetadataCacheFile();
+
+    /**
+     * Returns true if the scanner should not access remote repositories. When offline, cached versions are used
+     * regardless of their time to live.
+     *
+     * @return true if offline
+     */
+    Boolean isOffline();
+
+    /**
+     * Returns true if local (file) repositories should be indexed. Indexes are used instead of querying the
+     * repositories when all used repositories are local.
+     *
+     * @return true if local repositories should be indexed
+     */
+    Boolean isLocalIndex();
+
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.maven.internal;
+
+import java.io.File;
+import org.ops4j.pax.scanner.common.ScannerConfigurationImpl;
+import org.ops4j.pax.scanner.maven.ServiceConstants;
+import org.ops4j.util.property.PropertyResolver;
+
+/**
+ * Default implementation of {@link MavenScannerConfiguration}.
+ *
+ * @since 1.2.0
+ */
+public class MavenScannerConfigurationImpl
+    extends ScannerConfigurationImpl
+    implements MavenScannerConfiguration
+{
+
+    /**
+     * Default number of download threads.
+     */
+    private static final Integer DEFAULT_THREADS = 4;
+    /**
+     * Default time to live of cached release versions (seconds).
+     */
+    private static final long DEFAULT_METADATA_TTL = 3600;
+    /**
+     * Default time to live of cached snapshot versions (seconds).
+     */
+    private static final long DEFAULT_SNAPSHOT_METADATA_TTL = 60;
+
+    /**
+     * Creates a new service configuration.
+     *
+     * @param propertyResolver propertyResolver used to resolve properties; mandatory
+     */
+    public MavenScannerConfigurationImpl( final PropertyResolver propertyResolver )
+    {
+        super( propertyResolver, ServiceConstants.PID );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Integer getMaxVersions()
+    {
+        final String propertyName = getPid() + ServiceConstants.PROPERTY_MAX_VERSIONS;
+        if( !contains( propertyName ) )
+        {
+            final Integer value = toPositiveInteger( getPropertyResolver().get( propertyName ) );
+            return set( propertyName, value );
+        }
+        return get( propertyName );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Integer getThreads()
+    {
+        final String propertyName = getPid() + ServiceConstants.PROPERTY_THREADS;
+        if( !contains( propertyName ) )
+        {
+            final Integer value = toPositiveInteger( getPropertyResolver().get( propertyName ) );
+            if( value == null )
+            {
+                return set( propertyName, DEFAULT_THREADS );
+            }
+            return set( propertyName, value );
+        }
+        return get( propertyName );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Long getMetadataTTL( final String repositoryId )
+    {
+        return getTimeToLive( ServiceConstants.PROPERTY_METADATA_TTL, repositoryId, DEFAULT_METADATA_TTL );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Long getSnapshotMetadataTTL( final String repositoryId )
+    {
+        return getTimeToLive(
+            ServiceConstants.PROPERTY_SNAPSHOT_METADATA_TTL, repositoryId, DEFAULT_SNAPSHOT_METADATA_TTL
+        );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public File getMetadataCacheFile()
+    {
+        final String propertyName = getPid() + ServiceConstants.PROPERTY_METADATA_CACHE;
+        if( !contains( propertyName ) )
+        {
+            final String propertyValue = getPropertyResolver().get( propertyName );
+            if( propertyValue == null )
+            {
+                return set(
+                    propertyName,
+                    new File( System.getProperty( "java.io.tmpdir" ), "pax-scanner-maven/metadata.properties" )
+                );
+            }
+            if( propertyValue.trim().length() == 0 )
+            {
+                return set( propertyName, null );
+            }
+            return set( propertyName, new File( propertyValue.trim() ) );
+        }
+        return get( propertyName );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Boolean isOffline()
+    {
+        final String propertyName = getPid() + ServiceConstants.PROPERTY_OFFLINE;
+        if( !contains( propertyName ) )
+        {
+            return set( propertyName, Boolean.valueOf( getPropertyResolver().get( propertyName ) ) );
+        }
+        return get( propertyName );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Boolean isLocalIndex()
+    {
+        final String propertyName = getPid() + ServiceConstants.PROPERTY_LOCAL_INDEX;
+        if( !contains( propertyName ) )
+        {
+            final String propertyValue = getPropertyResolver().get( propertyName );
+            if( propertyValue == null )
+            {
+                return set( propertyName, Boolean.TRUE );
+            }
+            return set( propertyName, Boolean.valueOf( propertyValue ) );
+        }
+        return get( propertyName );
+    }
+
+    /**
+     * Returns a time to live by first looking at the repository specific property and if not set fallback to the
+     * general property and then to the default value.
+     *
+     * @param property     property name (without pid)
+     * @param repositoryId repository id; can be null
+     * @param defaultValue default value (seconds)
+     *
+     * @return time to live in millis
+     */
+    private Long getTimeToLive( final String property, final String repositoryId, final long defaultValue )
+    {
+        final String propertyName = repositoryId == null
+                                    ? getPid() + property
+                                    : getPid() + property + "." + repositoryId;
+        if( !contains( propertyName ) )
+        {
+            Long value = toSeconds( getPropertyResolver().get( propertyName ) );
+            if( value == null )
+            {
+                value = repositoryId == null
+                        ? Long.valueOf( defaultValue * 1000 )
+                        : getTimeToLive( property, null, defaultValue );
+            }
+            else
+            {
+                value = value * 1000;
+            }
+            return set( propertyName, value );
+        }
+        return get( propertyName );
+    }
+
+    /**
+     * Converts a property value to a positive or zero number of seconds.
+     *
+     * @param value property value; can be null
+     *
+     * @return seconds or null if value is not set, is not a number or is negative
+     */
+    private static Long toSeconds( final String value )
+    {
+        if( value != null )
+        {
+            try
+            {
+                final Long seconds = Long.valueOf( value.trim() );
+                if( seconds >= 0 )
+                {
+                    return seconds;
+                }
+            }
+            catch( NumberFormatException e )
+            {
+                // do nothing
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Converts a property value to a strictly positive integer.
+     *
+     * @param value property value; can be null
+     *
+     * @return integer value or null if value is not set, is not a number or is not positive
+     */
+    private static Integer toPositiveInteger( final String value )
+    {
+        if( value != null )
+        {
+            try
+            {
+                final Integer integer = Integer.valueOf( value.trim() );
+                if( integer > 0 )
+                {
+                    return integer;
+                }
+            }
+            catch( NumberFormatException e )
+            {
+                // do nothing
+            }
+        }
+        return null;
+    }
+
+}
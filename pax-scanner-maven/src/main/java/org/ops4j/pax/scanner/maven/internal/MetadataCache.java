@@ -0,0 +1,344 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.maven.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ops4j.lang.NullArgumentException;
+
+/**
+ * Cache of version queries results (maven metadata). Entries are kept in memory and mirrored into a properties file
+ * so they survive restarts. Entries do not expire by themselves; it is up to the user of the cache to decide, based on
+ * entry timestamp, if an entry is still usable.<br/>
+ * The number of entries is bounded; least recently used entries are dropped. Cached entries are written to file only
+ * on {@link #flush(long)}, so a scan resolving many queries writes the file once.
+ *
+ * @since 1.2.0
+ */
+class MetadataCache
+{
+
+    /**
+     * Logger.
+     */
+    private static final Log LOGGER = LogFactory.getLog( MetadataCache.class );
+    /**
+     * Separator between timestamp and coordinates in the persisted form.
+     */
+    private static final String SEPARATOR = " ";
+    /**
+     * Default maximum number of cached entries.
+     */
+    static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    /**
+     * File where the cache is persisted. Can be null, case when the cache is only kept in memory.
+     */
+    private final File m_file;
+    /**
+     * Cached entries, keyed by query.
+     */
+    private final Map<String, Entry> m_entries;
+    /**
+     * True if there are entries not yet written to file.
+     */
+    private boolean m_dirty;
+
+    /**
+     * Creates a cache holding at most {@link #DEFAULT_MAX_ENTRIES} and loads the entries persisted into file (if any).
+     *
+     * @param file file where the cache is persisted; can be null
+     */
+    MetadataCache( final File file )
+    {
+        this( file, DEFAULT_MAX_ENTRIES );
+    }
+
+    /**
+     * Creates a cache and loads the entries persisted into file (if any).
+     *
+     * @param file       file where the cache is persisted; can be null
+     * @param maxEntries maximum number of cached entries
+     */
+    MetadataCache( final File file, final int maxEntries )
+    {
+        m_file = file;
+        m_entries = new LinkedHashMap<String, Entry>( 16, 0.75f, true )
+        {
+            @Override
+            protected boolean removeEldestEntry( final Map.Entry<String, MetadataCache.Entry> eldest )
+            {
+                return size() > maxEntries;
+            }
+        };
+        load();
+    }
+
+    /**
+     * Getter.
+     *
+     * @return file where the cache is persisted; can be null
+     */
+    File getFile()
+    {
+        return m_file;
+    }
+
+    /**
+     * Returns the cached entry for a query.
+     *
+     * @param key query
+     *
+     * @return cached entry or null if there is no cached entry for the query
+     */
+    synchronized Entry get( final String key )
+    {
+        return m_entries.get( key );
+    }
+
+    /**
+     * Caches the result of a query. The cache is persisted on next {@link #flush(long)}.
+     *
+     * @param key         query; mandatory
+     * @param coordinates found artifact coordinates; mandatory
+     */
+    synchronized void put( final String key, final List<String> coordinates )
+    {
+        NullArgumentException.validateNotNull( key, "Key" );
+        NullArgumentException.validateNotNull( coordinates, "Coordinates" );
+        m_entries.put( key, new Entry( System.currentTimeMillis(), coordinates ) );
+        m_dirty = true;
+    }
+
+    /**
+     * Persists the cache if entries were cached since last flush. Entries older then the time to live are dropped
+     * before persisting.
+     *
+     * @param timeToLive time to live in millis of persisted entries
+     */
+    synchronized void flush( final long timeToLive )
+    {
+        if( !m_dirty )
+        {
+            return;
+        }
+        for( Iterator<Entry> it = m_entries.values().iterator(); it.hasNext(); )
+        {
+            if( it.next().isExpired( timeToLive ) )
+            {
+                it.remove();
+            }
+        }
+        store();
+        m_dirty = false;
+    }
+
+    /**
+     * Loads the cache from file (if any). Unreadable files / entries are ignored.
+     */
+    private void load()
+    {
+        if( m_file == null || !m_file.isFile() )
+        {
+            return;
+        }
+        final Properties properties = new Properties();
+        try
+        {
+            final InputStream inputStream = new FileInputStream( m_file );
+            try
+            {
+                properties.load( inputStream );
+            }
+            finally
+            {
+                inputStream.close();
+            }
+        }
+        catch( IOException e )
+        {
+            LOGGER.warn( "Could not read maven metadata cache from [" + m_file + "]", e );
+            return;
+        }
+        for( Object name : properties.keySet() )
+        {
+            final String key = (String) name;
+            final String[] segments = properties.getProperty( key ).trim().split( SEPARATOR );
+            try
+            {
+                final List<String> coordinates = new ArrayList<String>();
+                for( int i = 1; i < segments.length; i++ )
+                {
+                    if( segments[ i ].length() > 0 )
+                    {
+                        coordinates.add( segments[ i ] );
+                    }
+                }
+                m_entries.put( key, new Entry( Long.parseLong( segments[ 0 ] ), coordinates ) );
+            }
+            catch( NumberFormatException e )
+            {
+                LOGGER.debug( "Ignoring invalid cache entry [" + key + "]" );
+            }
+        }
+    }
+
+    /**
+     * Stores the cache to file (if any). The file is first written to a temporary file that is then renamed, so
+     * concurrent readers never see a partially written cache.
+     */
+    private void store()
+    {
+        if( m_file == null )
+        {
+            return;
+        }
+        final Properties properties = new Properties();
+        for( Map.Entry<String, Entry> entry : m_entries.entrySet() )
+        {
+            final StringBuilder value = new StringBuilder().append( entry.getValue().getTimestamp() );
+            for( String coordinate : entry.getValue().getCoordinates() )
+            {
+                value.append( SEPARATOR ).append( coordinate );
+            }
+            properties.setProperty( entry.getKey(), value.toString() );
+        }
+        try
+        {
+            final File parent = m_file.getAbsoluteFile().getParentFile();
+            if( parent != null )
+            {
+                parent.mkdirs();
+            }
+            final File temp = new File( m_file.getPath() + ".tmp" );
+            final OutputStream outputStream = new FileOutputStream( temp );
+            try
+            {
+                properties.store( outputStream, "Pax Scanner maven metadata cache" );
+            }
+            finally
+            {
+                outputStream.close();
+            }
+            if( !temp.renameTo( m_file ) )
+            {
+                m_file.delete();
+                if( !temp.renameTo( m_file ) )
+                {
+                    LOGGER.warn( "Could not write maven metadata cache to [" + m_file + "]" );
+                }
+            }
+        }
+        catch( IOException e )
+        {
+            LOGGER.warn( "Could not write maven metadata cache to [" + m_file + "]", e );
+        }
+    }
+
+    /**
+     * A cached query result.
+     */
+    static class Entry
+    {
+
+        /**
+         * Time (millis) when the entry was cached.
+         */
+        private final long m_timestamp;
+        /**
+         * Found artifact coordinates.
+         */
+        private final List<String> m_coordinates;
+
+        /**
+         * Creates a new entry.
+         *
+         * @param timestamp   time (millis) when the entry was cached
+         * @param coordinates found artifact coordinates
+         */
+        Entry( final long timestamp, final List<String> coordinates )
+        {
+            m_timestamp = timestamp;
+            m_coordinates = Collections.unmodifiableList( new ArrayList<String>( coordinates ) );
+        }
+
+        /**
+         * Getter.
+         *
+         * @return time (millis) when the entry was cached
+         */
+        long getTimestamp()
+        {
+            return m_timestamp;
+        }
+
+        /**
+         * Getter.
+         *
+         * @return found artifact coordinates
+         */
+        List<String> getCoordinates()
+        {
+            return m_coordinates;
+        }
+
+        /**
+         * Checks if any of the found artifacts is a snapshot.
+         *
+         * @return true if at least one of the found artifacts is a snapshot
+         */
+        boolean containsSnapshots()
+        {
+            for( String coordinate : m_coordinates )
+            {
+                if( coordinate.contains( "SNAPSHOT" ) )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Checks if the entry is older then a time to live.
+         *
+         * @param timeToLive time to live in millis
+         *
+         * @return true if entry expired
+         */
+        boolean isExpired( final long timeToLive )
+        {
+            return System.currentTimeMillis() - m_timestamp >= timeToLive;
+        }
+
+    }
+
+}
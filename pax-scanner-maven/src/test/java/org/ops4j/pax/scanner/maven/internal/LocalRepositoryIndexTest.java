@@ -0,0 +1,194 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.maven.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.maven.mercury.artifact.ArtifactBasicMetadata;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ops4j.pax.scanner.ScannerException;
+import org.ops4j.pax.url.maven.commons.MavenRepositoryURL;
+
+public class LocalRepositoryIndexTest
+{
+
+    private File m_repository;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        m_repository = File.createTempFile( "repository", "" );
+        m_repository.delete();
+        m_repository.mkdirs();
+    }
+
+    @After
+    public void tearDown()
+    {
+        delete( m_repository );
+    }
+
+    @Test
+    public void readVersions()
+        throws Exception
+    {
+        install( "1.0" );
+        install( "1.1" );
+        install( "2.0" );
+        install( "2.1-SNAPSHOT" );
+        final LocalRepositoryIndex index = new LocalRepositoryIndex( repository( "@snapshots" ), null );
+
+        assertEquals( "All versions", Arrays.asList( "1.0", "1.1", "2.0", "2.1-SNAPSHOT" ),
+                      versions( index.readVersions( "org.ops4j:bundle" ) )
+        );
+        assertEquals( "Exact version", Arrays.asList( "1.1" ),
+                      versions( index.readVersions( "org.ops4j:bundle:1.1" ) )
+        );
+        assertEquals( "Range", Arrays.asList( "1.0", "1.1" ),
+                      versions( index.readVersions( "org.ops4j:bundle:[1.0,2.0)" ) )
+        );
+        assertEquals( "Latest", Arrays.asList( "2.1-SNAPSHOT" ),
+                      versions( index.readVersions( "org.ops4j:bundle:LATEST" ) )
+        );
+        assertEquals( "Release", Arrays.asList( "2.0" ),
+                      versions( index.readVersions( "org.ops4j:bundle:RELEASE" ) )
+        );
+        for( ArtifactBasicMetadata artifact : index.readVersions( "org.ops4j:bundle" ) )
+        {
+            assertTrue( "Artifact file " + artifact, index.getFile( artifact ).isFile() );
+        }
+    }
+
+    @Test
+    public void snapshotsDisabled()
+        throws Exception
+    {
+        install( "1.0" );
+        install( "2.1-SNAPSHOT" );
+        final LocalRepositoryIndex index = new LocalRepositoryIndex( repository( "" ), null );
+        assertEquals( "Releases only", Arrays.asList( "1.0" ),
+                      versions( index.readVersions( "org.ops4j:bundle" ) )
+        );
+    }
+
+    @Test
+    public void newVersionIndexed()
+        throws Exception
+    {
+        install( "1.0" );
+        final File indexFile = new File( m_repository, "index.properties" );
+        final LocalRepositoryIndex index = new LocalRepositoryIndex( repository( "" ), indexFile );
+        assertEquals( "Versions", Arrays.asList( "1.0" ), versions( index.readVersions( "org.ops4j:bundle" ) ) );
+        assertTrue( "Index persisted", indexFile.isFile() );
+
+        install( "1.1" );
+        // make sure the artifact directory modification time changes
+        new File( m_repository, "org/ops4j/bundle" ).setLastModified( System.currentTimeMillis() + 10000 );
+        assertEquals( "Versions after install", Arrays.asList( "1.0", "1.1" ),
+                      versions( new LocalRepositoryIndex( repository( "" ), indexFile ).readVersions( "org.ops4j:bundle" ) )
+        );
+    }
+
+    @Test( expected = ScannerException.class )
+    public void invalidQuery()
+        throws Exception
+    {
+        new LocalRepositoryIndex( repository( "" ), null ).readVersions( "org.ops4j" );
+    }
+
+    @Test
+    public void selectReturnsVersionsUnchanged()
+        throws Exception
+    {
+        final String version1 = new String( "1.0" );
+        final String version2 = new String( "1.1" );
+        final List<String> selected = LocalRepositoryIndex.Range.parse( null ).select(
+            Arrays.asList( version2, version1 )
+        );
+        assertEquals( "Sorted", Arrays.asList( "1.0", "1.1" ), selected );
+        assertSame( "Original version", version1, selected.get( 0 ) );
+        assertSame( "Original version", version2, selected.get( 1 ) );
+        assertSame( "Latest", version2, LocalRepositoryIndex.Range.parse( "LATEST" ).select(
+            Arrays.asList( version1, version2 ) ).get( 0 )
+        );
+    }
+
+    @Test
+    public void rangeContains()
+        throws Exception
+    {
+        final LocalRepositoryIndex.Range range = LocalRepositoryIndex.Range.parse( "(,1.0],[1.2,1.5)" );
+        assertTrue( "Below upper bound", range.contains( "0.9" ) );
+        assertTrue( "Inclusive upper bound", range.contains( "1.0" ) );
+        assertFalse( "Between ranges", range.contains( "1.1" ) );
+        assertTrue( "Inclusive lower bound", range.contains( "1.2" ) );
+        assertFalse( "Exclusive upper bound", range.contains( "1.5" ) );
+    }
+
+    @Test( expected = ScannerException.class )
+    public void invalidRange()
+        throws Exception
+    {
+        LocalRepositoryIndex.Range.parse( "[1.0,2.0" );
+    }
+
+    private MavenRepositoryURL repository( final String options )
+        throws IOException
+    {
+        return new MavenRepositoryURL( m_repository.toURI().toURL().toExternalForm() + options );
+    }
+
+    private void install( final String version )
+        throws IOException
+    {
+        final File directory = new File( m_repository, "org/ops4j/bundle/" + version );
+        directory.mkdirs();
+        new File( directory, "bundle-" + version + ".jar" ).createNewFile();
+    }
+
+    private static List<String> versions( final List<ArtifactBasicMetadata> artifacts )
+    {
+        final List<String> versions = new ArrayList<String>();
+        for( ArtifactBasicMetadata artifact : artifacts )
+        {
+            versions.add( artifact.getVersion() );
+        }
+        return versions;
+    }
+
+    private static void delete( final File file )
+    {
+        final File[] files = file.listFiles();
+        if( files != null )
+        {
+            for( File child : files )
+            {
+                delete( child );
+            }
+        }
+        file.delete();
+    }
+
+}
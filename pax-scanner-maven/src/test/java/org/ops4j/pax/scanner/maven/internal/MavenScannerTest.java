@@ -0,0 +1,272 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.maven.internal;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.maven.mercury.artifact.ArtifactBasicMetadata;
+import org.apache.maven.mercury.artifact.ArtifactMetadata;
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.ops4j.pax.url.maven.commons.MavenConfigurationImpl;
+import org.ops4j.pax.url.maven.commons.MavenRepositoryURL;
+import org.ops4j.pax.url.maven.commons.MavenSettings;
+import org.ops4j.pax.url.maven.commons.MavenSettingsImpl;
+import org.ops4j.util.property.PropertyResolver;
+
+public class MavenScannerTest
+{
+
+    @Test
+    public void newestKeepsAllWithoutMaxVersions()
+    {
+        final List<ArtifactBasicMetadata> found = artifacts( "1.0", "3.0", "2.0" );
+        assertSame( "Found artifacts", found, MavenScanner.newest( found, null ) );
+        assertSame( "Found artifacts", found, MavenScanner.newest( found, 3 ) );
+    }
+
+    @Test
+    public void newestKeepsOrderOfNewestVersions()
+    {
+        final List<ArtifactBasicMetadata> found = artifacts( "2.0", "1.0", "4.0", "3.0" );
+        assertEquals( "Newest versions", versions( "4.0", "3.0" ), versions( MavenScanner.newest( found, 2 ) ) );
+        assertEquals( "Newest version", versions( "4.0" ), versions( MavenScanner.newest( found, 1 ) ) );
+    }
+
+    @Test
+    public void batchOfNoArtifacts()
+    {
+        assertTrue( "Batches", MavenScanner.batch( new ArrayList<ArtifactBasicMetadata>(), 4 ).isEmpty() );
+    }
+
+    @Test
+    public void batchSplitsInAtMostThreadsBatches()
+    {
+        final List<ArtifactBasicMetadata> found = artifacts( "1.0", "2.0", "3.0", "4.0", "5.0" );
+        final List<List<ArtifactBasicMetadata>> batches = MavenScanner.batch( found, 2 );
+        assertEquals( "Number of batches", 2, batches.size() );
+        assertEquals( "First batch", versions( "1.0", "2.0", "3.0" ), versions( batches.get( 0 ) ) );
+        assertEquals( "Second batch", versions( "4.0", "5.0" ), versions( batches.get( 1 ) ) );
+    }
+
+    @Test
+    public void batchPerArtifactIfMoreThreadsThanArtifacts()
+    {
+        final List<List<ArtifactBasicMetadata>> batches = MavenScanner.batch( artifacts( "1.0", "2.0" ), 8 );
+        assertEquals( "Number of batches", 2, batches.size() );
+        assertEquals( "First batch", versions( "1.0" ), versions( batches.get( 0 ) ) );
+        assertEquals( "Second batch", versions( "2.0" ), versions( batches.get( 1 ) ) );
+    }
+
+    @Test
+    public void batchWithoutThreads()
+    {
+        final List<ArtifactBasicMetadata> found = artifacts( "1.0", "2.0", "3.0" );
+        assertEquals( "Number of batches", 1, MavenScanner.batch( found, null ).size() );
+        assertEquals( "Number of batches", 1, MavenScanner.batch( found, 0 ).size() );
+        assertEquals( "Batch", versions( "1.0", "2.0", "3.0" ), versions( MavenScanner.batch( found, 1 ).get( 0 ) ) );
+    }
+
+    @Test
+    public void settingsFingerprintChangesWithSettingsFile()
+        throws Exception
+    {
+        final File file = File.createTempFile( "settings", ".xml" );
+        file.deleteOnExit();
+        write( file, "<settings/>" );
+        final URL url = file.toURI().toURL();
+        final String fingerprint = MavenScanner.fingerprint( url );
+        assertEquals( "Unchanged settings", fingerprint, MavenScanner.fingerprint( url ) );
+        file.setLastModified( file.lastModified() + 2000 );
+        assertFalse( "Changed settings", fingerprint.equals( MavenScanner.fingerprint( url ) ) );
+        assertEquals( "No settings", "", MavenScanner.fingerprint( null ) );
+    }
+
+    @Test
+    public void settingsParsedOnlyWhenSettingsFileChanges()
+        throws Exception
+    {
+        final File file = File.createTempFile( "settings", ".xml" );
+        file.deleteOnExit();
+        write( file, "<settings/>" );
+        final URL url = file.toURI().toURL();
+        final PropertyResolver propertyResolver = createMock( PropertyResolver.class );
+        final MavenScannerConfiguration config = createMock( MavenScannerConfiguration.class );
+        expect( config.isOffline() ).andReturn( false ).anyTimes();
+        expect( config.isLocalIndex() ).andReturn( false ).anyTimes();
+        expect( config.getMetadataCacheFile() ).andReturn( null ).anyTimes();
+        expect( config.getThreads() ).andReturn( 1 ).anyTimes();
+        replay( propertyResolver, config );
+        final List<URL> parsed = new ArrayList<URL>();
+
+        final MavenScanner scanner = new MavenScanner( propertyResolver )
+        {
+            @Override
+            MavenScannerConfiguration createScannerConfiguration()
+            {
+                return config;
+            }
+
+            @Override
+            MavenConfigurationImpl createMavenConfiguration()
+            {
+                return new MavenConfigurationImpl( propertyResolver, "org.ops4j.pax.scanner.maven" )
+                {
+                    @Override
+                    public URL getSettingsFileUrl()
+                    {
+                        return url;
+                    }
+
+                    @Override
+                    public MavenRepositoryURL getLocalRepository()
+                    {
+                        return null;
+                    }
+
+                    @Override
+                    public List<MavenRepositoryURL> getRepositories()
+                    {
+                        return new ArrayList<MavenRepositoryURL>();
+                    }
+                };
+            }
+
+            @Override
+            MavenSettings createSettings( final URL settingsURL )
+            {
+                parsed.add( settingsURL );
+                return new MavenSettingsImpl( settingsURL );
+            }
+        };
+        try
+        {
+            assertEquals( "Settings parsed on creation", 1, parsed.size() );
+            scanner.setResolver( propertyResolver );
+            scanner.awaitInitialization();
+            assertEquals( "Unchanged settings are not parsed", 1, parsed.size() );
+            file.setLastModified( file.lastModified() + 2000 );
+            scanner.setResolver( propertyResolver );
+            scanner.awaitInitialization();
+            assertEquals( "Changed settings are parsed", 2, parsed.size() );
+        }
+        finally
+        {
+            scanner.stop();
+        }
+    }
+
+    @Test
+    public void localFileFoundBeforeRemote()
+        throws Exception
+    {
+        final File repository = File.createTempFile( "repository", "" );
+        repository.delete();
+        final File jar = new File( repository, "org/ops4j/bundle/1.0/bundle-1.0.jar" );
+        final File snapshot = new File( repository, "org/ops4j/bundle/2.0-SNAPSHOT/bundle-2.0-SNAPSHOT.jar" );
+        try
+        {
+            jar.getParentFile().mkdirs();
+            write( jar, "" );
+            snapshot.getParentFile().mkdirs();
+            write( snapshot, "" );
+            final List<LocalRepositoryIndex> indexes = new ArrayList<LocalRepositoryIndex>();
+            indexes.add(
+                new LocalRepositoryIndex(
+                    new MavenRepositoryURL( repository.toURI().toURL().toExternalForm() + "@snapshots" ), null
+                )
+            );
+            final ArtifactBasicMetadata release = artifacts( "1.0" ).get( 0 );
+            final ArtifactBasicMetadata missing = artifacts( "3.0" ).get( 0 );
+            final ArtifactBasicMetadata snapshotArtifact = artifacts( "2.0-SNAPSHOT" ).get( 0 );
+
+            assertEquals( "Local file", jar, MavenScanner.findLocalFile( indexes, true, release ) );
+            assertNull( "Missing file is read remotely", MavenScanner.findLocalFile( indexes, true, missing ) );
+            assertNull(
+                "Snapshot is read remotely", MavenScanner.findLocalFile( indexes, true, snapshotArtifact )
+            );
+            assertEquals(
+                "Snapshot without remote repositories", snapshot,
+                MavenScanner.findLocalFile( indexes, false, snapshotArtifact )
+            );
+            assertNull( "Without indexes", MavenScanner.findLocalFile( null, false, release ) );
+        }
+        finally
+        {
+            jar.delete();
+            snapshot.delete();
+            jar.getParentFile().delete();
+            snapshot.getParentFile().delete();
+            new File( repository, "org/ops4j/bundle" ).delete();
+            new File( repository, "org/ops4j" ).delete();
+            new File( repository, "org" ).delete();
+            repository.delete();
+        }
+    }
+
+    private static void write( final File file, final String content )
+        throws IOException
+    {
+        final Writer writer = new FileWriter( file );
+        try
+        {
+            writer.write( content );
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    private static List<ArtifactBasicMetadata> artifacts( final String... versions )
+    {
+        final List<ArtifactBasicMetadata> artifacts = new ArrayList<ArtifactBasicMetadata>();
+        for( String version : versions )
+        {
+            artifacts.add( new ArtifactMetadata( "org.ops4j:bundle:" + version ) );
+        }
+        return artifacts;
+    }
+
+    private static List<String> versions( final String... versions )
+    {
+        final List<String> list = new ArrayList<String>();
+        for( String version : versions )
+        {
+            list.add( version );
+        }
+        return list;
+    }
+
+    private static List<String> versions( final List<ArtifactBasicMetadata> artifacts )
+    {
+        final List<String> versions = new ArrayList<String>();
+        for( ArtifactBasicMetadata artifact : artifacts )
+        {
+            versions.add( artifact.getVersion() );
+        }
+        return versions;
+    }
+
+}
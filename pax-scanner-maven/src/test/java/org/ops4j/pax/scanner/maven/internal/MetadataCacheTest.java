@@ -0,0 +1,121 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.maven.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MetadataCacheTest
+{
+
+    private static final List<String> COORDINATES = Arrays.asList( "org.ops4j:bundle:1.0::jar" );
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private File m_file;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        m_file = File.createTempFile( "metadata", ".properties" );
+        m_file.delete();
+    }
+
+    @After
+    public void tearDown()
+    {
+        m_file.delete();
+    }
+
+    @Test
+    public void expiry()
+    {
+        final MetadataCache cache = new MetadataCache( null );
+        cache.put( "query", COORDINATES );
+        final MetadataCache.Entry entry = cache.get( "query" );
+        assertEquals( "Coordinates", COORDINATES, entry.getCoordinates() );
+        assertFalse( "Expired within time to live", entry.isExpired( HOUR ) );
+        assertTrue( "Expired after time to live", entry.isExpired( 0 ) );
+        assertTrue( "Old entry expired", new MetadataCache.Entry( 0, COORDINATES ).isExpired( HOUR ) );
+    }
+
+    @Test
+    public void persistenceRoundTrip()
+    {
+        final MetadataCache cache = new MetadataCache( m_file );
+        cache.put( "query1", COORDINATES );
+        cache.put( "query2", Arrays.<String>asList() );
+        assertFalse( "Written before flush", m_file.exists() );
+
+        cache.flush( HOUR );
+        final MetadataCache loaded = new MetadataCache( m_file );
+        assertEquals( "Coordinates", COORDINATES, loaded.get( "query1" ).getCoordinates() );
+        assertEquals( "Timestamp", cache.get( "query1" ).getTimestamp(), loaded.get( "query1" ).getTimestamp() );
+        assertTrue( "Empty coordinates", loaded.get( "query2" ).getCoordinates().isEmpty() );
+    }
+
+    @Test
+    public void flushDropsExpiredEntries()
+        throws IOException
+    {
+        final Properties properties = new Properties();
+        properties.setProperty( "old", "1000 org.ops4j:old:1.0::jar" );
+        final OutputStream outputStream = new FileOutputStream( m_file );
+        try
+        {
+            properties.store( outputStream, null );
+        }
+        finally
+        {
+            outputStream.close();
+        }
+        final MetadataCache cache = new MetadataCache( m_file );
+        assertNotNull( "Loaded", cache.get( "old" ) );
+
+        cache.put( "new", COORDINATES );
+        cache.flush( HOUR );
+        assertNull( "Expired entry dropped", cache.get( "old" ) );
+        final MetadataCache loaded = new MetadataCache( m_file );
+        assertNull( "Expired entry not persisted", loaded.get( "old" ) );
+        assertNotNull( "Entry persisted", loaded.get( "new" ) );
+    }
+
+    @Test
+    public void bounded()
+    {
+        final MetadataCache cache = new MetadataCache( null, 2 );
+        cache.put( "query1", COORDINATES );
+        cache.put( "query2", COORDINATES );
+        // query1 becomes the most recently used
+        cache.get( "query1" );
+        cache.put( "query3", COORDINATES );
+        assertNotNull( "Recently used kept", cache.get( "query1" ) );
+        assertNull( "Least recently used dropped", cache.get( "query2" ) );
+        assertNotNull( "Just cached kept", cache.get( "query3" ) );
+    }
+
+}
@@ -22,22 +22,34 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
 import org.osgi.service.obr.RepositoryAdmin;
 import org.osgi.service.obr.Requirement;
 import org.osgi.service.obr.Resolver;
 import org.osgi.service.obr.Resource;
+import org.osgi.util.tracker.ServiceTracker;
+import org.ops4j.pax.scanner.obr.ObrScript;
 import org.ops4j.pax.swissbox.property.BundleContextPropertyResolver;
 import org.ops4j.pax.swissbox.tracker.ReplaceableService;
 import org.ops4j.pax.swissbox.tracker.ReplaceableServiceListener;
 
 /**
+ * Discovers and deploys via OBR the bundles matching the filters published by obr scanner as {@link ObrScript}
+ * services (and the filters from the script file set via "org.ops4j.pax.scanner.obr.script" property, if any).
+ * All filters pending deployment are resolved in one resolver run, every time the repository admin changes or new
+ * filters are published.
+ *
  * @author Alin Dreghiciu
  * @since 0.7.0, February 04, 2008
  */
@@ -50,14 +62,87 @@ public class Activator
      */
     private static final Log LOG = LogFactory.getLog( Activator.class );
 
+    /**
+     * Filters read from script file.
+     */
+    private List<String> m_scriptFilters;
+    /**
+     * Tracked obr scripts.
+     */
+    private final List<ObrScript> m_obrScripts = new ArrayList<ObrScript>();
+    /**
+     * Filters already deployed with current repository admin.
+     */
+    private final Set<String> m_deployed = new HashSet<String>();
+    /**
+     * Index of repository resources.
+     */
+    private final ResourceIndex m_resourceIndex = new ResourceIndex();
+    /**
+     * Bundle context.
+     */
+    private BundleContext m_bundleContext;
+    /**
+     * Cache of resolution plans.
+     */
+    private PlanCache m_planCache;
+    /**
+     * Current repository admin. Null if there is none.
+     */
+    private RepositoryAdmin m_repositoryAdmin;
+    /**
+     * Obr scripts tracker.
+     */
+    private ServiceTracker m_obrScriptTracker;
+    /**
+     * Repository admin tracker.
+     */
+    private ReplaceableService<RepositoryAdmin> m_repositoryAdminService;
+
     public void start( final BundleContext bundleContext )
         throws Exception
     {
-        final List<String> filters =
+        m_bundleContext = bundleContext;
+        m_planCache = new PlanCache( bundleContext.getDataFile( "plans.properties" ) );
+        m_scriptFilters =
             readScript(
                 new BundleContextPropertyResolver( bundleContext ).get( "org.ops4j.pax.scanner.obr.script" )
             );
-        final ReplaceableService<RepositoryAdmin> replaceableService =
+        m_obrScriptTracker = new ServiceTracker( bundleContext, ObrScript.class.getName(), null )
+        {
+            @Override
+            public Object addingService( final ServiceReference serviceReference )
+            {
+                final Object service = super.addingService( serviceReference );
+                if( service instanceof ObrScript )
+                {
+                    synchronized( Activator.this )
+                    {
+                        m_obrScripts.add( (ObrScript) service );
+                    }
+                    deploy();
+                }
+                return service;
+            }
+
+            @Override
+            public void modifiedService( final ServiceReference serviceReference, final Object service )
+            {
+                deploy();
+            }
+
+            @Override
+            public void removedService( final ServiceReference serviceReference, final Object service )
+            {
+                synchronized( Activator.this )
+                {
+                    m_obrScripts.remove( service );
+                }
+                super.removedService( serviceReference, service );
+            }
+        };
+        m_obrScriptTracker.open();
+        m_repositoryAdminService =
             new ReplaceableService<RepositoryAdmin>(
                 bundleContext,
                 RepositoryAdmin.class,
@@ -67,71 +152,212 @@ public class Activator
                     public void serviceChanged( final RepositoryAdmin ignore,
                                                 final RepositoryAdmin repositoryAdmin )
                     {
-                        if( repositoryAdmin != null )
+                        synchronized( Activator.this )
                         {
-                            LOG.debug( "Using OBR to resolve " + filters );
-                            final Resolver resolver = repositoryAdmin.resolver();
-                            boolean shouldResolve = false;
-                            for( String filter : filters )
-                            {
-                                final Resource[] resources = repositoryAdmin.discoverResources( filter );
-                                if( resources == null || resources.length == 0 )
-                                {
-                                    LOG.warn( "Cannot find a bundle matching [" + filter + "]. Skipping." );
-                                }
-                                else
-                                {
-                                    // TODO select highest resolved version
-                                    resolver.add( resources[ 0 ] );
-                                    shouldResolve = true;
-                                }
-                            }
-                            if( shouldResolve )
+                            m_repositoryAdmin = repositoryAdmin;
+                            m_deployed.clear();
+                        }
+                        deploy();
+                    }
+                }
+            );
+        m_repositoryAdminService.start();
+    }
+
+    /**
+     * Resolves and deploys, in one resolver run, all the filters that were not yet deployed with current repository
+     * admin. If the same filters were already resolved against the same repositories the cached plan is deployed
+     * without resolving.
+     */
+    private synchronized void deploy()
+    {
+        if( m_repositoryAdmin == null )
+        {
+            return;
+        }
+        final Set<String> filters = new LinkedHashSet<String>( m_scriptFilters );
+        final Set<String> repositories = new LinkedHashSet<String>();
+        for( ObrScript obrScript : m_obrScripts )
+        {
+            for( String filter : obrScript.getFilters() )
+            {
+                filters.add( filter );
+            }
+            for( String repository : obrScript.getRepositories() )
+            {
+                repositories.add( repository );
+            }
+        }
+        filters.removeAll( m_deployed );
+        if( filters.isEmpty() )
+        {
+            return;
+        }
+        m_deployed.addAll( filters );
+        // fingerprints published by the scanner avoid asking repository admin (and so parsing the repositories)
+        if( repositories.isEmpty() )
+        {
+            repositories.addAll( PlanCache.fingerprints( m_repositoryAdmin.listRepositories() ) );
+        }
+        final String planKey = PlanCache.key( filters, repositories );
+        final List<String> plan = m_planCache.get( planKey );
+        if( plan != null && deployPlan( plan ) )
+        {
+            LOG.debug( "Deployed cached resolution of " + filters );
+            return;
+        }
+        // plan is missing or could not be deployed (so it is stale)
+        m_planCache.remove( planKey );
+        LOG.debug( "Using OBR to resolve " + filters );
+        m_resourceIndex.refresh( m_repositoryAdmin );
+        final Resolver resolver = m_repositoryAdmin.resolver();
+        boolean shouldResolve = false;
+        for( String filter : filters )
+        {
+            final Resource[] resources = m_resourceIndex.discoverResources( filter );
+            if( resources.length == 0 )
+            {
+                LOG.warn( "Cannot find a bundle matching [" + filter + "]. Skipping." );
+            }
+            else
+            {
+                // resources are sorted by version so the first one is the highest version
+                resolver.add( resources[ 0 ] );
+                shouldResolve = true;
+            }
+        }
+        if( shouldResolve )
+        {
+            if( resolver.resolve() )
+            {
+                // install and start filters
+                resolver.deploy( true );
+                m_planCache.put(
+                    planKey,
+                    getURLs(
+                        resolver.getAddedResources(), resolver.getRequiredResources(),
+                        resolver.getOptionalResources()
+                    )
+                );
+            }
+            else
+            {
+                LOG.warn( "Could not resolve bundles due to unsatisfied requirements." );
+                if( LOG.isTraceEnabled() )
+                {
+                    final Requirement[] requirements = resolver.getUnsatisfiedRequirements();
+                    if( requirements != null && requirements.length > 0 )
+                    {
+                        for( Requirement req : requirements )
+                        {
+                            final Resource[] unresolvedResources = resolver.getResources( req );
+                            if( unresolvedResources != null )
                             {
-                                if( resolver.resolve() )
+                                // seems like felix is returning the same resource multiple times
+                                // so put the id's in a set
+                                final Set<String> uniques = new HashSet<String>();
+                                for( Resource unresolvedResource : unresolvedResources )
                                 {
-                                    // install and start filters
-                                    resolver.deploy( true );
+                                    uniques.add( unresolvedResource.getId() );
                                 }
-                                else
+                                for( String unique : uniques )
                                 {
-                                    LOG.warn( "Could not resolve bundles due to unsatisfied requirements." );
-                                    if( LOG.isTraceEnabled() )
-                                    {
-                                        final Requirement[] requirements = resolver.getUnsatisfiedRequirements();
-                                        if( requirements != null && requirements.length > 0 )
-                                        {
-                                            for( Requirement req : requirements )
-                                            {
-                                                final Resource[] unresolvedResources = resolver.getResources( req );
-                                                if( unresolvedResources != null )
-                                                {
-                                                    // seems like felix is returning the same resource multiple times
-                                                    // so put the id's in a set
-                                                    final Set<String> uniques = new HashSet<String>();
-                                                    for( Resource unresolvedResource : unresolvedResources )
-                                                    {
-                                                        uniques.add( unresolvedResource.getId() );
-                                                    }
-                                                    for( String unique : uniques )
-                                                    {
-                                                        LOG.trace( "Unsatisified : "
-                                                                   + req.getFilter()
-                                                                   + " of "
-                                                                   + unique
-                                                        );
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    }
+                                    LOG.trace( "Unsatisified : "
+                                               + req.getFilter()
+                                               + " of "
+                                               + unique
+                                    );
                                 }
                             }
                         }
                     }
                 }
-            );
-        replaceableService.start();
+            }
+        }
+    }
+
+    /**
+     * Deploys a cached resolution plan: installs the bundles that are not yet installed and starts all of them
+     * (fragments excepted). If deployment fails the bundles installed by this plan are uninstalled, so the plan can be
+     * resolved again from a clean state.
+     *
+     * @param urls urls of the bundles to deploy
+     *
+     * @return true if deployed, false if a bundle could not be installed / started
+     */
+    private boolean deployPlan( final List<String> urls )
+    {
+        final Map<String, Bundle> installed = new HashMap<String, Bundle>();
+        for( Bundle bundle : m_bundleContext.getBundles() )
+        {
+            installed.put( bundle.getLocation(), bundle );
+        }
+        final List<Bundle> installedByPlan = new ArrayList<Bundle>();
+        try
+        {
+            final List<Bundle> bundles = new ArrayList<Bundle>();
+            for( String url : urls )
+            {
+                Bundle bundle = installed.get( url );
+                if( bundle == null )
+                {
+                    bundle = m_bundleContext.installBundle( url );
+                    installedByPlan.add( bundle );
+                }
+                bundles.add( bundle );
+            }
+            for( Bundle bundle : bundles )
+            {
+                if( bundle.getState() != Bundle.ACTIVE && bundle.getHeaders().get( "Fragment-Host" ) == null )
+                {
+                    bundle.start();
+                }
+            }
+            return true;
+        }
+        catch( Exception e )
+        {
+            LOG.warn( "Could not deploy cached resolution, resolving again. Reason: " + e.getMessage() );
+            for( int i = installedByPlan.size() - 1; i >= 0; i-- )
+            {
+                final Bundle bundle = installedByPlan.get( i );
+                try
+                {
+                    bundle.uninstall();
+                }
+                catch( Exception ignore )
+                {
+                    LOG.warn( "Could not uninstall [" + bundle.getLocation() + "]. Reason: " + ignore.getMessage() );
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Returns the urls of resources.
+     *
+     * @param resources resources; arrays can be null
+     *
+     * @return urls of resources
+     */
+    private static List<String> getURLs( final Resource[]... resources )
+    {
+        final List<String> urls = new ArrayList<String>();
+        for( Resource[] group : resources )
+        {
+            if( group != null )
+            {
+                for( Resource resource : group )
+                {
+                    if( resource.getURL() != null && !urls.contains( resource.getURL().toExternalForm() ) )
+                    {
+                        urls.add( resource.getURL().toExternalForm() );
+                    }
+                }
+            }
+        }
+        return urls;
     }
 
     /**
@@ -177,6 +403,15 @@ public class Activator
     public void stop( final BundleContext bundleContext )
         throws Exception
     {
-        // nothing to do
+        if( m_repositoryAdminService != null )
+        {
+            m_repositoryAdminService.stop();
+            m_repositoryAdminService = null;
+        }
+        if( m_obrScriptTracker != null )
+        {
+            m_obrScriptTracker.close();
+            m_obrScriptTracker = null;
+        }
     }
 }
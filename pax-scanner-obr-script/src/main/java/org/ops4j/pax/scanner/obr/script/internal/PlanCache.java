@@ -0,0 +1,280 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.obr.script.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.osgi.service.obr.Repository;
+
+/**
+ * Cache of resolution plans (urls of the resources to deploy), keyed by a hash of the requested filters and of the
+ * fingerprints of the repositories they were resolved against. Plans are kept in memory and mirrored into a
+ * properties file so they survive restarts. Only the most recently stored plans are kept.
+ *
+ * @since 1.2.0
+ */
+class PlanCache
+{
+
+    /**
+     * Logger.
+     */
+    private static final Log LOG = LogFactory.getLog( PlanCache.class );
+    /**
+     * Maximum number of cached plans.
+     */
+    private static final int MAX_PLANS = 16;
+    /**
+     * Separator between timestamp and urls in the persisted form.
+     */
+    private static final String SEPARATOR = " ";
+
+    /**
+     * File where the plans are persisted. Can be null, case when the plans are only kept in memory.
+     */
+    private final File m_file;
+    /**
+     * Plans ("timestamp url url ..."), keyed by hash.
+     */
+    private final Properties m_plans;
+
+    /**
+     * Creates a cache and loads the plans persisted into file (if any).
+     *
+     * @param file file where the plans are persisted; can be null
+     */
+    PlanCache( final File file )
+    {
+        m_file = file;
+        m_plans = new Properties();
+        if( m_file != null && m_file.exists() )
+        {
+            try
+            {
+                final InputStream inputStream = new FileInputStream( m_file );
+                try
+                {
+                    m_plans.load( inputStream );
+                }
+                finally
+                {
+                    inputStream.close();
+                }
+            }
+            catch( IOException e )
+            {
+                LOG.warn( "Cannot read resolution plans from [" + m_file + "]: " + e.getMessage() );
+                m_plans.clear();
+            }
+        }
+    }
+
+    /**
+     * Computes the fingerprints (url and modification time) of the repositories known by repository admin.
+     *
+     * @param repositories repositories; can be null
+     *
+     * @return repository fingerprints (never null)
+     */
+    static List<String> fingerprints( final Repository[] repositories )
+    {
+        final List<String> fingerprints = new ArrayList<String>();
+        if( repositories != null )
+        {
+            for( Repository repository : repositories )
+            {
+                fingerprints.add( repository.getURL() + "@" + repository.getLastModified() );
+            }
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Computes the key of a plan.
+     *
+     * @param filters      requested filters
+     * @param repositories fingerprints of the repositories used to resolve the filters
+     *
+     * @return key (hex encoded SHA-1 hash)
+     */
+    static String key( final Collection<String> filters, final Collection<String> repositories )
+    {
+        final StringBuilder builder = new StringBuilder();
+        for( String filter : filters )
+        {
+            builder.append( filter ).append( '\n' );
+        }
+        for( String repository : repositories )
+        {
+            builder.append( repository ).append( '\n' );
+        }
+        try
+        {
+            final byte[] digest = MessageDigest.getInstance( "SHA-1" ).digest( builder.toString().getBytes( "UTF-8" ) );
+            final StringBuilder hex = new StringBuilder();
+            for( byte b : digest )
+            {
+                hex.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) ).append( Character.forDigit( b & 0xF, 16 ) );
+            }
+            return hex.toString();
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( "SHA-1 not available", e );
+        }
+        catch( UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( "UTF-8 not available", e );
+        }
+    }
+
+    /**
+     * Returns a cached plan.
+     *
+     * @param key plan key
+     *
+     * @return urls of the resources to deploy or null if there is no cached plan
+     */
+    synchronized List<String> get( final String key )
+    {
+        final String value = m_plans.getProperty( key );
+        if( value == null )
+        {
+            return null;
+        }
+        final List<String> urls = new ArrayList<String>( Arrays.asList( value.split( SEPARATOR ) ) );
+        urls.remove( 0 );
+        return urls;
+    }
+
+    /**
+     * Stores a plan, evicting the oldest plans if there are too many.
+     *
+     * @param key  plan key
+     * @param urls urls of the resources to deploy
+     */
+    synchronized void put( final String key, final List<String> urls )
+    {
+        final StringBuilder value = new StringBuilder().append( System.currentTimeMillis() );
+        for( String url : urls )
+        {
+            value.append( SEPARATOR ).append( url );
+        }
+        m_plans.setProperty( key, value.toString() );
+        while( m_plans.size() > MAX_PLANS )
+        {
+            String oldest = null;
+            long oldestTimestamp = Long.MAX_VALUE;
+            for( Object candidate : m_plans.keySet() )
+            {
+                final long timestamp = getTimestamp( m_plans.getProperty( (String) candidate ) );
+                if( timestamp < oldestTimestamp )
+                {
+                    oldest = (String) candidate;
+                    oldestTimestamp = timestamp;
+                }
+            }
+            m_plans.remove( oldest );
+        }
+        save();
+    }
+
+    /**
+     * Removes a plan.
+     *
+     * @param key plan key
+     */
+    synchronized void remove( final String key )
+    {
+        if( m_plans.remove( key ) != null )
+        {
+            save();
+        }
+    }
+
+    /**
+     * Returns the timestamp of a persisted plan.
+     *
+     * @param value persisted plan
+     *
+     * @return timestamp or 0 if invalid
+     */
+    private static long getTimestamp( final String value )
+    {
+        try
+        {
+            final int separator = value.indexOf( SEPARATOR );
+            return Long.parseLong( separator < 0 ? value : value.substring( 0, separator ) );
+        }
+        catch( NumberFormatException e )
+        {
+            return 0;
+        }
+    }
+
+    /**
+     * Saves the plans to file (if any) via a temporary file, so a crash will not leave a corrupted file behind.
+     */
+    private void save()
+    {
+        if( m_file == null )
+        {
+            return;
+        }
+        try
+        {
+            final File temp = new File( m_file.getPath() + ".tmp" );
+            final OutputStream outputStream = new FileOutputStream( temp );
+            try
+            {
+                m_plans.store( outputStream, "Pax Scanner OBR resolution plans" );
+            }
+            finally
+            {
+                outputStream.close();
+            }
+            if( !temp.renameTo( m_file ) )
+            {
+                m_file.delete();
+                if( !temp.renameTo( m_file ) )
+                {
+                    LOG.warn( "Cannot save resolution plans to [" + m_file + "]" );
+                }
+            }
+        }
+        catch( IOException e )
+        {
+            LOG.warn( "Cannot save resolution plans to [" + m_file + "]: " + e.getMessage() );
+        }
+    }
+
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.obr.script.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.osgi.framework.Version;
+import org.osgi.service.obr.Repository;
+import org.osgi.service.obr.RepositoryAdmin;
+import org.osgi.service.obr.Resource;
+
+/**
+ * Index of repository resources by symbolic name, used to answer the filters generated by the obr scanner
+ * ((symbolicname=...) and (&(symbolicname=...)version-constraints...), where version constraints are (version=...),
+ * (version>=...), (version<=...) or their negations) without evaluating the filter against every resource.
+ * Any other filter is delegated to the repository admin.
+ * Resources with the same symbolic name are kept sorted by version, highest first, so discovered resources are
+ * returned highest version first.
+ * Index is built per repository and rebuilt only for the repositories that changed (new url or modification time)
+ * since last refresh.
+ *
+ * @since 1.2.0
+ */
+class ResourceIndex
+{
+
+    /**
+     * Logger.
+     */
+    private static final Log LOG = LogFactory.getLog( ResourceIndex.class );
+    /**
+     * Characters allowed in an indexable filter value (no wildcards, escapes or nested filters).
+     */
+    private static final String VALUE = "([^()*\\\\]+)";
+    /**
+     * Pattern of symbolic name filter.
+     */
+    private static final Pattern SYMBOLIC_NAME_FILTER = Pattern.compile( "\\(symbolicname=" + VALUE + "\\)" );
+    /**
+     * Pattern of symbolic name and version constraints filter.
+     */
+    private static final Pattern SYMBOLIC_NAME_AND_VERSION_FILTER = Pattern.compile(
+        "\\(&\\(symbolicname=" + VALUE + "\\)(.+)\\)"
+    );
+    /**
+     * Pattern of a version constraint (optionally negated).
+     */
+    private static final Pattern VERSION_CONSTRAINT = Pattern.compile(
+        "\\(version(>=|<=|=)" + VALUE + "\\)|\\(!\\(version(>=|<=|=)" + VALUE + "\\)\\)"
+    );
+    /**
+     * Orders resources by version, highest first.
+     */
+    private static final Comparator<Resource> HIGHEST_VERSION_FIRST = new Comparator<Resource>()
+    {
+        public int compare( final Resource resource1, final Resource resource2 )
+        {
+            return getVersion( resource2 ).compareTo( getVersion( resource1 ) );
+        }
+    };
+
+    /**
+     * Repository admin used for filters that cannot be answered from index.
+     */
+    private RepositoryAdmin m_repositoryAdmin;
+    /**
+     * Indexed repositories, in repository admin order.
+     */
+    private List<RepositoryIndex> m_repositories;
+
+    /**
+     * Creates an empty index.
+     */
+    ResourceIndex()
+    {
+        m_repositories = new ArrayList<RepositoryIndex>();
+    }
+
+    /**
+     * Refreshes the index out of the repositories known by repository admin. Repositories that did not change since
+     * last refresh are not re-indexed.
+     *
+     * @param repositoryAdmin repository admin
+     */
+    void refresh( final RepositoryAdmin repositoryAdmin )
+    {
+        m_repositoryAdmin = repositoryAdmin;
+        final Map<String, RepositoryIndex> previous = new HashMap<String, RepositoryIndex>();
+        for( RepositoryIndex index : m_repositories )
+        {
+            previous.put( index.m_key, index );
+        }
+        final List<RepositoryIndex> repositories = new ArrayList<RepositoryIndex>();
+        final Repository[] listed = repositoryAdmin.listRepositories();
+        if( listed != null )
+        {
+            for( Repository repository : listed )
+            {
+                final String key = repository.getURL() + "@" + repository.getLastModified();
+                RepositoryIndex index = previous.get( key );
+                if( index == null )
+                {
+                    index = new RepositoryIndex( key, repository.getResources() );
+                    LOG.debug( "Indexed " + index.m_size + " resources of repository [" + repository.getURL() + "]" );
+                }
+                repositories.add( index );
+            }
+        }
+        m_repositories = repositories;
+    }
+
+    /**
+     * Discovers the resources matching a filter. Filters on symbolic name and optionally version constraints are
+     * answered from index; any other filter is delegated to repository admin.
+     *
+     * @param filter an obr filter
+     *
+     * @return matching resources, highest version first for filters answered from index (never null)
+     */
+    Resource[] discoverResources( final String filter )
+    {
+        String symbolicName = null;
+        List<VersionConstraint> constraints = null;
+        Matcher matcher = SYMBOLIC_NAME_FILTER.matcher( filter );
+        if( matcher.matches() )
+        {
+            symbolicName = matcher.group( 1 );
+            constraints = Collections.emptyList();
+        }
+        else
+        {
+            matcher = SYMBOLIC_NAME_AND_VERSION_FILTER.matcher( filter );
+            if( matcher.matches() )
+            {
+                constraints = parseConstraints( matcher.group( 2 ) );
+                symbolicName = matcher.group( 1 );
+            }
+        }
+        if( constraints == null )
+        {
+            final Resource[] resources = m_repositoryAdmin.discoverResources( filter );
+            return resources == null ? new Resource[0] : resources;
+        }
+        final List<Resource> resources = new ArrayList<Resource>();
+        for( RepositoryIndex index : m_repositories )
+        {
+            for( Resource resource : index.get( symbolicName ) )
+            {
+                if( satisfies( getVersion( resource ), constraints ) )
+                {
+                    resources.add( resource );
+                }
+            }
+        }
+        // stable sort, so for same version the order of repositories is kept
+        Collections.sort( resources, HIGHEST_VERSION_FIRST );
+        return resources.toArray( new Resource[resources.size()] );
+    }
+
+    /**
+     * Parses a sequence of version constraints.
+     *
+     * @param text version constraints
+     *
+     * @return parsed constraints or null if text is not a sequence of version constraints
+     */
+    private static List<VersionConstraint> parseConstraints( final String text )
+    {
+        final List<VersionConstraint> constraints = new ArrayList<VersionConstraint>();
+        final Matcher matcher = VERSION_CONSTRAINT.matcher( text );
+        int position = 0;
+        while( position < text.length() )
+        {
+            matcher.region( position, text.length() );
+            if( !matcher.lookingAt() )
+            {
+                return null;
+            }
+            final boolean negated = matcher.group( 1 ) == null;
+            try
+            {
+                constraints.add(
+                    new VersionConstraint(
+                        negated ? matcher.group( 3 ) : matcher.group( 1 ),
+                        Version.parseVersion( ( negated ? matcher.group( 4 ) : matcher.group( 2 ) ).trim() ),
+                        negated
+                    )
+                );
+            }
+            catch( IllegalArgumentException e )
+            {
+                return null;
+            }
+            position = matcher.end();
+        }
+        return constraints;
+    }
+
+    /**
+     * Checks if a version satisfies all constraints.
+     *
+     * @param version     version to check
+     * @param constraints version constraints
+     *
+     * @return true if all constraints are satisfied
+     */
+    private static boolean satisfies( final Version version, final List<VersionConstraint> constraints )
+    {
+        for( VersionConstraint constraint : constraints )
+        {
+            final int comparison = version.compareTo( constraint.m_version );
+            final boolean satisfied;
+            if( ">=".equals( constraint.m_operator ) )
+            {
+                satisfied = comparison >= 0;
+            }
+            else if( "<=".equals( constraint.m_operator ) )
+            {
+                satisfied = comparison <= 0;
+            }
+            else
+            {
+                satisfied = comparison == 0;
+            }
+            if( satisfied == constraint.m_negated )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the version of a resource.
+     *
+     * @param resource resource
+     *
+     * @return resource version or empty version if resource has no version
+     */
+    private static Version getVersion( final Resource resource )
+    {
+        final Version version = resource.getVersion();
+        return version == null ? Version.emptyVersion : version;
+    }
+
+    /**
+     * A version constraint as (version>=1.0.0) or (!(version>=1.0.0)).
+     */
+    private static class VersionConstraint
+    {
+
+        /**
+         * Comparison operator (>=, <= or =).
+         */
+        private final String m_operator;
+        /**
+         * Version to compare with.
+         */
+        private final Version m_version;
+        /**
+         * True if constraint is negated.
+         */
+        private final boolean m_negated;
+
+        /**
+         * Creates a new version constraint.
+         *
+         * @param operator comparison operator (>=, <= or =)
+         * @param version  version to compare with
+         * @param negated  true if constraint is negated
+         */
+        VersionConstraint( final String operator, final Version version, final boolean negated )
+        {
+            m_operator = operator;
+            m_version = version;
+            m_negated = negated;
+        }
+
+    }
+
+    /**
+     * Resources of one repository indexed by symbolic name.
+     */
+    private static class RepositoryIndex
+    {
+
+        /**
+         * Repository url and modification time.
+         */
+        private final String m_key;
+        /**
+         * Resources by symbolic name, highest version first.
+         */
+        private final Map<String, List<Resource>> m_resources;
+        /**
+         * Number of indexed resources.
+         */
+        private final int m_size;
+
+        /**
+         * Creates a new repository index.
+         *
+         * @param key       repository url and modification time
+         * @param resources repository resources; can be null
+         */
+        RepositoryIndex( final String key, final Resource[] resources )
+        {
+            m_key = key;
+            m_resources = new HashMap<String, List<Resource>>();
+            int size = 0;
+            if( resources != null )
+            {
+                for( Resource resource : resources )
+                {
+                    if( resource.getSymbolicName() != null )
+                    {
+                        List<Resource> named = m_resources.get( resource.getSymbolicName() );
+                        if( named == null )
+                        {
+                            named = new ArrayList<Resource>();
+                            m_resources.put( resource.getSymbolicName(), named );
+                        }
+                        named.add( resource );
+                        size++;
+                    }
+                }
+            }
+            for( List<Resource> named : m_resources.values() )
+            {
+                Collections.sort( named, HIGHEST_VERSION_FIRST );
+            }
+            m_size = size;
+        }
+
+        /**
+         * Returns the resources with a symbolic name.
+         *
+         * @param symbolicName symbolic name
+         *
+         * @return resources (never null)
+         */
+        List<Resource> get( final String symbolicName )
+        {
+            final List<Resource> resources = m_resources.get( symbolicName );
+            if( resources == null )
+            {
+                return Collections.emptyList();
+            }
+            return resources;
+        }
+
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.obr;
+
+/**
+ * OBR filters of the bundles to be discovered and deployed, collected from all scanned obr specs.
+ * Registered as a service by obr scanner (as soon as there are filters) and consumed by obr script bundle, that
+ * resolves and deploys all pending filters in one resolver run. Every time new filters are added the service
+ * properties are modified ({@link ServiceConstants#PROPERTY_REVISION} is incremented).
+ *
+ * @since 1.2.0
+ */
+public interface ObrScript
+{
+
+    /**
+     * Returns the obr filters, in the order they were scanned, without duplicates.
+     *
+     * @return obr filters (never null)
+     */
+    String[] getFilters();
+
+    /**
+     * Returns the fingerprints (url and content version) of the obr repositories the filters are to be resolved
+     * against, as seen by the obr scanner. Fingerprints change when the repository content changes, so they can be
+     * used to detect repository changes without parsing the repositories again.
+     *
+     * @return repository fingerprints (never null; empty if repositories are not known)
+     */
+    String[] getRepositories();
+
+}
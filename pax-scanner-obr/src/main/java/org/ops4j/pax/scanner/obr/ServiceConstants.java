@@ -34,5 +34,9 @@ public interface ServiceConstants
      * Scanner scheme.
      */
     static final String SCHEMA = "scan-obr";
+    /**
+     * Service property of {@link ObrScript} incremented every time filters are added.
+     */
+    static final String PROPERTY_REVISION = "org.ops4j.pax.scanner.obr.script.revision";
 
 }
@@ -34,12 +34,18 @@ public final class Activator
     extends AbstractScannerActivator<ObrScanner>
 {
 
+    /**
+     * Publisher of scanned obr filters.
+     */
+    private ObrScriptPublisher m_obrScriptPublisher;
+
     /**
      * {@inheritDoc}
      */
     @Override
     protected ObrScanner createScanner( final BundleContext bundleContext )
     {
+        m_obrScriptPublisher = new ObrScriptPublisher( bundleContext );
         return new ObrScanner(
             new BundleContextPropertyResolver( bundleContext ),
             new FilterValidator()
@@ -60,10 +66,27 @@ public final class Activator
                         return false;
                     }
                 }
-            }
+            },
+            m_obrScriptPublisher,
+            new RepositoryFingerprinter()
         );
     }
 
+    /**
+     * Unregisters obr script service.
+     * {@inheritDoc}
+     */
+    @Override
+    public void stop( final BundleContext bundleContext )
+    {
+        if( m_obrScriptPublisher != null )
+        {
+            m_obrScriptPublisher.unregister();
+            m_obrScriptPublisher = null;
+        }
+        super.stop( bundleContext );
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.obr.internal;
+
+import java.util.List;
+
+/**
+ * Hands over scanned obr filters to obr script bundle.
+ *
+ * @since 1.2.0
+ */
+interface FilterPublisher
+{
+
+    /**
+     * Publishes obr filters. Filters already published are ignored.
+     *
+     * @param filters      obr filters to publish
+     * @param repositories fingerprints of the obr repositories filters are to be resolved against
+     */
+    void publish( List<String> filters, List<String> repositories );
+
+}
@@ -18,9 +18,6 @@
 package org.ops4j.pax.scanner.obr.internal;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.MalformedURLException;
@@ -79,24 +76,36 @@ public class ObrScanner
      */
     private final FilterValidator m_filterValidator;
     /**
-     * OBR Script file. Lazy created on first use.
+     * Publisher of scanned obr filters.
      */
-    private File m_scriptFile;
+    private final FilterPublisher m_filterPublisher;
+    /**
+     * Fingerprinter of obr repositories.
+     */
+    private final RepositoryFingerprinter m_repositoryFingerprinter;
 
     /**
      * Creates a new file scanner.
      *
-     * @param propertyResolver a propertyResolver; mandatory
-     * @param filterValidator  filter syntax validator
+     * @param propertyResolver        a propertyResolver; mandatory
+     * @param filterValidator         filter syntax validator
+     * @param filterPublisher         publisher of scanned obr filters
+     * @param repositoryFingerprinter fingerprinter of obr repositories
      */
     public ObrScanner( final PropertyResolver propertyResolver,
-                       final FilterValidator filterValidator )
+                       final FilterValidator filterValidator,
+                       final FilterPublisher filterPublisher,
+                       final RepositoryFingerprinter repositoryFingerprinter )
     {
         NullArgumentException.validateNotNull( propertyResolver, "Property resolver" );
         NullArgumentException.validateNotNull( filterValidator, "Filter syntax validator" );
+        NullArgumentException.validateNotNull( filterPublisher, "Filter publisher" );
+        NullArgumentException.validateNotNull( repositoryFingerprinter, "Repository fingerprinter" );
 
         m_propertyResolver = propertyResolver;
         m_filterValidator = filterValidator;
+        m_filterPublisher = filterPublisher;
+        m_repositoryFingerprinter = repositoryFingerprinter;
     }
 
     /**
@@ -110,8 +119,9 @@ public class ObrScanner
         LOG.debug( "Scanning [" + provisionSpec.getPath() + "]" );
         final List<ScannedBundle> scannedBundles = new ArrayList<ScannedBundle>();
         final ScannerConfiguration config = createConfiguration();
+        final boolean certificateCheck = config.getCertificateCheck();
+        final List<String> filters = new ArrayList<String>();
         BufferedReader bufferedReader = null;
-        BufferedWriter bufferedWriter = null;
         try
         {
             try
@@ -120,7 +130,7 @@ public class ObrScanner
                     new InputStreamReader(
                         URLUtils.prepareInputStream(
                             provisionSpec.getPathAsUrl(),
-                            !config.getCertificateCheck()
+                            !certificateCheck
                         )
                     )
                 );
@@ -145,13 +155,9 @@ public class ObrScanner
                     )
                 );
 
-                // and we set the script name
-                final File scriptFile = createScript();
-                System.setProperty( "org.ops4j.pax.scanner.obr.script", scriptFile.toURI().toASCIIString() );
-                // and repositories property
+                // and we set the repositories property
                 System.setProperty( "obr.repository.url", m_propertyResolver.get( "obr.repository.url" ) );
 
-                bufferedWriter = new BufferedWriter( new FileWriter( scriptFile ) );
                 String line;
                 while( ( line = bufferedReader.readLine() ) != null )
                 {
@@ -171,9 +177,7 @@ public class ObrScanner
                         else
                         {
                             line = SystemPropertyUtils.resolvePlaceholders( line );
-                            final String obrFilter = createObrFilter( line );
-                            bufferedWriter.append( obrFilter );
-                            bufferedWriter.newLine();
+                            filters.add( createObrFilter( line ) );
                         }
                     }
                 }
@@ -184,47 +188,25 @@ public class ObrScanner
                 {
                     bufferedReader.close();
                 }
-                if( bufferedWriter != null )
-                {
-                    bufferedWriter.flush();
-                    bufferedWriter.close();
-                }
             }
         }
         catch( IOException e )
         {
             throw new ScannerException( "Could not parse the provision file", e );
         }
+        // fingerprint repositories, so the obr script can detect repository changes without parsing them
+        final List<String> repositories = m_repositoryFingerprinter.fingerprint(
+            System.getProperty( "obr.repository.url" ), certificateCheck
+        );
+        // hand over the filters to obr script bundle
+        m_filterPublisher.publish( filters, repositories );
         return scannedBundles;
     }
 
-    /**
-     * Creates a script file if the script was not already created before.
-     *
-     * @return created script file.
-     *
-     * @throws IOException if script file cannot be created
-     */
-    private File createScript()
-        throws IOException
-    {
-        if( m_scriptFile == null )
-        {
-            m_scriptFile = File.createTempFile( "pax.scanner.obr.script", ".txt" );
-            // TODO remove the script file on exit
-            //m_scriptFile.deleteOnExit();
-            LOG.trace( "Created script file [" + m_scriptFile.getCanonicalPath() + "]" );
-        }
-        else
-        {
-            LOG.trace( "Using script file [" + m_scriptFile.getCanonicalPath() + "]" );
-        }
-        return m_scriptFile;
-    }
-
     /**
      * Creates an obr filter from a symbolic-name/version by transforming it to
-     * (&(symbolicname=symbolic-name)(version=version))
+     * (&(symbolicname=symbolic-name)(version=version)). Version can also be an OSGi version range as [1.0,2.0) that
+     * is transformed to (&(symbolicname=symbolic-name)(version>=1.0.0)(!(version>=2.0.0))).
      *
      * @param path obr spec
      *
@@ -254,7 +236,16 @@ public class ObrScanner
         // add bundle version filter
         if( segments.length > 1 )
         {
-            builder.insert( 0, "(&" ).append( "(version=" ).append( segments[ 1 ] ).append( "))" );
+            final VersionRange versionRange;
+            try
+            {
+                versionRange = VersionRange.parse( segments[ 1 ] );
+            }
+            catch( IllegalArgumentException e )
+            {
+                throw new MalformedURLException( "Invalid version value. " + e.getMessage() );
+            }
+            builder.insert( 0, "(&" ).append( versionRange.toFilter() ).append( ")" );
             if( !m_filterValidator.validate( builder.toString() ) )
             {
                 throw new MalformedURLException( "Invalid version value." );
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.obr.internal;
+
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.ops4j.lang.NullArgumentException;
+import org.ops4j.pax.scanner.obr.ObrScript;
+import org.ops4j.pax.scanner.obr.ServiceConstants;
+
+/**
+ * Publishes scanned obr filters as an {@link ObrScript} service. The service is registered when the first filters
+ * are published and its properties are modified every time new filters are published.
+ *
+ * @since 1.2.0
+ */
+class ObrScriptPublisher
+    implements ObrScript, FilterPublisher
+{
+
+    /**
+     * Logger.
+     */
+    private static final Log LOG = LogFactory.getLog( ObrScriptPublisher.class );
+
+    /**
+     * Bundle context used to register the service.
+     */
+    private final BundleContext m_bundleContext;
+    /**
+     * Published filters, in scanning order.
+     */
+    private final Set<String> m_filters;
+    /**
+     * Fingerprints of the obr repositories.
+     */
+    private List<String> m_repositories;
+    /**
+     * Lock guarding service registration / modification.
+     */
+    private final Object m_publishLock;
+    /**
+     * Service registration. Null if not yet registered.
+     */
+    private ServiceRegistration m_registration;
+    /**
+     * Number of times new filters were published.
+     */
+    private long m_revision;
+
+    /**
+     * Creates a new publisher.
+     *
+     * @param bundleContext bundle context used to register the service; mandatory
+     */
+    ObrScriptPublisher( final BundleContext bundleContext )
+    {
+        NullArgumentException.validateNotNull( bundleContext, "Bundle context" );
+        m_bundleContext = bundleContext;
+        m_filters = new LinkedHashSet<String>();
+        m_repositories = new ArrayList<String>();
+        m_publishLock = new Object();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized String[] getFilters()
+    {
+        return m_filters.toArray( new String[m_filters.size()] );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized String[] getRepositories()
+    {
+        return m_repositories.toArray( new String[m_repositories.size()] );
+    }
+
+    /**
+     * Registers / modifies the service if there are new filters or repositories changed.
+     * {@inheritDoc}
+     */
+    public void publish( final List<String> filters, final List<String> repositories )
+    {
+        // service events are delivered synchronously and listeners will call back getFilters(), so the service is
+        // registered / modified while holding only the publishing lock
+        synchronized( m_publishLock )
+        {
+            final Dictionary<String, Object> properties = new Hashtable<String, Object>();
+            synchronized( this )
+            {
+                final boolean repositoriesChanged = !m_repositories.equals( repositories );
+                if( !m_filters.addAll( filters ) && !repositoriesChanged )
+                {
+                    return;
+                }
+                m_repositories = new ArrayList<String>( repositories );
+                m_revision++;
+                properties.put( ServiceConstants.PROPERTY_REVISION, m_revision );
+            }
+            if( m_registration == null )
+            {
+                m_registration = m_bundleContext.registerService( ObrScript.class.getName(), this, properties );
+            }
+            else
+            {
+                m_registration.setProperties( properties );
+            }
+        }
+        LOG.debug( "Published obr filters " + filters );
+    }
+
+    /**
+     * Unregisters the service, if registered.
+     */
+    void unregister()
+    {
+        synchronized( m_publishLock )
+        {
+            if( m_registration != null )
+            {
+                m_registration.unregister();
+                m_registration = null;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.obr.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ops4j.net.URLUtils;
+
+/**
+ * Computes fingerprints of obr repositories without downloading or parsing them, so the obr script can reuse a cached
+ * resolution plan without asking repository admin (that parses the repositories) for them.
+ * File repositories are fingerprinted by modification time and length, http(s) repositories by the ETag /
+ * Last-Modified of a HEAD request. Repositories are parsed only by repository admin, and only when a plan is missed.
+ *
+ * @since 1.2.0
+ */
+class RepositoryFingerprinter
+{
+
+    /**
+     * Logger.
+     */
+    private static final Log LOG = LogFactory.getLog( RepositoryFingerprinter.class );
+
+    /**
+     * Computes the fingerprints of a list of repositories. Repositories that cannot be reached are skipped.
+     *
+     * @param urls             space / comma separated repository urls; can be null
+     * @param certificateCheck true if certificates should be checked on https connections
+     *
+     * @return fingerprints, in the order of urls, or an empty list if any of the repositories cannot be fingerprinted,
+     *         case when the obr script falls back to the fingerprints of repository admin
+     */
+    List<String> fingerprint( final String urls, final boolean certificateCheck )
+    {
+        final List<String> fingerprints = new ArrayList<String>();
+        if( urls == null )
+        {
+            return fingerprints;
+        }
+        for( String url : urls.trim().split( "[\\s,]+" ) )
+        {
+            if( url.length() > 0 )
+            {
+                try
+                {
+                    final String fingerprint = fingerprint( new URL( url ), certificateCheck );
+                    if( fingerprint == null )
+                    {
+                        LOG.debug( "Obr repository [" + url + "] cannot be fingerprinted" );
+                        fingerprints.clear();
+                        return fingerprints;
+                    }
+                    fingerprints.add( fingerprint );
+                }
+                catch( IOException e )
+                {
+                    LOG.warn( "Cannot reach obr repository [" + url + "]: " + e.getMessage() );
+                }
+            }
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Computes the fingerprint of a repository.
+     *
+     * @param url              repository url
+     * @param certificateCheck true if certificates should be checked on https connections
+     *
+     * @return url and validator or null if repository has no validator
+     *
+     * @throws IOException - If repository cannot be reached
+     */
+    String fingerprint( final URL url, final boolean certificateCheck )
+        throws IOException
+    {
+        final String validator;
+        if( "file".equals( url.getProtocol() ) && toFile( url ) != null )
+        {
+            final File file = toFile( url );
+            if( !file.isFile() )
+            {
+                throw new IOException( "File [" + file + "] does not exist" );
+            }
+            validator = file.lastModified() + "/" + file.length();
+        }
+        else if( "http".equals( url.getProtocol() ) || "https".equals( url.getProtocol() ) )
+        {
+            final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            if( !certificateCheck )
+            {
+                URLUtils.prepareForSSL( connection );
+            }
+            URLUtils.prepareForAuthentication( connection );
+            connection.setRequestMethod( "HEAD" );
+            try
+            {
+                if( connection.getResponseCode() != HttpURLConnection.HTTP_OK )
+                {
+                    throw new IOException(
+                        "Server returned " + connection.getResponseCode() + " " + connection.getResponseMessage()
+                    );
+                }
+                String header = connection.getHeaderField( "ETag" );
+                if( header == null && connection.getLastModified() > 0 )
+                {
+                    header = String.valueOf( connection.getLastModified() );
+                }
+                validator = header;
+            }
+            finally
+            {
+                connection.disconnect();
+            }
+        }
+        else
+        {
+            validator = null;
+        }
+        return validator == null ? null : url.toExternalForm() + "@" + validator;
+    }
+
+    /**
+     * Converts a file url to a file.
+     *
+     * @param url file url
+     *
+     * @return file or null if url cannot be converted to a file
+     */
+    private static File toFile( final URL url )
+    {
+        try
+        {
+            return new File( url.toURI() );
+        }
+        catch( URISyntaxException e )
+        {
+            return null;
+        }
+        catch( IllegalArgumentException e )
+        {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.obr.internal;
+
+import org.osgi.framework.Version;
+
+/**
+ * OSGi version range as used in obr specs. Supported syntaxes:<br/>
+ * * [floor,ceiling], [floor,ceiling), (floor,ceiling], (floor,ceiling) - interval;<br/>
+ * * version - exact version, used as it is (as obr specs always did).
+ *
+ * @since 1.2.0
+ */
+class VersionRange
+{
+
+    /**
+     * Exact version. Null for intervals.
+     */
+    private final String m_exact;
+    /**
+     * Lowest version. Null for exact version ranges.
+     */
+    private final Version m_floor;
+    /**
+     * True if lowest version is included.
+     */
+    private final boolean m_floorInclusive;
+    /**
+     * Highest version. Null for exact version ranges.
+     */
+    private final Version m_ceiling;
+    /**
+     * True if highest version is included.
+     */
+    private final boolean m_ceilingInclusive;
+
+    /**
+     * Creates a new version range.
+     *
+     * @param exact            exact version; null for intervals
+     * @param floor            lowest version; null for exact version ranges
+     * @param floorInclusive   true if lowest version is included
+     * @param ceiling          highest version; null for exact version ranges
+     * @param ceilingInclusive true if highest version is included
+     */
+    private VersionRange( final String exact,
+                          final Version floor,
+                          final boolean floorInclusive,
+                          final Version ceiling,
+                          final boolean ceilingInclusive )
+    {
+        m_exact = exact;
+        m_floor = floor;
+        m_floorInclusive = floorInclusive;
+        m_ceiling = ceiling;
+        m_ceilingInclusive = ceilingInclusive;
+    }
+
+    /**
+     * Parses a version range.
+     *
+     * @param range version range to parse
+     *
+     * @return parsed version range
+     *
+     * @throws IllegalArgumentException - If range is not a valid version range
+     */
+    static VersionRange parse( final String range )
+    {
+        if( range == null || range.trim().length() == 0 )
+        {
+            throw new IllegalArgumentException( "Version range cannot be null or empty" );
+        }
+        final String trimmed = range.trim();
+        final char first = trimmed.charAt( 0 );
+        if( first != '[' && first != '(' )
+        {
+            return new VersionRange( trimmed, null, true, null, true );
+        }
+        final char last = trimmed.charAt( trimmed.length() - 1 );
+        final int comma = trimmed.indexOf( ',' );
+        if( ( last != ']' && last != ')' ) || comma < 0 || comma != trimmed.lastIndexOf( ',' ) )
+        {
+            throw new IllegalArgumentException( "Invalid version range [" + range + "]" );
+        }
+        final Version floor = Version.parseVersion( trimmed.substring( 1, comma ).trim() );
+        final Version ceiling = Version.parseVersion( trimmed.substring( comma + 1, trimmed.length() - 1 ).trim() );
+        if( floor.compareTo( ceiling ) > 0 )
+        {
+            throw new IllegalArgumentException( "Empty version range [" + range + "]" );
+        }
+        return new VersionRange( null, floor, first == '[', ceiling, last == ']' );
+    }
+
+    /**
+     * Returns the obr filter that matches the versions in range, e.g. (version>=1.0.0)(!(version>=2.0.0)) for
+     * [1.0,2.0). Result is meant to be used inside an & filter.
+     *
+     * @return obr filter
+     */
+    String toFilter()
+    {
+        final StringBuilder builder = new StringBuilder();
+        if( m_exact != null )
+        {
+            return builder.append( "(version=" ).append( m_exact ).append( ")" ).toString();
+        }
+        if( m_floorInclusive )
+        {
+            builder.append( "(version>=" ).append( m_floor ).append( ")" );
+        }
+        else
+        {
+            builder.append( "(!(version<=" ).append( m_floor ).append( "))" );
+        }
+        if( m_ceilingInclusive )
+        {
+            builder.append( "(version<=" ).append( m_ceiling ).append( ")" );
+        }
+        else
+        {
+            builder.append( "(!(version>=" ).append( m_ceiling ).append( "))" );
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String toString()
+    {
+        if( m_exact != null )
+        {
+            return m_exact;
+        }
+        return ( m_floorInclusive ? "[" : "(" ) + m_floor + "," + m_ceiling + ( m_ceilingInclusive ? "]" : ")" );
+    }
+
+}
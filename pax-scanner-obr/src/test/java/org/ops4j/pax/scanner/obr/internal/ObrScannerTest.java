@@ -0,0 +1,85 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.obr.internal;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.ops4j.io.FileUtils;
+import org.ops4j.pax.scanner.ProvisionSpec;
+import org.ops4j.pax.scanner.ScannedBundle;
+import org.ops4j.pax.scanner.common.ScannerConfiguration;
+import org.ops4j.util.property.PropertyResolver;
+
+public class ObrScannerTest
+{
+
+    @Test
+    public void scanPublishesFilters()
+        throws Exception
+    {
+        final PropertyResolver propertyResolver = createMock( PropertyResolver.class );
+        final ScannerConfiguration config = createMock( ScannerConfiguration.class );
+        final List<String> published = new ArrayList<String>();
+
+        expect( propertyResolver.get( "obr.repository.url" ) ).andReturn( "file:repository.xml" );
+        expect( config.getCertificateCheck() ).andReturn( false );
+        expect( config.getStartLevel() ).andReturn( null );
+        expect( config.shouldStart() ).andReturn( null );
+        expect( config.shouldUpdate() ).andReturn( null );
+
+        replay( propertyResolver, config );
+        final File file = FileUtils.getFileFromClasspath( "scanner/bundles.txt" );
+        final List<ScannedBundle> scannedBundles = new ObrScanner(
+            propertyResolver,
+            new FilterValidator()
+            {
+                public boolean validate( final String filter )
+                {
+                    return true;
+                }
+            },
+            new FilterPublisher()
+            {
+                public void publish( final List<String> filters, final List<String> repositories )
+                {
+                    published.addAll( filters );
+                }
+            },
+            new RepositoryFingerprinter()
+        )
+        {
+            @Override
+            ScannerConfiguration createConfiguration()
+            {
+                return config;
+            }
+        }.scan( new ProvisionSpec( "scan-obr:" + file.toURI().toURL().toExternalForm() ) );
+        verify( propertyResolver, config );
+
+        assertEquals( "Number of scanned bundles (obr and obr script)", 2, scannedBundles.size() );
+        final List<String> expected = new ArrayList<String>();
+        expected.add( "(symbolicname=bundle1)" );
+        expected.add( "(&(symbolicname=bundle2)(version=1.0.0))" );
+        assertEquals( "Published filters", expected, published );
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.obr.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.ops4j.io.FileUtils;
+
+public class RepositoryFingerprinterTest
+{
+
+    @Test
+    public void fileFingerprintChangesWithContent()
+        throws Exception
+    {
+        final File repository = File.createTempFile( "repository", ".xml" );
+        repository.deleteOnExit();
+        write( "<repository/>", repository );
+        final URL url = repository.toURI().toURL();
+        final RepositoryFingerprinter fingerprinter = new RepositoryFingerprinter();
+
+        final String first = fingerprinter.fingerprint( url, false );
+        assertTrue( "Fingerprint starts with url", first.startsWith( url.toExternalForm() + "@" ) );
+        assertEquals( "Unchanged fingerprint", first, fingerprinter.fingerprint( url, false ) );
+
+        write( "<repository lastmodified=\"20090706120000.000\"/>", repository );
+        assertFalse( "Fingerprint changed", first.equals( fingerprinter.fingerprint( url, false ) ) );
+    }
+
+    @Test
+    public void unavailableRepositoriesAreSkipped()
+        throws Exception
+    {
+        final URL url = FileUtils.getFileFromClasspath( "repository/repository.xml" ).toURI().toURL();
+        final List<String> fingerprints = new RepositoryFingerprinter().fingerprint(
+            "file:/not/existent/repository.xml, " + url.toExternalForm(), false
+        );
+        assertEquals( "Number of fingerprints", 1, fingerprints.size() );
+        assertTrue( "Fingerprint starts with url", fingerprints.get( 0 ).startsWith( url.toExternalForm() + "@" ) );
+    }
+
+    @Test
+    public void httpRepositoryIsNotDownloaded()
+        throws Exception
+    {
+        final List<String> methods = new ArrayList<String>();
+        final HttpServer server = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+        server.createContext( "/", new HttpHandler()
+        {
+            public void handle( final HttpExchange exchange )
+                throws IOException
+            {
+                methods.add( exchange.getRequestMethod() );
+                if( exchange.getRequestURI().getPath().startsWith( "/etag" ) )
+                {
+                    exchange.getResponseHeaders().add( "ETag", "\"1\"" );
+                }
+                exchange.sendResponseHeaders( 200, -1 );
+                exchange.close();
+            }
+        }
+        );
+        server.start();
+        try
+        {
+            final String base = "http://127.0.0.1:" + server.getAddress().getPort();
+            final RepositoryFingerprinter fingerprinter = new RepositoryFingerprinter();
+            assertEquals(
+                "Fingerprint",
+                base + "/etag/repository.xml@\"1\"",
+                fingerprinter.fingerprint( new URL( base + "/etag/repository.xml" ), false )
+            );
+            final URL url = FileUtils.getFileFromClasspath( "repository/repository.xml" ).toURI().toURL();
+            assertTrue(
+                "Repository without validator falls back to repository admin",
+                fingerprinter.fingerprint( url.toExternalForm() + " " + base + "/none/repository.xml", false )
+                    .isEmpty()
+            );
+            final List<String> expected = new ArrayList<String>();
+            expected.add( "HEAD" );
+            expected.add( "HEAD" );
+            assertEquals( "Request methods", expected, methods );
+        }
+        finally
+        {
+            server.stop( 0 );
+        }
+    }
+
+    private static void write( final String content, final File target )
+        throws IOException
+    {
+        final OutputStream out = new FileOutputStream( target );
+        try
+        {
+            out.write( content.getBytes( "UTF-8" ) );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.obr.internal;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class VersionRangeTest
+{
+
+    @Test
+    public void exactVersion()
+    {
+        assertEquals( "Filter", "(version=1.0)", VersionRange.parse( " 1.0 " ).toFilter() );
+    }
+
+    @Test
+    public void inclusiveRange()
+    {
+        assertEquals(
+            "Filter", "(version>=1.0.0)(version<=2.0.0)", VersionRange.parse( "[1.0,2.0]" ).toFilter()
+        );
+    }
+
+    @Test
+    public void exclusiveRange()
+    {
+        assertEquals(
+            "Filter", "(!(version<=1.0.0))(!(version>=2.0.0))", VersionRange.parse( "(1.0, 2)" ).toFilter()
+        );
+    }
+
+    @Test
+    public void halfOpenRange()
+    {
+        assertEquals(
+            "Filter", "(version>=1.2.3.q)(!(version>=2.0.0))", VersionRange.parse( "[1.2.3.q,2.0.0)" ).toFilter()
+        );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void rangeWithoutCeiling()
+    {
+        VersionRange.parse( "[1.0" );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void emptyRange()
+    {
+        VersionRange.parse( "[2.0,1.0]" );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void invalidVersionInRange()
+    {
+        VersionRange.parse( "[a.b,2.0]" );
+    }
+
+}
@@ -45,4 +45,29 @@ public interface ServiceConstants
      */
     static final String PROPERTY_DEFAULT_EXCLUDED_TYPES = ".defaultExcludedTypes";
 
+    /**
+     * Transitive dependencies resolution property name.
+     */
+    static final String PROPERTY_TRANSITIVE = ".transitive";
+
+    /**
+     * Comma separated list of repositories used to download poms during transitive resolution property name.
+     */
+    static final String PROPERTY_REPOSITORIES = ".repositories";
+
+    /**
+     * Number of threads used to download poms during transitive resolution property name.
+     */
+    static final String PROPERTY_THREADS = ".threads";
+
+    /**
+     * Maximum number of parsed poms kept in cache property name.
+     */
+    static final String PROPERTY_CACHE_ENTRIES = ".cacheEntries";
+
+    /**
+     * Maximum total size (bytes) of poms kept in cache property name.
+     */
+    static final String PROPERTY_CACHE_SIZE = ".cacheSize";
+
 }
@@ -0,0 +1,385 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.pom.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.xml.stream.XMLStreamException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ops4j.lang.NullArgumentException;
+import org.ops4j.net.URLUtils;
+import org.ops4j.pax.scanner.ScannerMetrics;
+import org.ops4j.pax.scanner.pom.ServiceConstants;
+
+/**
+ * Least recently used cache of parsed poms, keyed by pom url. Cached poms are revalidated on every access: file poms
+ * by last modification time and length, http(s) poms via a conditional request (ETag / Last-Modified). Poms from
+ * other protocols are not cached.
+ * Cache is bounded by number of entries and by the total size (in bytes) of the cached pom files.
+ *
+ * @since 1.2.0
+ */
+class PomCache
+{
+
+    /**
+     * Logger.
+     */
+    private static final Log LOGGER = LogFactory.getLog( PomCache.class );
+    /**
+     * Size of read buffer.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Maximum number of cached poms.
+     */
+    private final int m_maxEntries;
+    /**
+     * Maximum total size (bytes) of cached poms.
+     */
+    private final long m_maxSize;
+    /**
+     * Cached poms, in access order (eldest first), keyed by url.
+     */
+    private final Map<String, Entry> m_entries;
+    /**
+     * Current total size (bytes) of cached poms.
+     */
+    private long m_size;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxEntries maximum number of cached poms (0 disables caching)
+     * @param maxSize    maximum total size (bytes) of cached poms
+     */
+    PomCache( final int maxEntries, final long maxSize )
+    {
+        m_maxEntries = maxEntries;
+        m_maxSize = maxSize;
+        m_entries = new LinkedHashMap<String, Entry>( 16, 0.75f, true );
+    }
+
+    /**
+     * Getter.
+     *
+     * @return maximum number of cached poms
+     */
+    int getMaxEntries()
+    {
+        return m_maxEntries;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return maximum total size (bytes) of cached poms
+     */
+    long getMaxSize()
+    {
+        return m_maxSize;
+    }
+
+    /**
+     * Returns the parsed pom from the specified url. If a cached pom is still valid it is returned, otherwise the pom
+     * is (re)parsed and cached.
+     *
+     * @param url              pom url; mandatory
+     * @param certificateCheck true if certificates should be checked on https connections
+     *
+     * @return cache entry of the parsed pom
+     *
+     * @throws IOException        - If pom cannot be read
+     * @throws XMLStreamException - If pom cannot be parsed
+     */
+    Entry load( final URL url, final boolean certificateCheck )
+        throws IOException, XMLStreamException
+    {
+        NullArgumentException.validateNotNull( url, "URL" );
+        final String key = url.toExternalForm();
+        final Entry cached = get( key );
+        if( "file".equals( url.getProtocol() ) )
+        {
+            final File file = toFile( url );
+            if( file != null )
+            {
+                final String validator = file.lastModified() + "/" + file.length();
+                if( cached != null && validator.equals( cached.m_validator ) )
+                {
+                    LOGGER.trace( "Pom [" + key + "] not changed" );
+                    ScannerMetrics.recordCacheHit( ServiceConstants.SCHEMA );
+                    return cached;
+                }
+                return put( key, read( new FileInputStream( file ) ), validator );
+            }
+        }
+        if( "http".equals( url.getProtocol() ) || "https".equals( url.getProtocol() ) )
+        {
+            return loadFromHttp( key, url, certificateCheck, cached );
+        }
+        return put( key, read( URLUtils.prepareInputStream( url, !certificateCheck ) ), null );
+    }
+
+    /**
+     * Loads a pom via http(s) using a conditional request if there is a cached pom.
+     *
+     * @param key              cache key
+     * @param url              pom url
+     * @param certificateCheck true if certificates should be checked on https connections
+     * @param cached           cached pom; can be null
+     *
+     * @return cache entry of the parsed pom
+     *
+     * @throws IOException        - If pom cannot be read
+     * @throws XMLStreamException - If pom cannot be parsed
+     */
+    private Entry loadFromHttp( final String key,
+                                final URL url,
+                                final boolean certificateCheck,
+                                final Entry cached )
+        throws IOException, XMLStreamException
+    {
+        final URLConnection connection = url.openConnection();
+        if( !certificateCheck )
+        {
+            URLUtils.prepareForSSL( connection );
+        }
+        URLUtils.prepareForAuthentication( connection );
+        if( cached != null && cached.m_validator != null )
+        {
+            if( cached.m_validator.startsWith( "\"" ) || cached.m_validator.startsWith( "W/" ) )
+            {
+                connection.setRequestProperty( "If-None-Match", cached.m_validator );
+            }
+            else
+            {
+                connection.setIfModifiedSince( Long.parseLong( cached.m_validator ) );
+            }
+        }
+        if( cached != null
+            && connection instanceof HttpURLConnection
+            && ( (HttpURLConnection) connection ).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED )
+        {
+            LOGGER.trace( "Pom [" + key + "] not modified" );
+            ScannerMetrics.recordCacheHit( ServiceConstants.SCHEMA );
+            return cached;
+        }
+        String validator = connection.getHeaderField( "ETag" );
+        if( validator == null && connection.getLastModified() > 0 )
+        {
+            validator = String.valueOf( connection.getLastModified() );
+        }
+        return put( key, read( connection.getInputStream() ), validator );
+    }
+
+    /**
+     * Parses a pom and caches it if there is a validator.
+     *
+     * @param key       cache key
+     * @param content   pom content
+     * @param validator validator; null if the pom cannot be revalidated (will not be cached)
+     *
+     * @return cache entry of the parsed pom
+     *
+     * @throws XMLStreamException - If pom cannot be parsed
+     */
+    private Entry put( final String key, final byte[] content, final String validator )
+        throws XMLStreamException
+    {
+        ScannerMetrics.recordCacheMiss( ServiceConstants.SCHEMA );
+        ScannerMetrics.recordBytesFetched( ServiceConstants.SCHEMA, content.length );
+        final Entry entry = new Entry( PomParser.parse( new ByteArrayInputStream( content ) ), validator,
+                                       content.length
+        );
+        synchronized( m_entries )
+        {
+            final Entry previous = m_entries.remove( key );
+            if( previous != null )
+            {
+                m_size -= previous.m_size;
+            }
+            if( validator != null && m_maxEntries > 0 && content.length <= m_maxSize )
+            {
+                m_entries.put( key, entry );
+                m_size += entry.m_size;
+                final Iterator<Entry> eldest = m_entries.values().iterator();
+                while( m_entries.size() > m_maxEntries || m_size > m_maxSize )
+                {
+                    m_size -= eldest.next().m_size;
+                    eldest.remove();
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Returns a cached pom.
+     *
+     * @param key cache key
+     *
+     * @return cached pom or null if not cached
+     */
+    private Entry get( final String key )
+    {
+        synchronized( m_entries )
+        {
+            return m_entries.get( key );
+        }
+    }
+
+    /**
+     * Returns the number of cached poms.
+     *
+     * @return number of cached poms
+     */
+    int size()
+    {
+        synchronized( m_entries )
+        {
+            return m_entries.size();
+        }
+    }
+
+    /**
+     * Reads and closes an input stream.
+     *
+     * @param inputStream to read
+     *
+     * @return content
+     *
+     * @throws IOException - If stream cannot be read
+     */
+    private static byte[] read( final InputStream inputStream )
+        throws IOException
+    {
+        try
+        {
+            final ByteArrayOutputStream content = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while( ( read = inputStream.read( buffer ) ) != -1 )
+            {
+                content.write( buffer, 0, read );
+            }
+            return content.toByteArray();
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Converts a file url to a file.
+     *
+     * @param url file url
+     *
+     * @return file or null if url cannot be converted to a file
+     */
+    private static File toFile( final URL url )
+    {
+        try
+        {
+            return new File( url.toURI() );
+        }
+        catch( URISyntaxException e )
+        {
+            return null;
+        }
+        catch( IllegalArgumentException e )
+        {
+            return null;
+        }
+    }
+
+    /**
+     * A cached pom. Only the raw parsed pom is cached as placeholders are resolved on every scan.
+     */
+    static class Entry
+    {
+
+        /**
+         * Parsed pom.
+         */
+        private final PomModel m_model;
+        /**
+         * Validator (file modification time and length, ETag or Last-Modified).
+         */
+        private final String m_validator;
+        /**
+         * Size of pom (bytes).
+         */
+        private final int m_size;
+        /**
+         * True once the pom properties were set as system properties.
+         */
+        private final AtomicBoolean m_propertiesSet;
+
+        /**
+         * Creates a new entry.
+         *
+         * @param model     parsed pom
+         * @param validator validator
+         * @param size      size of pom (bytes)
+         */
+        Entry( final PomModel model, final String validator, final int size )
+        {
+            m_model = model;
+            m_validator = validator;
+            m_size = size;
+            m_propertiesSet = new AtomicBoolean();
+        }
+
+        /**
+         * Getter.
+         *
+         * @return parsed pom
+         */
+        PomModel getModel()
+        {
+            return m_model;
+        }
+
+        /**
+         * Marks the pom properties as set as system properties. Properties have to be set only once per parsed pom.
+         *
+         * @return true if properties were not set before
+         */
+        boolean markPropertiesSet()
+        {
+            return m_propertiesSet.compareAndSet( false, true );
+        }
+
+    }
+
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.pom.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The parts of a pom that are relevant for scanning: main artifact coordinates, parent, properties, dependencies and
+ * dependency management.
+ * All values are kept raw, as found in the pom (no trimming, no placeholder resolution), and are null if the
+ * corresponding element is missing.
+ *
+ * @since 1.2.0
+ */
+class PomModel
+{
+
+    /**
+     * Main artifact coordinates (type is the packaging).
+     */
+    private final Coordinates m_main;
+    /**
+     * Parent coordinates. Null if pom has no parent.
+     */
+    private Coordinates m_parent;
+    /**
+     * Properties names, in document order.
+     */
+    private final List<String> m_propertyNames;
+    /**
+     * Properties values, in document order.
+     */
+    private final List<String> m_propertyValues;
+    /**
+     * Dependencies, in document order.
+     */
+    private final List<Coordinates> m_dependencies;
+    /**
+     * Dependencies from dependency management, in document order.
+     */
+    private final List<Coordinates> m_managedDependencies;
+
+    /**
+     * Creates an empty model.
+     */
+    PomModel()
+    {
+        m_main = new Coordinates();
+        m_propertyNames = new ArrayList<String>();
+        m_propertyValues = new ArrayList<String>();
+        m_dependencies = new ArrayList<Coordinates>();
+        m_managedDependencies = new ArrayList<Coordinates>();
+    }
+
+    /**
+     * Getter.
+     *
+     * @return main artifact coordinates (type is the packaging)
+     */
+    Coordinates getMain()
+    {
+        return m_main;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return parent coordinates or null if pom has no parent
+     */
+    Coordinates getParent()
+    {
+        return m_parent;
+    }
+
+    /**
+     * Setter.
+     *
+     * @param parent parent coordinates
+     */
+    void setParent( final Coordinates parent )
+    {
+        m_parent = parent;
+    }
+
+    /**
+     * Adds a property.
+     *
+     * @param name  property name
+     * @param value property value
+     */
+    void addProperty( final String name, final String value )
+    {
+        m_propertyNames.add( name );
+        m_propertyValues.add( value );
+    }
+
+    /**
+     * Getter.
+     *
+     * @return properties names, in document order
+     */
+    List<String> getPropertyNames()
+    {
+        return m_propertyNames;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return properties values, in document order
+     */
+    List<String> getPropertyValues()
+    {
+        return m_propertyValues;
+    }
+
+    /**
+     * Adds a dependency.
+     *
+     * @return added dependency coordinates, to be filled in
+     */
+    Coordinates addDependency()
+    {
+        final Coordinates dependency = new Coordinates();
+        m_dependencies.add( dependency );
+        return dependency;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return dependencies, in document order
+     */
+    List<Coordinates> getDependencies()
+    {
+        return m_dependencies;
+    }
+
+    /**
+     * Adds a dependency from dependency management.
+     *
+     * @return added dependency coordinates, to be filled in
+     */
+    Coordinates addManagedDependency()
+    {
+        final Coordinates dependency = new Coordinates();
+        m_managedDependencies.add( dependency );
+        return dependency;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return dependencies from dependency management, in document order
+     */
+    List<Coordinates> getManagedDependencies()
+    {
+        return m_managedDependencies;
+    }
+
+    /**
+     * Artifact coordinates.
+     */
+    static class Coordinates
+    {
+
+        /**
+         * Group id.
+         */
+        String groupId;
+        /**
+         * Artifact id.
+         */
+        String artifactId;
+        /**
+         * Version.
+         */
+        String version;
+        /**
+         * Type (or packaging for main artifact).
+         */
+        String type;
+        /**
+         * Classifier.
+         */
+        String classifier;
+        /**
+         * Scope.
+         */
+        String scope;
+        /**
+         * Optional flag.
+         */
+        String optional;
+        /**
+         * Exclusions (groupId:artifactId).
+         */
+        final List<String> exclusions = new ArrayList<String>();
+
+    }
+
+}
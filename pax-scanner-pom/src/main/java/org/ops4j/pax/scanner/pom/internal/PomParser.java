@@ -0,0 +1,320 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.pom.internal;
+
+import java.io.InputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Single pass streaming (StAX) parser of the parts of a pom that are relevant for scanning: main artifact, parent,
+ * properties, dependencies and dependency management. Other sections (e.g. profiles) are not considered.
+ *
+ * @since 1.2.0
+ */
+class PomParser
+{
+
+    /**
+     * Depth of project child elements.
+     */
+    private static final int PROJECT_CHILD = 2;
+    /**
+     * Depth of parent / properties / dependencies child elements.
+     */
+    private static final int SECTION_CHILD = 3;
+    /**
+     * Depth of dependency elements from dependency management.
+     */
+    private static final int MANAGED_DEPENDENCY = 4;
+
+    /**
+     * Text is collected for a main artifact coordinate.
+     */
+    private static final int TARGET_MAIN = 1;
+    /**
+     * Text is collected for a parent coordinate.
+     */
+    private static final int TARGET_PARENT = 2;
+    /**
+     * Text is collected for a property.
+     */
+    private static final int TARGET_PROPERTY = 3;
+    /**
+     * Text is collected for a dependency coordinate.
+     */
+    private static final int TARGET_DEPENDENCY = 4;
+    /**
+     * Text is collected for an exclusion coordinate.
+     */
+    private static final int TARGET_EXCLUSION = 5;
+
+    /**
+     * Shared stream factory (thread safe once configured).
+     */
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    /**
+     * Utility class. Ment to be used via static methods.
+     */
+    private PomParser()
+    {
+        // utility class
+    }
+
+    /**
+     * Parses a pom.
+     *
+     * @param inputStream pom content
+     *
+     * @return parsed model
+     *
+     * @throws XMLStreamException - If pom is not a well formed xml
+     */
+    static PomModel parse( final InputStream inputStream )
+        throws XMLStreamException
+    {
+        final PomModel model = new PomModel();
+        final XMLStreamReader reader = FACTORY.createXMLStreamReader( inputStream );
+        try
+        {
+            final StringBuilder text = new StringBuilder();
+            int depth = 0;
+            // depth at which the text of current element is collected; 0 if no text is collected
+            int textDepth = 0;
+            int target = 0;
+            String section = null;
+            String subsection = null;
+            boolean propertiesParsed = false;
+            PomModel.Coordinates dependency = null;
+            int dependencyDepth = 0;
+            String exclusionsElement = null;
+            String[] exclusion = null;
+            while( reader.hasNext() )
+            {
+                switch( reader.next() )
+                {
+                    case XMLStreamConstants.START_ELEMENT:
+                        depth++;
+                        final String name = reader.getLocalName();
+                        target = 0;
+                        if( depth == PROJECT_CHILD )
+                        {
+                            section = name;
+                            if( "parent".equals( name ) )
+                            {
+                                model.setParent( new PomModel.Coordinates() );
+                            }
+                            else if( isCoordinate( name, "packaging" ) )
+                            {
+                                target = TARGET_MAIN;
+                            }
+                        }
+                        else if( depth == SECTION_CHILD )
+                        {
+                            subsection = name;
+                            if( "parent".equals( section ) && isCoordinate( name, null ) )
+                            {
+                                target = TARGET_PARENT;
+                            }
+                            else if( "properties".equals( section ) && !propertiesParsed )
+                            {
+                                target = TARGET_PROPERTY;
+                            }
+                            else if( "dependencies".equals( section ) && "dependency".equals( name ) )
+                            {
+                                dependency = model.addDependency();
+                                dependencyDepth = depth;
+                            }
+                        }
+                        else if( depth == MANAGED_DEPENDENCY
+                                 && "dependencyManagement".equals( section )
+                                 && "dependencies".equals( subsection )
+                                 && "dependency".equals( name ) )
+                        {
+                            dependency = model.addManagedDependency();
+                            dependencyDepth = depth;
+                        }
+                        else if( dependency != null && depth == dependencyDepth + 1 )
+                        {
+                            exclusionsElement = name;
+                            if( isCoordinate( name, "type" ) )
+                            {
+                                target = TARGET_DEPENDENCY;
+                            }
+                        }
+                        else if( dependency != null && depth == dependencyDepth + 2
+                                 && "exclusions".equals( exclusionsElement ) && "exclusion".equals( name ) )
+                        {
+                            exclusion = new String[2];
+                        }
+                        else if( exclusion != null && depth == dependencyDepth + 3
+                                 && ( "groupId".equals( name ) || "artifactId".equals( name ) ) )
+                        {
+                            target = TARGET_EXCLUSION;
+                        }
+                        if( target != 0 )
+                        {
+                            textDepth = depth;
+                            text.setLength( 0 );
+                        }
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if( textDepth > 0 )
+                        {
+                            text.append( reader.getText() );
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        final String elementName = reader.getLocalName();
+                        if( textDepth == depth )
+                        {
+                            switch( target )
+                            {
+                                case TARGET_MAIN:
+                                    setCoordinate( model.getMain(), elementName, "packaging", text.toString() );
+                                    break;
+                                case TARGET_PARENT:
+                                    setCoordinate( model.getParent(), elementName, null, text.toString() );
+                                    break;
+                                case TARGET_PROPERTY:
+                                    model.addProperty( elementName, text.toString() );
+                                    break;
+                                case TARGET_DEPENDENCY:
+                                    setCoordinate( dependency, elementName, "type", text.toString() );
+                                    break;
+                                default:
+                                    exclusion[ "groupId".equals( elementName ) ? 0 : 1 ] = text.toString().trim();
+                                    break;
+                            }
+                            textDepth = 0;
+                            target = 0;
+                        }
+                        else if( exclusion != null && depth == dependencyDepth + 2 )
+                        {
+                            dependency.exclusions.add( exclusion[ 0 ] + ":" + exclusion[ 1 ] );
+                            exclusion = null;
+                        }
+                        else if( dependency != null && depth == dependencyDepth )
+                        {
+                            dependency = null;
+                        }
+                        if( depth == PROJECT_CHILD && "properties".equals( section ) )
+                        {
+                            propertiesParsed = true;
+                        }
+                        depth--;
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return model;
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * Checks if an element is one of the elements that make up artifact coordinates.
+     *
+     * @param name     element name
+     * @param typeName name of the type element ("packaging" for main artifact, "type" for dependencies, null for
+     *                 parent)
+     *
+     * @return true if element is a coordinate
+     */
+    private static boolean isCoordinate( final String name, final String typeName )
+    {
+        if( typeName == null )
+        {
+            return "groupId".equals( name ) || "artifactId".equals( name ) || "version".equals( name );
+        }
+        return "groupId".equals( name )
+               || "artifactId".equals( name )
+               || "version".equals( name )
+               || "scope".equals( name )
+               || typeName.equals( name )
+               || ( "type".equals( typeName ) && ( "classifier".equals( name ) || "optional".equals( name ) ) );
+    }
+
+    /**
+     * Sets a coordinate, if not already set (first element wins).
+     *
+     * @param coordinates coordinates to set
+     * @param name        coordinate element name
+     * @param typeName    name of the type element ("packaging" for main artifact, "type" for dependencies, null
+     *                    for parent)
+     * @param value       coordinate value
+     */
+    private static void setCoordinate( final PomModel.Coordinates coordinates,
+                                       final String name,
+                                       final String typeName,
+                                       final String value )
+    {
+        if( "groupId".equals( name ) && coordinates.groupId == null )
+        {
+            coordinates.groupId = value;
+        }
+        else if( "artifactId".equals( name ) && coordinates.artifactId == null )
+        {
+            coordinates.artifactId = value;
+        }
+        else if( "version".equals( name ) && coordinates.version == null )
+        {
+            coordinates.version = value;
+        }
+        else if( "scope".equals( name ) && coordinates.scope == null )
+        {
+            coordinates.scope = value;
+        }
+        else if( "classifier".equals( name ) && coordinates.classifier == null )
+        {
+            coordinates.classifier = value;
+        }
+        else if( "optional".equals( name ) && coordinates.optional == null )
+        {
+            coordinates.optional = value;
+        }
+        else if( name.equals( typeName ) && coordinates.type == null )
+        {
+            coordinates.type = value;
+        }
+    }
+
+    /**
+     * Creates and configures the stream factory. External entities and DTDs are not processed.
+     *
+     * @return stream factory
+     */
+    private static XMLInputFactory createFactory()
+    {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty( XMLInputFactory.IS_COALESCING, Boolean.TRUE );
+        factory.setProperty( XMLInputFactory.SUPPORT_DTD, Boolean.FALSE );
+        factory.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE );
+        return factory;
+    }
+
+}
@@ -18,17 +18,13 @@
 package org.ops4j.pax.scanner.pom.internal;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.List;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.xml.sax.SAXException;
 import org.ops4j.lang.NullArgumentException;
-import org.ops4j.net.URLUtils;
 import org.ops4j.pax.scanner.MalformedSpecificationException;
 import org.ops4j.pax.scanner.ProvisionSpec;
 import org.ops4j.pax.scanner.ScannedBundle;
@@ -38,7 +34,6 @@ import org.ops4j.pax.scanner.common.ScannedFileBundle;
 import org.ops4j.pax.scanner.common.ScannerConfiguration;
 import org.ops4j.pax.scanner.common.SystemPropertyUtils;
 import org.ops4j.util.property.PropertyResolver;
-import org.ops4j.util.xml.XmlUtils;
 
 /**
  * A scanner that scans maven 2 pom files.
@@ -58,6 +53,19 @@ public class PomScanner
      * PropertyResolver used to resolve properties.
      */
     private PropertyResolver m_propertyResolver;
+    /**
+     * Scanner configuration. Created on first scan and discarded when the property resolver changes.
+     */
+    private volatile PomScannerConfiguration m_configuration;
+    /**
+     * Transitive dependencies resolver. Created on first transitive scan and discarded when the property resolver
+     * changes.
+     */
+    private volatile TransitivePomResolver m_transitiveResolver;
+    /**
+     * Cache of parsed poms. Kept between scans and configuration changes as long as the cache bounds do not change.
+     */
+    private volatile PomCache m_cache;
 
     /**
      * Creates a new file scanner.
@@ -81,75 +89,71 @@ public class PomScanner
 
         LOGGER.debug( "Scanning [" + provisionSpec.getPath() + "]" );
         List<ScannedBundle> scannedBundles = new ArrayList<ScannedBundle>();
-        PomScannerConfiguration config = createConfiguration();
-        InputStream inputStream = null;
+        PomScannerConfiguration config = getConfiguration();
+        final PomCache.Entry entry;
         try
         {
-            try
-            {
-                inputStream = URLUtils.prepareInputStream(
-                    provisionSpec.getPathAsUrl(),
-                    !config.getCertificateCheck()
-                );
-                final Document doc = XmlUtils.parseDoc( inputStream );
-                final Integer defaultStartLevel = getDefaultStartLevel( provisionSpec, config );
-                final Boolean defaultStart = getDefaultStart( provisionSpec, config );
-                final Boolean defaultUpdate = getDefaultUpdate( provisionSpec, config );
-                final String mainArtifactURL = composeURL( doc.getDocumentElement(), "packaging", config );
-                if( mainArtifactURL != null )
-                {
-                    scannedBundles.add(
-                        new ScannedFileBundle( mainArtifactURL, defaultStartLevel, defaultStart, defaultUpdate )
-                    );
-                }
-                // check out properties before processing dependencies
-                final Element properties = XmlUtils.getElement( doc, "properties" );
-                if( properties != null )
-                {
-                    List<Element> props = XmlUtils.getChildElements( properties );
-                    for( Element property : props )
-                    {
-                        final String key = property.getNodeName();
-                        final String value = getTextContent( property );
-                        System.setProperty( key, value );
-                    }
-                }
-                // check out dependencies
-                final List<Element> dependencies = XmlUtils.getElements( doc, "dependencies/dependency" );
-                if( dependencies != null )
-                {
-                    for( Element dependency : dependencies )
-                    {
-                        final String dependencyURL = composeURL( dependency, "type", config );
-                        if( dependencyURL != null )
-                        {
-                            final ScannedFileBundle scannedFileBundle = new ScannedFileBundle(
-                                dependencyURL, defaultStartLevel, defaultStart, defaultUpdate
-                            );
-                            scannedBundles.add( scannedFileBundle );
-                            LOGGER.debug( "Installing bundle [" + scannedFileBundle + "]" );
-                        }
-                    }
-                }
-            }
-            finally
-            {
-                if( inputStream != null )
-                {
-                    inputStream.close();
-                }
-            }
-
+            entry = getCache( config ).load( provisionSpec.getPathAsUrl(), config.getCertificateCheck() );
         }
         catch( IOException e )
         {
             throw new ScannerException( "Could not parse the provision file", e );
         }
-        catch( ParserConfigurationException e )
+        catch( XMLStreamException e )
         {
             throw new ScannerException( "Could not parse the provision file", e );
         }
-        catch( SAXException e )
+        final PomModel pom = entry.getModel();
+        final Integer defaultStartLevel = getDefaultStartLevel( provisionSpec, config );
+        final Boolean defaultStart = getDefaultStart( provisionSpec, config );
+        final Boolean defaultUpdate = getDefaultUpdate( provisionSpec, config );
+        final boolean transitive = config.isTransitive();
+        // urls are always composed from the raw (cached) pom as placeholders may resolve differently on every scan
+        final List<String> urls = new ArrayList<String>();
+        // in transitive mode main artifact and dependencies are resolved from the effective pom
+        PomModel.Coordinates main = pom.getMain();
+        List<PomModel.Coordinates> dependencies = pom.getDependencies();
+        if( transitive )
+        {
+            final List<PomModel.Coordinates> resolved = getTransitiveResolver( config ).resolve( pom );
+            main = resolved.get( 0 );
+            dependencies = resolved.subList( 1, resolved.size() );
+        }
+        final String mainArtifactURL = composeURL( main, config );
+        if( mainArtifactURL != null )
+        {
+            urls.add( mainArtifactURL );
+        }
+        // check out properties before processing dependencies (only once per parsed pom)
+        if( entry.markPropertiesSet() )
+        {
+            final List<String> propertyNames = pom.getPropertyNames();
+            for( int i = 0; i < propertyNames.size(); i++ )
+            {
+                System.setProperty( propertyNames.get( i ), getTextContent( pom.getPropertyValues().get( i ) ) );
+            }
+        }
+        // check out dependencies
+        for( PomModel.Coordinates dependency : dependencies )
+        {
+            final String dependencyURL = composeURL( dependency, config );
+            if( dependencyURL != null )
+            {
+                urls.add( dependencyURL );
+            }
+        }
+        try
+        {
+            for( String url : urls )
+            {
+                final ScannedFileBundle scannedFileBundle = new ScannedFileBundle(
+                    url, defaultStartLevel, defaultStart, defaultUpdate
+                );
+                scannedBundles.add( scannedFileBundle );
+                LOGGER.debug( "Installing bundle [" + scannedFileBundle + "]" );
+            }
+        }
+        catch( MalformedURLException e )
         {
             throw new ScannerException( "Could not parse the provision file", e );
         }
@@ -157,59 +161,50 @@ public class PomScanner
     }
 
     /**
-     * Retruns a maven url based on an element that contains group/artifact/version/type.
+     * Retruns a maven url based on parsed group/artifact/version/type.
      *
-     * @param parentElement   the element that contains the group/artifact/version/type
-     * @param typeElementName name of the type element to be used
-     * @param configuration   scanner configuration
+     * @param coordinates   parsed group/artifact/version/type
+     * @param configuration scanner configuration
      *
      * @return a maven url
      *
      * @throws org.ops4j.pax.scanner.ScannerException
      *          if the element does not contain an artifact or group id
      */
-    private static String composeURL( final Element parentElement,
-                                      final String typeElementName,
+    private static String composeURL( final PomModel.Coordinates coordinates,
                                       final PomScannerConfiguration configuration )
         throws ScannerException
     {
-        Element element = XmlUtils.getElement( parentElement, "artifactId" );
-        if( element == null )
+        if( coordinates.artifactId == null )
         {
             throw new ScannerException( "Invalid pom file. Missing artifact id." );
         }
-        final String artifactId = getTextContent( element );
+        final String artifactId = getTextContent( coordinates.artifactId );
         if( artifactId == null || artifactId.trim().length() == 0 )
         {
             throw new ScannerException( "Invalid pom file. Invalid artifact id." );
         }
-        element = XmlUtils.getElement( parentElement, "groupId" );
-        if( element == null )
+        if( coordinates.groupId == null )
         {
             throw new ScannerException( "Invalid pom file. Missing group id." );
         }
-        final String groupId = getTextContent( element );
+        final String groupId = getTextContent( coordinates.groupId );
         if( groupId == null || groupId.trim().length() == 0 )
         {
             throw new ScannerException( "Invalid pom file. Invalid group id." );
         }
-        element = XmlUtils.getElement( parentElement, "version" );
-        String version = null;
-        if( element != null )
-        {
-            version = getTextContent( element );
-        }
+        String version = getTextContent( coordinates.version );
         if( version != null && version.trim().length() == 0 )
         {
             version = null;
         }
-        element = XmlUtils.getElement( parentElement, typeElementName );
-        String type = null;
-        if( element != null )
+        String classifier = getTextContent( coordinates.classifier );
+        if( classifier != null && classifier.trim().length() == 0 )
         {
-            type = getTextContent( element );
+            classifier = null;
         }
-        if( isNotAcceptedType( type, configuration ) )
+        String type = getTextContent( coordinates.type );
+        if( !configuration.getTypeFilter().accepts( type ) )
         {
             return null;
         }
@@ -218,12 +213,7 @@ public class PomScanner
             type = null;
         }
         // verify scope
-        element = XmlUtils.getElement( parentElement, "scope" );
-        String scope = null;
-        if( element != null )
-        {
-            scope = getTextContent( element );
-        }
+        final String scope = getTextContent( coordinates.scope );
         // skip artifacts with test scopes
         if( scope != null && scope.equalsIgnoreCase( "test" ) )
         {
@@ -237,59 +227,28 @@ public class PomScanner
         if( version != null )
         {
             builder.append( "/" ).append( version );
-            if( type != null )
+            if( type != null || classifier != null )
             {
-                builder.append( "/" ).append( type );
+                builder.append( "/" ).append( type == null ? "jar" : type );
+            }
+            if( classifier != null )
+            {
+                builder.append( "/" ).append( classifier );
             }
         }
         return builder.toString();
     }
 
     /**
-     * Verify if the specified type it is accepted as an artifact based on teh list of configured included/excluded.
+     * Resolves placeholders in a raw text and trims it.
      *
-     * @param type          artifact type
-     * @param configuration configuration
+     * @param rawText raw text; can be null
      *
-     * @return true, if the artyifact type should not be included
+     * @return resolved text or null if raw text is null
      */
-    private static boolean isNotAcceptedType( final String type,
-                                              final PomScannerConfiguration configuration )
-    {
-        String localType = type;
-        if( localType == null )
-        {
-            localType = "jar";
-        }
-        final String[] excludedTypes = configuration.getDefaultExcludedTypes();
-        if( excludedTypes != null )
-        {
-            for( String excludedType : excludedTypes )
-            {
-                if( localType.matches( excludedType ) )
-                {
-                    return true;
-                }
-            }
-        }
-        final String[] includedTypes = configuration.getDefaultIncludedTypes();
-        if( includedTypes != null )
-        {
-            for( String includedType : includedTypes )
-            {
-                if( localType.matches( includedType ) )
-                {
-                    return false;
-                }
-            }
-            return true;
-        }
-        return false;
-    }
-
-    private static String getTextContent( Element element )
+    private static String getTextContent( final String rawText )
     {
-        String text = XmlUtils.getTextContent( element );
+        String text = rawText;
         if( text != null )
         {
             text = SystemPropertyUtils.resolvePlaceholders( text );
@@ -361,6 +320,65 @@ public class PomScanner
     {
         NullArgumentException.validateNotNull( propertyResolver, "PropertyResolver" );
         m_propertyResolver = propertyResolver;
+        m_configuration = null;
+        m_transitiveResolver = null;
+    }
+
+    /**
+     * Returns the current configuration, creating one if necessary.
+     *
+     * @return a configuration
+     */
+    private PomScannerConfiguration getConfiguration()
+    {
+        PomScannerConfiguration configuration = m_configuration;
+        if( configuration == null )
+        {
+            configuration = createConfiguration();
+            m_configuration = configuration;
+        }
+        return configuration;
+    }
+
+    /**
+     * Returns the transitive dependencies resolver, creating one if necessary. Resolver is kept between scans so
+     * already downloaded poms are reused.
+     *
+     * @param config a configuration
+     *
+     * @return a transitive dependencies resolver
+     */
+    private TransitivePomResolver getTransitiveResolver( final PomScannerConfiguration config )
+    {
+        TransitivePomResolver resolver = m_transitiveResolver;
+        if( resolver == null )
+        {
+            resolver = new TransitivePomResolver(
+                config.getRepositories(), config.getThreads(), config.getCertificateCheck()
+            );
+            m_transitiveResolver = resolver;
+        }
+        return resolver;
+    }
+
+    /**
+     * Returns the cache of parsed poms, creating a new one if there is none or cache bounds changed.
+     *
+     * @param config a configuration
+     *
+     * @return cache of parsed poms
+     */
+    private PomCache getCache( final PomScannerConfiguration config )
+    {
+        PomCache cache = m_cache;
+        if( cache == null
+            || cache.getMaxEntries() != config.getCacheEntries()
+            || cache.getMaxSize() != config.getCacheSize() )
+        {
+            cache = new PomCache( config.getCacheEntries(), config.getCacheSize() );
+            m_cache = cache;
+        }
+        return cache;
     }
 
     /**
@@ -45,4 +45,47 @@ public interface PomScannerConfiguration
      */
     String[] getDefaultExcludedTypes();
 
+    /**
+     * Returns a filter of artifact types, compiled out of default included / excluded types.
+     *
+     * @return type filter
+     */
+    TypeFilter getTypeFilter();
+
+    /**
+     * Returns true if the dependencies should be resolved transitively (including parents, dependency management
+     * and imported boms).
+     *
+     * @return true if transitive
+     */
+    Boolean isTransitive();
+
+    /**
+     * Returns the repositories (base urls) used to download poms during transitive resolution.
+     *
+     * @return repositories
+     */
+    String[] getRepositories();
+
+    /**
+     * Returns the number of threads used to download poms during transitive resolution.
+     *
+     * @return number of threads (at least 1)
+     */
+    Integer getThreads();
+
+    /**
+     * Returns the maximum number of parsed poms kept in cache.
+     *
+     * @return maximum number of cached poms (0 disables caching)
+     */
+    Integer getCacheEntries();
+
+    /**
+     * Returns the maximum total size of poms kept in cache.
+     *
+     * @return maximum size in bytes
+     */
+    Long getCacheSize();
+
 }
@@ -17,6 +17,7 @@
  */
 package org.ops4j.pax.scanner.pom.internal;
 
+import java.io.File;
 import org.ops4j.pax.scanner.common.ScannerConfigurationImpl;
 import org.ops4j.pax.scanner.pom.ServiceConstants;
 import org.ops4j.util.property.PropertyResolver;
@@ -40,6 +41,22 @@ public class PomScannerConfigurationImpl
      * Default list of excluded packaging types.
      */
     private static final String[] DEFAULT_EXCLUDED_TYPES = new String[]{ "pom", "libd" };
+    /**
+     * Key under which the compiled type filter is cached.
+     */
+    private static final String TYPE_FILTER = ".typeFilter";
+    /**
+     * Default number of download threads.
+     */
+    private static final Integer DEFAULT_THREADS = 8;
+    /**
+     * Default maximum number of cached poms.
+     */
+    private static final Integer DEFAULT_CACHE_ENTRIES = 64;
+    /**
+     * Default maximum total size (bytes) of cached poms.
+     */
+    private static final Long DEFAULT_CACHE_SIZE = 4L * 1024 * 1024;
 
     /**
      * Creates a new service configuration.
@@ -87,4 +104,146 @@ public class PomScannerConfigurationImpl
         return get( propertyName );
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public TypeFilter getTypeFilter()
+    {
+        final String propertyName = getPid() + TYPE_FILTER;
+        if( !contains( propertyName ) )
+        {
+            return set( propertyName, new TypeFilter( getDefaultIncludedTypes(), getDefaultExcludedTypes() ) );
+        }
+        return get( propertyName );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Boolean isTransitive()
+    {
+        final String propertyName = getPid() + ServiceConstants.PROPERTY_TRANSITIVE;
+        if( !contains( propertyName ) )
+        {
+            return set( propertyName, Boolean.valueOf( getPropertyResolver().get( propertyName ) ) );
+        }
+        return get( propertyName );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String[] getRepositories()
+    {
+        final String propertyName = getPid() + ServiceConstants.PROPERTY_REPOSITORIES;
+        if( !contains( propertyName ) )
+        {
+            final String propertyValue = getPropertyResolver().get( propertyName );
+            if( propertyValue == null )
+            {
+                return set(
+                    propertyName,
+                    new String[]{
+                        new File( System.getProperty( "user.home" ), ".m2/repository" ).toURI().toString(),
+                        "http://repo1.maven.org/maven2/"
+                    }
+                );
+            }
+            final String[] repositories = propertyValue.split( "," );
+            for( int i = 0; i < repositories.length; i++ )
+            {
+                repositories[ i ] = repositories[ i ].trim();
+            }
+            return set( propertyName, repositories );
+        }
+        return get( propertyName );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Integer getThreads()
+    {
+        final String propertyName = getPid() + ServiceConstants.PROPERTY_THREADS;
+        if( !contains( propertyName ) )
+        {
+            final String propertyValue = getPropertyResolver().get( propertyName );
+            if( propertyValue != null )
+            {
+                try
+                {
+                    final Integer threads = Integer.valueOf( propertyValue.trim() );
+                    if( threads > 0 )
+                    {
+                        return set( propertyName, threads );
+                    }
+                }
+                catch( NumberFormatException e )
+                {
+                    // do nothing
+                }
+            }
+            return set( propertyName, DEFAULT_THREADS );
+        }
+        return get( propertyName );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Integer getCacheEntries()
+    {
+        final String propertyName = getPid() + ServiceConstants.PROPERTY_CACHE_ENTRIES;
+        if( !contains( propertyName ) )
+        {
+            final String propertyValue = getPropertyResolver().get( propertyName );
+            if( propertyValue != null )
+            {
+                try
+                {
+                    final Integer entries = Integer.valueOf( propertyValue.trim() );
+                    if( entries >= 0 )
+                    {
+                        return set( propertyName, entries );
+                    }
+                }
+                catch( NumberFormatException e )
+                {
+                    // do nothing
+                }
+            }
+            return set( propertyName, DEFAULT_CACHE_ENTRIES );
+        }
+        return get( propertyName );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Long getCacheSize()
+    {
+        final String propertyName = getPid() + ServiceConstants.PROPERTY_CACHE_SIZE;
+        if( !contains( propertyName ) )
+        {
+            final String propertyValue = getPropertyResolver().get( propertyName );
+            if( propertyValue != null )
+            {
+                try
+                {
+                    final Long size = Long.valueOf( propertyValue.trim() );
+                    if( size >= 0 )
+                    {
+                        return set( propertyName, size );
+                    }
+                }
+                catch( NumberFormatException e )
+                {
+                    // do nothing
+                }
+            }
+            return set( propertyName, DEFAULT_CACHE_SIZE );
+        }
+        return get( propertyName );
+    }
+
 }
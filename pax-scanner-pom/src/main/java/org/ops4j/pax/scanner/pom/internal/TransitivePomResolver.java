@@ -0,0 +1,831 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.pom.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.xml.stream.XMLStreamException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ops4j.lang.NullArgumentException;
+import org.ops4j.net.URLUtils;
+import org.ops4j.pax.scanner.ScannerException;
+
+/**
+ * Resolves the transitive dependencies of a pom.
+ * Poms of parents, imported boms and dependencies are downloaded from a list of repositories by a pool of threads.
+ * As soon as a pom is parsed the poms it refers to (parent, imported boms, dependencies with an explicit version) are
+ * scheduled for download, so the graph is fetched concurrently while the resolution itself (which only waits for
+ * downloads) runs in the calling thread. Parsed poms are cached by coordinates across resolutions; snapshots are
+ * evicted before every resolution.
+ * Resolution follows maven rules: inheritance from parents, dependency management (including imported boms),
+ * nearest definition wins, exclusions, and test / provided / system scoped and optional transitive dependencies are
+ * skipped.
+ *
+ * @since 1.2.0
+ */
+class TransitivePomResolver
+{
+
+    /**
+     * Logger.
+     */
+    private static final Log LOGGER = LogFactory.getLog( TransitivePomResolver.class );
+    /**
+     * Maximum number of passes when resolving placeholders that refer to other placeholders.
+     */
+    private static final int MAX_INTERPOLATION_PASSES = 10;
+
+    /**
+     * Repositories base urls (ending with "/").
+     */
+    private final String[] m_repositories;
+    /**
+     * True if certificates should be checked on https connections.
+     */
+    private final boolean m_certificateCheck;
+    /**
+     * Pool of download threads.
+     */
+    private final ThreadPoolExecutor m_executor;
+    /**
+     * Parsed poms (being) downloaded, keyed by groupId:artifactId:version.
+     */
+    private final ConcurrentMap<String, Future<PomModel>> m_poms;
+
+    /**
+     * Creates a new resolver.
+     *
+     * @param repositories     repositories base urls; mandatory
+     * @param threads          number of download threads
+     * @param certificateCheck true if certificates should be checked on https connections
+     */
+    TransitivePomResolver( final String[] repositories, final int threads, final boolean certificateCheck )
+    {
+        NullArgumentException.validateNotNull( repositories, "Repositories" );
+        m_repositories = new String[repositories.length];
+        for( int i = 0; i < repositories.length; i++ )
+        {
+            m_repositories[ i ] = repositories[ i ].endsWith( "/" ) ? repositories[ i ] : repositories[ i ] + "/";
+        }
+        m_certificateCheck = certificateCheck;
+        m_poms = new ConcurrentHashMap<String, Future<PomModel>>();
+        m_executor = new ThreadPoolExecutor(
+            threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory()
+            {
+                public Thread newThread( final Runnable runnable )
+                {
+                    final Thread thread = new Thread( runnable, "Pax Scanner pom downloader" );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            }
+        );
+        m_executor.allowCoreThreadTimeOut( true );
+    }
+
+    /**
+     * Resolves the main artifact and the transitive dependencies of a pom.
+     *
+     * @param pom parsed pom
+     *
+     * @return main artifact (with packaging as type) followed by the dependencies in breadth first order. All values
+     *         are interpolated.
+     *
+     * @throws ScannerException - If the pom or one of its parents / imported boms cannot be resolved
+     */
+    List<PomModel.Coordinates> resolve( final PomModel pom )
+        throws ScannerException
+    {
+        evictSnapshots();
+        prefetch( pom );
+        final Map<String, Effective> resolved = new HashMap<String, Effective>();
+        final Effective root = effective( pom, "root pom", resolved, new HashSet<String>() );
+
+        final List<PomModel.Coordinates> dependencies = new ArrayList<PomModel.Coordinates>();
+        final PomModel.Coordinates main = new PomModel.Coordinates();
+        main.groupId = root.groupId;
+        main.artifactId = root.artifactId;
+        main.version = root.version;
+        main.type = interpolate( pom.getMain().type, root.properties );
+        main.scope = interpolate( pom.getMain().scope, root.properties );
+        dependencies.add( main );
+
+        final Map<String, PomModel.Coordinates> nearest = new LinkedHashMap<String, PomModel.Coordinates>();
+        final LinkedList<Node> queue = new LinkedList<Node>();
+        for( PomModel.Coordinates dependency : root.dependencies.values() )
+        {
+            if( !"test".equalsIgnoreCase( dependency.scope ) )
+            {
+                queue.add( new Node( dependency, new HashSet<String>( dependency.exclusions ), true ) );
+            }
+        }
+        while( !queue.isEmpty() )
+        {
+            final Node node = queue.removeFirst();
+            final String key = key( node.dependency );
+            if( nearest.containsKey( key ) )
+            {
+                continue;
+            }
+            PomModel.Coordinates dependency = node.dependency;
+            final PomModel.Coordinates managed = root.managed.get( key );
+            if( !node.direct && managed != null && managed.version != null )
+            {
+                dependency = copy( dependency );
+                dependency.version = managed.version;
+            }
+            nearest.put( key, dependency );
+            if( !isResolvable( dependency )
+                || "provided".equalsIgnoreCase( dependency.scope )
+                || "system".equalsIgnoreCase( dependency.scope ) )
+            {
+                continue;
+            }
+            final Effective effective;
+            try
+            {
+                effective = effective( gav( dependency ), resolved, new HashSet<String>() );
+            }
+            catch( ScannerException e )
+            {
+                LOGGER.warn( "Cannot resolve dependencies of " + gav( dependency ) + ": " + e.getMessage() );
+                continue;
+            }
+            for( PomModel.Coordinates transitive : effective.dependencies.values() )
+            {
+                if( "test".equalsIgnoreCase( transitive.scope )
+                    || "provided".equalsIgnoreCase( transitive.scope )
+                    || "system".equalsIgnoreCase( transitive.scope )
+                    || "true".equalsIgnoreCase( transitive.optional )
+                    || isExcluded( transitive, node.exclusions ) )
+                {
+                    continue;
+                }
+                final Set<String> exclusions = new HashSet<String>( node.exclusions );
+                exclusions.addAll( transitive.exclusions );
+                queue.add( new Node( transitive, exclusions, false ) );
+            }
+        }
+        dependencies.addAll( nearest.values() );
+        return dependencies;
+    }
+
+    /**
+     * Computes the effective model of a pom downloaded from repositories.
+     *
+     * @param gav        groupId:artifactId:version
+     * @param resolved   already computed effective models
+     * @param inProgress effective models being computed (used to detect cycles)
+     *
+     * @return effective model
+     *
+     * @throws ScannerException - If the pom or one of its parents / imported boms cannot be resolved
+     */
+    private Effective effective( final String gav,
+                                 final Map<String, Effective> resolved,
+                                 final Set<String> inProgress )
+        throws ScannerException
+    {
+        Effective effective = resolved.get( gav );
+        if( effective == null )
+        {
+            if( !inProgress.add( gav ) )
+            {
+                throw new ScannerException( "Cycle detected while resolving " + gav );
+            }
+            effective = effective( get( gav ), gav, resolved, inProgress );
+            inProgress.remove( gav );
+            resolved.put( gav, effective );
+        }
+        return effective;
+    }
+
+    /**
+     * Computes the effective model of a parsed pom: inherits from parent, interpolates, imports boms and applies
+     * dependency management.
+     *
+     * @param pom        parsed pom
+     * @param name       pom name (for messages)
+     * @param resolved   already computed effective models
+     * @param inProgress effective models being computed (used to detect cycles)
+     *
+     * @return effective model
+     *
+     * @throws ScannerException - If one of parents / imported boms cannot be resolved
+     */
+    private Effective effective( final PomModel pom,
+                                 final String name,
+                                 final Map<String, Effective> resolved,
+                                 final Set<String> inProgress )
+        throws ScannerException
+    {
+        Effective parent = null;
+        if( pom.getParent() != null )
+        {
+            final PomModel.Coordinates parentCoordinates = interpolate( pom.getParent(), new Properties() );
+            if( !isResolvable( parentCoordinates ) )
+            {
+                throw new ScannerException( "Invalid parent of " + name );
+            }
+            parent = effective( gav( parentCoordinates ), resolved, inProgress );
+        }
+
+        final Effective effective = new Effective();
+        if( parent != null )
+        {
+            effective.properties.putAll( parent.properties );
+        }
+        final List<String> propertyNames = pom.getPropertyNames();
+        for( int i = 0; i < propertyNames.size(); i++ )
+        {
+            effective.properties.setProperty( propertyNames.get( i ), pom.getPropertyValues().get( i ).trim() );
+        }
+        effective.groupId = trim( pom.getMain().groupId );
+        effective.artifactId = trim( pom.getMain().artifactId );
+        effective.version = trim( pom.getMain().version );
+        if( parent != null )
+        {
+            if( effective.groupId == null )
+            {
+                effective.groupId = parent.groupId;
+            }
+            if( effective.version == null )
+            {
+                effective.version = parent.version;
+            }
+            setProjectProperties( effective.properties, "project.parent.", parent );
+        }
+        setProjectProperties( effective.properties, "project.", effective );
+        setProjectProperties( effective.properties, "pom.", effective );
+        effective.groupId = interpolate( effective.groupId, effective.properties );
+        effective.artifactId = interpolate( effective.artifactId, effective.properties );
+        effective.version = interpolate( effective.version, effective.properties );
+
+        // dependency management: own entries win over inherited ones, which win over imported ones
+        if( parent != null )
+        {
+            effective.managed.putAll( parent.managed );
+        }
+        final List<PomModel.Coordinates> imports = new ArrayList<PomModel.Coordinates>();
+        for( PomModel.Coordinates managed : pom.getManagedDependencies() )
+        {
+            final PomModel.Coordinates dependency = interpolate( managed, effective.properties );
+            if( "import".equalsIgnoreCase( dependency.scope ) && "pom".equals( dependency.type ) )
+            {
+                imports.add( dependency );
+            }
+            else
+            {
+                effective.managed.put( key( dependency ), dependency );
+            }
+        }
+        for( PomModel.Coordinates bom : imports )
+        {
+            if( !isResolvable( bom ) )
+            {
+                throw new ScannerException( "Invalid imported bom " + gav( bom ) + " in " + name );
+            }
+            for( Map.Entry<String, PomModel.Coordinates> entry : effective( gav( bom ), resolved, inProgress )
+                .managed.entrySet() )
+            {
+                if( !effective.managed.containsKey( entry.getKey() ) )
+                {
+                    effective.managed.put( entry.getKey(), entry.getValue() );
+                }
+            }
+        }
+
+        // dependencies: own entries override inherited ones; dependency management fills in missing values
+        if( parent != null )
+        {
+            effective.dependencies.putAll( parent.dependencies );
+        }
+        for( PomModel.Coordinates raw : pom.getDependencies() )
+        {
+            final PomModel.Coordinates dependency = interpolate( raw, effective.properties );
+            effective.dependencies.put( key( dependency ), dependency );
+        }
+        for( Map.Entry<String, PomModel.Coordinates> entry : effective.dependencies.entrySet() )
+        {
+            final PomModel.Coordinates managed = effective.managed.get( entry.getKey() );
+            final PomModel.Coordinates dependency = entry.getValue();
+            if( managed != null
+                && ( ( dependency.version == null && managed.version != null )
+                     || ( dependency.scope == null && managed.scope != null )
+                     || ( dependency.exclusions.isEmpty() && !managed.exclusions.isEmpty() ) ) )
+            {
+                final PomModel.Coordinates completed = copy( dependency );
+                if( completed.version == null )
+                {
+                    completed.version = managed.version;
+                }
+                if( completed.scope == null )
+                {
+                    completed.scope = managed.scope;
+                }
+                if( completed.exclusions.isEmpty() )
+                {
+                    completed.exclusions.addAll( managed.exclusions );
+                }
+                entry.setValue( completed );
+            }
+        }
+        return effective;
+    }
+
+    /**
+     * Returns a downloaded and parsed pom, waiting for the download if necessary.
+     *
+     * @param gav groupId:artifactId:version
+     *
+     * @return parsed pom
+     *
+     * @throws ScannerException - If the pom cannot be downloaded / parsed
+     */
+    private PomModel get( final String gav )
+        throws ScannerException
+    {
+        final Future<PomModel> future = fetch( gav );
+        try
+        {
+            return future.get();
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new ScannerException( "Interrupted while downloading " + gav );
+        }
+        catch( ExecutionException e )
+        {
+            // do not cache failures so a later resolution will retry
+            m_poms.remove( gav, future );
+            if( e.getCause() instanceof ScannerException )
+            {
+                throw (ScannerException) e.getCause();
+            }
+            throw new ScannerException( "Cannot download " + gav, e.getCause() );
+        }
+    }
+
+    /**
+     * Schedules the download of a pom, if not already downloaded / scheduled.
+     *
+     * @param gav groupId:artifactId:version
+     *
+     * @return pending / finished download
+     */
+    private Future<PomModel> fetch( final String gav )
+    {
+        Future<PomModel> future = m_poms.get( gav );
+        if( future == null )
+        {
+            final FutureTask<PomModel> task = new FutureTask<PomModel>(
+                new Callable<PomModel>()
+                {
+                    public PomModel call()
+                        throws Exception
+                    {
+                        final PomModel pom = download( gav );
+                        prefetch( pom );
+                        return pom;
+                    }
+                }
+            );
+            future = m_poms.putIfAbsent( gav, task );
+            if( future == null )
+            {
+                future = task;
+                m_executor.execute( task );
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Schedules the download of the poms a pom refers to via literal coordinates: parent, imported boms and
+     * dependencies that could be part of the graph. Never waits, so it is safe to be called from download threads.
+     *
+     * @param pom parsed pom
+     */
+    private void prefetch( final PomModel pom )
+    {
+        if( pom.getParent() != null && isLiteral( pom.getParent() ) )
+        {
+            fetch( gav( trim( pom.getParent() ) ) );
+        }
+        for( PomModel.Coordinates managed : pom.getManagedDependencies() )
+        {
+            if( "import".equals( trim( managed.scope ) ) && isLiteral( managed ) )
+            {
+                fetch( gav( trim( managed ) ) );
+            }
+        }
+        for( PomModel.Coordinates dependency : pom.getDependencies() )
+        {
+            final String scope = trim( dependency.scope );
+            if( isLiteral( dependency )
+                && !"test".equals( scope ) && !"provided".equals( scope ) && !"system".equals( scope ) )
+            {
+                fetch( gav( trim( dependency ) ) );
+            }
+        }
+    }
+
+    /**
+     * Downloads and parses a pom from the first repository that contains it.
+     *
+     * @param gav groupId:artifactId:version
+     *
+     * @return parsed pom
+     *
+     * @throws ScannerException - If pom cannot be found in any repository or cannot be parsed
+     */
+    private PomModel download( final String gav )
+        throws ScannerException
+    {
+        final String[] segments = gav.split( ":" );
+        final String path = segments[ 0 ].replace( '.', '/' ) + "/" + segments[ 1 ] + "/" + segments[ 2 ]
+                            + "/" + segments[ 1 ] + "-" + segments[ 2 ] + ".pom";
+        for( String repository : m_repositories )
+        {
+            try
+            {
+                final InputStream inputStream = URLUtils.prepareInputStream(
+                    new URL( repository + path ), !m_certificateCheck
+                );
+                try
+                {
+                    LOGGER.debug( "Downloaded " + gav + " from " + repository );
+                    return PomParser.parse( inputStream );
+                }
+                finally
+                {
+                    inputStream.close();
+                }
+            }
+            catch( IOException e )
+            {
+                LOGGER.trace( "Pom " + gav + " not available in " + repository );
+            }
+            catch( XMLStreamException e )
+            {
+                throw new ScannerException( "Cannot parse pom " + gav + " from " + repository, e );
+            }
+        }
+        throw new ScannerException( "Cannot find pom " + gav + " in any of the repositories" );
+    }
+
+    /**
+     * Evicts cached snapshot poms so they are downloaded again.
+     */
+    private void evictSnapshots()
+    {
+        for( String gav : m_poms.keySet() )
+        {
+            if( gav.endsWith( "SNAPSHOT" ) )
+            {
+                m_poms.remove( gav );
+            }
+        }
+    }
+
+    /**
+     * Sets groupId / artifactId / version project properties.
+     *
+     * @param properties properties to set
+     * @param prefix     properties prefix
+     * @param effective  project
+     */
+    private static void setProjectProperties( final Properties properties,
+                                              final String prefix,
+                                              final Effective effective )
+    {
+        if( effective.groupId != null )
+        {
+            properties.setProperty( prefix + "groupId", effective.groupId );
+        }
+        if( effective.artifactId != null )
+        {
+            properties.setProperty( prefix + "artifactId", effective.artifactId );
+        }
+        if( effective.version != null )
+        {
+            properties.setProperty( prefix + "version", effective.version );
+        }
+    }
+
+    /**
+     * Interpolates all values of a raw coordinates.
+     *
+     * @param raw        raw coordinates
+     * @param properties properties to be used
+     *
+     * @return interpolated coordinates
+     */
+    private static PomModel.Coordinates interpolate( final PomModel.Coordinates raw, final Properties properties )
+    {
+        final PomModel.Coordinates coordinates = new PomModel.Coordinates();
+        coordinates.groupId = interpolate( raw.groupId, properties );
+        coordinates.artifactId = interpolate( raw.artifactId, properties );
+        coordinates.version = interpolate( raw.version, properties );
+        coordinates.type = interpolate( raw.type, properties );
+        coordinates.classifier = interpolate( raw.classifier, properties );
+        coordinates.scope = interpolate( raw.scope, properties );
+        coordinates.optional = interpolate( raw.optional, properties );
+        coordinates.exclusions.addAll( raw.exclusions );
+        return coordinates;
+    }
+
+    /**
+     * Resolves ${...} placeholders from properties, falling back to system properties. Placeholders that cannot be
+     * resolved are left as they are.
+     *
+     * @param text       text to interpolate; can be null
+     * @param properties properties to be used
+     *
+     * @return interpolated and trimmed text; null if text is null or empty
+     */
+    static String interpolate( final String text, final Properties properties )
+    {
+        String interpolated = trim( text );
+        for( int pass = 0; interpolated != null && pass < MAX_INTERPOLATION_PASSES; pass++ )
+        {
+            int start = interpolated.indexOf( "${" );
+            if( start < 0 )
+            {
+                break;
+            }
+            final StringBuilder builder = new StringBuilder();
+            int from = 0;
+            boolean changed = false;
+            while( start >= 0 )
+            {
+                final int end = interpolated.indexOf( '}', start + 2 );
+                if( end < 0 )
+                {
+                    break;
+                }
+                final String name = interpolated.substring( start + 2, end );
+                String value = properties.getProperty( name );
+                if( value == null )
+                {
+                    value = System.getProperty( name );
+                }
+                builder.append( interpolated, from, start );
+                if( value == null )
+                {
+                    builder.append( interpolated, start, end + 1 );
+                }
+                else
+                {
+                    builder.append( value );
+                    changed = true;
+                }
+                from = end + 1;
+                start = interpolated.indexOf( "${", from );
+            }
+            builder.append( interpolated.substring( from ) );
+            if( !changed )
+            {
+                break;
+            }
+            interpolated = builder.toString();
+        }
+        return interpolated;
+    }
+
+    /**
+     * Trims a text.
+     *
+     * @param text to trim; can be null
+     *
+     * @return trimmed text or null if text is null or empty
+     */
+    private static String trim( final String text )
+    {
+        if( text == null || text.trim().length() == 0 )
+        {
+            return null;
+        }
+        return text.trim();
+    }
+
+    /**
+     * Trims all values of a raw coordinates.
+     *
+     * @param raw raw coordinates
+     *
+     * @return trimmed coordinates
+     */
+    private static PomModel.Coordinates trim( final PomModel.Coordinates raw )
+    {
+        final PomModel.Coordinates coordinates = new PomModel.Coordinates();
+        coordinates.groupId = trim( raw.groupId );
+        coordinates.artifactId = trim( raw.artifactId );
+        coordinates.version = trim( raw.version );
+        return coordinates;
+    }
+
+    /**
+     * Copies coordinates.
+     *
+     * @param coordinates to copy
+     *
+     * @return copy
+     */
+    private static PomModel.Coordinates copy( final PomModel.Coordinates coordinates )
+    {
+        final PomModel.Coordinates copy = new PomModel.Coordinates();
+        copy.groupId = coordinates.groupId;
+        copy.artifactId = coordinates.artifactId;
+        copy.version = coordinates.version;
+        copy.type = coordinates.type;
+        copy.classifier = coordinates.classifier;
+        copy.scope = coordinates.scope;
+        copy.optional = coordinates.optional;
+        copy.exclusions.addAll( coordinates.exclusions );
+        return copy;
+    }
+
+    /**
+     * Checks if raw coordinates have a group id, artifact id and version without placeholders.
+     *
+     * @param coordinates to check
+     *
+     * @return true if literal
+     */
+    private static boolean isLiteral( final PomModel.Coordinates coordinates )
+    {
+        return isResolvable( trim( coordinates ) )
+               && coordinates.groupId.indexOf( '$' ) < 0
+               && coordinates.artifactId.indexOf( '$' ) < 0
+               && coordinates.version.indexOf( '$' ) < 0;
+    }
+
+    /**
+     * Checks if (interpolated) coordinates point to a single pom: group id, artifact id and a version that is not a
+     * range and has no unresolved placeholders.
+     *
+     * @param coordinates to check
+     *
+     * @return true if resolvable
+     */
+    private static boolean isResolvable( final PomModel.Coordinates coordinates )
+    {
+        return coordinates.groupId != null
+               && coordinates.artifactId != null
+               && coordinates.version != null
+               && !coordinates.version.startsWith( "[" )
+               && !coordinates.version.startsWith( "(" )
+               && coordinates.version.indexOf( "${" ) < 0;
+    }
+
+    /**
+     * Checks if a dependency is excluded by a set of exclusions (groupId:artifactId, "*" allowed as wildcard).
+     *
+     * @param dependency dependency to check
+     * @param exclusions exclusions
+     *
+     * @return true if excluded
+     */
+    private static boolean isExcluded( final PomModel.Coordinates dependency, final Set<String> exclusions )
+    {
+        return !exclusions.isEmpty()
+               && ( exclusions.contains( dependency.groupId + ":" + dependency.artifactId )
+                    || exclusions.contains( dependency.groupId + ":*" )
+                    || exclusions.contains( "*:*" )
+                    || exclusions.contains( "*:" + dependency.artifactId ) );
+    }
+
+    /**
+     * Returns the groupId:artifactId:version of coordinates.
+     *
+     * @param coordinates coordinates
+     *
+     * @return groupId:artifactId:version
+     */
+    private static String gav( final PomModel.Coordinates coordinates )
+    {
+        return coordinates.groupId + ":" + coordinates.artifactId + ":" + coordinates.version;
+    }
+
+    /**
+     * Returns the version less key (groupId:artifactId:type:classifier) used to identify a dependency.
+     *
+     * @param coordinates coordinates
+     *
+     * @return key
+     */
+    private static String key( final PomModel.Coordinates coordinates )
+    {
+        return coordinates.groupId + ":" + coordinates.artifactId
+               + ":" + ( coordinates.type == null ? "jar" : coordinates.type )
+               + ":" + ( coordinates.classifier == null ? "" : coordinates.classifier );
+    }
+
+    /**
+     * Effective (inherited, interpolated and managed) pom.
+     */
+    private static class Effective
+    {
+
+        /**
+         * Group id.
+         */
+        String groupId;
+        /**
+         * Artifact id.
+         */
+        String artifactId;
+        /**
+         * Version.
+         */
+        String version;
+        /**
+         * Properties (own and inherited).
+         */
+        final Properties properties = new Properties();
+        /**
+         * Dependency management, keyed by groupId:artifactId:type:classifier.
+         */
+        final Map<String, PomModel.Coordinates> managed = new LinkedHashMap<String, PomModel.Coordinates>();
+        /**
+         * Dependencies, keyed by groupId:artifactId:type:classifier.
+         */
+        final Map<String, PomModel.Coordinates> dependencies = new LinkedHashMap<String, PomModel.Coordinates>();
+
+    }
+
+    /**
+     * A dependency graph node waiting to be processed.
+     */
+    private static class Node
+    {
+
+        /**
+         * Dependency.
+         */
+        final PomModel.Coordinates dependency;
+        /**
+         * Exclusions accumulated on the path to this node.
+         */
+        final Set<String> exclusions;
+        /**
+         * True if a direct dependency of the resolved pom.
+         */
+        final boolean direct;
+
+        /**
+         * Creates a new node.
+         *
+         * @param dependency dependency
+         * @param exclusions exclusions accumulated on the path to this node
+         * @param direct     true if a direct dependency of the resolved pom
+         */
+        Node( final PomModel.Coordinates dependency, final Set<String> exclusions, final boolean direct )
+        {
+            this.dependency = dependency;
+            this.exclusions = exclusions;
+            this.direct = direct;
+        }
+
+    }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.pom.internal;
+
+import java.util.regex.Pattern;
+
+/**
+ * Filter of artifact types based on lists of included / excluded type patterns. Patterns are regular expressions
+ * that have to match the whole type. Patterns are compiled once, when the filter is created, and common patterns
+ * (match all, literals and literal prefixes followed by ".*") are matched without regular expressions.
+ *
+ * @since 1.2.0
+ */
+public class TypeFilter
+{
+
+    /**
+     * Characters with a special meaning in regular expressions.
+     */
+    private static final String REGEX_CHARS = "\\[](){}.*+?^$|";
+    /**
+     * Type used when the type is not specified.
+     */
+    private static final String DEFAULT_TYPE = "jar";
+
+    /**
+     * Included types matchers. Null if all types are included.
+     */
+    private final Matcher[] m_included;
+    /**
+     * Excluded types matchers. Null if no type is excluded.
+     */
+    private final Matcher[] m_excluded;
+
+    /**
+     * Creates a new type filter.
+     *
+     * @param includedTypes included type patterns; null if all types should be included
+     * @param excludedTypes excluded type patterns; null if no type should be excluded
+     */
+    public TypeFilter( final String[] includedTypes, final String[] excludedTypes )
+    {
+        m_included = compile( includedTypes );
+        m_excluded = compile( excludedTypes );
+    }
+
+    /**
+     * Verify if the specified type it is accepted as an artifact: it is not excluded and it is included.
+     *
+     * @param type artifact type; null is considered to be "jar"
+     *
+     * @return true if type is accepted
+     */
+    public boolean accepts( final String type )
+    {
+        final String localType = type == null ? DEFAULT_TYPE : type;
+        if( m_excluded != null )
+        {
+            for( Matcher matcher : m_excluded )
+            {
+                if( matcher.matches( localType ) )
+                {
+                    return false;
+                }
+            }
+        }
+        if( m_included != null )
+        {
+            for( Matcher matcher : m_included )
+            {
+                if( matcher.matches( localType ) )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Compiles type patterns.
+     *
+     * @param patterns type patterns; can be null
+     *
+     * @return matchers or null if patterns is null
+     */
+    private static Matcher[] compile( final String[] patterns )
+    {
+        if( patterns == null )
+        {
+            return null;
+        }
+        final Matcher[] matchers = new Matcher[patterns.length];
+        for( int i = 0; i < patterns.length; i++ )
+        {
+            matchers[ i ] = compile( patterns[ i ] );
+        }
+        return matchers;
+    }
+
+    /**
+     * Compiles a type pattern choosing the cheapest matcher that matches the same as the regular expression.
+     *
+     * @param pattern type pattern
+     *
+     * @return matcher
+     */
+    private static Matcher compile( final String pattern )
+    {
+        if( ".*".equals( pattern ) )
+        {
+            return new Matcher( Matcher.ALL, null, null );
+        }
+        if( isLiteral( pattern ) )
+        {
+            return new Matcher( Matcher.LITERAL, pattern, null );
+        }
+        if( pattern.endsWith( ".*" ) && isLiteral( pattern.substring( 0, pattern.length() - 2 ) ) )
+        {
+            return new Matcher( Matcher.PREFIX, pattern.substring( 0, pattern.length() - 2 ), null );
+        }
+        return new Matcher( Matcher.REGEX, null, Pattern.compile( pattern ) );
+    }
+
+    /**
+     * Checks if a pattern does not contain any character with a special meaning in regular expressions.
+     *
+     * @param pattern to check
+     *
+     * @return true if pattern is a literal
+     */
+    private static boolean isLiteral( final String pattern )
+    {
+        for( int i = 0; i < pattern.length(); i++ )
+        {
+            if( REGEX_CHARS.indexOf( pattern.charAt( i ) ) >= 0 )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A compiled type pattern.
+     */
+    private static class Matcher
+    {
+
+        /**
+         * Matches all types.
+         */
+        static final int ALL = 0;
+        /**
+         * Matches types equal to a literal.
+         */
+        static final int LITERAL = 1;
+        /**
+         * Matches types starting with a literal.
+         */
+        static final int PREFIX = 2;
+        /**
+         * Matches types via a regular expression.
+         */
+        static final int REGEX = 3;
+
+        /**
+         * Kind of matcher (one of constants above).
+         */
+        private final int m_kind;
+        /**
+         * Literal / prefix. Null for other kinds.
+         */
+        private final String m_literal;
+        /**
+         * Regular expression. Null for other kinds.
+         */
+        private final Pattern m_pattern;
+
+        /**
+         * Creates a new matcher.
+         *
+         * @param kind    kind of matcher
+         * @param literal literal / prefix
+         * @param pattern regular expression
+         */
+        Matcher( final int kind, final String literal, final Pattern pattern )
+        {
+            m_kind = kind;
+            m_literal = literal;
+            m_pattern = pattern;
+        }
+
+        /**
+         * Matches a type.
+         *
+         * @param type to match
+         *
+         * @return true if type matches
+         */
+        boolean matches( final String type )
+        {
+            switch( m_kind )
+            {
+                case ALL:
+                    return true;
+                case LITERAL:
+                    return m_literal.equals( type );
+                case PREFIX:
+                    return type.startsWith( m_literal );
+                default:
+                    return m_pattern.matcher( type ).matches();
+            }
+        }
+
+    }
+
+}
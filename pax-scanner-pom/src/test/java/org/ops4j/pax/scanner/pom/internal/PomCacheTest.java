@@ -0,0 +1,115 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.pom.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.ops4j.io.FileUtils;
+
+public class PomCacheTest
+{
+
+    private static URL getURL( final String pomFile )
+        throws Exception
+    {
+        return FileUtils.getFileFromClasspath( pomFile ).toURI().toURL();
+    }
+
+    private static File copy( final String pomFile )
+        throws IOException
+    {
+        final File file = File.createTempFile( "pom", ".xml" );
+        file.deleteOnExit();
+        final InputStream inputStream = new FileInputStream( FileUtils.getFileFromClasspath( pomFile ) );
+        try
+        {
+            final OutputStream outputStream = new FileOutputStream( file );
+            try
+            {
+                int read;
+                while( ( read = inputStream.read() ) != -1 )
+                {
+                    outputStream.write( read );
+                }
+            }
+            finally
+            {
+                outputStream.close();
+            }
+        }
+        finally
+        {
+            inputStream.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void loadUnchanged()
+        throws Exception
+    {
+        final PomCache cache = new PomCache( 10, 1024 * 1024 );
+        final PomCache.Entry entry = cache.load( getURL( "scanner/pom.xml" ), false );
+        assertSame( "Cached entry", entry, cache.load( getURL( "scanner/pom.xml" ), false ) );
+        assertEquals( "Main artifact", "main-artifact", entry.getModel().getMain().artifactId );
+    }
+
+    @Test
+    public void loadChanged()
+        throws Exception
+    {
+        final File file = copy( "scanner/pom.xml" );
+        final PomCache cache = new PomCache( 10, 1024 * 1024 );
+        final PomCache.Entry entry = cache.load( file.toURI().toURL(), false );
+        assertTrue( "Modified", file.setLastModified( file.lastModified() - 10000 ) );
+        final PomCache.Entry reloaded = cache.load( file.toURI().toURL(), false );
+        assertNotSame( "Reloaded entry", entry, reloaded );
+        assertSame( "Cached entry", reloaded, cache.load( file.toURI().toURL(), false ) );
+        assertEquals( "Cache size", 1, cache.size() );
+    }
+
+    @Test
+    public void evictEldestEntry()
+        throws Exception
+    {
+        final PomCache cache = new PomCache( 2, 1024 * 1024 );
+        final PomCache.Entry first = cache.load( getURL( "scanner/pom.xml" ), false );
+        cache.load( getURL( "scanner/pomWithProperties.xml" ), false );
+        cache.load( getURL( "scanner/pomWithoutDependencies.xml" ), false );
+        assertEquals( "Cache size", 2, cache.size() );
+        assertNotSame( "Evicted entry", first, cache.load( getURL( "scanner/pom.xml" ), false ) );
+    }
+
+    @Test
+    public void notCachedWhenTooBig()
+        throws Exception
+    {
+        final PomCache cache = new PomCache( 10, 10 );
+        final PomCache.Entry entry = cache.load( getURL( "scanner/pom.xml" ), false );
+        assertEquals( "Cache size", 0, cache.size() );
+        assertNotSame( "Not cached entry", entry, cache.load( getURL( "scanner/pom.xml" ), false ) );
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.pom.internal;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.ops4j.io.FileUtils;
+
+public class PomParserTest
+{
+
+    private static PomModel parse( final String pomFile )
+        throws Exception
+    {
+        final InputStream inputStream = new FileInputStream( FileUtils.getFileFromClasspath( pomFile ) );
+        try
+        {
+            return PomParser.parse( inputStream );
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+
+    @Test
+    public void parseMainArtifact()
+        throws Exception
+    {
+        final PomModel pom = parse( "scanner/pom.xml" );
+        assertEquals( "Group id", "org.ops4j.pax.scanner", pom.getMain().groupId );
+        assertEquals( "Artifact id", "main-artifact", pom.getMain().artifactId );
+        assertEquals( "Version", "0.1.0-SNAPSHOT", pom.getMain().version );
+        assertEquals( "Packaging", "bundle", pom.getMain().type );
+        assertNull( "Scope", pom.getMain().scope );
+    }
+
+    @Test
+    public void parseDependencies()
+        throws Exception
+    {
+        final PomModel pom = parse( "scanner/pom.xml" );
+        assertEquals( "Number of dependencies", 4, pom.getDependencies().size() );
+        final PomModel.Coordinates first = pom.getDependencies().get( 0 );
+        assertEquals( "Artifact id", "first-dependency", first.artifactId );
+        assertEquals( "Type", "jar", first.type );
+        final PomModel.Coordinates second = pom.getDependencies().get( 1 );
+        assertEquals( "Artifact id", "second-dependency", second.artifactId );
+        assertNull( "Version", second.version );
+        assertNull( "Type", second.type );
+        // values are kept raw (not trimmed)
+        assertEquals( "Artifact id", "forth-dependency", pom.getDependencies().get( 3 ).artifactId.trim() );
+    }
+
+    @Test
+    public void parsePropertiesRaw()
+        throws Exception
+    {
+        final PomModel pom = parse( "scanner/pomWithPropertiesInDependency.xml" );
+        assertEquals( "Property names", 2, pom.getPropertyNames().size() );
+        assertEquals( "First name", "first.dependency.version", pom.getPropertyNames().get( 0 ) );
+        assertEquals( "First value", "0.1.0", pom.getPropertyValues().get( 0 ) );
+        assertEquals( "Second name", "second.dependency.version", pom.getPropertyNames().get( 1 ) );
+        assertEquals( "Second value", "${first.dependency.version}.5", pom.getPropertyValues().get( 1 ) );
+        assertEquals( "Dependency version", "${second.dependency.version}", pom.getDependencies().get( 1 ).version );
+    }
+
+    @Test
+    public void parseIgnoresNestedSections()
+        throws Exception
+    {
+        final PomModel pom = parse( "scanner/pomWithDependencyManagement.xml" );
+        assertEquals( "Group id", "org.ops4j.pax.scanner", pom.getMain().groupId );
+        assertEquals( "Packaging", "pom", pom.getMain().type );
+        assertEquals( "Number of dependencies", 1, pom.getDependencies().size() );
+        assertEquals( "Version", "0.1.0", pom.getDependencies().get( 0 ).version );
+        assertEquals( "Scope", "test", pom.getDependencies().get( 0 ).scope );
+        assertEquals( "Properties after dependencies", 2, pom.getPropertyNames().size() );
+    }
+
+}
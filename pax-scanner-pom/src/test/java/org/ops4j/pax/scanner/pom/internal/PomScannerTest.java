@@ -18,6 +18,9 @@
 package org.ops4j.pax.scanner.pom.internal;
 
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.net.MalformedURLException;
 import java.util.List;
 import java.util.Properties;
@@ -50,6 +53,8 @@ public class PomScannerTest
         PomScannerConfiguration config = createMock( PomScannerConfiguration.class );
 
         expect( config.getCertificateCheck() ).andReturn( false );
+        expect( config.getCacheEntries() ).andReturn( 64 ).anyTimes();
+        expect( config.getCacheSize() ).andReturn( 4096L ).anyTimes();
 
         replay( config );
         createPomScanner( config ).scan( new ProvisionSpec( "scan-pom:file:inexistent" ) );
@@ -89,8 +94,12 @@ public class PomScannerTest
             expect( config.shouldUpdate() ).andReturn( null );
         }
         expect( config.getCertificateCheck() ).andReturn( false );
-        expect( config.getDefaultExcludedTypes() ).andReturn( new String[]{ "pom", "libd" } ).anyTimes();
-        expect( config.getDefaultIncludedTypes() ).andReturn( new String[]{ ".*"} ).anyTimes();
+        expect( config.getCacheEntries() ).andReturn( 64 ).anyTimes();
+        expect( config.getCacheSize() ).andReturn( 4096L ).anyTimes();
+        expect( config.isTransitive() ).andReturn( false );
+        expect( config.getTypeFilter() ).andReturn(
+            new TypeFilter( new String[]{ ".*" }, new String[]{ "pom", "libd" } )
+        ).anyTimes();
 
         replay( config );
         List<ScannedBundle> scannedBundles = createPomScanner( config ).scan( new ProvisionSpec( spec ) );
@@ -238,6 +247,132 @@ public class PomScannerTest
         scan( expected, null, null, null, "scanner/pomWithPropertiesInDependency.xml" );
     }
 
+    @Test
+    public void scanResolvesPlaceholdersOnEveryScan()
+        throws Exception
+    {
+        final File file = File.createTempFile( "pom", ".xml" );
+        file.deleteOnExit();
+        final Writer writer = new FileWriter( file );
+        try
+        {
+            writer.write(
+                "<project>"
+                + "<groupId>org.ops4j.pax.scanner</groupId>"
+                + "<artifactId>main-artifact</artifactId>"
+                + "<version>${pax.scanner.test.version}</version>"
+                + "</project>"
+            );
+        }
+        finally
+        {
+            writer.close();
+        }
+        final PomScannerConfiguration config = createMock( PomScannerConfiguration.class );
+        expect( config.getStartLevel() ).andReturn( null ).anyTimes();
+        expect( config.shouldStart() ).andReturn( null ).anyTimes();
+        expect( config.shouldUpdate() ).andReturn( null ).anyTimes();
+        expect( config.getCertificateCheck() ).andReturn( false ).anyTimes();
+        expect( config.getCacheEntries() ).andReturn( 64 ).anyTimes();
+        expect( config.getCacheSize() ).andReturn( 4096L ).anyTimes();
+        expect( config.isTransitive() ).andReturn( false ).anyTimes();
+        expect( config.getTypeFilter() ).andReturn(
+            new TypeFilter( new String[]{ ".*" }, new String[0] )
+        ).anyTimes();
+        replay( config );
+
+        final PomScanner scanner = createPomScanner( config );
+        final ProvisionSpec spec = new ProvisionSpec( "scan-pom:" + file.toURL().toExternalForm() );
+        try
+        {
+            System.setProperty( "pax.scanner.test.version", "1.0" );
+            assertArrayEquals(
+                "Bundles",
+                new ScannedBundle[]{
+                    new ScannedFileBundle( "mvn:org.ops4j.pax.scanner/main-artifact/1.0", null, null, null )
+                },
+                scanner.scan( spec ).toArray()
+            );
+            System.setProperty( "pax.scanner.test.version", "2.0" );
+            assertArrayEquals(
+                "Bundles after placeholder change",
+                new ScannedBundle[]{
+                    new ScannedFileBundle( "mvn:org.ops4j.pax.scanner/main-artifact/2.0", null, null, null )
+                },
+                scanner.scan( spec ).toArray()
+            );
+        }
+        finally
+        {
+            System.clearProperty( "pax.scanner.test.version" );
+        }
+        verify( config );
+    }
+
+    @Test
+    public void scanSetsPropertiesOnlyWhenPomChanges()
+        throws Exception
+    {
+        final File file = File.createTempFile( "pom", ".xml" );
+        file.deleteOnExit();
+        write( file, "1.0" );
+        final PomScannerConfiguration config = createMock( PomScannerConfiguration.class );
+        expect( config.getStartLevel() ).andReturn( null ).anyTimes();
+        expect( config.shouldStart() ).andReturn( null ).anyTimes();
+        expect( config.shouldUpdate() ).andReturn( null ).anyTimes();
+        expect( config.getCertificateCheck() ).andReturn( false ).anyTimes();
+        expect( config.getCacheEntries() ).andReturn( 64 ).anyTimes();
+        expect( config.getCacheSize() ).andReturn( 4096L ).anyTimes();
+        expect( config.isTransitive() ).andReturn( false ).anyTimes();
+        expect( config.getTypeFilter() ).andReturn(
+            new TypeFilter( new String[]{ ".*" }, new String[0] )
+        ).anyTimes();
+        replay( config );
+
+        final PomScanner scanner = createPomScanner( config );
+        final ProvisionSpec spec = new ProvisionSpec( "scan-pom:" + file.toURL().toExternalForm() );
+        try
+        {
+            scanner.scan( spec );
+            assertEquals( "Property", "1.0", System.getProperty( "pax.scanner.test.property" ) );
+            System.setProperty( "pax.scanner.test.property", "changed" );
+            scanner.scan( spec );
+            assertEquals( "Property of cached pom", "changed", System.getProperty( "pax.scanner.test.property" ) );
+            write( file, "2.0" );
+            file.setLastModified( file.lastModified() + 2000 );
+            scanner.scan( spec );
+            assertEquals( "Property of changed pom", "2.0", System.getProperty( "pax.scanner.test.property" ) );
+        }
+        finally
+        {
+            System.clearProperty( "pax.scanner.test.property" );
+        }
+        verify( config );
+    }
+
+    private static void write( final File file, final String propertyValue )
+        throws IOException
+    {
+        final Writer writer = new FileWriter( file );
+        try
+        {
+            writer.write(
+                "<project>"
+                + "<groupId>org.ops4j.pax.scanner</groupId>"
+                + "<artifactId>main-artifact</artifactId>"
+                + "<version>1.0</version>"
+                + "<properties>"
+                + "<pax.scanner.test.property>" + propertyValue + "</pax.scanner.test.property>"
+                + "</properties>"
+                + "</project>"
+            );
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
     private PomScanner createPomScanner( final PomScannerConfiguration config )
     {
         return new PomScanner( createMock( PropertyResolver.class ) )
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.pom.internal;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.ops4j.io.FileUtils;
+import org.ops4j.pax.scanner.ScannerException;
+
+public class TransitivePomResolverTest
+{
+
+    private static PomModel parse( final String pomFile )
+        throws Exception
+    {
+        final InputStream inputStream = new FileInputStream( FileUtils.getFileFromClasspath( pomFile ) );
+        try
+        {
+            return PomParser.parse( inputStream );
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+
+    private static TransitivePomResolver createResolver()
+        throws Exception
+    {
+        return new TransitivePomResolver(
+            new String[]{ FileUtils.getFileFromClasspath( "repository" ).toURI().toURL().toExternalForm() }, 2, false
+        );
+    }
+
+    private static List<String> toStrings( final List<PomModel.Coordinates> coordinates )
+    {
+        final List<String> strings = new ArrayList<String>();
+        for( PomModel.Coordinates coordinate : coordinates )
+        {
+            strings.add( coordinate.groupId + ":" + coordinate.artifactId + ":" + coordinate.version );
+        }
+        return strings;
+    }
+
+    @Test
+    public void resolve()
+        throws Exception
+    {
+        final List<PomModel.Coordinates> resolved = createResolver().resolve( parse( "scanner/pomTransitive.xml" ) );
+        final List<String> expected = new ArrayList<String>();
+        expected.add( "org.ops4j.pax.scanner.test:main-artifact:1.0" );
+        expected.add( "org.ops4j.pax.scanner.test:first:2.0" );
+        expected.add( "org.ops4j.pax.scanner.test:second:1.0" );
+        expected.add( "org.ops4j.pax.scanner.test:managed:3.0" );
+        assertEquals( "Resolved", expected, toStrings( resolved ) );
+        assertEquals( "Main artifact type", "bundle", resolved.get( 0 ).type );
+    }
+
+    @Test
+    public void resolveTwiceReusesDownloadedPoms()
+        throws Exception
+    {
+        final TransitivePomResolver resolver = createResolver();
+        final PomModel pom = parse( "scanner/pomTransitive.xml" );
+        assertEquals( "Resolved", toStrings( resolver.resolve( pom ) ), toStrings( resolver.resolve( pom ) ) );
+    }
+
+    @Test( expected = ScannerException.class )
+    public void resolveWithMissingParent()
+        throws Exception
+    {
+        new TransitivePomResolver( new String[]{ "file:inexistent" }, 1, false ).resolve(
+            parse( "scanner/pomTransitive.xml" )
+        );
+    }
+
+    @Test
+    public void interpolate()
+    {
+        final Properties properties = new Properties();
+        properties.setProperty( "a", "${b}-x" );
+        properties.setProperty( "b", "y" );
+        assertEquals( "Interpolated", "y-x/${c}", TransitivePomResolver.interpolate( " ${a}/${c} ", properties ) );
+        assertNull( "Empty", TransitivePomResolver.interpolate( " ", properties ) );
+    }
+
+}
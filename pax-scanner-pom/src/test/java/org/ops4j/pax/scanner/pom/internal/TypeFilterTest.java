@@ -0,0 +1,66 @@
+/*
+ * Copyright 2009 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.pom.internal;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class TypeFilterTest
+{
+
+    @Test
+    public void defaultTypes()
+    {
+        final TypeFilter filter = new TypeFilter( new String[]{ ".*" }, new String[]{ "pom", "libd" } );
+        assertTrue( "jar", filter.accepts( "jar" ) );
+        assertTrue( "null (jar)", filter.accepts( null ) );
+        assertTrue( "bundle", filter.accepts( "bundle" ) );
+        assertFalse( "pom", filter.accepts( "pom" ) );
+        assertFalse( "libd", filter.accepts( "libd" ) );
+        assertTrue( "literal match only", filter.accepts( "pomx" ) );
+    }
+
+    @Test
+    public void prefixTypes()
+    {
+        final TypeFilter filter = new TypeFilter( new String[]{ "bundle.*", "jar" }, null );
+        assertTrue( "bundle", filter.accepts( "bundle" ) );
+        assertTrue( "bundle-x", filter.accepts( "bundle-x" ) );
+        assertTrue( "jar", filter.accepts( "jar" ) );
+        assertFalse( "war", filter.accepts( "war" ) );
+        assertFalse( "not a prefix", filter.accepts( "xbundle" ) );
+    }
+
+    @Test
+    public void regexTypes()
+    {
+        final TypeFilter filter = new TypeFilter( new String[]{ "(jar|war)" }, new String[]{ "w.r" } );
+        assertTrue( "jar", filter.accepts( "jar" ) );
+        assertFalse( "war excluded", filter.accepts( "war" ) );
+        assertFalse( "ear not included", filter.accepts( "ear" ) );
+    }
+
+    @Test
+    public void noIncludedTypes()
+    {
+        final TypeFilter filter = new TypeFilter( null, new String[]{ "pom" } );
+        assertTrue( "any", filter.accepts( "anything" ) );
+        assertFalse( "pom", filter.accepts( "pom" ) );
+    }
+
+}
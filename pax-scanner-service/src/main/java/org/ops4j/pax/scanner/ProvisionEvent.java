@@ -0,0 +1,194 @@
+/*
+ * Copyright 2007 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner;
+
+/**
+ * A provisioning phase (scan of a provision spec or fetch / install / update / start of a bundle) that completed,
+ * successfully or not. Events are delivered to {@link ProvisionEventListener} services.
+ *
+ * @since 1.2.0
+ */
+public final class ProvisionEvent
+{
+
+    /**
+     * Scan of a provision spec.
+     */
+    public final static String SCAN = "scan";
+    /**
+     * Fetch of the content of a remote bundle location ahead of its installation, including the time spent waiting
+     * for a prefetch in progress.
+     */
+    public final static String FETCH = "fetch";
+    /**
+     * Installation of a bundle.
+     */
+    public final static String INSTALL = "install";
+    /**
+     * Update of an already installed bundle.
+     */
+    public final static String UPDATE = "update";
+    /**
+     * Start of a bundle.
+     */
+    public final static String START = "start";
+
+    /**
+     * Provisioning phase (one of {@link #SCAN}, {@link #FETCH}, {@link #INSTALL}, {@link #UPDATE} or
+     * {@link #START}).
+     */
+    private final String m_phase;
+    /**
+     * Provision spec. Null for bundle phases.
+     */
+    private final String m_spec;
+    /**
+     * Provision spec scheme. Null for bundle phases.
+     */
+    private final String m_scheme;
+    /**
+     * Bundle location. Null for scan phase.
+     */
+    private final String m_location;
+    /**
+     * Time when the phase started, as System.currentTimeMillis().
+     */
+    private final long m_startTime;
+    /**
+     * Duration of the phase, in nanoseconds.
+     */
+    private final long m_duration;
+    /**
+     * Failure. Null if phase was successful.
+     */
+    private final Throwable m_failure;
+
+    /**
+     * Creates a new event.
+     *
+     * @param phase     provisioning phase
+     * @param spec      provision spec; null for bundle phases
+     * @param scheme    provision spec scheme; null for bundle phases
+     * @param location  bundle location; null for scan phase
+     * @param startTime time when the phase started, as System.currentTimeMillis()
+     * @param duration  duration of the phase, in nanoseconds
+     * @param failure   failure; null if phase was successful
+     */
+    public ProvisionEvent( final String phase,
+                           final String spec,
+                           final String scheme,
+                           final String location,
+                           final long startTime,
+                           final long duration,
+                           final Throwable failure )
+    {
+        m_phase = phase;
+        m_spec = spec;
+        m_scheme = scheme;
+        m_location = location;
+        m_startTime = startTime;
+        m_duration = duration;
+        m_failure = failure;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return provisioning phase (one of {@link #SCAN}, {@link #FETCH}, {@link #INSTALL}, {@link #UPDATE} or
+     * {@link #START})
+     */
+    public String getPhase()
+    {
+        return m_phase;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return provision spec or null for bundle phases
+     */
+    public String getSpec()
+    {
+        return m_spec;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return provision spec scheme or null for bundle phases
+     */
+    public String getScheme()
+    {
+        return m_scheme;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return bundle location or null for scan phase
+     */
+    public String getLocation()
+    {
+        return m_location;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return time when the phase started, as System.currentTimeMillis()
+     */
+    public long getStartTime()
+    {
+        return m_startTime;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return duration of the phase, in nanoseconds
+     */
+    public long getDuration()
+    {
+        return m_duration;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return failure or null if phase was successful
+     */
+    public Throwable getFailure()
+    {
+        return m_failure;
+    }
+
+    @Override
+    public String toString()
+    {
+        return new StringBuilder()
+            .append( "ProvisionEvent{" )
+            .append( "phase=" ).append( m_phase )
+            .append( ",spec=" ).append( m_spec )
+            .append( ",location=" ).append( m_location )
+            .append( ",duration=" ).append( m_duration ).append( "ns" )
+            .append( m_failure == null ? "" : ",failed" )
+            .append( "}" )
+            .toString();
+    }
+
+}
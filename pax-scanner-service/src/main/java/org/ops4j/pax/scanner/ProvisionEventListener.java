@@ -0,0 +1,37 @@
+/*
+ * Copyright 2007 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner;
+
+/**
+ * Listener of provisioning phases. Listeners are registered as OSGi services (whiteboard pattern) and are notified
+ * synchronously, from the provisioning thread, so they should return fast. When there is no listener registered no
+ * event is created.
+ *
+ * @since 1.2.0
+ */
+public interface ProvisionEventListener
+{
+
+    /**
+     * Notified when a provisioning phase completed.
+     *
+     * @param event provisioning event
+     */
+    void provisioned( ProvisionEvent event );
+
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2007 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Scanning metrics, per scheme. Provision service records scans (latency, bundles and errors) while scanners record,
+ * via the static methods, what they fetched and how their caches performed. As this package is exported by provision
+ * service bundle, all scanners share the same metrics.
+ * Metrics are plain atomic counters, so recording never blocks.
+ *
+ * @since 1.2.0
+ */
+public final class ScannerMetrics
+    implements ScannerMetricsMBean
+{
+
+    /**
+     * Upper bounds (milliseconds) of latency histogram buckets.
+     */
+    private static final long[] LATENCY_BUCKETS = { 1, 5, 10, 50, 100, 500, 1000, 5000, 10000, 60000 };
+    /**
+     * Shared metrics.
+     */
+    private static final ScannerMetrics INSTANCE = new ScannerMetrics();
+
+    /**
+     * Metrics by scheme.
+     */
+    private final ConcurrentMap<String, SchemeMetrics> m_schemes;
+
+    /**
+     * Creates new, empty, metrics.
+     */
+    ScannerMetrics()
+    {
+        m_schemes = new ConcurrentHashMap<String, SchemeMetrics>();
+    }
+
+    /**
+     * Getter.
+     *
+     * @return shared metrics
+     */
+    public static ScannerMetrics getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Records a scan.
+     *
+     * @param scheme  scheme
+     * @param nanos   scan duration in nanoseconds
+     * @param bundles number of scanned bundles
+     * @param failed  true if scan failed
+     */
+    public void scanned( final String scheme, final long nanos, final int bundles, final boolean failed )
+    {
+        final SchemeMetrics metrics = get( scheme );
+        metrics.m_scans.incrementAndGet();
+        metrics.m_nanos.addAndGet( nanos );
+        metrics.m_bundles.addAndGet( bundles );
+        if( failed )
+        {
+            metrics.m_errors.incrementAndGet();
+        }
+        final long millis = TimeUnit.NANOSECONDS.toMillis( nanos );
+        int bucket = 0;
+        while( bucket < LATENCY_BUCKETS.length && millis > LATENCY_BUCKETS[ bucket ] )
+        {
+            bucket++;
+        }
+        metrics.m_latencies.incrementAndGet( bucket );
+    }
+
+    /**
+     * Records fetched bytes.
+     *
+     * @param scheme scheme of the scanner that fetched
+     * @param bytes  number of fetched bytes
+     */
+    public static void recordBytesFetched( final String scheme, final long bytes )
+    {
+        INSTANCE.get( scheme ).m_bytesFetched.addAndGet( bytes );
+    }
+
+    /**
+     * Records a cache hit.
+     *
+     * @param scheme scheme of the scanner that owns the cache
+     */
+    public static void recordCacheHit( final String scheme )
+    {
+        INSTANCE.get( scheme ).m_cacheHits.incrementAndGet();
+    }
+
+    /**
+     * Records a cache miss.
+     *
+     * @param scheme scheme of the scanner that owns the cache
+     */
+    public static void recordCacheMiss( final String scheme )
+    {
+        INSTANCE.get( scheme ).m_cacheMisses.incrementAndGet();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String[] getSchemes()
+    {
+        return m_schemes.keySet().toArray( new String[0] );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getScans( final String scheme )
+    {
+        return find( scheme ).m_scans.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getErrors( final String scheme )
+    {
+        return find( scheme ).m_errors.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getBundles( final String scheme )
+    {
+        return find( scheme ).m_bundles.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getTotalTime( final String scheme )
+    {
+        return TimeUnit.NANOSECONDS.toMillis( find( scheme ).m_nanos.get() );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getBytesFetched( final String scheme )
+    {
+        return find( scheme ).m_bytesFetched.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getCacheHits( final String scheme )
+    {
+        return find( scheme ).m_cacheHits.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getCacheMisses( final String scheme )
+    {
+        return find( scheme ).m_cacheMisses.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long[] getLatencyBuckets()
+    {
+        return LATENCY_BUCKETS.clone();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long[] getLatencyHistogram( final String scheme )
+    {
+        final AtomicLongArray latencies = find( scheme ).m_latencies;
+        final long[] histogram = new long[latencies.length()];
+        for( int i = 0; i < histogram.length; i++ )
+        {
+            histogram[ i ] = latencies.get( i );
+        }
+        return histogram;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void reset()
+    {
+        m_schemes.clear();
+    }
+
+    /**
+     * Returns the metrics of a scheme without creating them.
+     *
+     * @param scheme scheme
+     *
+     * @return scheme metrics or empty metrics if there are no metrics for scheme
+     */
+    private SchemeMetrics find( final String scheme )
+    {
+        final SchemeMetrics metrics = m_schemes.get( scheme );
+        return metrics == null ? new SchemeMetrics() : metrics;
+    }
+
+    /**
+     * Returns the metrics of a scheme, creating them if necessary.
+     *
+     * @param scheme scheme
+     *
+     * @return scheme metrics
+     */
+    private SchemeMetrics get( final String scheme )
+    {
+        SchemeMetrics metrics = m_schemes.get( scheme );
+        if( metrics == null )
+        {
+            final SchemeMetrics created = new SchemeMetrics();
+            metrics = m_schemes.putIfAbsent( scheme, created );
+            if( metrics == null )
+            {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Metrics of one scheme.
+     */
+    private static class SchemeMetrics
+    {
+
+        /**
+         * Number of scans.
+         */
+        private final AtomicLong m_scans = new AtomicLong();
+        /**
+         * Number of failed scans.
+         */
+        private final AtomicLong m_errors = new AtomicLong();
+        /**
+         * Number of scanned bundles.
+         */
+        private final AtomicLong m_bundles = new AtomicLong();
+        /**
+         * Total scanning time (nanoseconds).
+         */
+        private final AtomicLong m_nanos = new AtomicLong();
+        /**
+         * Number of fetched bytes.
+         */
+        private final AtomicLong m_bytesFetched = new AtomicLong();
+        /**
+         * Number of cache hits.
+         */
+        private final AtomicLong m_cacheHits = new AtomicLong();
+        /**
+         * Number of cache misses.
+         */
+        private final AtomicLong m_cacheMisses = new AtomicLong();
+        /**
+         * Scan latency histogram.
+         */
+        private final AtomicLongArray m_latencies = new AtomicLongArray( LATENCY_BUCKETS.length + 1 );
+
+    }
+
+}
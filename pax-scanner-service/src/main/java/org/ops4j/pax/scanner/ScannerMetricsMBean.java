@@ -0,0 +1,125 @@
+/*
+ * Copyright 2007 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner;
+
+/**
+ * Scanning metrics, per scheme. Registered as an OSGi service and as a JMX MBean
+ * ({@link #OBJECT_NAME}).
+ *
+ * @since 1.2.0
+ */
+public interface ScannerMetricsMBean
+{
+
+    /**
+     * JMX object name the metrics are registered with.
+     */
+    public final static String OBJECT_NAME = "org.ops4j.pax.scanner:type=ScannerMetrics";
+
+    /**
+     * Returns the schemes that have metrics.
+     *
+     * @return schemes (never null)
+     */
+    String[] getSchemes();
+
+    /**
+     * Returns the number of scans.
+     *
+     * @param scheme scheme
+     *
+     * @return number of scans, failed ones included
+     */
+    long getScans( String scheme );
+
+    /**
+     * Returns the number of failed scans.
+     *
+     * @param scheme scheme
+     *
+     * @return number of failed scans
+     */
+    long getErrors( String scheme );
+
+    /**
+     * Returns the number of scanned bundles.
+     *
+     * @param scheme scheme
+     *
+     * @return number of scanned bundles
+     */
+    long getBundles( String scheme );
+
+    /**
+     * Returns the total scanning time.
+     *
+     * @param scheme scheme
+     *
+     * @return total scanning time in milliseconds
+     */
+    long getTotalTime( String scheme );
+
+    /**
+     * Returns the number of bytes fetched by scanner (descriptors, poms, repository indexes, ...).
+     *
+     * @param scheme scheme
+     *
+     * @return number of fetched bytes
+     */
+    long getBytesFetched( String scheme );
+
+    /**
+     * Returns the number of scanner cache hits.
+     *
+     * @param scheme scheme
+     *
+     * @return number of cache hits
+     */
+    long getCacheHits( String scheme );
+
+    /**
+     * Returns the number of scanner cache misses.
+     *
+     * @param scheme scheme
+     *
+     * @return number of cache misses
+     */
+    long getCacheMisses( String scheme );
+
+    /**
+     * Returns the upper bounds of scan latency histogram buckets. Last bucket is unbounded.
+     *
+     * @return bucket upper bounds in milliseconds
+     */
+    long[] getLatencyBuckets();
+
+    /**
+     * Returns the scan latency histogram.
+     *
+     * @param scheme scheme
+     *
+     * @return number of scans per bucket (see {@link #getLatencyBuckets()}), plus one for the unbounded bucket
+     */
+    long[] getLatencyHistogram( String scheme );
+
+    /**
+     * Resets all metrics.
+     */
+    void reset();
+
+}
@@ -57,4 +57,34 @@ public interface ServiceConstants
      */
     static final String PROPERTY_CERTIFICATE_CHECK = ".certificateCheck";
 
+    /**
+     * Framework property naming the file provisioning timeline is written to when provision service stops (csv if
+     * file name ends with .csv, Chrome trace json otherwise). Timeline is recorded only if property is set.
+     */
+    static final String PROPERTY_TIMELINE = "org.ops4j.pax.scanner.timeline";
+
+    /**
+     * Framework property setting the number of threads used to download remote bundle locations ahead of
+     * installation. Locations are prefetched only if property is set to a positive number.
+     */
+    static final String PROPERTY_PREFETCH_THREADS = "org.ops4j.pax.scanner.prefetch.threads";
+
+    /**
+     * Framework property setting the maximum number of bytes prefetched bundle locations can hold (default 256 MB).
+     */
+    static final String PROPERTY_PREFETCH_MAX_BYTES = "org.ops4j.pax.scanner.prefetch.maxBytes";
+
+    /**
+     * Framework property setting the directory of a content-addressable artifact store that can be shared by all
+     * frameworks of a host. Downloaded released maven artifacts (mvn: locations) are kept in the store and not
+     * downloaded again.
+     */
+    static final String PROPERTY_STORE = "org.ops4j.pax.scanner.store";
+
+    /**
+     * Framework property setting the maximum number of bytes the artifact store can hold (default 1 GB). Least
+     * recently used artifacts are evicted when the store grows bigger.
+     */
+    static final String PROPERTY_STORE_MAX_BYTES = "org.ops4j.pax.scanner.store.maxBytes";
+
 }
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2007 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner;
+
+/**
+ * A scanned bundle whose content is known in advance, as a digest. Provision service verifies the content before
+ * installing or updating the bundle and refuses to install / update it if the content does not match. Bundles that are
+ * already installed and not updated are not verified, so their content is not downloaded again.
+ *
+ * @since 1.2.0
+ */
+public interface VerifiableBundle
+    extends ScannedBundle
+{
+
+    /**
+     * Returns the expected digest of bundle content.
+     *
+     * @return hex encoded SHA-256 digest of bundle content or null if content should not be verified
+     */
+    String getDigest();
+
+}
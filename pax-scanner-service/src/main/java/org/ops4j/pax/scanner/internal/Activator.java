@@ -17,6 +17,11 @@
  */
 package org.ops4j.pax.scanner.internal;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.osgi.framework.BundleActivator;
@@ -26,8 +31,12 @@ import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.startlevel.StartLevel;
 import org.osgi.util.tracker.ServiceTracker;
 import org.ops4j.lang.NullArgumentException;
+import org.ops4j.pax.scanner.ProvisionEventListener;
 import org.ops4j.pax.scanner.ProvisionService;
 import org.ops4j.pax.scanner.Scanner;
+import org.ops4j.pax.scanner.ScannerMetrics;
+import org.ops4j.pax.scanner.ScannerMetricsMBean;
+import org.ops4j.pax.scanner.ServiceConstants;
 
 /**
  * Activate the provisioning service implementation.
@@ -43,6 +52,14 @@ public final class Activator
      * Logger.
      */
     private static final Log LOGGER = LogFactory.getLog( Activator.class );
+    /**
+     * Default maximum number of bytes prefetched bundle locations can hold.
+     */
+    private static final long DEFAULT_PREFETCH_MAX_BYTES = 256L * 1024 * 1024;
+    /**
+     * Default maximum number of bytes the artifact store can hold.
+     */
+    private static final long DEFAULT_STORE_MAX_BYTES = 1024L * 1024 * 1024;
     /**
      * The bundle context.
      */
@@ -55,10 +72,34 @@ public final class Activator
      * The Scanner service service tracker.
      */
     private ServiceTracker m_serviceTracker;
+    /**
+     * The provision event listeners service tracker.
+     */
+    private ServiceTracker m_listenerTracker;
     /**
      * Provision service registration. Used for cleanup.
      */
     private ServiceRegistration m_provisionServiceReg;
+    /**
+     * Scanner metrics service registration. Used for cleanup.
+     */
+    private ServiceRegistration m_metricsServiceReg;
+    /**
+     * Provisioning timeline. Null if timeline is not recorded.
+     */
+    private ProvisionTimeline m_timeline;
+    /**
+     * File the provisioning timeline is written to on stop.
+     */
+    private File m_timelineFile;
+    /**
+     * Prefetcher of remote bundle locations. Null if locations are not prefetched.
+     */
+    private ArtifactPrefetcher m_prefetcher;
+    /**
+     * Name the scanner metrics MBean was registered with. Null if not registered.
+     */
+    private ObjectName m_metricsObjectName;
 
     /**
      * @see org.osgi.framework.BundleActivator#start(org.osgi.framework.BundleContext)
@@ -68,15 +109,22 @@ public final class Activator
         NullArgumentException.validateNotNull( bundleContext, "Bundle context" );
         m_bundleContext = bundleContext;
         registerProvisionService();
+        recordTimeline();
+        createPrefetcher();
+        registerMetrics();
         trackStartLevelService();
         trackScanners();
+        trackEventListeners();
         LOGGER.debug( "Provisioning service started" );
     }
 
     /**
      * Performs cleanup:<br/>
-     * * Stop the service tracker;<br/>
+     * * Stop the service trackers;<br/>
      * * Unregister provision service;<br/>
+     * * Unregister scanner metrics;<br/>
+     * * Write provisioning timeline (if recorded);<br/>
+     * * Stop prefetching;<br/>
      * * Release bundle context.
      *
      * @see org.osgi.framework.BundleActivator#stop(org.osgi.framework.BundleContext)
@@ -84,6 +132,11 @@ public final class Activator
     public void stop( final BundleContext bundleContext )
     {
         NullArgumentException.validateNotNull( bundleContext, "Bundle context" );
+        if( m_listenerTracker != null )
+        {
+            m_listenerTracker.close();
+            m_listenerTracker = null;
+        }
         if( m_serviceTracker != null )
         {
             m_serviceTracker.close();
@@ -95,19 +148,27 @@ public final class Activator
             m_provisionServiceReg = null;
             m_provisionService = null;
         }
+        unregisterMetrics();
+        writeTimeline();
+        if( m_prefetcher != null )
+        {
+            m_prefetcher.shutdown();
+            m_prefetcher = null;
+        }
         m_bundleContext = null;
         LOGGER.debug( "Provisioning service stopped" );
     }
 
     /**
-     * Tracks Scanner services via a Service tracker.
+     * Tracks Scanner services via a Service tracker. Scanner services are got only when first used, so scanners
+     * registered lazily (via a service factory) are created only if their scheme is scanned.
      */
     private void trackScanners()
     {
         m_serviceTracker = new ServiceTracker( m_bundleContext, Scanner.class.getName(), null )
         {
             /**
-             * Adds the scanner to provision service.
+             * Adds a lazy scanner for the scanner service to provision service.
              *
              * @see ServiceTracker#addingService(org.osgi.framework.ServiceReference)
              */
@@ -117,15 +178,12 @@ public final class Activator
                 NullArgumentException.validateNotNull( serviceReference, "Service reference" );
                 LOGGER.debug( "Scanner available [" + serviceReference + "]" );
                 Object schema = serviceReference.getProperty( Scanner.SCHEMA_PROPERTY );
-                Scanner scanner = null;
+                LazyScanner scanner = null;
                 // only use the right registered scanners
                 if( schema != null && schema instanceof String && ( (String) schema ).trim().length() > 0 )
                 {
-                    scanner = (Scanner) super.addingService( serviceReference );
-                    if( scanner != null )
-                    {
-                        m_provisionService.addScanner( scanner, (String) schema );
-                    }
+                    scanner = new LazyScanner( m_bundleContext, serviceReference );
+                    m_provisionService.addScanner( scanner, (String) schema );
                 }
                 return scanner;
             }
@@ -139,19 +197,59 @@ public final class Activator
             public void removedService( ServiceReference serviceReference, Object object )
             {
                 LOGGER.debug( "Scanner removed [" + serviceReference + "]" );
-                super.removedService( serviceReference, object );
-                if( !( object instanceof Scanner ) )
+                if( !( object instanceof LazyScanner ) )
                 {
                     throw new IllegalArgumentException(
-                        "Invalid tracked object [" + object.getClass() + "]. Expected an " + Scanner.class.getName()
+                        "Invalid tracked object [" + object.getClass() + "]. Expected an "
+                        + LazyScanner.class.getName()
                     );
                 }
                 m_provisionService.removeScanner( (Scanner) object );
+                ( (LazyScanner) object ).release();
             }
         };
         m_serviceTracker.open();
     }
 
+    /**
+     * Tracks provision event listener services (whiteboard) via a service tracker.
+     */
+    private void trackEventListeners()
+    {
+        m_listenerTracker = new ServiceTracker( m_bundleContext, ProvisionEventListener.class.getName(), null )
+        {
+            /**
+             * Adds the listener to provision service.
+             *
+             * @see ServiceTracker#addingService(org.osgi.framework.ServiceReference)
+             */
+            @Override
+            public Object addingService( final ServiceReference serviceReference )
+            {
+                final ProvisionEventListener listener =
+                    (ProvisionEventListener) super.addingService( serviceReference );
+                if( listener != null )
+                {
+                    m_provisionService.addEventListener( listener );
+                }
+                return listener;
+            }
+
+            /**
+             * Removes the listener from provision service.
+             *
+             * @see ServiceTracker#removedService(org.osgi.framework.ServiceReference,Object)
+             */
+            @Override
+            public void removedService( final ServiceReference serviceReference, final Object object )
+            {
+                m_provisionService.removeEventListener( (ProvisionEventListener) object );
+                super.removedService( serviceReference, object );
+            }
+        };
+        m_listenerTracker.open();
+    }
+
     /**
      * Registers the provision service.
      */
@@ -164,6 +262,166 @@ public final class Activator
         );
     }
 
+    /**
+     * Starts recording the provisioning timeline, if a timeline file is configured via
+     * {@link ServiceConstants#PROPERTY_TIMELINE}.
+     */
+    private void recordTimeline()
+    {
+        final String timelineFile = m_bundleContext.getProperty( ServiceConstants.PROPERTY_TIMELINE );
+        if( timelineFile != null && timelineFile.trim().length() > 0 )
+        {
+            m_timelineFile = new File( timelineFile.trim() );
+            m_timeline = new ProvisionTimeline();
+            m_provisionService.addEventListener( m_timeline );
+            LOGGER.debug( "Recording provisioning timeline to [" + m_timelineFile + "]" );
+        }
+    }
+
+    /**
+     * Creates the prefetcher of remote bundle locations, if enabled via
+     * {@link ServiceConstants#PROPERTY_PREFETCH_THREADS}. Locations are downloaded to the bundle data area.<br/>
+     * The artifact store is filled by the prefetcher, so if an artifact store is set via
+     * {@link ServiceConstants#PROPERTY_STORE} locations are prefetched (by one thread unless set otherwise).
+     */
+    private void createPrefetcher()
+    {
+        final ArtifactStore store = createStore();
+        int threads = toNumber( ServiceConstants.PROPERTY_PREFETCH_THREADS, 0 ).intValue();
+        if( threads <= 0 && store != null )
+        {
+            threads = 1;
+        }
+        if( threads <= 0 )
+        {
+            return;
+        }
+        final long maxBytes = toNumber( ServiceConstants.PROPERTY_PREFETCH_MAX_BYTES, DEFAULT_PREFETCH_MAX_BYTES );
+        File directory = m_bundleContext.getDataFile( "prefetch" );
+        if( directory == null )
+        {
+            directory = new File( System.getProperty( "java.io.tmpdir" ), "pax-scanner-prefetch" );
+        }
+        m_prefetcher = new ArtifactPrefetcher( directory, threads, maxBytes, store );
+        m_provisionService.setPrefetcher( m_prefetcher );
+        LOGGER.debug( "Prefetching bundles with " + threads + " threads to [" + directory + "]" );
+    }
+
+    /**
+     * Creates the artifact store shared by frameworks, if set via {@link ServiceConstants#PROPERTY_STORE}.
+     *
+     * @return artifact store or null if not set
+     */
+    private ArtifactStore createStore()
+    {
+        final String directory = m_bundleContext.getProperty( ServiceConstants.PROPERTY_STORE );
+        if( directory == null || directory.trim().length() == 0 )
+        {
+            return null;
+        }
+        LOGGER.debug( "Using artifact store [" + directory.trim() + "]" );
+        return new ArtifactStore(
+            new File( directory.trim() ),
+            toNumber( ServiceConstants.PROPERTY_STORE_MAX_BYTES, DEFAULT_STORE_MAX_BYTES )
+        );
+    }
+
+    /**
+     * Returns the numeric value of a framework property.
+     *
+     * @param property     property name
+     * @param defaultValue value to use if property is not set or is not a number
+     *
+     * @return property value
+     */
+    private Long toNumber( final String property, final long defaultValue )
+    {
+        final String value = m_bundleContext.getProperty( property );
+        if( value != null && value.trim().length() > 0 )
+        {
+            try
+            {
+                return Long.valueOf( value.trim() );
+            }
+            catch( NumberFormatException e )
+            {
+                LOGGER.warn( "Invalid value [" + value + "] of " + property + ". Using " + defaultValue );
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Writes the provisioning timeline, if recorded.
+     */
+    private void writeTimeline()
+    {
+        if( m_timeline != null )
+        {
+            try
+            {
+                m_timeline.dump( m_timelineFile );
+                LOGGER.info( "Provisioning timeline written to [" + m_timelineFile + "]" );
+            }
+            catch( IOException e )
+            {
+                LOGGER.warn( "Cannot write provisioning timeline to [" + m_timelineFile + "]: " + e.getMessage() );
+            }
+            m_timeline = null;
+            m_timelineFile = null;
+        }
+    }
+
+    /**
+     * Registers the scanner metrics as a service and as a JMX MBean in platform MBean server.
+     */
+    private void registerMetrics()
+    {
+        m_metricsServiceReg = m_bundleContext.registerService(
+            ScannerMetricsMBean.class.getName(),
+            ScannerMetrics.getInstance(),
+            null
+        );
+        try
+        {
+            final ObjectName objectName = new ObjectName( ScannerMetricsMBean.OBJECT_NAME );
+            ManagementFactory.getPlatformMBeanServer().registerMBean( ScannerMetrics.getInstance(), objectName );
+            m_metricsObjectName = objectName;
+        }
+        catch( JMException e )
+        {
+            LOGGER.warn( "Cannot register scanner metrics MBean: " + e.getMessage() );
+        }
+        catch( SecurityException e )
+        {
+            LOGGER.warn( "Cannot register scanner metrics MBean: " + e.getMessage() );
+        }
+    }
+
+    /**
+     * Unregisters the scanner metrics service and MBean.
+     */
+    private void unregisterMetrics()
+    {
+        if( m_metricsServiceReg != null )
+        {
+            m_metricsServiceReg.unregister();
+            m_metricsServiceReg = null;
+        }
+        if( m_metricsObjectName != null )
+        {
+            try
+            {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean( m_metricsObjectName );
+            }
+            catch( JMException e )
+            {
+                LOGGER.warn( "Cannot unregister scanner metrics MBean: " + e.getMessage() );
+            }
+            m_metricsObjectName = null;
+        }
+    }
+
     /**
      * Tracks Start Level service via a Service tracker.
      * TODO add unit tests to verify what happens when service becomes available. Does the provision service uses it?
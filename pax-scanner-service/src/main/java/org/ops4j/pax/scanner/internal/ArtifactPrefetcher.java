@@ -0,0 +1,543 @@
+/*
+ * Copyright 2007 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.internal;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ops4j.lang.NullArgumentException;
+
+/**
+ * Downloads remote bundle locations (mvn:, http:, ...) concurrently into a local directory ahead of installation, so
+ * network latency of the downloads overlaps instead of adding up while the framework installs the bundles one by
+ * one.<br/>
+ * Downloads are done by a bounded number of threads and the prefetched files may not hold more than a byte budget;
+ * a location that cannot be prefetched (failure, checksum mismatch, exhausted budget) is just installed from its
+ * original location.<br/>
+ * If an {@link ArtifactStore} is set, storable locations already in the store are copied out of the store instead of
+ * being downloaded and downloaded ones are copied into the store, so other frameworks sharing the store do not
+ * download them again. Prefetched files are always owned by the prefetcher, so eviction from the store cannot remove
+ * content that is about to be installed.
+ *
+ * @since 1.2.0
+ */
+class ArtifactPrefetcher
+{
+
+    /**
+     * Logger.
+     */
+    private static final Log LOGGER = LogFactory.getLog( ArtifactPrefetcher.class );
+    /**
+     * Extension of checksum files published next to http artifacts.
+     */
+    private static final String CHECKSUM_EXTENSION = ".sha1";
+    /**
+     * Hex digits used to encode checksums.
+     */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Directory where artifacts are downloaded.
+     */
+    private final File m_directory;
+    /**
+     * Executor used for downloads.
+     */
+    private final ExecutorService m_executor;
+    /**
+     * Number of bytes that can still be downloaded.
+     */
+    private final AtomicLong m_availableBytes;
+    /**
+     * Location to download.
+     */
+    private final ConcurrentMap<String, Future<File>> m_downloads;
+    /**
+     * Counter used to name downloaded files.
+     */
+    private final AtomicInteger m_counter;
+    /**
+     * Store shared by frameworks. Null if there is no store.
+     */
+    private final ArtifactStore m_store;
+
+    /**
+     * Creates a new prefetcher.
+     *
+     * @param directory directory where artifacts are downloaded; mandatory
+     * @param threads   maximum number of concurrent downloads
+     * @param maxBytes  maximum number of bytes prefetched files can hold
+     */
+    ArtifactPrefetcher( final File directory, final int threads, final long maxBytes )
+    {
+        this( directory, threads, maxBytes, null );
+    }
+
+    /**
+     * Creates a new prefetcher that uses a shared artifact store.
+     *
+     * @param directory directory where artifacts are downloaded; mandatory
+     * @param threads   maximum number of concurrent downloads
+     * @param maxBytes  maximum number of bytes prefetched files can hold
+     * @param store     shared artifact store; can be null
+     */
+    ArtifactPrefetcher( final File directory, final int threads, final long maxBytes, final ArtifactStore store )
+    {
+        NullArgumentException.validateNotNull( directory, "Directory" );
+        m_directory = directory;
+        m_store = store;
+        m_availableBytes = new AtomicLong( maxBytes );
+        m_downloads = new ConcurrentHashMap<String, Future<File>>();
+        m_counter = new AtomicInteger();
+        m_executor = Executors.newFixedThreadPool(
+            Math.max( 1, threads ),
+            new ThreadFactory()
+            {
+                private final AtomicInteger m_threads = new AtomicInteger();
+
+                public Thread newThread( final Runnable runnable )
+                {
+                    final Thread thread = new Thread(
+                        runnable, "Pax Scanner prefetch " + m_threads.incrementAndGet()
+                    );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            }
+        );
+    }
+
+    /**
+     * Starts downloading the remote locations that are not already downloaded or being downloaded. Returns
+     * immediately.
+     *
+     * @param locations bundle locations; mandatory
+     */
+    void prefetch( final Collection<String> locations )
+    {
+        NullArgumentException.validateNotNull( locations, "Locations" );
+        for( final String location : locations )
+        {
+            if( !isRemote( location ) || m_downloads.containsKey( location ) )
+            {
+                continue;
+            }
+            final Download download = createDownload( location );
+            if( m_downloads.putIfAbsent( location, download ) == null )
+            {
+                m_executor.execute( download );
+            }
+        }
+    }
+
+    /**
+     * Returns the prefetched file of a location, waiting for the download to finish if necessary.
+     *
+     * @param location bundle location
+     *
+     * @return prefetched file or null if the location was not (or could not be) prefetched
+     */
+    File get( final String location )
+    {
+        final Future<File> download = location == null ? null : m_downloads.get( location );
+        if( download == null )
+        {
+            return null;
+        }
+        return get( location, download );
+    }
+
+    /**
+     * Deletes the prefetched file of a location (if any), giving back its size to the byte budget. To be called once
+     * the location was installed.
+     *
+     * @param location bundle location
+     */
+    void release( final String location )
+    {
+        final Future<File> download = location == null ? null : m_downloads.remove( location );
+        if( download == null )
+        {
+            return;
+        }
+        // a download that finishes before it can be cancelled is cleaned up as any finished download
+        if( !download.isDone() && download.cancel( true ) )
+        {
+            return;
+        }
+        discard( get( location, download ) );
+    }
+
+    /**
+     * Deletes a prefetched file, giving back its size to the byte budget.
+     *
+     * @param file prefetched file; can be null
+     */
+    private void discard( final File file )
+    {
+        if( file != null )
+        {
+            m_availableBytes.addAndGet( file.length() );
+            if( !file.delete() )
+            {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Stops all downloads and deletes prefetched files.
+     */
+    void shutdown()
+    {
+        m_executor.shutdownNow();
+        for( String location : m_downloads.keySet() )
+        {
+            release( location );
+        }
+    }
+
+    /**
+     * Creates the download of a location.
+     *
+     * @param location location to download
+     *
+     * @return download
+     */
+    Download createDownload( final String location )
+    {
+        return new Download(
+            new Callable<File>()
+            {
+                public File call()
+                    throws IOException
+                {
+                    return fetch( location );
+                }
+            }
+        );
+    }
+
+    /**
+     * Fetches a location from the artifact store, or downloads it and adds it to the store.
+     *
+     * @param location location to fetch
+     *
+     * @return fetched file
+     *
+     * @throws IOException - If download fails or the byte budget is exhausted
+     */
+    private File fetch( final String location )
+        throws IOException
+    {
+        final boolean storable = m_store != null && ArtifactStore.isStorable( location );
+        if( storable )
+        {
+            final File stored = m_store.get( location, newFile() );
+            if( stored != null )
+            {
+                final long size = stored.length();
+                if( m_availableBytes.addAndGet( -size ) < 0 )
+                {
+                    m_availableBytes.addAndGet( size );
+                    stored.delete();
+                    throw new IOException( "Prefetch byte budget exhausted" );
+                }
+                LOGGER.debug( "Found [" + location + "] in store" );
+                return stored;
+            }
+        }
+        final File file = download( location );
+        if( storable )
+        {
+            try
+            {
+                m_store.put( location, file );
+            }
+            catch( IOException e )
+            {
+                LOGGER.warn( "Cannot store [" + location + "]: " + e.getMessage() );
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Downloads a location, verifying its checksum if one is published.
+     *
+     * @param location location to download
+     *
+     * @return downloaded file
+     *
+     * @throws IOException - If download fails, checksum does not match or the byte budget is exhausted
+     */
+    private File download( final String location )
+        throws IOException
+    {
+        final URL url = new URL( location );
+        final MessageDigest digest = createDigest();
+        final File file = newFile();
+        long size = 0;
+        boolean complete = false;
+        try
+        {
+            final InputStream inputStream = url.openStream();
+            try
+            {
+                final OutputStream outputStream = new FileOutputStream( file );
+                try
+                {
+                    final byte[] buffer = new byte[8192];
+                    int read;
+                    while( ( read = inputStream.read( buffer ) ) != -1 )
+                    {
+                        size += read;
+                        if( m_availableBytes.addAndGet( -read ) < 0 )
+                        {
+                            throw new IOException( "Prefetch byte budget exhausted" );
+                        }
+                        if( Thread.currentThread().isInterrupted() )
+                        {
+                            throw new IOException( "Prefetch interrupted" );
+                        }
+                        digest.update( buffer, 0, read );
+                        outputStream.write( buffer, 0, read );
+                    }
+                }
+                finally
+                {
+                    outputStream.close();
+                }
+            }
+            finally
+            {
+                inputStream.close();
+            }
+            verifyChecksum( url, digest.digest() );
+            complete = true;
+            LOGGER.debug( "Prefetched [" + location + "] (" + size + " bytes)" );
+            return file;
+        }
+        finally
+        {
+            if( !complete )
+            {
+                m_availableBytes.addAndGet( size );
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Returns a new file in the prefetch directory, creating the directory if necessary.
+     *
+     * @return new file
+     *
+     * @throws IOException - If directory cannot be created
+     */
+    private File newFile()
+        throws IOException
+    {
+        if( !m_directory.exists() && !m_directory.mkdirs() && !m_directory.exists() )
+        {
+            throw new IOException( "Cannot create directory " + m_directory );
+        }
+        return new File( m_directory, m_counter.incrementAndGet() + ".jar" );
+    }
+
+    /**
+     * Verifies the checksum of a downloaded http artifact against the checksum published next to it, if there is
+     * one. Other protocols (as mvn:) verify checksums on their own.
+     *
+     * @param url      artifact url
+     * @param checksum SHA-1 of downloaded content
+     *
+     * @throws IOException - If checksum does not match
+     */
+    private static void verifyChecksum( final URL url, final byte[] checksum )
+        throws IOException
+    {
+        if( !"http".equals( url.getProtocol() ) && !"https".equals( url.getProtocol() ) )
+        {
+            return;
+        }
+        final String expected;
+        try
+        {
+            final BufferedReader reader = new BufferedReader(
+                new InputStreamReader( new URL( url.toExternalForm() + CHECKSUM_EXTENSION ).openStream(), "US-ASCII" )
+            );
+            try
+            {
+                final String line = reader.readLine();
+                if( line == null || line.trim().length() == 0 )
+                {
+                    return;
+                }
+                // checksum files may contain the file name after the checksum
+                expected = line.trim().split( "\\s+" )[ 0 ].toLowerCase();
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch( FileNotFoundException e )
+        {
+            return;
+        }
+        final StringBuilder actual = new StringBuilder();
+        for( byte b : checksum )
+        {
+            actual.append( HEX[ ( b >> 4 ) & 0xF ] ).append( HEX[ b & 0xF ] );
+        }
+        if( !expected.equals( actual.toString() ) )
+        {
+            throw new IOException( "Checksum mismatch for [" + url + "]" );
+        }
+    }
+
+    /**
+     * Checks if a location has to be downloaded. Local files and locations that are not urls are installed as they
+     * are.
+     *
+     * @param location bundle location
+     *
+     * @return true if location is a remote url
+     */
+    static boolean isRemote( final String location )
+    {
+        if( location == null )
+        {
+            return false;
+        }
+        try
+        {
+            final String protocol = new URL( location ).getProtocol();
+            return !"file".equals( protocol ) && !"reference".equals( protocol ) && !"jar".equals( protocol );
+        }
+        catch( MalformedURLException e )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the result of a download, waiting for it to finish if necessary.
+     *
+     * @param location downloaded location
+     * @param download download
+     *
+     * @return downloaded file or null if download failed
+     */
+    private static File get( final String location, final Future<File> download )
+    {
+        try
+        {
+            return download.get();
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch( ExecutionException e )
+        {
+            LOGGER.debug( "Could not prefetch [" + location + "]: " + e.getCause().getMessage() );
+        }
+        catch( CancellationException e )
+        {
+            // cancelled downloads have no file
+        }
+        return null;
+    }
+
+    /**
+     * Creates the digest used for checksums.
+     *
+     * @return SHA-1 digest
+     */
+    private static MessageDigest createDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance( "SHA-1" );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( "SHA-1 is not available" );
+        }
+    }
+
+    /**
+     * Download of a location. A file fetched after the download was cancelled is discarded, as nobody will release it.
+     */
+    class Download
+        extends FutureTask<File>
+    {
+
+        /**
+         * Creates a new download.
+         *
+         * @param callable fetches the file
+         */
+        Download( final Callable<File> callable )
+        {
+            super( callable );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void set( final File file )
+        {
+            super.set( file );
+            if( isCancelled() )
+            {
+                discard( file );
+            }
+        }
+
+    }
+
+}
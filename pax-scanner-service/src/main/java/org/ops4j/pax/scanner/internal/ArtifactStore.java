@@ -0,0 +1,606 @@
+/*
+ * Copyright 2007 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.internal;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ops4j.lang.NullArgumentException;
+
+/**
+ * A content-addressable store of bundle artifacts, that can be shared by all frameworks (and processes) of a host.
+ * Layout of the store directory:
+ * <pre>
+ * objects/&lt;first 2 digest chars&gt;/&lt;digest&gt;   artifact content, named by its SHA-256
+ * locations/&lt;SHA-256 of location&gt;           digest of the content last stored for a location
+ * store.lock                                  lock file guarding changes to the store
+ * </pre>
+ * Files are written to a temporary file and renamed, so readers never see partial content. Content is copied in and
+ * out of the store while holding a file lock on the lock file, so several processes can share the store and content
+ * handed out stays usable whatever gets evicted meanwhile. When the size of stored content goes over the configured
+ * maximum, least recently used content is evicted.<br/>
+ * Only released maven artifacts are stored, as the content of any other location may change without the location
+ * changing.
+ *
+ * @since 1.2.0
+ */
+class ArtifactStore
+{
+
+    /**
+     * Logger.
+     */
+    private static final Log LOGGER = LogFactory.getLog( ArtifactStore.class );
+    /**
+     * Digest algorithm.
+     */
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    /**
+     * Hex digits used to encode digests.
+     */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    /**
+     * Time to wait before retrying to get a lock already held in this virtual machine.
+     */
+    private static final long LOCK_RETRY_MILLIS = 10;
+    /**
+     * Prefix of maven locations.
+     */
+    private static final String MVN_PREFIX = "mvn:";
+
+    /**
+     * Directory holding content.
+     */
+    private final File m_objects;
+    /**
+     * Directory holding location to digest mappings.
+     */
+    private final File m_locations;
+    /**
+     * Lock file.
+     */
+    private final File m_lockFile;
+    /**
+     * Maximum number of bytes stored content can hold.
+     */
+    private final long m_maxBytes;
+
+    /**
+     * Creates a new store.
+     *
+     * @param directory store directory; mandatory
+     * @param maxBytes  maximum number of bytes stored content can hold
+     */
+    ArtifactStore( final File directory, final long maxBytes )
+    {
+        NullArgumentException.validateNotNull( directory, "Directory" );
+        m_objects = new File( directory, "objects" );
+        m_locations = new File( directory, "locations" );
+        m_lockFile = new File( directory, "store.lock" );
+        m_maxBytes = maxBytes;
+    }
+
+    /**
+     * Checks if the content of a location can be taken from the store. Only mvn: locations of a fixed, released
+     * version are stored, as the content of snapshots, version ranges, LATEST / RELEASE and any other url (http:, ...)
+     * can change without the location changing.
+     *
+     * @param location bundle location
+     *
+     * @return true if location content can be stored
+     */
+    static boolean isStorable( final String location )
+    {
+        if( location == null || !location.startsWith( MVN_PREFIX ) )
+        {
+            return false;
+        }
+        String path = location.substring( MVN_PREFIX.length() );
+        // skip the optional repository
+        path = path.substring( path.indexOf( '!' ) + 1 );
+        final String[] segments = path.split( "/" );
+        if( segments.length < 3 )
+        {
+            return false;
+        }
+        final String version = segments[ 2 ].trim();
+        return version.length() > 0
+               && !version.contains( "SNAPSHOT" )
+               && !"LATEST".equals( version )
+               && !"RELEASE".equals( version )
+               && version.indexOf( '[' ) < 0
+               && version.indexOf( '(' ) < 0;
+    }
+
+    /**
+     * Copies the stored content of a location to a file, marking it as recently used. The copy is owned by the
+     * caller, so it is not affected by content being evicted from the store.
+     *
+     * @param location bundle location; mandatory
+     * @param target   file to copy the content to; mandatory
+     *
+     * @return target file or null if content of location is not stored
+     *
+     * @throws IOException - If stored content cannot be copied
+     */
+    File get( final String location, final File target )
+        throws IOException
+    {
+        NullArgumentException.validateNotNull( location, "Location" );
+        NullArgumentException.validateNotNull( target, "Target" );
+        final String digest = getDigest( location );
+        if( digest == null )
+        {
+            return null;
+        }
+        final File file = getObjectFile( digest );
+        final Lock lock = lock();
+        try
+        {
+            // content may have been evicted after the mapping was written
+            if( !file.exists() )
+            {
+                return null;
+            }
+            file.setLastModified( System.currentTimeMillis() );
+            copy( file, temporaryFile( target.getParentFile() ), target );
+        }
+        finally
+        {
+            lock.release();
+        }
+        return target;
+    }
+
+    /**
+     * Returns the digest of the content stored for a location.
+     *
+     * @param location bundle location; mandatory
+     *
+     * @return hex encoded SHA-256 digest or null if content of location is not stored
+     */
+    String getDigest( final String location )
+    {
+        NullArgumentException.validateNotNull( location, "Location" );
+        final File file = new File( m_locations, toHex( digest( location ) ) );
+        if( !file.exists() )
+        {
+            return null;
+        }
+        try
+        {
+            final BufferedReader reader = new BufferedReader(
+                new InputStreamReader( new FileInputStream( file ), "US-ASCII" )
+            );
+            try
+            {
+                final String digest = reader.readLine();
+                return digest == null || digest.trim().length() == 0 ? null : digest.trim();
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch( IOException e )
+        {
+            // mapping removed meanwhile
+            return null;
+        }
+    }
+
+    /**
+     * Stores the content of a file as content of a location. The file is copied into the store and stays owned by the
+     * caller. If the same content is already stored (under any location) it is reused.
+     *
+     * @param location bundle location; mandatory
+     * @param content  file to store; mandatory
+     *
+     * @return hex encoded SHA-256 digest of the stored content
+     *
+     * @throws IOException - If the file cannot be stored
+     */
+    String put( final String location, final File content )
+        throws IOException
+    {
+        NullArgumentException.validateNotNull( location, "Location" );
+        NullArgumentException.validateNotNull( content, "Content" );
+        final String digest = digest( new FileInputStream( content ) );
+        final File file = getObjectFile( digest );
+        final Lock lock = lock();
+        try
+        {
+            if( file.exists() )
+            {
+                file.setLastModified( System.currentTimeMillis() );
+            }
+            else
+            {
+                mkdirs( file.getParentFile() );
+                copy( content, temporaryFile( file.getParentFile() ), file );
+            }
+            final File mapping = new File( m_locations, toHex( digest( location ) ) );
+            mkdirs( m_locations );
+            final File temp = temporaryFile( m_locations );
+            final OutputStream outputStream = new FileOutputStream( temp );
+            try
+            {
+                outputStream.write( digest.getBytes( "US-ASCII" ) );
+            }
+            finally
+            {
+                outputStream.close();
+            }
+            rename( temp, mapping );
+            evict( file );
+        }
+        finally
+        {
+            lock.release();
+        }
+        LOGGER.debug( "Stored [" + location + "] as " + digest );
+        return digest;
+    }
+
+    /**
+     * Evicts least recently used content till the size of stored content is no more then the maximum.
+     *
+     * @param keep file that should not be evicted (just stored)
+     */
+    private void evict( final File keep )
+    {
+        final List<File> files = new ArrayList<File>();
+        long size = 0;
+        final File[] directories = m_objects.listFiles();
+        if( directories != null )
+        {
+            for( File directory : directories )
+            {
+                final File[] objects = directory.listFiles();
+                if( objects != null )
+                {
+                    for( File object : objects )
+                    {
+                        files.add( object );
+                        size += object.length();
+                    }
+                }
+            }
+        }
+        if( size <= m_maxBytes )
+        {
+            return;
+        }
+        final File[] sorted = files.toArray( new File[files.size()] );
+        Arrays.sort(
+            sorted, new Comparator<File>()
+            {
+                public int compare( final File file1, final File file2 )
+                {
+                    final long modified1 = file1.lastModified();
+                    final long modified2 = file2.lastModified();
+                    return modified1 < modified2 ? -1 : ( modified1 == modified2 ? 0 : 1 );
+                }
+            }
+        );
+        for( int i = 0; i < sorted.length && size > m_maxBytes; i++ )
+        {
+            if( sorted[ i ].equals( keep ) )
+            {
+                continue;
+            }
+            final long length = sorted[ i ].length();
+            if( sorted[ i ].delete() )
+            {
+                size -= length;
+                LOGGER.debug( "Evicted [" + sorted[ i ].getName() + "] from store" );
+            }
+        }
+        // mappings of evicted content are dropped lazily, as get() finds no content
+    }
+
+    /**
+     * Returns the file holding the content with a digest.
+     *
+     * @param digest hex encoded digest
+     *
+     * @return content file
+     */
+    private File getObjectFile( final String digest )
+    {
+        return new File( new File( m_objects, digest.substring( 0, 2 ) ), digest );
+    }
+
+    /**
+     * Acquires the lock guarding changes to the store. Blocks till lock is available.
+     *
+     * @return acquired lock
+     *
+     * @throws IOException - If lock file cannot be opened
+     */
+    private Lock lock()
+        throws IOException
+    {
+        mkdirs( m_lockFile.getParentFile() );
+        final RandomAccessFile file = new RandomAccessFile( m_lockFile, "rw" );
+        try
+        {
+            while( true )
+            {
+                try
+                {
+                    return new Lock( file, file.getChannel().lock() );
+                }
+                catch( OverlappingFileLockException e )
+                {
+                    // lock is held by another thread of this virtual machine
+                    try
+                    {
+                        Thread.sleep( LOCK_RETRY_MILLIS );
+                    }
+                    catch( InterruptedException ignore )
+                    {
+                        Thread.currentThread().interrupt();
+                        throw new IOException( "Interrupted while waiting for store lock" );
+                    }
+                }
+            }
+        }
+        catch( IOException e )
+        {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Copies a file to a target file via a temporary file.
+     *
+     * @param source source file
+     * @param temp   temporary file
+     * @param target target file
+     *
+     * @throws IOException - If copy fails
+     */
+    private static void copy( final File source, final File temp, final File target )
+        throws IOException
+    {
+        final InputStream inputStream = new FileInputStream( source );
+        try
+        {
+            final OutputStream outputStream = new FileOutputStream( temp );
+            try
+            {
+                final byte[] buffer = new byte[8192];
+                int read;
+                while( ( read = inputStream.read( buffer ) ) != -1 )
+                {
+                    outputStream.write( buffer, 0, read );
+                }
+            }
+            finally
+            {
+                outputStream.close();
+            }
+        }
+        finally
+        {
+            inputStream.close();
+        }
+        rename( temp, target );
+    }
+
+    /**
+     * Renames a file, replacing the target.
+     *
+     * @param source file to rename
+     * @param target target file
+     *
+     * @throws IOException - If file cannot be renamed
+     */
+    private static void rename( final File source, final File target )
+        throws IOException
+    {
+        if( !source.renameTo( target ) )
+        {
+            // renaming over an existing file fails on some platforms
+            target.delete();
+            if( !source.renameTo( target ) )
+            {
+                source.delete();
+                throw new IOException( "Cannot write " + target );
+            }
+        }
+    }
+
+    /**
+     * Creates a temporary file in a directory.
+     *
+     * @param directory directory
+     *
+     * @return temporary file
+     *
+     * @throws IOException - If file cannot be created
+     */
+    private static File temporaryFile( final File directory )
+        throws IOException
+    {
+        return File.createTempFile( "store", ".tmp", directory );
+    }
+
+    /**
+     * Creates a directory, if it does not exist.
+     *
+     * @param directory directory
+     *
+     * @throws IOException - If directory cannot be created
+     */
+    private static void mkdirs( final File directory )
+        throws IOException
+    {
+        if( !directory.exists() && !directory.mkdirs() && !directory.exists() )
+        {
+            throw new IOException( "Cannot create directory " + directory );
+        }
+    }
+
+    /**
+     * Computes the digest of a string.
+     *
+     * @param value string
+     *
+     * @return digest
+     */
+    private static byte[] digest( final String value )
+    {
+        try
+        {
+            return createDigest().digest( value.getBytes( "UTF-8" ) );
+        }
+        catch( IOException e )
+        {
+            throw new IllegalStateException( "UTF-8 is not available" );
+        }
+    }
+
+    /**
+     * Computes the digest of a content, as used to address stored content. The stream is closed.
+     *
+     * @param inputStream content
+     *
+     * @return hex encoded SHA-256 digest
+     *
+     * @throws IOException - If content cannot be read
+     */
+    static String digest( final InputStream inputStream )
+        throws IOException
+    {
+        final MessageDigest digest = createDigest();
+        try
+        {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while( ( read = inputStream.read( buffer ) ) != -1 )
+            {
+                digest.update( buffer, 0, read );
+            }
+        }
+        finally
+        {
+            inputStream.close();
+        }
+        return toHex( digest.digest() );
+    }
+
+    /**
+     * Creates the digest used for content and locations.
+     *
+     * @return SHA-256 digest
+     */
+    private static MessageDigest createDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance( DIGEST_ALGORITHM );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( DIGEST_ALGORITHM + " is not available" );
+        }
+    }
+
+    /**
+     * Hex encodes bytes.
+     *
+     * @param bytes bytes to encode
+     *
+     * @return hex encoded bytes
+     */
+    private static String toHex( final byte[] bytes )
+    {
+        final char[] hex = new char[bytes.length * 2];
+        for( int i = 0; i < bytes.length; i++ )
+        {
+            hex[ i * 2 ] = HEX[ ( bytes[ i ] >> 4 ) & 0xF ];
+            hex[ i * 2 + 1 ] = HEX[ bytes[ i ] & 0xF ];
+        }
+        return new String( hex );
+    }
+
+    /**
+     * An acquired store lock.
+     */
+    private static class Lock
+    {
+
+        /**
+         * Lock file.
+         */
+        private final RandomAccessFile m_file;
+        /**
+         * File lock.
+         */
+        private final FileLock m_lock;
+
+        /**
+         * Creates a new lock.
+         *
+         * @param file lock file
+         * @param lock file lock
+         */
+        Lock( final RandomAccessFile file, final FileLock lock )
+        {
+            m_file = file;
+            m_lock = lock;
+        }
+
+        /**
+         * Releases the lock.
+         */
+        void release()
+        {
+            try
+            {
+                m_lock.release();
+                m_file.close();
+            }
+            catch( IOException e )
+            {
+                LOGGER.warn( "Cannot release store lock", e );
+            }
+        }
+
+    }
+
+}
@@ -17,13 +17,23 @@
  */
 package org.ops4j.pax.scanner.internal;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleException;
 import org.osgi.service.startlevel.StartLevel;
 import org.ops4j.lang.NullArgumentException;
 import org.ops4j.pax.scanner.InstallableBundle;
+import org.ops4j.pax.scanner.ProvisionEvent;
 import org.ops4j.pax.scanner.ScannedBundle;
+import org.ops4j.pax.scanner.VerifiableBundle;
 
 public class InstallableBundleImpl
     implements InstallableBundle
@@ -45,6 +55,18 @@ public class InstallableBundleImpl
      * The start level service or null if not available.
      */
     private final StartLevel m_startLevelService;
+    /**
+     * Dispatcher of provisioning events or null if events should not be dispatched.
+     */
+    private final ProvisionEventDispatcher m_eventDispatcher;
+    /**
+     * Prefetcher holding the downloaded content of remote locations or null if content is not prefetched.
+     */
+    private final ArtifactPrefetcher m_prefetcher;
+    /**
+     * Location the bundle was installed from. Null before installation.
+     */
+    private String m_location;
     /**
      * The internal state.
      */
@@ -72,15 +94,45 @@ public class InstallableBundleImpl
     public InstallableBundleImpl( final BundleContext bundleContext,
                                   final ScannedBundle scannedBundle,
                                   final StartLevel startLevelService )
+    {
+        this( bundleContext, scannedBundle, startLevelService, null, null );
+    }
+
+    /**
+     * Creates a new Installable Bundle that notifies provisioning events and installs from prefetched content.
+     *
+     * @param bundleContext     a bundle context; mandatory
+     * @param scannedBundle     scanned bundle; mandatory
+     * @param startLevelService a start level service; optional
+     * @param eventDispatcher   dispatcher of provisioning events; optional
+     * @param prefetcher        prefetcher of remote locations; optional
+     */
+    InstallableBundleImpl( final BundleContext bundleContext,
+                           final ScannedBundle scannedBundle,
+                           final StartLevel startLevelService,
+                           final ProvisionEventDispatcher eventDispatcher,
+                           final ArtifactPrefetcher prefetcher )
     {
         NullArgumentException.validateNotNull( bundleContext, "Bundle context" );
         NullArgumentException.validateNotNull( scannedBundle, "Scanned bundle" );
         m_bundleContext = bundleContext;
         m_scannedBundle = scannedBundle;
         m_startLevelService = startLevelService;
+        m_eventDispatcher = eventDispatcher;
+        m_prefetcher = prefetcher;
         m_state = new NotInstalledState();
     }
 
+    /**
+     * Getter.
+     *
+     * @return scanned bundle to be installed
+     */
+    ScannedBundle getScannedBundle()
+    {
+        return m_scannedBundle;
+    }
+
     /**
      * @see InstallableBundle#getBundle()
      */
@@ -123,7 +175,7 @@ public class InstallableBundleImpl
     }
 
     /**
-     * Performs the actual installation.
+     * Performs the actual installation, releasing the prefetched content (if any) afterwards.
      *
      * @throws org.osgi.framework.BundleException
      *          see install()
@@ -136,14 +188,114 @@ public class InstallableBundleImpl
         {
             throw new BundleException( "The scanned bundle has no location" );
         }
-        // get current time to be ubale to verify if the bundle was already installed before the install below
-        long currentTime = System.currentTimeMillis();
-        m_bundle = m_bundleContext.installBundle( location );
-        // if the bundle was modified (installed/updated) before then force an update
-        Boolean shouldUpdate = m_scannedBundle.shouldUpdate();
-        if( shouldUpdate != null && shouldUpdate && m_bundle.getLastModified() < currentTime )
+        m_location = location;
+        try
+        {
+            doInstall( fetch() );
+        }
+        finally
+        {
+            if( m_prefetcher != null )
+            {
+                m_prefetcher.release( location );
+            }
+        }
+    }
+
+    /**
+     * Gets the prefetched content of a remote location, waiting for the prefetch to finish if necessary. The wait is
+     * notified as a fetch event, so it does not go unaccounted in provisioning timeline.
+     *
+     * @return prefetched content or null if location was not (or could not be) prefetched
+     */
+    private File fetch()
+    {
+        if( m_prefetcher == null || !ArtifactPrefetcher.isRemote( m_location ) )
+        {
+            return null;
+        }
+        final long fetchTime = System.currentTimeMillis();
+        final long start = System.nanoTime();
+        final File content = m_prefetcher.get( m_location );
+        fireEvent( ProvisionEvent.FETCH, fetchTime, start, null );
+        return content;
+    }
+
+    /**
+     * Performs the actual installation. If the content was prefetched the bundle is installed / updated from the
+     * prefetched file, keeping the original location as bundle location. If the prefetched file is gone meanwhile,
+     * the bundle is installed / updated from the original location. Verifiable bundles are always installed / updated
+     * from the content that was verified, so a not prefetched location is downloaded only once, into a temporary file.
+     *
+     * @param content prefetched content of bundle location; null if not prefetched
+     *
+     * @throws org.osgi.framework.BundleException
+     *          see install()
+     */
+    private void doInstall( final File content )
+        throws BundleException
+    {
+        final String location = m_location;
+        // content of verifiable bundles is verified only if it is going to be installed / updated
+        File verified = null;
+        try
         {
-            m_bundle.update();
+            if( getDigest() != null && !isInstalled( location ) )
+            {
+                verified = verify( content );
+            }
+            // get current time to be ubale to verify if the bundle was already installed before the install below
+            long currentTime = System.currentTimeMillis();
+            long start = System.nanoTime();
+            try
+            {
+                final InputStream inputStream = open( verified == null ? content : verified, verified != null );
+                m_bundle = inputStream == null
+                           ? m_bundleContext.installBundle( location )
+                           : m_bundleContext.installBundle( location, inputStream );
+            }
+            catch( BundleException e )
+            {
+                fireEvent( ProvisionEvent.INSTALL, currentTime, start, e );
+                throw e;
+            }
+            fireEvent( ProvisionEvent.INSTALL, currentTime, start, null );
+            // if the bundle was modified (installed/updated) before then force an update
+            Boolean shouldUpdate = m_scannedBundle.shouldUpdate();
+            if( shouldUpdate != null && shouldUpdate && m_bundle.getLastModified() < currentTime )
+            {
+                if( getDigest() != null && verified == null )
+                {
+                    verified = verify( content );
+                }
+                final long updateTime = System.currentTimeMillis();
+                start = System.nanoTime();
+                try
+                {
+                    final InputStream inputStream = open( verified == null ? content : verified, verified != null );
+                    if( inputStream == null )
+                    {
+                        m_bundle.update();
+                    }
+                    else
+                    {
+                        m_bundle.update( inputStream );
+                    }
+                }
+                catch( BundleException e )
+                {
+                    fireEvent( ProvisionEvent.UPDATE, updateTime, start, e );
+                    throw e;
+                }
+                fireEvent( ProvisionEvent.UPDATE, updateTime, start, null );
+            }
+        }
+        finally
+        {
+            if( verified != null && verified != content )
+            {
+                verified.delete();
+            }
         }
         if( m_bundle == null )
         {
@@ -171,11 +323,186 @@ public class InstallableBundleImpl
     {
         if( m_bundle != null )
         {
-            m_bundle.start();
+            final long startTime = System.currentTimeMillis();
+            final long start = System.nanoTime();
+            try
+            {
+                m_bundle.start();
+            }
+            catch( BundleException e )
+            {
+                fireEvent( ProvisionEvent.START, startTime, start, e );
+                throw e;
+            }
+            fireEvent( ProvisionEvent.START, startTime, start, null );
         }
         m_state = new StartedState();
     }
 
+    /**
+     * Returns the expected digest of bundle content.
+     *
+     * @return hex encoded digest or null if scanned bundle is not verifiable or has no digest
+     */
+    private String getDigest()
+    {
+        return m_scannedBundle instanceof VerifiableBundle
+               ? ( (VerifiableBundle) m_scannedBundle ).getDigest()
+               : null;
+    }
+
+    /**
+     * Checks if there is a bundle installed from a location.
+     *
+     * @param location bundle location
+     *
+     * @return true if a bundle with the same location is installed
+     */
+    private boolean isInstalled( final String location )
+    {
+        final Bundle[] bundles = m_bundleContext.getBundles();
+        if( bundles != null )
+        {
+            for( Bundle bundle : bundles )
+            {
+                if( location.equals( bundle.getLocation() ) )
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Verifies that bundle content matches the expected digest.
+     *
+     * @param content prefetched content of bundle location; null if not prefetched, case when the location is
+     *                downloaded into a temporary file
+     *
+     * @return verified content: the prefetched file or the temporary file, that has to be deleted by caller
+     *
+     * @throws BundleException - If content cannot be read or does not match the expected digest
+     */
+    private File verify( final File content )
+        throws BundleException
+    {
+        final String expected = getDigest();
+        File verified = content;
+        boolean matches = false;
+        try
+        {
+            if( verified == null )
+            {
+                verified = File.createTempFile( "bundle", ".jar" );
+                download( verified );
+            }
+            matches = expected.equalsIgnoreCase( ArtifactStore.digest( new FileInputStream( verified ) ) );
+        }
+        catch( IOException e )
+        {
+            throw new BundleException( "Content of [" + m_location + "] cannot be verified", e );
+        }
+        finally
+        {
+            if( !matches && verified != null && verified != content )
+            {
+                verified.delete();
+            }
+        }
+        if( !matches )
+        {
+            throw new BundleException(
+                "Content of [" + m_location + "] does not match the expected digest " + expected
+            );
+        }
+        return verified;
+    }
+
+    /**
+     * Downloads bundle location.
+     *
+     * @param target file to download to
+     *
+     * @throws IOException - If location cannot be downloaded
+     */
+    private void download( final File target )
+        throws IOException
+    {
+        final InputStream inputStream = new URL( m_location ).openStream();
+        try
+        {
+            final OutputStream outputStream = new FileOutputStream( target );
+            try
+            {
+                final byte[] buffer = new byte[8192];
+                int read;
+                while( ( read = inputStream.read( buffer ) ) != -1 )
+                {
+                    outputStream.write( buffer, 0, read );
+                }
+            }
+            finally
+            {
+                outputStream.close();
+            }
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Opens a prefetched or verified file. The framework closes the stream once the bundle is installed / updated.
+     *
+     * @param content  prefetched or verified file; can be null
+     * @param verified if the file was verified, so it cannot be replaced by the original location if it is gone
+     *
+     * @return input stream of file or null if there is no prefetched file (anymore), so the bundle has to be installed
+     *         / updated from its original location
+     *
+     * @throws BundleException - If the verified file is gone
+     */
+    private InputStream open( final File content, final boolean verified )
+        throws BundleException
+    {
+        if( content == null )
+        {
+            return null;
+        }
+        try
+        {
+            return new FileInputStream( content );
+        }
+        catch( FileNotFoundException e )
+        {
+            if( verified )
+            {
+                throw new BundleException( "Verified content of [" + m_location + "] is gone", e );
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Notifies a provisioning event of this bundle, if there is anybody listening.
+     *
+     * @param phase     provisioning phase
+     * @param startTime time when the phase started, as System.currentTimeMillis()
+     * @param start     time when the phase started, as System.nanoTime()
+     * @param failure   failure; null if phase was successful
+     */
+    private void fireEvent( final String phase, final long startTime, final long start, final Throwable failure )
+    {
+        if( m_eventDispatcher != null && m_eventDispatcher.isEnabled() )
+        {
+            m_eventDispatcher.dispatch(
+                new ProvisionEvent( phase, null, null, m_location, startTime, System.nanoTime() - start, failure )
+            );
+        }
+    }
+
     /**
      * Internal state of the installable bundle.
      */
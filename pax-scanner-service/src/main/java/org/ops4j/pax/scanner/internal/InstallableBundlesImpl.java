@@ -17,12 +17,18 @@
  */
 package org.ops4j.pax.scanner.internal;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleException;
 import org.ops4j.lang.NullArgumentException;
 import org.ops4j.pax.scanner.InstallableBundle;
 import org.ops4j.pax.scanner.InstallableBundles;
+import org.ops4j.pax.scanner.ScannedBundle;
 
 public class InstallableBundlesImpl
     implements InstallableBundles
@@ -32,6 +38,14 @@ public class InstallableBundlesImpl
      * List of installables from this set.
      */
     private final List<InstallableBundle> m_installables;
+    /**
+     * Bundle context used to find already installed bundles. Null if locations are not prefetched.
+     */
+    private final BundleContext m_bundleContext;
+    /**
+     * Prefetcher of remote locations. Null if locations are not prefetched.
+     */
+    private final ArtifactPrefetcher m_prefetcher;
 
     /**
      * Creates a new installable bundles set.
@@ -39,9 +53,29 @@ public class InstallableBundlesImpl
      * @param installables installable bundles that makes up the set
      */
     public InstallableBundlesImpl( final List<InstallableBundle> installables )
+    {
+        this( installables, null, null );
+    }
+
+    /**
+     * Creates a new installable bundles set that prefetches the remote locations when installed.
+     *
+     * @param installables  installable bundles that makes up the set; mandatory
+     * @param bundleContext bundle context used to find already installed bundles; mandatory if prefetcher is set
+     * @param prefetcher    prefetcher of remote locations; optional
+     */
+    InstallableBundlesImpl( final List<InstallableBundle> installables,
+                            final BundleContext bundleContext,
+                            final ArtifactPrefetcher prefetcher )
     {
         NullArgumentException.validateNotNull( installables, "List of installable bundles" );
+        if( prefetcher != null )
+        {
+            NullArgumentException.validateNotNull( bundleContext, "Bundle context" );
+        }
         m_installables = installables;
+        m_bundleContext = bundleContext;
+        m_prefetcher = prefetcher;
     }
 
     /**
@@ -60,9 +94,21 @@ public class InstallableBundlesImpl
     public InstallableBundles install()
         throws BundleException
     {
-        for( InstallableBundle installable : m_installables )
+        final List<String> prefetched = prefetch();
+        try
+        {
+            for( InstallableBundle installable : m_installables )
+            {
+                installable.install();
+            }
+        }
+        finally
         {
-            installable.install();
+            // content of locations that did not get installed
+            for( String location : prefetched )
+            {
+                m_prefetcher.release( location );
+            }
         }
         for( InstallableBundle installable : m_installables )
         {
@@ -71,4 +117,42 @@ public class InstallableBundlesImpl
         return this;
     }
 
+    /**
+     * Starts downloading the remote locations that will be installed, so downloads overlap while bundles are installed
+     * one by one. Locations already installed are skipped unless they should be updated.
+     *
+     * @return prefetched locations; empty if there is no prefetcher
+     */
+    List<String> prefetch()
+    {
+        final List<String> locations = new ArrayList<String>();
+        if( m_prefetcher == null )
+        {
+            return locations;
+        }
+        final Set<String> installed = new HashSet<String>();
+        final Bundle[] bundles = m_bundleContext.getBundles();
+        if( bundles != null )
+        {
+            for( Bundle bundle : bundles )
+            {
+                installed.add( bundle.getLocation() );
+            }
+        }
+        for( InstallableBundle installable : m_installables )
+        {
+            if( installable instanceof InstallableBundleImpl && installable.getBundle() == null )
+            {
+                final ScannedBundle scannedBundle = ( (InstallableBundleImpl) installable ).getScannedBundle();
+                if( !installed.contains( scannedBundle.getLocation() )
+                    || Boolean.TRUE.equals( scannedBundle.shouldUpdate() ) )
+                {
+                    locations.add( scannedBundle.getLocation() );
+                }
+            }
+        }
+        m_prefetcher.prefetch( locations );
+        return locations;
+    }
+
 }
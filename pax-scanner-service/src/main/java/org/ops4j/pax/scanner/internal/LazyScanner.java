@@ -0,0 +1,116 @@
+/*
+ * Copyright 2007 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.internal;
+
+import java.util.List;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.ops4j.lang.NullArgumentException;
+import org.ops4j.pax.scanner.MalformedSpecificationException;
+import org.ops4j.pax.scanner.ProvisionSpec;
+import org.ops4j.pax.scanner.ScannedBundle;
+import org.ops4j.pax.scanner.Scanner;
+import org.ops4j.pax.scanner.ScannerException;
+
+/**
+ * A scanner that gets the registered scanner service only when first used, so scanners registered via a service
+ * factory are not created till a provision spec with their scheme is scanned.
+ *
+ * @since 1.2.0
+ */
+class LazyScanner
+    implements Scanner
+{
+
+    /**
+     * Bundle context used to get the service.
+     */
+    private final BundleContext m_bundleContext;
+    /**
+     * Reference of the scanner service.
+     */
+    private final ServiceReference m_reference;
+    /**
+     * Scanner service. Null till first used.
+     */
+    private Scanner m_scanner;
+
+    /**
+     * Creates a new lazy scanner.
+     *
+     * @param bundleContext bundle context used to get the service; mandatory
+     * @param reference     reference of the scanner service; mandatory
+     */
+    LazyScanner( final BundleContext bundleContext, final ServiceReference reference )
+    {
+        NullArgumentException.validateNotNull( bundleContext, "Bundle context" );
+        NullArgumentException.validateNotNull( reference, "Service reference" );
+        m_bundleContext = bundleContext;
+        m_reference = reference;
+    }
+
+    /**
+     * Gets the scanner service, if not already got, and delegates to it.
+     *
+     * @see Scanner#scan(ProvisionSpec)
+     */
+    public List<ScannedBundle> scan( final ProvisionSpec provisionSpec )
+        throws MalformedSpecificationException, ScannerException
+    {
+        return getScanner().scan( provisionSpec );
+    }
+
+    /**
+     * Releases the scanner service, if it was got.
+     */
+    synchronized void release()
+    {
+        if( m_scanner != null )
+        {
+            m_scanner = null;
+            m_bundleContext.ungetService( m_reference );
+        }
+    }
+
+    /**
+     * Returns the scanner service, getting it on first call.
+     *
+     * @return scanner service
+     *
+     * @throws ScannerException - If scanner service is not available anymore
+     */
+    private synchronized Scanner getScanner()
+        throws ScannerException
+    {
+        if( m_scanner == null )
+        {
+            final Object service = m_bundleContext.getService( m_reference );
+            if( !( service instanceof Scanner ) )
+            {
+                if( service != null )
+                {
+                    m_bundleContext.ungetService( m_reference );
+                }
+                throw new ScannerException( "Scanner service [" + m_reference + "] is not available" );
+            }
+            m_scanner = (Scanner) service;
+        }
+        return m_scanner;
+    }
+
+}
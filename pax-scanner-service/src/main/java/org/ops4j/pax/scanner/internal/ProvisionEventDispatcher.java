@@ -0,0 +1,106 @@
+/*
+ * Copyright 2007 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.internal;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ops4j.lang.NullArgumentException;
+import org.ops4j.pax.scanner.ProvisionEvent;
+import org.ops4j.pax.scanner.ProvisionEventListener;
+
+/**
+ * Dispatches provisioning events to registered listeners. A failing listener does not affect provisioning or the
+ * other listeners.
+ *
+ * @since 1.2.0
+ */
+class ProvisionEventDispatcher
+{
+
+    /**
+     * Logger.
+     */
+    private static final Log LOGGER = LogFactory.getLog( ProvisionEventDispatcher.class );
+
+    /**
+     * Registered listeners.
+     */
+    private final List<ProvisionEventListener> m_listeners;
+
+    /**
+     * Creates a dispatcher without listeners.
+     */
+    ProvisionEventDispatcher()
+    {
+        m_listeners = new CopyOnWriteArrayList<ProvisionEventListener>();
+    }
+
+    /**
+     * Adds a listener.
+     *
+     * @param listener listener to add; mandatory
+     */
+    void addListener( final ProvisionEventListener listener )
+    {
+        NullArgumentException.validateNotNull( listener, "Listener" );
+        m_listeners.add( listener );
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener listener to remove
+     */
+    void removeListener( final ProvisionEventListener listener )
+    {
+        m_listeners.remove( listener );
+    }
+
+    /**
+     * Checks if there are listeners, so callers can avoid creating events nobody listens to.
+     *
+     * @return true if there is at least one listener
+     */
+    boolean isEnabled()
+    {
+        return !m_listeners.isEmpty();
+    }
+
+    /**
+     * Dispatches an event to all listeners.
+     *
+     * @param event event to dispatch
+     */
+    void dispatch( final ProvisionEvent event )
+    {
+        for( ProvisionEventListener listener : m_listeners )
+        {
+            try
+            {
+                listener.provisioned( event );
+            }
+            catch( RuntimeException e )
+            {
+                LOGGER.warn( "Provision event listener [" + listener + "] failed on " + event, e );
+            }
+        }
+    }
+
+}
@@ -30,11 +30,14 @@ import org.ops4j.lang.NullArgumentException;
 import org.ops4j.pax.scanner.InstallableBundle;
 import org.ops4j.pax.scanner.InstallableBundles;
 import org.ops4j.pax.scanner.MalformedSpecificationException;
+import org.ops4j.pax.scanner.ProvisionEvent;
+import org.ops4j.pax.scanner.ProvisionEventListener;
 import org.ops4j.pax.scanner.ProvisionService;
 import org.ops4j.pax.scanner.ProvisionSpec;
 import org.ops4j.pax.scanner.ScannedBundle;
 import org.ops4j.pax.scanner.Scanner;
 import org.ops4j.pax.scanner.ScannerException;
+import org.ops4j.pax.scanner.ScannerMetrics;
 import org.ops4j.pax.scanner.UnsupportedSchemaException;
 
 /**
@@ -64,6 +67,14 @@ public class ProvisionServiceImpl
      * Start Level service.
      */
     private StartLevel m_startLevelService;
+    /**
+     * Dispatcher of provisioning events.
+     */
+    private final ProvisionEventDispatcher m_eventDispatcher;
+    /**
+     * Prefetcher of remote locations. Null if locations are not prefetched.
+     */
+    private ArtifactPrefetcher m_prefetcher;
 
     /**
      * Creates a new provision service implementation.
@@ -75,6 +86,7 @@ public class ProvisionServiceImpl
         NullArgumentException.validateNotNull( bundleContext, "Bundle context" );
         m_bundleContext = bundleContext;
         m_scanners = new HashMap<String, Scanner>();
+        m_eventDispatcher = new ProvisionEventDispatcher();
     }
 
     /**
@@ -95,6 +107,7 @@ public class ProvisionServiceImpl
 
     /**
      * Wraps a list of scanned bundles as installables. The methods could be overrided by subclasses.
+     * If a prefetcher is set, the download of remote locations starts once the installables are installed.
      *
      * @param scannedBundles scanned bundles to be wrapped
      *
@@ -122,7 +135,7 @@ public class ProvisionServiceImpl
      */
     InstallableBundles createSet( final List<InstallableBundle> installables )
     {
-        return new InstallableBundlesImpl( installables );
+        return new InstallableBundlesImpl( installables, m_bundleContext, m_prefetcher );
     }
 
     /**
@@ -134,11 +147,14 @@ public class ProvisionServiceImpl
      */
     InstallableBundle wrap( final ScannedBundle scannedBundle )
     {
-        return new InstallableBundleImpl( m_bundleContext, scannedBundle, m_startLevelService );
+        return new InstallableBundleImpl(
+            m_bundleContext, scannedBundle, m_startLevelService, m_eventDispatcher, m_prefetcher
+        );
     }
 
     /**
-     * Uses the scanner to scan the bundles.
+     * Uses the scanner to scan the bundles. Scan duration, number of scanned bundles and failures are recorded in
+     * {@link ScannerMetrics} and, if there are listeners, notified as a {@link ProvisionEvent}.
      *
      * @param scanner the scanner to use
      * @param spec    the path part of the specification
@@ -152,7 +168,46 @@ public class ProvisionServiceImpl
     private List<ScannedBundle> scan( final Scanner scanner, final ProvisionSpec spec )
         throws ScannerException, MalformedSpecificationException
     {
-        List<ScannedBundle> scannedBundles = scanner.scan( spec );
+        final long startTime = System.currentTimeMillis();
+        final long start = System.nanoTime();
+        List<ScannedBundle> scannedBundles = null;
+        boolean failed = true;
+        Throwable failure = null;
+        try
+        {
+            scannedBundles = scanner.scan( spec );
+            failed = false;
+        }
+        catch( ScannerException e )
+        {
+            failure = e;
+            throw e;
+        }
+        catch( MalformedSpecificationException e )
+        {
+            failure = e;
+            throw e;
+        }
+        catch( RuntimeException e )
+        {
+            failure = e;
+            throw e;
+        }
+        finally
+        {
+            final long duration = System.nanoTime() - start;
+            ScannerMetrics.getInstance().scanned(
+                spec.getScheme(), duration, scannedBundles == null ? 0 : scannedBundles.size(), failed
+            );
+            if( m_eventDispatcher.isEnabled() )
+            {
+                m_eventDispatcher.dispatch(
+                    new ProvisionEvent(
+                        ProvisionEvent.SCAN, spec.toExternalForm(), spec.getScheme(), null, startTime, duration, failure
+                    )
+                );
+            }
+        }
         if( LOGGER.isWarnEnabled() && scannedBundles == null )
         {
             LOGGER.warn( "Scanner did not return any bundle to install for [" + spec + "]" );
@@ -201,6 +256,28 @@ public class ProvisionServiceImpl
         }
     }
 
+    /**
+     * Adds a provisioning events listener.
+     *
+     * @param listener the listener
+     */
+    public void addEventListener( final ProvisionEventListener listener )
+    {
+        m_eventDispatcher.addListener( listener );
+        LOGGER.debug( "Added provision event listener [" + listener + "]" );
+    }
+
+    /**
+     * Removes a provisioning events listener.
+     *
+     * @param listener the listener
+     */
+    public void removeEventListener( final ProvisionEventListener listener )
+    {
+        m_eventDispatcher.removeListener( listener );
+        LOGGER.debug( "Removed provision event listener [" + listener + "]" );
+    }
+
     /**
      * Sets the start level service.
      *
@@ -211,4 +288,14 @@ public class ProvisionServiceImpl
         m_startLevelService = startLevelService;
     }
 
+    /**
+     * Sets the prefetcher of remote locations.
+     *
+     * @param prefetcher a prefetcher; null if locations should not be prefetched
+     */
+    void setPrefetcher( final ArtifactPrefetcher prefetcher )
+    {
+        m_prefetcher = prefetcher;
+    }
+
 }
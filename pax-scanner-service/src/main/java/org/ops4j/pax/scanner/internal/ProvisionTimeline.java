@@ -0,0 +1,382 @@
+/*
+ * Copyright 2007 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.internal;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.ops4j.pax.scanner.ProvisionEvent;
+import org.ops4j.pax.scanner.ProvisionEventListener;
+
+/**
+ * Records a timeline of provisioning phases (scans, fetches, installs, updates and starts) and dumps it as a Chrome
+ * trace (json, to be loaded in chrome://tracing or similar viewers) or as a flat csv.
+ * Phases are nested by time on the thread that performed them, so scans of specs composed by a composite spec are
+ * nested inside the composite scan.
+ *
+ * @since 1.2.0
+ */
+class ProvisionTimeline
+    implements ProvisionEventListener
+{
+
+    /**
+     * Maximum number of recorded phases. Later phases are dropped.
+     */
+    static final int MAX_ENTRIES = 100000;
+
+    /**
+     * Time the timeline started, as System.nanoTime().
+     */
+    private final long m_originNanos;
+    /**
+     * Time the timeline started, as System.currentTimeMillis().
+     */
+    private final long m_originMillis;
+    /**
+     * Recorded phases.
+     */
+    private final ConcurrentLinkedQueue<Entry> m_entries;
+    /**
+     * Number of recorded phases.
+     */
+    private final AtomicInteger m_size;
+
+    /**
+     * Creates an empty timeline, starting now.
+     */
+    ProvisionTimeline()
+    {
+        m_originNanos = System.nanoTime();
+        m_originMillis = System.currentTimeMillis();
+        m_entries = new ConcurrentLinkedQueue<Entry>();
+        m_size = new AtomicInteger();
+    }
+
+    /**
+     * Records a provisioning phase. As events are notified synchronously right after the phase ended, the phase start
+     * is computed out of current time and phase duration.
+     *
+     * {@inheritDoc}
+     */
+    public void provisioned( final ProvisionEvent event )
+    {
+        if( m_size.incrementAndGet() > MAX_ENTRIES )
+        {
+            m_size.decrementAndGet();
+            return;
+        }
+        final long end = System.nanoTime() - m_originNanos;
+        final Thread thread = Thread.currentThread();
+        m_entries.add( new Entry( event, end - event.getDuration(), thread.getId(), thread.getName() ) );
+    }
+
+    /**
+     * Writes the timeline in Chrome trace event format.
+     *
+     * @param writer where to write
+     *
+     * @throws IOException - If writing fails
+     */
+    void writeChromeTrace( final Writer writer )
+        throws IOException
+    {
+        writer.write( "{\"displayTimeUnit\":\"ms\",\"otherData\":{\"origin\":" + m_originMillis + "},\"traceEvents\":[" );
+        boolean first = true;
+        final Map<Long, String> threads = new HashMap<Long, String>();
+        for( Entry entry : getEntries() )
+        {
+            writer.write( first ? "\n" : ",\n" );
+            first = false;
+            threads.put( entry.m_threadId, entry.m_threadName );
+            writer.write( "{\"name\":" );
+            writeJson( writer, entry.getName() );
+            writer.write( ",\"cat\":" );
+            writeJson( writer, entry.m_event.getPhase() );
+            writer.write( ",\"ph\":\"X\",\"ts\":" + entry.m_start / 1000 );
+            writer.write( ",\"dur\":" + entry.m_event.getDuration() / 1000 );
+            writer.write( ",\"pid\":1,\"tid\":" + entry.m_threadId + ",\"args\":{\"scheme\":" );
+            writeJson( writer, entry.m_event.getScheme() );
+            writer.write( ",\"spec\":" );
+            writeJson( writer, entry.m_event.getSpec() );
+            writer.write( ",\"location\":" );
+            writeJson( writer, entry.m_event.getLocation() );
+            writer.write( ",\"failed\":" + ( entry.m_event.getFailure() != null ) + "}}" );
+        }
+        for( Map.Entry<Long, String> thread : threads.entrySet() )
+        {
+            writer.write( first ? "\n" : ",\n" );
+            first = false;
+            writer.write( "{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + thread.getKey() );
+            writer.write( ",\"args\":{\"name\":" );
+            writeJson( writer, thread.getValue() );
+            writer.write( "}}" );
+        }
+        writer.write( "\n]}\n" );
+        writer.flush();
+    }
+
+    /**
+     * Writes the timeline as csv, one phase per line, ordered by start time. Depth is the nesting level of the phase
+     * on its thread (0 for top level phases).
+     *
+     * @param writer where to write
+     *
+     * @throws IOException - If writing fails
+     */
+    void writeCSV( final Writer writer )
+        throws IOException
+    {
+        writer.write( "start_ms,duration_ms,thread,depth,phase,scheme,spec,location,failed\n" );
+        final Map<Long, LinkedList<Entry>> open = new HashMap<Long, LinkedList<Entry>>();
+        for( Entry entry : getEntries() )
+        {
+            LinkedList<Entry> parents = open.get( entry.m_threadId );
+            if( parents == null )
+            {
+                parents = new LinkedList<Entry>();
+                open.put( entry.m_threadId, parents );
+            }
+            while( !parents.isEmpty() && parents.getLast().getEnd() <= entry.m_start )
+            {
+                parents.removeLast();
+            }
+            writer.write( formatMillis( entry.m_start ) );
+            writer.write( ',' );
+            writer.write( formatMillis( entry.m_event.getDuration() ) );
+            writer.write( ',' );
+            writeCSV( writer, entry.m_threadName );
+            writer.write( "," + parents.size() + "," );
+            writeCSV( writer, entry.m_event.getPhase() );
+            writer.write( ',' );
+            writeCSV( writer, entry.m_event.getScheme() );
+            writer.write( ',' );
+            writeCSV( writer, entry.m_event.getSpec() );
+            writer.write( ',' );
+            writeCSV( writer, entry.m_event.getLocation() );
+            writer.write( "," + ( entry.m_event.getFailure() != null ) + "\n" );
+            parents.addLast( entry );
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes the timeline to a file, as csv if file name ends with .csv, otherwise as Chrome trace.
+     *
+     * @param file file to write to
+     *
+     * @throws IOException - If writing fails
+     */
+    void dump( final File file )
+        throws IOException
+    {
+        final Writer writer = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" ) );
+        try
+        {
+            if( file.getName().toLowerCase().endsWith( ".csv" ) )
+            {
+                writeCSV( writer );
+            }
+            else
+            {
+                writeChromeTrace( writer );
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    /**
+     * Returns the recorded phases ordered by start time and, for same start time, longest first (so parents come
+     * before their nested phases).
+     *
+     * @return recorded phases
+     */
+    private List<Entry> getEntries()
+    {
+        final List<Entry> entries = new ArrayList<Entry>( m_entries );
+        Collections.sort(
+            entries, new Comparator<Entry>()
+            {
+                public int compare( final Entry entry1, final Entry entry2 )
+                {
+                    if( entry1.m_start != entry2.m_start )
+                    {
+                        return entry1.m_start < entry2.m_start ? -1 : 1;
+                    }
+                    final long duration1 = entry1.m_event.getDuration();
+                    final long duration2 = entry2.m_event.getDuration();
+                    return duration1 == duration2 ? 0 : ( duration1 > duration2 ? -1 : 1 );
+                }
+            }
+        );
+        return entries;
+    }
+
+    /**
+     * Formats a nanoseconds value as milliseconds with microseconds precision.
+     *
+     * @param nanos value to format
+     *
+     * @return formatted value
+     */
+    private static String formatMillis( final long nanos )
+    {
+        return String.format( Locale.ROOT, "%.3f", nanos / 1000000.0 );
+    }
+
+    /**
+     * Writes a json string value.
+     *
+     * @param writer where to write
+     * @param value  value to write; can be null
+     *
+     * @throws IOException - If writing fails
+     */
+    private static void writeJson( final Writer writer, final String value )
+        throws IOException
+    {
+        if( value == null )
+        {
+            writer.write( "null" );
+            return;
+        }
+        writer.write( '"' );
+        for( int i = 0; i < value.length(); i++ )
+        {
+            final char c = value.charAt( i );
+            if( c == '"' || c == '\\' )
+            {
+                writer.write( '\\' );
+                writer.write( c );
+            }
+            else if( c < 0x20 )
+            {
+                writer.write( String.format( "\\u%04x", (int) c ) );
+            }
+            else
+            {
+                writer.write( c );
+            }
+        }
+        writer.write( '"' );
+    }
+
+    /**
+     * Writes a csv value, quoted if necessary.
+     *
+     * @param writer where to write
+     * @param value  value to write; can be null
+     *
+     * @throws IOException - If writing fails
+     */
+    private static void writeCSV( final Writer writer, final String value )
+        throws IOException
+    {
+        if( value == null )
+        {
+            return;
+        }
+        if( value.indexOf( ',' ) < 0 && value.indexOf( '"' ) < 0 && value.indexOf( '\n' ) < 0 )
+        {
+            writer.write( value );
+            return;
+        }
+        writer.write( '"' );
+        writer.write( value.replace( "\"", "\"\"" ) );
+        writer.write( '"' );
+    }
+
+    /**
+     * A recorded phase.
+     */
+    private static class Entry
+    {
+
+        /**
+         * Provisioning event.
+         */
+        private final ProvisionEvent m_event;
+        /**
+         * Phase start, in nanoseconds since timeline start.
+         */
+        private final long m_start;
+        /**
+         * Id of the thread that performed the phase.
+         */
+        private final long m_threadId;
+        /**
+         * Name of the thread that performed the phase.
+         */
+        private final String m_threadName;
+
+        /**
+         * Creates a new entry.
+         *
+         * @param event      provisioning event
+         * @param start      phase start, in nanoseconds since timeline start
+         * @param threadId   id of the thread that performed the phase
+         * @param threadName name of the thread that performed the phase
+         */
+        Entry( final ProvisionEvent event, final long start, final long threadId, final String threadName )
+        {
+            m_event = event;
+            m_start = start;
+            m_threadId = threadId;
+            m_threadName = threadName;
+        }
+
+        /**
+         * Getter.
+         *
+         * @return phase end, in nanoseconds since timeline start
+         */
+        long getEnd()
+        {
+            return m_start + m_event.getDuration();
+        }
+
+        /**
+         * Returns a display name of the phase.
+         *
+         * @return phase and spec or location
+         */
+        String getName()
+        {
+            return m_event.getPhase() + " "
+                   + ( m_event.getSpec() != null ? m_event.getSpec() : m_event.getLocation() );
+        }
+
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2007 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner;
+
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class ScannerMetricsTest
+{
+
+    @Test
+    public void scanned()
+    {
+        final ScannerMetrics metrics = new ScannerMetrics();
+        metrics.scanned( "scan-file", TimeUnit.MILLISECONDS.toNanos( 3 ), 2, false );
+        metrics.scanned( "scan-file", TimeUnit.MILLISECONDS.toNanos( 200 ), 0, true );
+        metrics.scanned( "scan-file", TimeUnit.MINUTES.toNanos( 2 ), 5, false );
+
+        assertArrayEquals( "Schemes", new String[]{ "scan-file" }, metrics.getSchemes() );
+        assertEquals( "Scans", 3, metrics.getScans( "scan-file" ) );
+        assertEquals( "Errors", 1, metrics.getErrors( "scan-file" ) );
+        assertEquals( "Bundles", 7, metrics.getBundles( "scan-file" ) );
+        assertEquals( "Total time", 120203, metrics.getTotalTime( "scan-file" ) );
+        final long[] histogram = metrics.getLatencyHistogram( "scan-file" );
+        assertEquals( "Histogram size", metrics.getLatencyBuckets().length + 1, histogram.length );
+        assertEquals( "<= 5ms", 1, histogram[ 1 ] );
+        assertEquals( "<= 500ms", 1, histogram[ 5 ] );
+        assertEquals( "Unbounded", 1, histogram[ histogram.length - 1 ] );
+    }
+
+    @Test
+    public void unknownScheme()
+    {
+        final ScannerMetrics metrics = new ScannerMetrics();
+        assertEquals( "Scans", 0, metrics.getScans( "scan-unknown" ) );
+        assertEquals( "Cache hits", 0, metrics.getCacheHits( "scan-unknown" ) );
+        assertEquals( "Schemes", 0, metrics.getSchemes().length );
+    }
+
+    @Test
+    public void recordedByScanners()
+    {
+        final ScannerMetrics metrics = ScannerMetrics.getInstance();
+        metrics.reset();
+        ScannerMetrics.recordCacheHit( "scan-pom" );
+        ScannerMetrics.recordCacheHit( "scan-pom" );
+        ScannerMetrics.recordCacheMiss( "scan-pom" );
+        ScannerMetrics.recordBytesFetched( "scan-pom", 1024 );
+
+        assertEquals( "Cache hits", 2, metrics.getCacheHits( "scan-pom" ) );
+        assertEquals( "Cache misses", 1, metrics.getCacheMisses( "scan-pom" ) );
+        assertEquals( "Bytes fetched", 1024, metrics.getBytesFetched( "scan-pom" ) );
+
+        metrics.reset();
+        assertEquals( "Cache hits after reset", 0, metrics.getCacheHits( "scan-pom" ) );
+    }
+
+}
@@ -24,8 +24,12 @@ import org.osgi.framework.BundleContext;
 import org.osgi.framework.Filter;
 import org.osgi.framework.ServiceListener;
 import org.osgi.service.startlevel.StartLevel;
+import org.ops4j.pax.scanner.ProvisionEventListener;
 import org.ops4j.pax.scanner.ProvisionService;
 import org.ops4j.pax.scanner.Scanner;
+import org.ops4j.pax.scanner.ScannerMetrics;
+import org.ops4j.pax.scanner.ScannerMetricsMBean;
+import org.ops4j.pax.scanner.ServiceConstants;
 
 public class ActivatorTest
 {
@@ -48,6 +52,15 @@ public class ActivatorTest
             (Dictionary) isNull()
         )
         ).andReturn( null );
+        expect( context.getProperty( ServiceConstants.PROPERTY_TIMELINE ) ).andReturn( null );
+        expect( context.getProperty( ServiceConstants.PROPERTY_STORE ) ).andReturn( null );
+        expect( context.getProperty( ServiceConstants.PROPERTY_PREFETCH_THREADS ) ).andReturn( null );
+        expect( context.registerService(
+            eq( ScannerMetricsMBean.class.getName() ),
+            same( ScannerMetrics.getInstance() ),
+            (Dictionary) isNull()
+        )
+        ).andReturn( null );
         // service tracker for start level service
         expect( context.createFilter( "(objectClass=" + StartLevel.class.getName() + ")" )
         ).andReturn( createMock( Filter.class ) );
@@ -72,6 +85,18 @@ public class ActivatorTest
             (String) isNull()
         )
         ).andReturn( null );
+        // service tracker for provision event listeners
+        expect( context.createFilter( "(objectClass=" + ProvisionEventListener.class.getName() + ")" )
+        ).andReturn( createMock( Filter.class ) );
+        context.addServiceListener(
+            (ServiceListener) notNull(),
+            eq( "(objectClass=" + ProvisionEventListener.class.getName() + ")" )
+        );
+        expect( context.getServiceReferences(
+            eq( ProvisionEventListener.class.getName() ),
+            (String) isNull()
+        )
+        ).andReturn( null );
 
         replay( context );
         new Activator().start( context );
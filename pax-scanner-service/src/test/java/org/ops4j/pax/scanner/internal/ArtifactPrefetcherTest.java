@@ -0,0 +1,251 @@
+/*
+ * Copyright 2007 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ArtifactPrefetcherTest
+{
+
+    private HttpServer m_server;
+    private Map<String, String> m_content;
+    private String m_base;
+    private File m_directory;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        m_content = new HashMap<String, String>();
+        m_server = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+        m_server.createContext(
+            "/", new HttpHandler()
+            {
+                public void handle( final HttpExchange exchange )
+                    throws IOException
+                {
+                    final String content = m_content.get( exchange.getRequestURI().getPath() );
+                    if( content == null )
+                    {
+                        exchange.sendResponseHeaders( 404, -1 );
+                    }
+                    else
+                    {
+                        final byte[] bytes = content.getBytes( "UTF-8" );
+                        exchange.sendResponseHeaders( 200, bytes.length );
+                        final OutputStream outputStream = exchange.getResponseBody();
+                        outputStream.write( bytes );
+                        outputStream.close();
+                    }
+                    exchange.close();
+                }
+            }
+        );
+        m_server.start();
+        m_base = "http://127.0.0.1:" + m_server.getAddress().getPort();
+        m_directory = File.createTempFile( "prefetch", "" );
+        m_directory.delete();
+    }
+
+    @After
+    public void tearDown()
+    {
+        m_server.stop( 0 );
+        delete( m_directory );
+    }
+
+    @Test
+    public void prefetchAndRelease()
+    {
+        m_content.put( "/bundle1.jar", "bundle1" );
+        m_content.put( "/bundle2.jar", "bundle2" );
+        final ArtifactPrefetcher prefetcher = new ArtifactPrefetcher( m_directory, 2, 1024 );
+        try
+        {
+            prefetcher.prefetch(
+                Arrays.asList( m_base + "/bundle1.jar", m_base + "/bundle2.jar", m_base + "/missing.jar" )
+            );
+            final File file = prefetcher.get( m_base + "/bundle1.jar" );
+            assertNotNull( "Prefetched", file );
+            assertEquals( "Size", 7, file.length() );
+            assertNotNull( "Prefetched", prefetcher.get( m_base + "/bundle2.jar" ) );
+            assertNull( "Missing location", prefetcher.get( m_base + "/missing.jar" ) );
+            assertNull( "Not prefetched location", prefetcher.get( m_base + "/other.jar" ) );
+
+            prefetcher.release( m_base + "/bundle1.jar" );
+            assertFalse( "Released file deleted", file.exists() );
+            assertNull( "Released location", prefetcher.get( m_base + "/bundle1.jar" ) );
+        }
+        finally
+        {
+            prefetcher.shutdown();
+        }
+    }
+
+    @Test
+    public void checksumMismatch()
+    {
+        m_content.put( "/bundle1.jar", "bundle1" );
+        m_content.put( "/bundle1.jar.sha1", "0000000000000000000000000000000000000000  bundle1.jar" );
+        m_content.put( "/bundle2.jar", "bundle2" );
+        // sha1 of "bundle2"
+        m_content.put( "/bundle2.jar.sha1", "4b91a539fcd1bf4fc597c1ca53697c2743295f82" );
+        final ArtifactPrefetcher prefetcher = new ArtifactPrefetcher( m_directory, 1, 1024 );
+        try
+        {
+            prefetcher.prefetch( Arrays.asList( m_base + "/bundle1.jar", m_base + "/bundle2.jar" ) );
+            assertNull( "Checksum mismatch", prefetcher.get( m_base + "/bundle1.jar" ) );
+            assertNotNull( "Checksum match", prefetcher.get( m_base + "/bundle2.jar" ) );
+        }
+        finally
+        {
+            prefetcher.shutdown();
+        }
+    }
+
+    @Test
+    public void byteBudget()
+    {
+        m_content.put( "/bundle1.jar", "bundle1" );
+        m_content.put( "/bundle2.jar", "bundle2" );
+        final ArtifactPrefetcher prefetcher = new ArtifactPrefetcher( m_directory, 1, 10 );
+        try
+        {
+            prefetcher.prefetch( Arrays.asList( m_base + "/bundle1.jar", m_base + "/bundle2.jar" ) );
+            assertNotNull( "Within budget", prefetcher.get( m_base + "/bundle1.jar" ) );
+            assertNull( "Over budget", prefetcher.get( m_base + "/bundle2.jar" ) );
+
+            prefetcher.release( m_base + "/bundle1.jar" );
+            prefetcher.release( m_base + "/bundle2.jar" );
+            prefetcher.prefetch( Arrays.asList( m_base + "/bundle2.jar" ) );
+            assertNotNull( "Within budget after release", prefetcher.get( m_base + "/bundle2.jar" ) );
+        }
+        finally
+        {
+            prefetcher.shutdown();
+        }
+    }
+
+    @Test
+    public void releaseDownloadFinishedBeforeCancel()
+    {
+        m_content.put( "/bundle1.jar", "bundle1" );
+        m_content.put( "/bundle2.jar", "bundle2" );
+        final ArtifactPrefetcher prefetcher = new ArtifactPrefetcher( m_directory, 1, 10 )
+        {
+            @Override
+            Download createDownload( final String location )
+            {
+                final Download download = super.createDownload( location );
+                // simulate the download finishing between the done check and the cancel
+                return new Download(
+                    new Callable<File>()
+                    {
+                        public File call()
+                            throws Exception
+                        {
+                            download.run();
+                            return download.get();
+                        }
+                    }
+                )
+                {
+                    @Override
+                    public boolean isDone()
+                    {
+                        return false;
+                    }
+                };
+            }
+        };
+        try
+        {
+            prefetcher.prefetch( Arrays.asList( m_base + "/bundle1.jar" ) );
+            final File file = prefetcher.get( m_base + "/bundle1.jar" );
+            assertNotNull( "Prefetched", file );
+
+            prefetcher.release( m_base + "/bundle1.jar" );
+            assertFalse( "Released file deleted", file.exists() );
+            prefetcher.prefetch( Arrays.asList( m_base + "/bundle2.jar" ) );
+            assertNotNull( "Within budget after release", prefetcher.get( m_base + "/bundle2.jar" ) );
+        }
+        finally
+        {
+            prefetcher.shutdown();
+        }
+    }
+
+    @Test
+    public void notStorableLocationNotStored()
+    {
+        m_content.put( "/bundle1.jar", "bundle1" );
+        final ArtifactStore store = new ArtifactStore( new File( m_directory, "store" ), 1024 );
+        final ArtifactPrefetcher prefetcher = new ArtifactPrefetcher( m_directory, 1, 1024, store );
+        try
+        {
+            prefetcher.prefetch( Arrays.asList( m_base + "/bundle1.jar" ) );
+            final File file = prefetcher.get( m_base + "/bundle1.jar" );
+            assertNotNull( "Prefetched", file );
+            assertEquals( "Prefetched into prefetch directory", m_directory, file.getParentFile() );
+            assertNull( "Not stored", store.getDigest( m_base + "/bundle1.jar" ) );
+            prefetcher.release( m_base + "/bundle1.jar" );
+            assertFalse( "Released file deleted", file.exists() );
+        }
+        finally
+        {
+            prefetcher.shutdown();
+        }
+    }
+
+    @Test
+    public void isRemote()
+    {
+        assertTrue( "http", ArtifactPrefetcher.isRemote( "http://somewhere/bundle.jar" ) );
+        assertFalse( "file", ArtifactPrefetcher.isRemote( "file:bundle.jar" ) );
+        assertFalse( "Not an url", ArtifactPrefetcher.isRemote( "bundle.jar" ) );
+        assertFalse( "Null", ArtifactPrefetcher.isRemote( null ) );
+    }
+
+    private static void delete( final File file )
+    {
+        final File[] files = file.listFiles();
+        if( files != null )
+        {
+            for( File child : files )
+            {
+                delete( child );
+            }
+        }
+        file.delete();
+    }
+
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2007 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.internal;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ArtifactStoreTest
+{
+
+    private File m_directory;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        m_directory = File.createTempFile( "store", "" );
+        m_directory.delete();
+    }
+
+    @After
+    public void tearDown()
+    {
+        delete( m_directory );
+    }
+
+    @Test
+    public void putAndGet()
+        throws IOException
+    {
+        final ArtifactStore store = new ArtifactStore( m_directory, 1024 );
+        assertNull( "Not stored", store.get( "mvn:org.ops4j/bundle1/1.0", target() ) );
+
+        final File content = write( "bundle1" );
+        final String digest = store.put( "mvn:org.ops4j/bundle1/1.0", content );
+        assertTrue( "Content kept", content.exists() );
+        assertTrue( "Stored", object( digest ).exists() );
+        assertEquals( "Digest", digest, store.getDigest( "mvn:org.ops4j/bundle1/1.0" ) );
+        final File target = target();
+        assertEquals( "Copied", target, store.get( "mvn:org.ops4j/bundle1/1.0", target ) );
+        assertEquals( "Copied content", "bundle1", read( target ) );
+    }
+
+    @Test
+    public void sameContentStoredOnce()
+        throws IOException
+    {
+        final ArtifactStore store = new ArtifactStore( m_directory, 1024 );
+        final String digest1 = store.put( "mvn:org.ops4j/bundle1/1.0", write( "bundle" ) );
+        final String digest2 = store.put( "mvn:org.ops4j/bundle2/1.0", write( "bundle" ) );
+        assertEquals( "Same content", digest1, digest2 );
+        assertEquals( "Stored once", 1, object( digest1 ).getParentFile().listFiles().length );
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed()
+        throws IOException
+    {
+        final ArtifactStore store = new ArtifactStore( m_directory, 16 );
+        object( store.put( "mvn:org.ops4j/bundle1/1.0", write( "bundle1" ) ) )
+            .setLastModified( System.currentTimeMillis() - 20000 );
+        object( store.put( "mvn:org.ops4j/bundle2/1.0", write( "bundle2" ) ) )
+            .setLastModified( System.currentTimeMillis() - 10000 );
+        // bundle1 becomes the most recently used
+        assertNotNull( "Stored", store.get( "mvn:org.ops4j/bundle1/1.0", target() ) );
+
+        store.put( "mvn:org.ops4j/bundle3/1.0", write( "bundle3" ) );
+        assertNotNull( "Recently used kept", store.get( "mvn:org.ops4j/bundle1/1.0", target() ) );
+        assertNull( "Least recently used evicted", store.get( "mvn:org.ops4j/bundle2/1.0", target() ) );
+        assertNotNull( "Just stored kept", store.get( "mvn:org.ops4j/bundle3/1.0", target() ) );
+    }
+
+    @Test
+    public void evictWhileInUse()
+        throws IOException
+    {
+        final ArtifactStore store = new ArtifactStore( m_directory, 8 );
+        store.put( "mvn:org.ops4j/bundle1/1.0", write( "bundle1" ) );
+        final File inUse = store.get( "mvn:org.ops4j/bundle1/1.0", target() );
+        object( store.getDigest( "mvn:org.ops4j/bundle1/1.0" ) )
+            .setLastModified( System.currentTimeMillis() - 10000 );
+
+        store.put( "mvn:org.ops4j/bundle2/1.0", write( "bundle2" ) );
+        assertNull( "Evicted", store.get( "mvn:org.ops4j/bundle1/1.0", target() ) );
+        assertEquals( "Content in use kept", "bundle1", read( inUse ) );
+    }
+
+    @Test
+    public void sharedByStores()
+        throws Exception
+    {
+        final ArtifactStore store1 = new ArtifactStore( m_directory, 1024 );
+        final ArtifactStore store2 = new ArtifactStore( m_directory, 1024 );
+        store1.put( "mvn:org.ops4j/bundle1/1.0", write( "bundle1" ) );
+        assertEquals( "Stored by another store", "bundle1",
+                      read( store2.get( "mvn:org.ops4j/bundle1/1.0", target() ) )
+        );
+
+        // stores taking turns on the store lock
+        final List<Throwable> failures = Collections.synchronizedList( new ArrayList<Throwable>() );
+        final List<Thread> threads = new ArrayList<Thread>();
+        for( int i = 0; i < 8; i++ )
+        {
+            final ArtifactStore store = i % 2 == 0 ? store1 : store2;
+            final String location = "mvn:org.ops4j/bundle" + ( i % 3 ) + "/1.0";
+            final Thread thread = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for( int j = 0; j < 10; j++ )
+                        {
+                            store.put( location, write( location ) );
+                            assertEquals( "Content", location, read( store.get( location, target() ) ) );
+                        }
+                    }
+                    catch( Throwable e )
+                    {
+                        failures.add( e );
+                    }
+                }
+            };
+            threads.add( thread );
+            thread.start();
+        }
+        for( Thread thread : threads )
+        {
+            thread.join();
+        }
+        assertTrue( "Failures " + failures, failures.isEmpty() );
+    }
+
+    @Test
+    public void isStorable()
+    {
+        assertTrue( "Release", ArtifactStore.isStorable( "mvn:org.ops4j/bundle1/1.0" ) );
+        assertTrue( "Release with type", ArtifactStore.isStorable( "mvn:org.ops4j/bundle1/1.0/jar" ) );
+        assertTrue( "Release from repository",
+                    ArtifactStore.isStorable( "mvn:http://repository!org.ops4j/bundle1/1.0" )
+        );
+        assertFalse( "Snapshot", ArtifactStore.isStorable( "mvn:org.ops4j/bundle1/1.0-SNAPSHOT" ) );
+        assertFalse( "No version", ArtifactStore.isStorable( "mvn:org.ops4j/bundle1" ) );
+        assertFalse( "Latest", ArtifactStore.isStorable( "mvn:org.ops4j/bundle1/LATEST" ) );
+        assertFalse( "Range", ArtifactStore.isStorable( "mvn:org.ops4j/bundle1/[1.0,2.0)" ) );
+        assertFalse( "Http", ArtifactStore.isStorable( "http://somewhere/bundle1.jar" ) );
+        assertFalse( "Null", ArtifactStore.isStorable( null ) );
+    }
+
+    private File object( final String digest )
+    {
+        return new File( new File( new File( m_directory, "objects" ), digest.substring( 0, 2 ) ), digest );
+    }
+
+    private File target()
+        throws IOException
+    {
+        final File file = File.createTempFile( "target", ".jar" );
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static String read( final File file )
+        throws IOException
+    {
+        final BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( file ), "UTF-8" ) );
+        try
+        {
+            return reader.readLine();
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    private File write( final String content )
+        throws IOException
+    {
+        final File file = File.createTempFile( "bundle", ".jar" );
+        file.deleteOnExit();
+        final OutputStream outputStream = new FileOutputStream( file );
+        try
+        {
+            outputStream.write( content.getBytes( "UTF-8" ) );
+        }
+        finally
+        {
+            outputStream.close();
+        }
+        return file;
+    }
+
+    private static void delete( final File file )
+    {
+        final File[] files = file.listFiles();
+        if( files != null )
+        {
+            for( File child : files )
+            {
+                delete( child );
+            }
+        }
+        file.delete();
+    }
+
+}
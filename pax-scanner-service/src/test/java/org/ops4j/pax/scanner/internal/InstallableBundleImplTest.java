@@ -17,7 +17,17 @@
  */
 package org.ops4j.pax.scanner.internal;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
 import static org.easymock.EasyMock.*;
 import static org.junit.Assert.*;
 import org.junit.Test;
@@ -26,7 +36,10 @@ import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleException;
 import org.osgi.service.startlevel.StartLevel;
 import org.ops4j.pax.scanner.InstallableBundle;
+import org.ops4j.pax.scanner.ProvisionEvent;
+import org.ops4j.pax.scanner.ProvisionEventListener;
 import org.ops4j.pax.scanner.ScannedBundle;
+import org.ops4j.pax.scanner.VerifiableBundle;
 
 public class InstallableBundleImplTest
 {
@@ -211,4 +224,116 @@ public class InstallableBundleImplTest
         verify( context, scannedBundle, bundle );
     }
 
+    @Test
+    public void installFromPrefetchedContent()
+        throws BundleException, IOException
+    {
+        final File content = File.createTempFile( "bundle", ".jar" );
+        content.deleteOnExit();
+        final ArtifactPrefetcher prefetcher = new ArtifactPrefetcher( content.getParentFile(), 1, 0 )
+        {
+            @Override
+            File get( final String location )
+            {
+                return content;
+            }
+        };
+        final List<ProvisionEvent> events = new ArrayList<ProvisionEvent>();
+        final ProvisionEventDispatcher dispatcher = new ProvisionEventDispatcher();
+        dispatcher.addListener(
+            new ProvisionEventListener()
+            {
+                public void provisioned( final ProvisionEvent event )
+                {
+                    events.add( event );
+                }
+            }
+        );
+        BundleContext context = createMock( BundleContext.class );
+        ScannedBundle scannedBundle = createMock( ScannedBundle.class );
+        Bundle bundle = createMock( Bundle.class );
+        expect( scannedBundle.getLocation() ).andReturn( "http://localhost/bundle.jar" );
+        expect( context.installBundle( eq( "http://localhost/bundle.jar" ), isA( InputStream.class ) ) )
+            .andReturn( bundle );
+        expect( scannedBundle.shouldUpdate() ).andReturn( false );
+        expect( scannedBundle.shouldStart() ).andReturn( false );
+        replay( context, scannedBundle, bundle );
+        try
+        {
+            new InstallableBundleImpl( context, scannedBundle, null, dispatcher, prefetcher ).install();
+        }
+        finally
+        {
+            prefetcher.shutdown();
+        }
+        verify( context, scannedBundle, bundle );
+        assertEquals( "Events", 2, events.size() );
+        assertEquals( "Fetch phase", ProvisionEvent.FETCH, events.get( 0 ).getPhase() );
+        assertEquals( "Fetched location", "http://localhost/bundle.jar", events.get( 0 ).getLocation() );
+        assertEquals( "Install phase", ProvisionEvent.INSTALL, events.get( 1 ).getPhase() );
+    }
+
+    @Test
+    public void installVerifiedContent()
+        throws Exception
+    {
+        final AtomicInteger downloads = new AtomicInteger();
+        final HttpServer server = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+        server.createContext( "/", new HttpHandler()
+        {
+            public void handle( final HttpExchange exchange )
+                throws IOException
+            {
+                downloads.incrementAndGet();
+                exchange.sendResponseHeaders( 200, 0 );
+                exchange.getResponseBody().close();
+            }
+        }
+        );
+        server.start();
+        try
+        {
+            final String location = "http://127.0.0.1:" + server.getAddress().getPort() + "/bundle.jar";
+            BundleContext context = createMock( BundleContext.class );
+            VerifiableBundle scannedBundle = createMock( VerifiableBundle.class );
+            Bundle bundle = createMock( Bundle.class );
+            expect( scannedBundle.getLocation() ).andReturn( location );
+            // SHA-256 of empty content
+            expect( scannedBundle.getDigest() ).andReturn(
+                "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855"
+            ).anyTimes();
+            expect( context.getBundles() ).andReturn( new Bundle[0] );
+            // verified content is installed and updated, instead of downloading the location again
+            expect( context.installBundle( eq( location ), isA( InputStream.class ) ) ).andReturn( bundle );
+            expect( scannedBundle.shouldUpdate() ).andReturn( true );
+            expect( bundle.getLastModified() ).andReturn( 0L );
+            bundle.update( isA( InputStream.class ) );
+            expect( scannedBundle.shouldStart() ).andReturn( false );
+            replay( context, scannedBundle, bundle );
+            new InstallableBundleImpl( context, scannedBundle ).install();
+            verify( context, scannedBundle, bundle );
+            assertEquals( "Downloads", 1, downloads.get() );
+        }
+        finally
+        {
+            server.stop( 0 );
+        }
+    }
+
+    @Test( expected = BundleException.class )
+    public void installChangedContent()
+        throws BundleException, IOException
+    {
+        final File content = File.createTempFile( "bundle", ".jar" );
+        content.deleteOnExit();
+        final String location = content.toURI().toURL().toExternalForm();
+        BundleContext context = createMock( BundleContext.class );
+        VerifiableBundle scannedBundle = createMock( VerifiableBundle.class );
+        expect( scannedBundle.getLocation() ).andReturn( location );
+        expect( scannedBundle.getDigest() ).andReturn( "00ff" ).anyTimes();
+        expect( context.getBundles() ).andReturn( new Bundle[0] );
+        replay( context, scannedBundle );
+        new InstallableBundleImpl( context, scannedBundle ).install();
+    }
+
 }
@@ -17,14 +17,21 @@
  */
 package org.ops4j.pax.scanner.internal;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import static org.easymock.EasyMock.*;
 import static org.junit.Assert.*;
 import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleException;
 import org.ops4j.pax.scanner.InstallableBundle;
+import org.ops4j.pax.scanner.ScannedBundleBean;
 
 public class InstallableBundlesImplTest
 {
@@ -69,4 +76,58 @@ public class InstallableBundlesImplTest
         verify( installable );
     }
 
+    @Test
+    public void prefetchSkipsInstalledLocations()
+        throws IOException
+    {
+        final List<String> prefetched = new ArrayList<String>();
+        final File directory = File.createTempFile( "prefetch", "" );
+        directory.delete();
+        final ArtifactPrefetcher prefetcher = new ArtifactPrefetcher( directory, 1, 0 )
+        {
+            @Override
+            void prefetch( final Collection<String> locations )
+            {
+                prefetched.addAll( locations );
+            }
+        };
+        BundleContext context = createMock( BundleContext.class );
+        Bundle bundle = createMock( Bundle.class );
+        expect( context.getBundles() ).andReturn( new Bundle[]{ bundle } );
+        expect( bundle.getLocation() ).andReturn( "http://localhost/installed.jar" );
+        replay( context, bundle );
+        List<InstallableBundle> list = new ArrayList<InstallableBundle>();
+        list.add(
+            new InstallableBundleImpl(
+                context, new ScannedBundleBean( "http://localhost/installed.jar", null, null, null )
+            )
+        );
+        list.add(
+            new InstallableBundleImpl(
+                context, new ScannedBundleBean( "http://localhost/updated.jar", null, null, true )
+            )
+        );
+        list.add(
+            new InstallableBundleImpl(
+                context, new ScannedBundleBean( "http://localhost/new.jar", null, null, null )
+            )
+        );
+        try
+        {
+            assertEquals(
+                "Prefetched",
+                Arrays.asList( "http://localhost/updated.jar", "http://localhost/new.jar" ),
+                new InstallableBundlesImpl( list, context, prefetcher ).prefetch()
+            );
+            assertEquals( "Prefetched", Arrays.asList( "http://localhost/updated.jar", "http://localhost/new.jar" ),
+                          prefetched
+            );
+        }
+        finally
+        {
+            prefetcher.shutdown();
+        }
+        verify( context, bundle );
+    }
+
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2007 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.ops4j.pax.scanner.ProvisionSpec;
+import org.ops4j.pax.scanner.ScannedBundle;
+import org.ops4j.pax.scanner.Scanner;
+import org.ops4j.pax.scanner.ScannerException;
+
+public class LazyScannerTest
+{
+
+    @Test( expected = IllegalArgumentException.class )
+    public void constructorWithNullBundleContext()
+    {
+        new LazyScanner( null, createMock( ServiceReference.class ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void constructorWithNullReference()
+    {
+        new LazyScanner( createMock( BundleContext.class ), null );
+    }
+
+    @Test
+    public void serviceGotOnFirstScan()
+        throws Exception
+    {
+        final BundleContext context = createMock( BundleContext.class );
+        final ServiceReference reference = createMock( ServiceReference.class );
+        final Scanner scanner = createMock( Scanner.class );
+        final ProvisionSpec spec = new ProvisionSpec( "scan-me:any" );
+        final List<ScannedBundle> bundles = new ArrayList<ScannedBundle>();
+        replay( context, reference, scanner );
+        final LazyScanner lazyScanner = new LazyScanner( context, reference );
+        verify( context, reference, scanner );
+
+        reset( context, reference, scanner );
+        expect( context.getService( reference ) ).andReturn( scanner );
+        expect( scanner.scan( spec ) ).andReturn( bundles ).times( 2 );
+        expect( context.ungetService( reference ) ).andReturn( true );
+        replay( context, reference, scanner );
+        assertSame( "Scanned bundles", bundles, lazyScanner.scan( spec ) );
+        assertSame( "Scanned bundles", bundles, lazyScanner.scan( spec ) );
+        lazyScanner.release();
+        verify( context, reference, scanner );
+    }
+
+    @Test
+    public void releaseWithoutScan()
+    {
+        final BundleContext context = createMock( BundleContext.class );
+        final ServiceReference reference = createMock( ServiceReference.class );
+        replay( context, reference );
+        new LazyScanner( context, reference ).release();
+        verify( context, reference );
+    }
+
+    @Test( expected = ScannerException.class )
+    public void serviceNotAvailable()
+        throws Exception
+    {
+        final BundleContext context = createMock( BundleContext.class );
+        final ServiceReference reference = createMock( ServiceReference.class );
+        expect( context.getService( reference ) ).andReturn( null );
+        replay( context, reference );
+        new LazyScanner( context, reference ).scan( new ProvisionSpec( "scan-me:any" ) );
+    }
+
+}
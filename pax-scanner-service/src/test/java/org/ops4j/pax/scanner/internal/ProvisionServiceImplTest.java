@@ -26,6 +26,8 @@ import org.junit.Test;
 import org.osgi.framework.BundleContext;
 import org.ops4j.pax.scanner.InstallableBundles;
 import org.ops4j.pax.scanner.MalformedSpecificationException;
+import org.ops4j.pax.scanner.ProvisionEvent;
+import org.ops4j.pax.scanner.ProvisionEventListener;
 import org.ops4j.pax.scanner.ProvisionSpec;
 import org.ops4j.pax.scanner.ScannedBundle;
 import org.ops4j.pax.scanner.Scanner;
@@ -101,4 +103,43 @@ public class ProvisionServiceImplTest
         verify( scanner );
     }
 
+    @Test
+    public void scanNotifiesEventListeners()
+        throws MalformedSpecificationException, ScannerException
+    {
+        Scanner scanner = createMock( Scanner.class );
+        expect( scanner.scan( (ProvisionSpec) anyObject() ) ).andReturn( new ArrayList<ScannedBundle>() );
+        expect( scanner.scan( (ProvisionSpec) anyObject() ) ).andThrow( new ScannerException( "failed" ) );
+        replay( scanner );
+        final List<ProvisionEvent> events = new ArrayList<ProvisionEvent>();
+        ProvisionServiceImpl service = new ProvisionServiceImpl( createMock( BundleContext.class ) );
+        service.addScanner( scanner, "scheme" );
+        service.addEventListener(
+            new ProvisionEventListener()
+            {
+                public void provisioned( final ProvisionEvent event )
+                {
+                    events.add( event );
+                }
+            }
+        );
+        service.scan( "scheme:anURL" );
+        try
+        {
+            service.scan( "scheme:anotherURL" );
+            fail( "Expected a ScannerException" );
+        }
+        catch( ScannerException ignore )
+        {
+            // expected
+        }
+        verify( scanner );
+        assertEquals( "Number of events", 2, events.size() );
+        assertEquals( "Phase", ProvisionEvent.SCAN, events.get( 0 ).getPhase() );
+        assertEquals( "Scheme", "scheme", events.get( 0 ).getScheme() );
+        assertEquals( "Spec", "scheme:anURL", events.get( 0 ).getSpec() );
+        assertNull( "Failure", events.get( 0 ).getFailure() );
+        assertNotNull( "Failure", events.get( 1 ).getFailure() );
+    }
+
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2007 Alin Dreghiciu.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.scanner.internal;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.ops4j.pax.scanner.ProvisionEvent;
+
+public class ProvisionTimelineTest
+{
+
+    @Test
+    public void csvNestsCompositeScans()
+        throws IOException
+    {
+        final ProvisionTimeline timeline = new ProvisionTimeline();
+        timeline.provisioned( scan( "scan-file:bundles.txt", "scan-file", 1 ) );
+        timeline.provisioned( scan( "scan-composite:all.composite", "scan-composite", 50 ) );
+        timeline.provisioned(
+            new ProvisionEvent( ProvisionEvent.INSTALL, null, null, "file:a.jar", 0, 100, null )
+        );
+
+        final StringWriter writer = new StringWriter();
+        timeline.writeCSV( writer );
+        final String[] lines = writer.toString().split( "\n" );
+        assertEquals( "Lines", 4, lines.length );
+        assertEquals(
+            "Header", "start_ms,duration_ms,thread,depth,phase,scheme,spec,location,failed", lines[ 0 ]
+        );
+        assertTrue( "Composite scan first: " + lines[ 1 ], lines[ 1 ].contains( ",0,scan,scan-composite," ) );
+        assertTrue( "Nested scan: " + lines[ 2 ], lines[ 2 ].contains( ",1,scan,scan-file," ) );
+        assertTrue( "Install: " + lines[ 3 ], lines[ 3 ].contains( ",0,install,,,file:a.jar,false" ) );
+    }
+
+    @Test
+    public void chromeTrace()
+        throws IOException
+    {
+        final ProvisionTimeline timeline = new ProvisionTimeline();
+        timeline.provisioned(
+            new ProvisionEvent(
+                ProvisionEvent.SCAN, "scan-file:\"quoted\".txt", "scan-file", null, 0,
+                TimeUnit.MILLISECONDS.toNanos( 2 ), new RuntimeException()
+            )
+        );
+
+        final StringWriter writer = new StringWriter();
+        timeline.writeChromeTrace( writer );
+        final String trace = writer.toString();
+        assertTrue( "Trace events", trace.startsWith( "{\"displayTimeUnit\":\"ms\"" ) );
+        assertTrue( "Complete event", trace.contains( "\"ph\":\"X\"" ) );
+        assertTrue( "Duration in micros", trace.contains( "\"dur\":2000," ) );
+        assertTrue( "Escaped spec", trace.contains( "\"spec\":\"scan-file:\\\"quoted\\\".txt\"" ) );
+        assertTrue( "Failure", trace.contains( "\"failed\":true" ) );
+        assertTrue( "Thread name", trace.contains( "\"name\":\"thread_name\"" ) );
+        assertTrue( "Closed", trace.endsWith( "]}\n" ) );
+    }
+
+    private static ProvisionEvent scan( final String spec, final String scheme, final long millis )
+    {
+        return new ProvisionEvent(
+            ProvisionEvent.SCAN, spec, scheme, null, 0, TimeUnit.MILLISECONDS.toNanos( millis ), null
+        );
+    }
+
+}